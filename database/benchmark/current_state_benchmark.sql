@@ -0,0 +1,106 @@
+-- "Currently online devices": status history subquery vs. current state in
+-- the device table, over 50 million history rows.
+--
+-- Everything is created in a separate "bench" schema, the application tables
+-- aren't touched. Needs roughly 6 GB of disk space and takes a while to
+-- generate, so run it on a test server:
+--
+--   psql -U postgres -d network_monitor -f database/benchmark/current_state_benchmark.sql
+--
+-- Shape of the data: 50 networks x 2000 devices, 500 status changes per
+-- device (50,000,000 history rows). Every device ends up online.
+--
+-- Compare the "Execution Time" lines of the two EXPLAIN ANALYZE outputs at the
+-- end. The first query reads every history row of the network (1M rows here),
+-- the second only the network's online devices, no matter how big the history
+-- gets.
+
+\timing on
+
+DROP SCHEMA IF EXISTS bench CASCADE;
+CREATE SCHEMA bench;
+SET search_path = bench;
+
+-- same columns and indexes as database/schema.sql, without foreign keys
+CREATE TABLE network (
+	id bigserial PRIMARY KEY,
+	"name" varchar(100) NOT NULL UNIQUE
+);
+
+CREATE TABLE device (
+	id bigserial PRIMARY KEY,
+	ip_address varchar(45) NULL,
+	mac_address varchar(17) NOT NULL,
+	online bool NOT NULL,
+	status_since timestamp NULL,
+	network_id int8 NOT NULL
+);
+CREATE UNIQUE INDEX uk_device_network_mac_address ON device USING btree (network_id, mac_address);
+
+CREATE TABLE device_status_history (
+	id bigserial PRIMARY KEY,
+	ip_address varchar(45) NOT NULL,
+	online bool NOT NULL,
+	"timestamp" timestamp NOT NULL,
+	network_id int8 NOT NULL,
+	device_id int8 NULL
+);
+
+INSERT INTO network ("name")
+SELECT 'network-' || n FROM generate_series(1, 50) n;
+
+INSERT INTO device (ip_address, mac_address, online, network_id)
+SELECT '10.0.' || (d / 256) || '.' || (d % 256),
+       '02:00:00:00:' || lpad(to_hex(d / 256), 2, '0') || ':' || lpad(to_hex(d % 256), 2, '0'),
+       false,
+       n.id
+FROM network n, generate_series(1, 2000) d;
+
+-- 500 alternating offline/online changes per device, the last one online
+INSERT INTO device_status_history (ip_address, online, "timestamp", network_id, device_id)
+SELECT d.ip_address, (g % 2 = 0), timestamp '2024-01-01' + g * interval '1 hour' + d.id * interval '1 second',
+       d.network_id, d.id
+FROM device d, generate_series(1, 500) g;
+
+CREATE INDEX idx_device_status_history_network ON device_status_history USING btree (network_id);
+CREATE INDEX idx_device_status_history_device ON device_status_history USING btree (device_id);
+CREATE INDEX idx_device_status_history_timestamp ON device_status_history USING btree ("timestamp");
+
+-- what database/migrations/001_device_current_state.sql does
+UPDATE device d
+SET online = h.online,
+    status_since = h."timestamp"
+FROM (
+    SELECT DISTINCT ON (device_id) device_id, online, "timestamp"
+    FROM device_status_history
+    WHERE device_id IS NOT NULL
+    ORDER BY device_id, "timestamp" DESC, id DESC
+) h
+WHERE d.id = h.device_id;
+
+CREATE INDEX idx_device_network_online ON device USING btree (network_id) WHERE online;
+
+VACUUM ANALYZE network;
+VACUUM ANALYZE device;
+VACUUM ANALYZE device_status_history;
+
+-- before: the former MonitoringDAO.findCurrentlyOnlineDevices
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT h.*
+FROM device_status_history h
+WHERE h.network_id = 25
+  AND h.online = true
+  AND h."timestamp" = (
+      SELECT MAX(h2."timestamp") FROM device_status_history h2
+      WHERE h2.network_id = 25 AND h2.device_id = h.device_id);
+
+-- after: current state in the device table
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT d.*
+FROM device d
+WHERE d.network_id = 25
+  AND d.online = true;
+
+-- clean up
+RESET search_path;
+DROP SCHEMA bench CASCADE;
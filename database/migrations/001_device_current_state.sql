@@ -0,0 +1,42 @@
+-- Current device state in the device table
+--
+-- Until now "which devices are online" was answered by looking up the latest
+-- device_status_history entry of every device (correlated MAX(timestamp)
+-- subquery), which gets slower as the history grows. The device table now
+-- holds the current state: device.online and the new device.status_since
+-- (timestamp of the latest status history entry) are updated in the same
+-- transaction as every history insert.
+--
+-- This script adds the column and initializes both values from the history.
+-- Run it once, with the application stopped:
+--
+--   psql -U postgres -d network_monitor -f database/migrations/001_device_current_state.sql
+
+BEGIN;
+
+ALTER TABLE device ADD COLUMN IF NOT EXISTS status_since timestamp NULL;
+
+-- latest history entry of every device
+UPDATE device d
+SET online = h.online,
+    status_since = h."timestamp"
+FROM (
+    SELECT DISTINCT ON (device_id) device_id, online, "timestamp"
+    FROM device_status_history
+    WHERE device_id IS NOT NULL
+    ORDER BY device_id, "timestamp" DESC, id DESC
+) h
+WHERE d.id = h.device_id;
+
+-- devices without any history were never recorded as online
+UPDATE device
+SET online = false
+WHERE online
+  AND NOT EXISTS (SELECT 1 FROM device_status_history h WHERE h.device_id = device.id);
+
+-- online devices of a network
+CREATE INDEX IF NOT EXISTS idx_device_network_online ON device USING btree (network_id) WHERE online;
+
+COMMIT;
+
+ANALYZE device;
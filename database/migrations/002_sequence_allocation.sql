@@ -0,0 +1,24 @@
+-- Sequence ids in blocks of 50 for device, device_status_history and alert
+--
+-- These tables used IDENTITY ids, so OpenJPA had to execute every INSERT on
+-- its own to read back the generated id - a network with thousands of devices
+-- coming back up meant thousands of single-row INSERT round trips. The
+-- entities now use @SequenceGenerator(allocationSize = 50): OpenJPA reserves
+-- 50 ids with one nextval() call, knows the ids up front and sends the INSERTs
+-- in JDBC batches.
+--
+-- For that the sequences created by bigserial must hand out blocks of 50 as
+-- well. The column defaults keep using the same sequences, so rows inserted by
+-- hand still get unique ids (with gaps, which don't matter).
+--
+-- Run it once, with the application stopped:
+--
+--   psql -U postgres -d network_monitor -f database/migrations/002_sequence_allocation.sql
+
+BEGIN;
+
+ALTER SEQUENCE device_id_seq INCREMENT BY 50;
+ALTER SEQUENCE device_status_history_id_seq INCREMENT BY 50;
+ALTER SEQUENCE alert_id_seq INCREMENT BY 50;
+
+COMMIT;
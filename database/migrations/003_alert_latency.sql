@@ -0,0 +1,27 @@
+-- Scan to alert latency on the alert table
+--
+-- Every new alert records the timestamps of its way from the scan that
+-- triggered it to the owner's inbox: the scan's own timestamp, its arrival
+-- from the MQTT broker, the commit of its changes, when the alert became due
+-- and when the email was accepted by the SMTP server (see AlertEntity). The
+-- same stages are exported as histograms on /metrics. Existing alerts keep
+-- NULLs.
+--
+-- For example, the time the alert checker adds on top of the alerting delay:
+--
+--   SELECT alert_type_id, avg("timestamp" - due_timestamp), max("timestamp" - due_timestamp)
+--   FROM alert WHERE due_timestamp IS NOT NULL GROUP BY alert_type_id;
+--
+-- Run it once, with the application stopped:
+--
+--   psql -U postgres -d network_monitor -f database/migrations/003_alert_latency.sql
+
+BEGIN;
+
+ALTER TABLE alert ADD COLUMN IF NOT EXISTS scan_timestamp timestamp NULL;
+ALTER TABLE alert ADD COLUMN IF NOT EXISTS received_timestamp timestamp NULL;
+ALTER TABLE alert ADD COLUMN IF NOT EXISTS committed_timestamp timestamp NULL;
+ALTER TABLE alert ADD COLUMN IF NOT EXISTS due_timestamp timestamp NULL;
+ALTER TABLE alert ADD COLUMN IF NOT EXISTS email_sent_timestamp timestamp NULL;
+
+COMMIT;
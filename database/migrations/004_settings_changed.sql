@@ -0,0 +1,52 @@
+-- When the settings of a network or device were last edited
+--
+-- Alerting delays, device names and operation modes are edited directly in
+-- the database. Until now the alert checker re-read every network and device
+-- on every check to notice such edits. The new settings_changed column is set
+-- by a trigger whenever one of these columns changes (and to the insert time
+-- for new rows), so the checker only reads the rows changed since its
+-- previous check.
+--
+-- Existing rows get the time of the migration; the application loads their
+-- settings at startup anyway.
+--
+-- Run it once, with the application stopped:
+--
+--   psql -U postgres -d network_monitor -f database/migrations/004_settings_changed.sql
+
+BEGIN;
+
+ALTER TABLE network ADD COLUMN IF NOT EXISTS settings_changed timestamp NOT NULL DEFAULT now();
+ALTER TABLE device ADD COLUMN IF NOT EXISTS settings_changed timestamp NOT NULL DEFAULT now();
+
+CREATE OR REPLACE FUNCTION network_settings_changed() RETURNS trigger AS $$
+BEGIN
+    IF NEW.alerting_delay IS DISTINCT FROM OLD.alerting_delay THEN
+        NEW.settings_changed := now();
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION device_settings_changed() RETURNS trigger AS $$
+BEGIN
+    IF NEW."name" IS DISTINCT FROM OLD."name"
+            OR NEW.device_operation_mode_id IS DISTINCT FROM OLD.device_operation_mode_id THEN
+        NEW.settings_changed := now();
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_network_settings_changed ON network;
+CREATE TRIGGER trg_network_settings_changed BEFORE UPDATE ON network
+    FOR EACH ROW EXECUTE FUNCTION network_settings_changed();
+
+DROP TRIGGER IF EXISTS trg_device_settings_changed ON device;
+CREATE TRIGGER trg_device_settings_changed BEFORE UPDATE ON device
+    FOR EACH ROW EXECUTE FUNCTION device_settings_changed();
+
+-- devices edited since the previous check
+CREATE INDEX IF NOT EXISTS idx_device_settings_changed ON device USING btree (settings_changed);
+
+COMMIT;
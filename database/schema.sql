@@ -61,6 +61,7 @@ CREATE TABLE network (
 	last_seen timestamp NOT NULL,
 	"name" varchar(100) NOT NULL,
 	active_alert_id int8 NULL,
+	settings_changed timestamp DEFAULT now() NOT NULL,
 	CONSTRAINT pk_network PRIMARY KEY (id),
 	CONSTRAINT uk_network_name UNIQUE (name)
 );
@@ -80,9 +81,11 @@ CREATE TABLE device (
 	mac_address varchar(17) NOT NULL,
 	"name" varchar(200) NULL,
 	online bool NOT NULL,
+	status_since timestamp NULL,
 	network_id int8 NOT NULL,
 	device_operation_mode_id int4 NOT NULL,
 	active_alert_id int8 NULL,
+	settings_changed timestamp DEFAULT now() NOT NULL,
 	CONSTRAINT pk_device PRIMARY KEY (id),
 	CONSTRAINT fk_device_device_operation_mode FOREIGN KEY (device_operation_mode_id) REFERENCES device_operation_mode(id),
 	CONSTRAINT fk_device_network FOREIGN KEY (network_id) REFERENCES network(id)
@@ -92,6 +95,39 @@ CREATE TABLE device (
 -- DROP INDEX idx_device_network;
 -- DROP INDEX idx_device_mac_address;
 CREATE UNIQUE INDEX uk_device_network_mac_address ON device USING btree (network_id, mac_address);
+-- online devices of a network
+CREATE INDEX idx_device_network_online ON device USING btree (network_id) WHERE online;
+-- devices edited since the previous alert check
+CREATE INDEX idx_device_settings_changed ON device USING btree (settings_changed);
+
+
+-- settings_changed: set when an admin-edited column changes, so the alert
+-- checker only reads the rows edited since its previous check
+
+CREATE FUNCTION network_settings_changed() RETURNS trigger AS $$
+BEGIN
+    IF NEW.alerting_delay IS DISTINCT FROM OLD.alerting_delay THEN
+        NEW.settings_changed := now();
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_network_settings_changed BEFORE UPDATE ON network
+    FOR EACH ROW EXECUTE FUNCTION network_settings_changed();
+
+CREATE FUNCTION device_settings_changed() RETURNS trigger AS $$
+BEGIN
+    IF NEW."name" IS DISTINCT FROM OLD."name"
+            OR NEW.device_operation_mode_id IS DISTINCT FROM OLD.device_operation_mode_id THEN
+        NEW.settings_changed := now();
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_device_settings_changed BEFORE UPDATE ON device
+    FOR EACH ROW EXECUTE FUNCTION device_settings_changed();
 
 
 -- account definition
@@ -173,6 +209,11 @@ CREATE TABLE alert (
 	"timestamp" timestamp NOT NULL,
 	device_id int8 NULL,
 	network_id int8 NOT NULL,
+	scan_timestamp timestamp NULL,
+	received_timestamp timestamp NULL,
+	committed_timestamp timestamp NULL,
+	due_timestamp timestamp NULL,
+	email_sent_timestamp timestamp NULL,
 	CONSTRAINT pk_alert PRIMARY KEY (id),
 	CONSTRAINT fk_alert_alert_type FOREIGN KEY (alert_type_id) REFERENCES alert_type(id),
 	CONSTRAINT fk_alert_device FOREIGN KEY (device_id) REFERENCES device(id),
@@ -183,6 +224,13 @@ CREATE INDEX idx_alert_network ON alert USING btree (network_id);
 CREATE INDEX idx_alert_timestamp ON alert USING btree ("timestamp");
 
 
+-- id sequences of the frequently inserted tables hand out blocks of 50 ids,
+-- must match allocationSize of the entities' @SequenceGenerator
+ALTER SEQUENCE device_id_seq INCREMENT BY 50;
+ALTER SEQUENCE device_status_history_id_seq INCREMENT BY 50;
+ALTER SEQUENCE alert_id_seq INCREMENT BY 50;
+
+
 INSERT INTO alert_type (id, name, description) VALUES
     (0, 'NETWORK_DOWN', 'Network connectivity lost or network went offline'),
     (1, 'DEVICE_DOWN', 'Device that should always be online is not responding'),
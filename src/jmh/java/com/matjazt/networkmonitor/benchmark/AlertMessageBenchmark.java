@@ -0,0 +1,79 @@
+package com.matjazt.networkmonitor.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.matjazt.networkmonitor.entity.AlertEntity;
+import com.matjazt.networkmonitor.entity.AlertType;
+import com.matjazt.networkmonitor.entity.DeviceEntity;
+import com.matjazt.networkmonitor.entity.NetworkEntity;
+import com.matjazt.networkmonitor.service.AlertMessage;
+
+/**
+ * Building alert notifications (AlertMessage), the part of
+ * AlerterService.sendAlert that runs for every opened and closed alert before
+ * the email goes out. A whole network coming back up closes an alert per
+ * ALWAYS_ON device in one check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AlertMessageBenchmark {
+
+    private NetworkEntity network;
+    private DeviceEntity device;
+    private AlertEntity networkAlert;
+    private AlertEntity deviceAlert;
+    private LocalDateTime now;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        now = LocalDateTime.of(2026, 1, 5, 10, 45, 40);
+
+        network = new NetworkEntity("MaliGrdi");
+        network.setId(1L);
+
+        device = new DeviceEntity(network, ScanPayloads.mac(7), ScanPayloads.ip(7), true);
+        device.setId(7L);
+        device.setName("printer");
+
+        networkAlert = new AlertEntity(now, network, null, AlertType.NETWORK_DOWN, null);
+        networkAlert.setId(100L);
+        deviceAlert = new AlertEntity(now, network, device, AlertType.DEVICE_UNAUTHORIZED,
+                "device detected for the first time");
+        deviceAlert.setId(101L);
+    }
+
+    @Benchmark
+    public AlertMessage networkAlert() {
+        return AlertMessage.build(networkAlert, false, network, null, null, now);
+    }
+
+    @Benchmark
+    public AlertMessage deviceAlert() {
+        return AlertMessage.build(deviceAlert, false, network, device, deviceAlert.getMessage(), now);
+    }
+
+    @Benchmark
+    public AlertMessage deviceAlertClosure() {
+        return AlertMessage.build(deviceAlert, true, network, device,
+                "device is back\nAlert opened at: 2026-01-05 10:45:40 UTC\nDuration: 0 days, 1 hours, 2 minutes, "
+                        + "3 seconds",
+                now);
+    }
+}
@@ -0,0 +1,160 @@
+package com.matjazt.networkmonitor.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.matjazt.networkmonitor.cluster.RendezvousHash;
+import com.matjazt.networkmonitor.ingest.OverflowPolicy;
+import com.matjazt.networkmonitor.ingest.PartitionedExecutor;
+import com.matjazt.networkmonitor.ingest.ScanMessageDecoder;
+import com.matjazt.networkmonitor.ingest.TopicRouter;
+
+/**
+ * Throughput of 1, 2 and 4 NetworkMonitor instances behind one broker.
+ *
+ * Each node is wired like MqttService in a cluster: it subscribes (through
+ * LocalBroker, optionally as a per-node shared subscription) to the topics of
+ * the networks RendezvousHash assigns to it, routes messages with TopicRouter
+ * and processes them on its own PartitionedExecutor. Processing decodes the
+ * real payload and then holds one of the node's database permits for
+ * databaseMillis - every node has its own connection pool, which is what
+ * limits a single instance.
+ *
+ * Networks don't overlap between nodes, so the score (scans per second)
+ * should grow almost linearly with the node count, as long as the shared
+ * database keeps up - which a stand-in can't show.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ClusterScalingBenchmark {
+
+    private static final int NETWORKS = 400;
+    private static final String TEMPLATE = "network/{networkName}/scan";
+
+    @Param({ "1", "2", "4" })
+    public int nodes;
+
+    /** Subscribe as $share/group-nodeId/... instead of plain subscriptions. */
+    @Param({ "false", "true" })
+    public boolean shared;
+
+    /** Worker threads per node. */
+    @Param({ "4" })
+    public int workerThreads;
+
+    /** JDBC pool size per node. */
+    @Param({ "4" })
+    public int databasePermits;
+
+    /** Simulated time spent on JDBC per scan. */
+    @Param({ "2" })
+    public int databaseMillis;
+
+    private final ScanMessageDecoder decoder = new ScanMessageDecoder();
+    private final TopicRouter router = new TopicRouter(TEMPLATE, null, null);
+
+    private LocalBroker broker;
+    private List<Node> cluster;
+    private byte[] payload;
+    private volatile CountDownLatch pending;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        payload = ScanPayloads.scan("BenchmarkScanner", 50).getBytes(StandardCharsets.UTF_8);
+        broker = new LocalBroker();
+
+        List<String> nodeIds = new ArrayList<>();
+        for (int i = 1; i <= nodes; i++) {
+            nodeIds.add("node-" + i);
+        }
+
+        cluster = new ArrayList<>();
+        for (String nodeId : nodeIds) {
+            Node node = new Node(nodeId);
+            cluster.add(node);
+            for (int network = 0; network < NETWORKS; network++) {
+                String networkName = "network-" + network;
+                if (RendezvousHash.owner(nodeIds, networkName).equals(nodeId)) {
+                    String topic = router.topicFor(networkName);
+                    broker.subscribe(shared ? "$share/monitor-" + nodeId + "/" + topic : topic, node::messageArrived);
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (Node node : cluster) {
+            node.executor.shutdown(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NETWORKS)
+    public void oneScanPerNetwork() throws InterruptedException {
+        pending = new CountDownLatch(NETWORKS);
+        for (int network = 0; network < NETWORKS; network++) {
+            broker.publish("network/network-" + network + "/scan", payload);
+        }
+        pending.await();
+    }
+
+    /**
+     * One NetworkMonitor instance.
+     */
+    private class Node {
+        final PartitionedExecutor<String> executor;
+        final Semaphore permits = new Semaphore(databasePermits, true);
+
+        Node(String nodeId) {
+            executor = new PartitionedExecutor<>(nodeId, workerThreads, NETWORKS, OverflowPolicy.BLOCK,
+                    Executors.defaultThreadFactory(), this::process, null);
+            executor.start();
+        }
+
+        void messageArrived(String topic, byte[] message) {
+            String networkName = router.route(topic);
+            executor.submit(networkName, networkName);
+        }
+
+        private void process(String networkName) {
+            try {
+                decoder.decode(payload);
+                permits.acquire();
+                try {
+                    Thread.sleep(databaseMillis);
+                } finally {
+                    permits.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                pending.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.matjazt.networkmonitor.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.matjazt.networkmonitor.entity.DeviceOperationMode;
+import com.matjazt.networkmonitor.model.NetworkStatusMessage;
+import com.matjazt.networkmonitor.service.DeviceReconciler;
+import com.matjazt.networkmonitor.state.DeviceState;
+import com.matjazt.networkmonitor.state.NetworkState;
+
+/**
+ * Scaling of DeviceReconciler with network size.
+ *
+ * The scan is a realistic mix on a network of n known devices: 90% of them
+ * were online before, 95% are in the scan (so some come online, some go
+ * offline) and 1% of the scan are devices we've never seen, all in random
+ * order.
+ *
+ * Reconciliation is linear, so the score (time per scan) should grow about
+ * 10x per step of the devices parameter - the old implementation grew about
+ * 100x, and at 100k devices needed minutes per scan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeviceReconciliationBenchmark {
+
+    @Param({ "1000", "10000", "100000" })
+    public int devices;
+
+    private final DeviceReconciler reconciler = new DeviceReconciler();
+
+    private NetworkState network;
+    private List<NetworkStatusMessage.DeviceInfo> reported;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+
+        network = new NetworkState(1L, "BenchmarkNetwork", null, null);
+        reported = new ArrayList<>();
+
+        for (int i = 0; i < devices; i++) {
+            DeviceState device = new DeviceState(ScanPayloads.mac(i));
+            device.setId((long) i + 1);
+            device.setIpAddress(ScanPayloads.ip(i));
+            device.setOperationMode(DeviceOperationMode.AUTHORIZED);
+            device.setOnline(random.nextInt(100) < 90);
+            network.addDevice(device);
+
+            if (random.nextInt(100) < 95) {
+                reported.add(deviceInfo(i));
+            }
+        }
+
+        // devices we've never seen, MACs beyond the known range
+        int newDevices = Math.max(1, devices / 100);
+        for (int i = 0; i < newDevices; i++) {
+            reported.add(deviceInfo(devices + i));
+        }
+
+        Collections.shuffle(reported, random);
+    }
+
+    @Benchmark
+    public DeviceReconciler.Result reconcile() {
+        return reconciler.reconcile(network, reported);
+    }
+
+    private static NetworkStatusMessage.DeviceInfo deviceInfo(int n) {
+        NetworkStatusMessage.DeviceInfo info = new NetworkStatusMessage.DeviceInfo();
+        info.setMac(ScanPayloads.mac(n));
+        info.setIp(ScanPayloads.ip(n));
+        return info;
+    }
+}
@@ -0,0 +1,126 @@
+package com.matjazt.networkmonitor.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.matjazt.networkmonitor.ingest.OverflowPolicy;
+import com.matjazt.networkmonitor.ingest.PartitionedExecutor;
+import com.matjazt.tools.VirtualThreads;
+
+/**
+ * Ingest throughput on platform vs. virtual threads at 1000 networks.
+ *
+ * Every operation is one scan per network pushed through a PartitionedExecutor,
+ * like IngestPipeline does. Processing a scan is simulated as blocking I/O:
+ * some time holding a database permit (JDBC) and some time outside of it
+ * (SMTP, network round trips). Platform mode uses a fixed number of worker
+ * threads, virtual mode one partition per network, both with the same number
+ * of database permits.
+ *
+ * The VIRTUAL case needs a Java 21+ JVM, on older JVMs its setup fails.
+ *
+ * Score is scans per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExecutionModeBenchmark {
+
+    private static final int NETWORKS = 1000;
+
+    @Param({ "PLATFORM", "VIRTUAL" })
+    public String mode;
+
+    /** Worker threads in platform mode. */
+    @Param({ "16" })
+    public int workerThreads;
+
+    /** Concurrent database work allowed (JDBC pool size). */
+    @Param({ "16" })
+    public int databasePermits;
+
+    /** Simulated time spent on JDBC per scan. */
+    @Param({ "1" })
+    public int databaseMillis;
+
+    /** Simulated time spent blocked on other I/O per scan. */
+    @Param({ "2" })
+    public int otherIoMillis;
+
+    private PartitionedExecutor<Integer> executor;
+    private Semaphore permits;
+    private volatile CountDownLatch pending;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ThreadFactory threadFactory;
+        int partitions;
+        if ("VIRTUAL".equals(mode)) {
+            if (!VirtualThreads.isSupported()) {
+                throw new IllegalStateException("VIRTUAL mode needs Java 21 or newer");
+            }
+            threadFactory = VirtualThreads.threadFactory("bench-virtual-");
+            partitions = NETWORKS;
+        } else {
+            threadFactory = Executors.defaultThreadFactory();
+            partitions = workerThreads;
+        }
+
+        permits = new Semaphore(databasePermits, true);
+        executor = new PartitionedExecutor<>("bench", partitions, NETWORKS, OverflowPolicy.BLOCK, threadFactory,
+                this::process, null);
+        executor.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NETWORKS)
+    public void oneScanPerNetwork() throws InterruptedException {
+        pending = new CountDownLatch(NETWORKS);
+        for (int network = 0; network < NETWORKS; network++) {
+            executor.submit("network-" + network, network);
+        }
+        pending.await();
+    }
+
+    private void process(Integer network) {
+        try {
+            permits.acquire();
+            try {
+                Thread.sleep(databaseMillis);
+            } finally {
+                permits.release();
+            }
+            Thread.sleep(otherIoMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pending.countDown();
+        }
+    }
+}
@@ -0,0 +1,515 @@
+package com.matjazt.networkmonitor.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.matjazt.networkmonitor.cluster.ClusterMembership;
+import com.matjazt.networkmonitor.config.ConfigProvider;
+import com.matjazt.networkmonitor.dao.AlertingDAO;
+import com.matjazt.networkmonitor.dao.MonitoringDAO;
+import com.matjazt.networkmonitor.dao.StatusHistoryCopyWriter;
+import com.matjazt.networkmonitor.entity.AlertEntity;
+import com.matjazt.networkmonitor.entity.DeviceEntity;
+import com.matjazt.networkmonitor.entity.DeviceStatusHistoryEntity;
+import com.matjazt.networkmonitor.entity.NetworkEntity;
+import com.matjazt.networkmonitor.metrics.MetricsRegistry;
+import com.matjazt.networkmonitor.service.AlertScheduler;
+import com.matjazt.networkmonitor.service.AlerterService;
+import com.matjazt.networkmonitor.service.ExecutionSupport;
+import com.matjazt.networkmonitor.service.MessageProcessingService;
+import com.matjazt.networkmonitor.state.DeviceStateStore;
+import com.matjazt.networkmonitor.state.DeviceStateWriter;
+
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * In-memory stand-ins for the database layer, so the real services can be
+ * benchmarked without a container or PostgreSQL.
+ *
+ * The DAOs keep entities in maps and only count the writes; everything above
+ * them - MessageProcessingService, AlerterService, DeviceStateStore and
+ * DeviceStateWriter - is the production code, wired by hand the way CDI would
+ * wire it (wire()). Container resources the services need to run on their own
+ * can be stood in for with stub().
+ */
+public final class InMemoryFakes {
+
+    private InMemoryFakes() {
+    }
+
+    /**
+     * A MessageProcessingService with its whole dependency graph on top of the
+     * given fake DAOs.
+     */
+    public static MessageProcessingService wire(FakeMonitoringDAO monitoringDao, FakeAlertingDAO alertingDao) {
+        return wireServices(monitoringDao, alertingDao).messageProcessor;
+    }
+
+    /**
+     * The services on top of the given fake DAOs, injected but not started:
+     * no @PostConstruct that needs the container has run, so there are no
+     * background threads - the alert scheduler only queues deadlines and the
+     * state writer only flushes when asked to.
+     */
+    public static Services wireServices(FakeMonitoringDAO monitoringDao, FakeAlertingDAO alertingDao) {
+        Services services = new Services();
+        ConfigProvider config = services.config;
+        MetricsRegistry metrics = services.metrics;
+        AlertScheduler alertScheduler = services.alertScheduler;
+
+        ExecutionSupport executionSupport = services.executionSupport;
+        inject(executionSupport, "config", config);
+        executionSupport.initialize();
+
+        ClusterMembership cluster = services.cluster;
+        inject(cluster, "config", config);
+        cluster.initialize();
+
+        DeviceStateWriter stateWriter = services.stateWriter;
+        inject(stateWriter, "config", config);
+        inject(stateWriter, "monitoringDao", monitoringDao);
+        inject(stateWriter, "executionSupport", executionSupport);
+        // normally set by initialize(), which also schedules the flush task
+        inject(stateWriter, "granularity", Duration.ofSeconds(config.getStateLastSeenGranularity()));
+
+        DeviceStateStore deviceStateStore = services.deviceStateStore;
+        inject(deviceStateStore, "monitoringDao", monitoringDao);
+        inject(deviceStateStore, "stateWriter", stateWriter);
+        inject(deviceStateStore, "cluster", cluster);
+        inject(deviceStateStore, "alertScheduler", alertScheduler);
+        inject(deviceStateStore, "transactionRegistry", new NoTransactionRegistry());
+
+        AlerterService alerterService = services.alerterService;
+        inject(alerterService, "config", config);
+        inject(alerterService, "alertingDao", alertingDao);
+        inject(alerterService, "monitoringDao", monitoringDao);
+        inject(alerterService, "executionSupport", executionSupport);
+        inject(alerterService, "deviceStateStore", deviceStateStore);
+        inject(alerterService, "cluster", cluster);
+        inject(alerterService, "metrics", metrics);
+        inject(alerterService, "scheduler", alertScheduler);
+
+        MessageProcessingService service = services.messageProcessor;
+        inject(service, "config", config);
+        inject(service, "monitoringDao", monitoringDao);
+        inject(service, "alerterService", alerterService);
+        inject(service, "deviceStateStore", deviceStateStore);
+        inject(service, "stateWriter", stateWriter);
+        inject(service, "metrics", metrics);
+        inject(service, "alertScheduler", alertScheduler);
+        return services;
+    }
+
+    /**
+     * The beans wired by wireServices().
+     */
+    public static final class Services {
+        public final ConfigProvider config = new BenchmarkConfig();
+        public final MetricsRegistry metrics = new MetricsRegistry();
+        public final AlertScheduler alertScheduler = new AlertScheduler();
+        public final ExecutionSupport executionSupport = new ExecutionSupport();
+        public final ClusterMembership cluster = new ClusterMembership();
+        public final DeviceStateWriter stateWriter = new DeviceStateWriter();
+        public final DeviceStateStore deviceStateStore = new DeviceStateStore();
+        public final AlerterService alerterService = new AlerterService();
+        public final MessageProcessingService messageProcessor = new MessageProcessingService();
+
+        private Services() {
+        }
+    }
+
+    /**
+     * A container resource (a managed executor, the EJB timer service...) as
+     * a proxy: the methods the delegate also has - by name and parameter
+     * types, in one of its public classes or interfaces - are passed on to it,
+     * all others throw UnsupportedOperationException.
+     */
+    public static <T> T stub(Class<T> type, Object delegate) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(delegate, args);
+            }
+            Method target = findPublicMethod(delegate.getClass(), method.getName(), method.getParameterTypes());
+            if (target == null) {
+                throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName());
+            }
+            try {
+                return target.invoke(delegate, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler));
+    }
+
+    private static Method findPublicMethod(Class<?> type, String name, Class<?>[] parameterTypes) {
+        if (type == null) {
+            return null;
+        }
+        if (Modifier.isPublic(type.getModifiers())) {
+            try {
+                return type.getMethod(name, parameterTypes);
+            } catch (NoSuchMethodException e) {
+                // look further up, a non-public class may implement a public interface
+            }
+        }
+        for (Class<?> implemented : type.getInterfaces()) {
+            Method method = findPublicMethod(implemented, name, parameterTypes);
+            if (method != null) {
+                return method;
+            }
+        }
+        return findPublicMethod(type.getSuperclass(), name, parameterTypes);
+    }
+
+    /**
+     * Set a private (injected) field, like the container does.
+     */
+    public static void inject(Object target, String fieldName, Object value) {
+        try {
+            inject(target, target.getClass().getDeclaredField(fieldName), value);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("Can't inject " + fieldName + " into " + target.getClass(), e);
+        }
+    }
+
+    private static void inject(Object target, Field field, Object value) {
+        try {
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Can't inject " + field.getName() + " into " + target.getClass(), e);
+        }
+    }
+
+    /**
+     * Only log warnings: the services log every device status change at INFO,
+     * which would measure the console instead of the code. The messages are
+     * still built, as in production.
+     */
+    public static void quietLogging() {
+        java.util.logging.Logger.getLogger("").setLevel(Level.WARNING);
+    }
+
+    /**
+     * The application's settings as the container would inject them: system
+     * properties, then microprofile-config.properties, then the defaults of
+     * the @ConfigProperty annotations. ${...} expressions aren't expanded.
+     */
+    public static class BenchmarkConfig extends ConfigProvider {
+
+        public BenchmarkConfig() {
+            Properties file = new Properties();
+            try (InputStream in = ConfigProvider.class.getResourceAsStream("/META-INF/microprofile-config.properties")) {
+                if (in != null) {
+                    file.load(in);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            for (Field field : ConfigProvider.class.getDeclaredFields()) {
+                ConfigProperty property = field.getAnnotation(ConfigProperty.class);
+                if (property == null) {
+                    continue;
+                }
+                String value = System.getProperty(property.name(), file.getProperty(property.name()));
+                if (value == null && !ConfigProperty.UNCONFIGURED_VALUE.equals(property.defaultValue())) {
+                    value = property.defaultValue();
+                }
+                inject(this, field, convert(field.getType(), value != null ? value.trim() : null));
+            }
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private static Object convert(Class<?> type, String value) {
+            if (type == Optional.class) {
+                return value == null || value.isEmpty() ? Optional.empty() : Optional.of(value);
+            }
+            if (value == null) {
+                return null;
+            }
+            if (type == Integer.class) {
+                return Integer.valueOf(value);
+            }
+            if (type == Long.class) {
+                return Long.valueOf(value);
+            }
+            if (type == Double.class) {
+                return Double.valueOf(value);
+            }
+            if (type == Boolean.class) {
+                return Boolean.valueOf(value);
+            }
+            if (type.isEnum()) {
+                return Enum.valueOf((Class<? extends Enum>) type, value);
+            }
+            return value;
+        }
+
+        @Override
+        public Integer getHistoryCopyThreshold() {
+            // there's no PostgreSQL connection to COPY to
+            return 0;
+        }
+    }
+
+    /**
+     * MonitoringDAO over maps.
+     */
+    public static class FakeMonitoringDAO extends MonitoringDAO {
+
+        private final Map<String, NetworkEntity> networksByName = new ConcurrentHashMap<>();
+        private final Map<Long, NetworkEntity> networksById = new ConcurrentHashMap<>();
+        private final Map<Long, DeviceEntity> devicesById = new ConcurrentHashMap<>();
+        private final AtomicLong nextId = new AtomicLong(1);
+        private final AtomicLong writes = new AtomicLong();
+        private final AtomicLong statements = new AtomicLong();
+
+        /**
+         * Rows the real DAO would have inserted or updated.
+         */
+        public long getWrites() {
+            return writes.get();
+        }
+
+        /**
+         * INSERT and UPDATE statements the real DAO would have executed (a
+         * bulk update is one statement).
+         */
+        public long getStatements() {
+            return statements.get();
+        }
+
+        @Override
+        public Optional<NetworkEntity> findNetworkByName(String name) {
+            return Optional.ofNullable(networksByName.get(name));
+        }
+
+        @Override
+        public boolean isDatabaseAvailable() {
+            return true;
+        }
+
+        @Override
+        public List<NetworkEntity> findAllNetworks() {
+            return new ArrayList<>(networksById.values());
+        }
+
+        @Override
+        public NetworkEntity getNetworkReference(long networkId) {
+            return networksById.get(networkId);
+        }
+
+        @Override
+        public NetworkEntity save(NetworkEntity network) {
+            if (network.getId() == null) {
+                network.setId(nextId.getAndIncrement());
+                if (network.getFirstSeen() == null) {
+                    network.setFirstSeen(network.getLastSeen());
+                }
+            }
+            networksById.put(network.getId(), network);
+            networksByName.put(network.getName(), network);
+            statements.incrementAndGet();
+            writes.incrementAndGet();
+            return network;
+        }
+
+        @Override
+        public List<DeviceEntity> findAllDevicesForNetwork(long networkId) {
+            List<DeviceEntity> devices = new ArrayList<>();
+            for (DeviceEntity device : devicesById.values()) {
+                if (device.getNetwork().getId() == networkId) {
+                    devices.add(device);
+                }
+            }
+            return devices;
+        }
+
+        // the settings of the fakes are only ever changed through the services
+
+        @Override
+        public List<NetworkEntity> findNetworksWithSettingsChangedSince(LocalDateTime since) {
+            return List.of();
+        }
+
+        @Override
+        public List<DeviceEntity> findDevicesWithSettingsChangedSince(LocalDateTime since) {
+            return List.of();
+        }
+
+        @Override
+        public Optional<LocalDateTime> findLatestSettingsChange() {
+            return Optional.empty();
+        }
+
+        @Override
+        public DeviceEntity findDevice(long deviceId) {
+            return devicesById.get(deviceId);
+        }
+
+        @Override
+        public DeviceEntity getDeviceReference(long deviceId) {
+            return devicesById.get(deviceId);
+        }
+
+        @Override
+        public DeviceEntity save(DeviceEntity device) {
+            if (device.getId() == null) {
+                device.setId(nextId.getAndIncrement());
+            }
+            devicesById.put(device.getId(), device);
+            statements.incrementAndGet();
+            writes.incrementAndGet();
+            return device;
+        }
+
+        @Override
+        public void save(DeviceStatusHistoryEntity status) {
+            statements.incrementAndGet();
+            writes.incrementAndGet();
+        }
+
+        @Override
+        public boolean copyStatusHistory(List<StatusHistoryCopyWriter.Row> rows) {
+            return false;
+        }
+
+        @Override
+        public int updateDeviceIps(Map<Long, String> ipById) {
+            statements.incrementAndGet();
+            writes.addAndGet(ipById.size());
+            return ipById.size();
+        }
+
+        @Override
+        public int updateDeviceStatus(List<Long> deviceIds, boolean online, LocalDateTime statusSince) {
+            statements.incrementAndGet();
+            writes.addAndGet(deviceIds.size());
+            return deviceIds.size();
+        }
+
+        @Override
+        public int updateDeviceLastSeen(Map<Long, LocalDateTime> lastSeenById) {
+            statements.incrementAndGet();
+            writes.addAndGet(lastSeenById.size());
+            return lastSeenById.size();
+        }
+
+        @Override
+        public int updateNetworkLastSeen(Map<Long, LocalDateTime> lastSeenById) {
+            statements.incrementAndGet();
+            writes.addAndGet(lastSeenById.size());
+            return lastSeenById.size();
+        }
+    }
+
+    /**
+     * AlertingDAO over a map; only the latest alert per network/device is
+     * kept, which is all the services ask for.
+     */
+    public static class FakeAlertingDAO extends AlertingDAO {
+
+        private final Map<String, AlertEntity> latest = new ConcurrentHashMap<>();
+        private final Map<Long, AlertEntity> byId = new ConcurrentHashMap<>();
+        private final AtomicLong nextId = new AtomicLong(1);
+
+        @Override
+        public AlertEntity save(AlertEntity alert) {
+            if (alert.getId() == null) {
+                alert.setId(nextId.getAndIncrement());
+            }
+            byId.put(alert.getId(), alert);
+            latest.put(key(alert.getNetwork(), alert.getDevice()), alert);
+            return alert;
+        }
+
+        @Override
+        public Optional<AlertEntity> getLatestAlertForNetwork(NetworkEntity network) {
+            return getLatestAlert(network, null);
+        }
+
+        @Override
+        public Optional<AlertEntity> getLatestAlertForDevice(NetworkEntity network, DeviceEntity device) {
+            return getLatestAlert(network, device);
+        }
+
+        @Override
+        public Optional<AlertEntity> getLatestAlert(NetworkEntity network, DeviceEntity device) {
+            return Optional.ofNullable(latest.get(key(network, device)));
+        }
+
+        @Override
+        public Optional<AlertEntity> getAlertById(Long id) {
+            return Optional.ofNullable(byId.get(id));
+        }
+
+        private static String key(NetworkEntity network, DeviceEntity device) {
+            return network.getId() + "/" + (device != null ? device.getId() : "");
+        }
+    }
+
+    /**
+     * Outside of a transaction DeviceStateStore applies state changes right
+     * away, as if they had just committed.
+     */
+    public static class NoTransactionRegistry implements TransactionSynchronizationRegistry {
+
+        @Override
+        public Object getTransactionKey() {
+            return null;
+        }
+
+        @Override
+        public void putResource(Object key, Object value) {
+            throw new IllegalStateException("No transaction");
+        }
+
+        @Override
+        public Object getResource(Object key) {
+            return null;
+        }
+
+        @Override
+        public void registerInterposedSynchronization(Synchronization sync) {
+            throw new IllegalStateException("No transaction");
+        }
+
+        @Override
+        public int getTransactionStatus() {
+            return Status.STATUS_NO_TRANSACTION;
+        }
+
+        @Override
+        public void setRollbackOnly() {
+            throw new IllegalStateException("No transaction");
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.matjazt.networkmonitor.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.matjazt.networkmonitor.ingest.ScanMessageDecoder;
+import com.matjazt.networkmonitor.model.NetworkStatusMessage;
+
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
+
+/**
+ * Decoding a scan payload: the original JSON-B path against the streaming
+ * decoder.
+ *
+ * - jsonbPerMessage: what MessageProcessingService used to do - copy the bytes
+ * into a String and create (and close) a new Jsonb for every message
+ * - jsonbShared: the same with one shared Jsonb instance, to show how much of
+ * the cost is the Jsonb creation alone
+ * - streamingDecoder: ScanMessageDecoder, JSON-P parser on the raw bytes
+ *
+ * Run with -prof gc to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonDecodingBenchmark {
+
+    @Param({ "10", "1000", "50000" })
+    public int devices;
+
+    private byte[] payload;
+    private Jsonb sharedJsonb;
+    private ScanMessageDecoder decoder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        payload = ScanPayloads.scan("BenchmarkRouter", devices).getBytes(StandardCharsets.UTF_8);
+        sharedJsonb = JsonbBuilder.create();
+        decoder = new ScanMessageDecoder();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        sharedJsonb.close();
+    }
+
+    @Benchmark
+    public NetworkStatusMessage jsonbPerMessage() throws Exception {
+        String text = new String(payload);
+        try (Jsonb jsonb = JsonbBuilder.create()) {
+            return jsonb.fromJson(text, NetworkStatusMessage.class);
+        }
+    }
+
+    @Benchmark
+    public NetworkStatusMessage jsonbShared() {
+        return sharedJsonb.fromJson(new String(payload), NetworkStatusMessage.class);
+    }
+
+    @Benchmark
+    public NetworkStatusMessage streamingDecoder() {
+        return decoder.decode(payload);
+    }
+}
@@ -0,0 +1,90 @@
+package com.matjazt.networkmonitor.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * In-process stand-in for an MQTT broker, just enough to benchmark how
+ * subscriptions spread messages over several NetworkMonitor instances.
+ *
+ * Supports the + and # wildcards and shared subscriptions
+ * ($share/group/filter): every message goes to each plain subscriber whose
+ * filter matches, and to one member of each matching shared group, round
+ * robin - like real brokers with their default strategy. Delivery is
+ * synchronous, on the publisher's thread.
+ */
+public class LocalBroker {
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final Map<String, SharedGroup> sharedGroups = new ConcurrentHashMap<>();
+
+    /**
+     * Subscribe to a topic filter, optionally $share/group/filter.
+     */
+    public void subscribe(String filter, BiConsumer<String, byte[]> subscriber) {
+        if (filter.startsWith("$share/")) {
+            int slash = filter.indexOf('/', "$share/".length());
+            String group = filter.substring("$share/".length(), slash);
+            String topicFilter = filter.substring(slash + 1);
+            sharedGroups.computeIfAbsent(group + "|" + topicFilter, key -> new SharedGroup(topicFilter))
+                    .members.add(subscriber);
+        } else {
+            subscriptions.add(new Subscription(filter, subscriber));
+        }
+    }
+
+    public void publish(String topic, byte[] payload) {
+        for (Subscription subscription : subscriptions) {
+            if (matches(subscription.filter, topic)) {
+                subscription.subscriber.accept(topic, payload);
+            }
+        }
+        for (SharedGroup group : sharedGroups.values()) {
+            if (matches(group.filter, topic) && !group.members.isEmpty()) {
+                int member = Math.floorMod(group.next.getAndIncrement(), group.members.size());
+                group.members.get(member).accept(topic, payload);
+            }
+        }
+    }
+
+    static boolean matches(String filter, String topic) {
+        String[] filterLevels = filter.split("/", -1);
+        String[] topicLevels = topic.split("/", -1);
+        for (int i = 0; i < filterLevels.length; i++) {
+            if (filterLevels[i].equals("#")) {
+                return true;
+            }
+            if (i >= topicLevels.length) {
+                return false;
+            }
+            if (!filterLevels[i].equals("+") && !filterLevels[i].equals(topicLevels[i])) {
+                return false;
+            }
+        }
+        return filterLevels.length == topicLevels.length;
+    }
+
+    private static class Subscription {
+        final String filter;
+        final BiConsumer<String, byte[]> subscriber;
+
+        Subscription(String filter, BiConsumer<String, byte[]> subscriber) {
+            this.filter = filter;
+            this.subscriber = subscriber;
+        }
+    }
+
+    private static class SharedGroup {
+        final String filter;
+        final List<BiConsumer<String, byte[]>> members = new CopyOnWriteArrayList<>();
+        final AtomicInteger next = new AtomicInteger();
+
+        SharedGroup(String filter) {
+            this.filter = filter;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.matjazt.networkmonitor.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.matjazt.networkmonitor.entity.DeviceEntity;
+import com.matjazt.networkmonitor.entity.DeviceOperationMode;
+import com.matjazt.networkmonitor.entity.NetworkEntity;
+import com.matjazt.networkmonitor.service.MessageProcessingService;
+
+/**
+ * MessageProcessingService.processMessage end to end - decoding, state
+ * lookup, reconciliation and the loops that turn the result into entity
+ * changes - on in-memory DAOs (see InMemoryFakes).
+ *
+ * The network has n authorized devices. Two scans alternate, each missing a
+ * different 5% of them, so every message brings 10% of the devices online or
+ * offline and writes their status history. What's left of the score beyond
+ * DeviceReconciliationBenchmark and JsonDecodingBenchmark is the cost of
+ * processMessage's own loops and the state bookkeeping; the database time
+ * isn't in it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageProcessingBenchmark {
+
+    private static final String NETWORK = "BenchmarkNetwork";
+    private static final String TOPIC = "network/" + NETWORK + "/scan";
+
+    @Param({ "100", "1000", "10000" })
+    public int devices;
+
+    private MessageProcessingService service;
+    private byte[][] payloads;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemoryFakes.quietLogging();
+
+        InMemoryFakes.FakeMonitoringDAO monitoringDao = new InMemoryFakes.FakeMonitoringDAO();
+        service = InMemoryFakes.wire(monitoringDao, new InMemoryFakes.FakeAlertingDAO());
+
+        NetworkEntity network = monitoringDao.save(new NetworkEntity(NETWORK));
+        LocalDateTime since = network.getFirstSeen();
+        for (int i = 0; i < devices; i++) {
+            DeviceEntity device = new DeviceEntity(network, ScanPayloads.mac(i), ScanPayloads.ip(i), true);
+            device.setDeviceOperationMode(DeviceOperationMode.AUTHORIZED);
+            device.setStatusSince(since);
+            monitoringDao.save(device);
+        }
+
+        payloads = new byte[][] {
+                ScanPayloads.scan("BenchmarkRouter", devices, 20, 0).getBytes(StandardCharsets.UTF_8),
+                ScanPayloads.scan("BenchmarkRouter", devices, 20, 1).getBytes(StandardCharsets.UTF_8) };
+    }
+
+    @Benchmark
+    public void processMessage() {
+        service.processMessage(TOPIC, NETWORK, payloads[next]);
+        next ^= 1;
+    }
+}
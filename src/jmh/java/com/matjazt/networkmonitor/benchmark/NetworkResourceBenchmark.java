@@ -0,0 +1,131 @@
+package com.matjazt.networkmonitor.benchmark;
+
+import java.security.Principal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.matjazt.networkmonitor.api.NetworkResource;
+import com.matjazt.networkmonitor.entity.AccountEntity;
+import com.matjazt.networkmonitor.entity.DeviceEntity;
+import com.matjazt.networkmonitor.entity.DeviceOperationMode;
+import com.matjazt.networkmonitor.entity.NetworkEntity;
+import com.matjazt.networkmonitor.security.AccountPrincipal;
+import com.matjazt.networkmonitor.state.DeviceStateStore;
+
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
+
+/**
+ * NetworkResource's entity/state to DTO conversion, through the endpoint
+ * methods, on in-memory DAOs (see InMemoryFakes). JSON serialization of the
+ * result happens later in JAX-RS and isn't included.
+ *
+ * - getNetworks: size networks, each with its state loaded (the last seen
+ * timestamp is taken from the state)
+ * - getOnlineDevices: one network with size devices, 90% of them online,
+ * sorted by MAC address
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NetworkResourceBenchmark {
+
+    private static final String NETWORK = "BenchmarkNetwork";
+
+    @Param({ "100", "10000" })
+    public int size;
+
+    private NetworkResource resource;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemoryFakes.quietLogging();
+
+        InMemoryFakes.FakeMonitoringDAO monitoringDao = new InMemoryFakes.FakeMonitoringDAO();
+        DeviceStateStore deviceStateStore = InMemoryFakes.wireServices(monitoringDao,
+                new InMemoryFakes.FakeAlertingDAO()).deviceStateStore;
+
+        NetworkEntity network = monitoringDao.save(new NetworkEntity(NETWORK));
+        LocalDateTime since = network.getFirstSeen();
+        for (int i = 0; i < size; i++) {
+            DeviceEntity device = new DeviceEntity(network, ScanPayloads.mac(i), ScanPayloads.ip(i), i % 10 != 0);
+            device.setDeviceOperationMode(DeviceOperationMode.AUTHORIZED);
+            device.setStatusSince(since);
+            monitoringDao.save(device);
+        }
+        for (int i = 1; i < size; i++) {
+            monitoringDao.save(new NetworkEntity(NETWORK + i));
+        }
+        for (NetworkEntity loaded : monitoringDao.findAllNetworks()) {
+            deviceStateStore.getNetwork(loaded);
+        }
+
+        resource = new NetworkResource();
+        InMemoryFakes.inject(resource, "monitoringDao", monitoringDao);
+        InMemoryFakes.inject(resource, "deviceStateStore", deviceStateStore);
+        InMemoryFakes.inject(resource, "securityContext", new AccountSecurityContext());
+    }
+
+    @Benchmark
+    public Response getNetworks() {
+        return resource.getNetworks();
+    }
+
+    @Benchmark
+    public Response getOnlineDevices() {
+        return resource.getOnlineDevices(NETWORK);
+    }
+
+    /**
+     * A logged in account, as the container provides it after Basic
+     * authentication.
+     */
+    private static class AccountSecurityContext implements SecurityContext {
+
+        private final AccountPrincipal principal;
+
+        AccountSecurityContext() {
+            AccountEntity account = new AccountEntity();
+            account.setId(1L);
+            account.setUsername("benchmark");
+            account.setFullName("Benchmark User");
+            principal = new AccountPrincipal(account, null);
+        }
+
+        @Override
+        public Principal getUserPrincipal() {
+            return principal;
+        }
+
+        @Override
+        public boolean isUserInRole(String role) {
+            return true;
+        }
+
+        @Override
+        public boolean isSecure() {
+            return false;
+        }
+
+        @Override
+        public String getAuthenticationScheme() {
+            return SecurityContext.BASIC_AUTH;
+        }
+    }
+}
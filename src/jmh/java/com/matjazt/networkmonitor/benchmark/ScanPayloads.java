@@ -0,0 +1,55 @@
+package com.matjazt.networkmonitor.benchmark;
+
+/**
+ * Builds synthetic scan payloads in the format published by the network
+ * scanners (see docs/mqtt-examples/example-message.json).
+ */
+public final class ScanPayloads {
+
+    private ScanPayloads() {
+    }
+
+    /**
+     * MAC address of the n-th synthetic device.
+     */
+    public static String mac(int n) {
+        return String.format("02:00:%02X:%02X:%02X:%02X",
+                (n >>> 24) & 0xFF, (n >>> 16) & 0xFF, (n >>> 8) & 0xFF, n & 0xFF);
+    }
+
+    /**
+     * IP address of the n-th synthetic device.
+     */
+    public static String ip(int n) {
+        return "10." + ((n >>> 16) & 0xFF) + "." + ((n >>> 8) & 0xFF) + "." + (n & 0xFF);
+    }
+
+    /**
+     * Scan message with devices 0..deviceCount-1 online.
+     */
+    public static String scan(String hostname, int deviceCount) {
+        return scan(hostname, deviceCount, 0, 0);
+    }
+
+    /**
+     * Scan message with devices 0..deviceCount-1 online, except every
+     * missingEvery-th one (starting at missingOffset). 0 leaves none out.
+     */
+    public static String scan(String hostname, int deviceCount, int missingEvery, int missingOffset) {
+        StringBuilder json = new StringBuilder(64 + deviceCount * 48);
+        json.append("{\"hostname\":\"").append(hostname)
+                .append("\",\"timestamp\":\"2026-01-05T11:45:40+01:00\",\"devices\":[");
+        boolean first = true;
+        for (int i = 0; i < deviceCount; i++) {
+            if (missingEvery > 0 && i % missingEvery == missingOffset) {
+                continue;
+            }
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append("{\"ip\":\"").append(ip(i)).append("\",\"mac\":\"").append(mac(i)).append("\"}");
+        }
+        return json.append("]}").toString();
+    }
+}
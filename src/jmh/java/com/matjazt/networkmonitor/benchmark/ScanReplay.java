@@ -0,0 +1,193 @@
+package com.matjazt.networkmonitor.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+
+import com.matjazt.networkmonitor.ingest.TopicRouter;
+import com.matjazt.networkmonitor.service.MessageProcessingService;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+
+/**
+ * Feeds recorded scans straight into MessageProcessingService, without a
+ * broker or a container, to measure what the processing code can take.
+ *
+ * A recording is a JSONL file, one message per line:
+ *
+ * {"topic": "network/MaliGrdi/scan", "receivedAt": "2026-01-05T10:45:41Z",
+ * "payload": { ...scan, as in docs/mqtt-examples/example-message.json... }}
+ *
+ * receivedAt is optional. Messages are processed one after another on the
+ * main thread, like the messages of one network on an ingest worker - either
+ * as fast as possible (speed 0) or paced by their receive times, sped up by
+ * the given factor (speed 1 = real time, 60 = an hour per minute).
+ *
+ * The service runs on the in-memory DAOs (see InMemoryFakes), so the latency
+ * doesn't include the database; instead the report has the statements and
+ * rows the real DAO would have written per message, write-behind of last seen
+ * timestamps included.
+ *
+ * Usage: ScanReplay recording.jsonl [speed] [limit]
+ */
+public final class ScanReplay {
+
+    private ScanReplay() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: ScanReplay recording.jsonl [speed] [limit]");
+            System.exit(2);
+        }
+        Path file = Paths.get(args[0]);
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+        int limit = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+        InMemoryFakes.quietLogging();
+        InMemoryFakes.FakeMonitoringDAO monitoringDao = new InMemoryFakes.FakeMonitoringDAO();
+        InMemoryFakes.Services services = InMemoryFakes.wireServices(monitoringDao,
+                new InMemoryFakes.FakeAlertingDAO());
+
+        System.out.println("Replayed " + file + ": " + replay(services, monitoringDao, file, speed, limit));
+    }
+
+    /**
+     * Replay a recording.
+     *
+     * @param speed 0 for as fast as possible, otherwise the factor by which
+     *              the recorded timing is sped up
+     * @param limit maximum number of messages to replay, 0 for all
+     */
+    static Report replay(InMemoryFakes.Services services, InMemoryFakes.FakeMonitoringDAO monitoringDao, Path file,
+            double speed, int limit) throws IOException, InterruptedException {
+        MessageProcessingService service = services.messageProcessor;
+        TopicRouter router = new TopicRouter(services.config.getMqttTopicTemplate(), null, null);
+
+        long[] latencies = new long[1024];
+        int processed = 0;
+        int failed = 0;
+        int skipped = 0;
+
+        Instant firstReceivedAt = null;
+        long startNanos = System.nanoTime();
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null && (limit <= 0 || processed + failed < limit)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                JsonObject recorded;
+                try (JsonReader json = Json.createReader(new StringReader(line))) {
+                    recorded = json.readObject();
+                }
+                String topic = recorded.getString("topic");
+                String networkName = router.route(topic);
+                if (networkName == null || !recorded.containsKey("payload")) {
+                    skipped++;
+                    continue;
+                }
+                byte[] payload = recorded.get("payload").toString().getBytes(StandardCharsets.UTF_8);
+
+                if (speed > 0 && recorded.containsKey("receivedAt")) {
+                    Instant receivedAt = Instant.parse(recorded.getString("receivedAt"));
+                    if (firstReceivedAt == null) {
+                        firstReceivedAt = receivedAt;
+                    }
+                    long dueNanos = startNanos
+                            + (long) (Duration.between(firstReceivedAt, receivedAt).toNanos() / speed);
+                    long waitNanos = dueNanos - System.nanoTime();
+                    if (waitNanos > 0) {
+                        Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+                    }
+                }
+
+                long messageStart = System.nanoTime();
+                try {
+                    service.processMessage(topic, networkName, payload);
+                } catch (RuntimeException e) {
+                    failed++;
+                    System.err.println("Message from topic " + topic + " failed: " + e);
+                    continue;
+                }
+                if (processed == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, latencies.length * 2);
+                }
+                latencies[processed++] = System.nanoTime() - messageStart;
+            }
+        }
+
+        long elapsedNanos = Math.max(System.nanoTime() - startNanos, 1);
+        // the pending last seen timestamps are written like on shutdown
+        services.stateWriter.flush();
+
+        Arrays.sort(latencies, 0, processed);
+        return new Report(processed, failed, skipped, elapsedNanos / 1e6, processed * 1e9 / elapsedNanos,
+                percentile(latencies, processed, 0.50), percentile(latencies, processed, 0.99),
+                processed > 0 ? latencies[processed - 1] / 1e6 : 0,
+                perMessage(monitoringDao.getStatements(), processed), perMessage(monitoringDao.getWrites(), processed));
+    }
+
+    private static double percentile(long[] sorted, int count, double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))] / 1e6;
+    }
+
+    private static double perMessage(long total, int messages) {
+        return messages > 0 ? total / (double) messages : 0;
+    }
+
+    /**
+     * Result of a replay.
+     */
+    static final class Report {
+
+        final int processed;
+        final int failed;
+        final int skipped;
+        final double elapsedMillis;
+        final double messagesPerSecond;
+        final double p50Millis;
+        final double p99Millis;
+        final double maxMillis;
+        final double statementsPerMessage;
+        final double rowsWrittenPerMessage;
+
+        Report(int processed, int failed, int skipped, double elapsedMillis, double messagesPerSecond,
+                double p50Millis, double p99Millis, double maxMillis, double statementsPerMessage,
+                double rowsWrittenPerMessage) {
+            this.processed = processed;
+            this.failed = failed;
+            this.skipped = skipped;
+            this.elapsedMillis = elapsedMillis;
+            this.messagesPerSecond = messagesPerSecond;
+            this.p50Millis = p50Millis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+            this.statementsPerMessage = statementsPerMessage;
+            this.rowsWrittenPerMessage = rowsWrittenPerMessage;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("processed=%d, failed=%d, skipped=%d, elapsed=%.0fms, %.1f messages/s, "
+                    + "p50=%.3fms, p99=%.3fms, max=%.3fms, statements/message=%.1f, rows written/message=%.1f",
+                    processed, failed, skipped, elapsedMillis, messagesPerSecond, p50Millis, p99Millis, maxMillis,
+                    statementsPerMessage, rowsWrittenPerMessage);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.matjazt.networkmonitor.benchmark;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.postgresql.PGConnection;
+
+import com.matjazt.networkmonitor.dao.StatusHistoryCopyWriter;
+
+/**
+ * Rows per second written when a whole network of 5000 devices changes state
+ * at once (e.g. the network comes back up): one status history INSERT and one
+ * device status UPDATE per device, in one transaction.
+ *
+ * - identityPerRow: what OpenJPA does with IDENTITY ids - every INSERT is
+ * executed on its own to read back the generated id, and every device UPDATE
+ * follows its INSERT
+ * - sequenceBatched: what it does with sequence ids (allocationSize = 50) and
+ * batchLimit = 100 - one nextval() per 50 rows, INSERTs in JDBC batches of 100,
+ * device UPDATEs collected into one statement at the end
+ * - copy: history written with COPY (StatusHistoryCopyWriter, used above
+ * history.copy.threshold), device UPDATEs as in sequenceBatched
+ *
+ * Runs against a real PostgreSQL database, in a separate "bench_flip" schema
+ * that is dropped afterwards. The connection is configured with environment
+ * variables (forked JMH JVMs inherit them, unlike -D properties):
+ *
+ * BENCHMARK_JDBC_URL=jdbc:postgresql://localhost:5432/network_monitor
+ * BENCHMARK_JDBC_USER, BENCHMARK_JDBC_PASSWORD
+ *
+ * The rewriteBatchedInserts parameter toggles the PostgreSQL driver's
+ * reWriteBatchedInserts option, which turns a batch into multi-row INSERTs; it
+ * has no effect on identityPerRow.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StatusFlipBenchmark {
+
+    private static final int DEVICES = 5000;
+    private static final int ALLOCATION_SIZE = 50;
+    private static final int BATCH_LIMIT = 100;
+
+    @Param({ "false", "true" })
+    public boolean rewriteBatchedInserts;
+
+    private final StatusHistoryCopyWriter copyWriter = new StatusHistoryCopyWriter("device_status_history");
+
+    private Connection connection;
+    private boolean online;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        String url = System.getenv("BENCHMARK_JDBC_URL");
+        if (url == null || url.isBlank()) {
+            throw new IllegalStateException("Set BENCHMARK_JDBC_URL (and BENCHMARK_JDBC_USER, "
+                    + "BENCHMARK_JDBC_PASSWORD) to a PostgreSQL database to run this benchmark");
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty("user", System.getenv().getOrDefault("BENCHMARK_JDBC_USER", "postgres"));
+        properties.setProperty("password", System.getenv().getOrDefault("BENCHMARK_JDBC_PASSWORD", ""));
+        properties.setProperty("reWriteBatchedInserts", Boolean.toString(rewriteBatchedInserts));
+        connection = DriverManager.getConnection(url, properties);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP SCHEMA IF EXISTS bench_flip CASCADE");
+            statement.execute("CREATE SCHEMA bench_flip");
+            statement.execute("SET search_path = bench_flip");
+            // same columns and indexes as database/schema.sql, without the network table
+            statement.execute("CREATE TABLE device (id bigserial PRIMARY KEY, online bool NOT NULL, "
+                    + "status_since timestamp NULL, network_id int8 NOT NULL)");
+            statement.execute("CREATE TABLE device_status_history (id bigserial PRIMARY KEY, "
+                    + "ip_address varchar(45) NOT NULL, online bool NOT NULL, \"timestamp\" timestamp NOT NULL, "
+                    + "network_id int8 NOT NULL, device_id int8 NULL REFERENCES device(id))");
+            statement.execute("CREATE INDEX idx_device_status_history_network ON device_status_history (network_id)");
+            statement.execute("CREATE INDEX idx_device_status_history_device ON device_status_history (device_id)");
+            statement.execute("CREATE INDEX idx_device_status_history_timestamp ON device_status_history (\"timestamp\")");
+            // a separate sequence for the batched variant, like database/migrations/002_sequence_allocation.sql
+            statement.execute("CREATE SEQUENCE history_block_seq INCREMENT BY " + ALLOCATION_SIZE);
+            statement.execute("INSERT INTO device (online, network_id) SELECT false, 1 FROM generate_series(1, "
+                    + DEVICES + ")");
+        }
+        connection.setAutoCommit(false);
+    }
+
+    @TearDown(Level.Iteration)
+    public void truncateHistory() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("TRUNCATE device_status_history");
+        }
+        connection.commit();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.setAutoCommit(true);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP SCHEMA bench_flip CASCADE");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DEVICES)
+    public void identityPerRow() throws SQLException {
+        online = !online;
+        Timestamp timestamp = Timestamp.valueOf(LocalDateTime.now());
+
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO device_status_history "
+                + "(ip_address, online, \"timestamp\", network_id, device_id) VALUES (?, ?, ?, 1, ?) RETURNING id");
+                PreparedStatement update = connection.prepareStatement(
+                        "UPDATE device SET online = ?, status_since = ? WHERE id = ?")) {
+            for (int deviceId = 1; deviceId <= DEVICES; deviceId++) {
+                insert.setString(1, ScanPayloads.ip(deviceId));
+                insert.setBoolean(2, online);
+                insert.setTimestamp(3, timestamp);
+                insert.setLong(4, deviceId);
+                try (ResultSet generated = insert.executeQuery()) {
+                    generated.next();
+                }
+
+                update.setBoolean(1, online);
+                update.setTimestamp(2, timestamp);
+                update.setLong(3, deviceId);
+                update.executeUpdate();
+            }
+        }
+        connection.commit();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DEVICES)
+    public void sequenceBatched() throws SQLException {
+        online = !online;
+        Timestamp timestamp = Timestamp.valueOf(LocalDateTime.now());
+
+        try (PreparedStatement nextBlock = connection.prepareStatement("SELECT nextval('history_block_seq')");
+                PreparedStatement insert = connection.prepareStatement("INSERT INTO device_status_history "
+                        + "(id, ip_address, online, \"timestamp\", network_id, device_id) VALUES (?, ?, ?, ?, 1, ?)");
+                PreparedStatement update = connection.prepareStatement(
+                        "UPDATE device SET online = ?, status_since = ? WHERE id = ANY (?)")) {
+            long nextId = 0;
+            long blockEnd = 0;
+            Long[] deviceIds = new Long[DEVICES];
+
+            for (int deviceId = 1; deviceId <= DEVICES; deviceId++) {
+                if (nextId == blockEnd) {
+                    try (ResultSet block = nextBlock.executeQuery()) {
+                        block.next();
+                        nextId = block.getLong(1);
+                        blockEnd = nextId + ALLOCATION_SIZE;
+                    }
+                }
+
+                insert.setLong(1, nextId++);
+                insert.setString(2, ScanPayloads.ip(deviceId));
+                insert.setBoolean(3, online);
+                insert.setTimestamp(4, timestamp);
+                insert.setLong(5, deviceId);
+                insert.addBatch();
+                if (deviceId % BATCH_LIMIT == 0) {
+                    insert.executeBatch();
+                }
+                deviceIds[deviceId - 1] = (long) deviceId;
+            }
+            insert.executeBatch();
+
+            updateDevices(update, deviceIds, timestamp);
+        }
+        connection.commit();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DEVICES)
+    public void copy() throws SQLException {
+        online = !online;
+        LocalDateTime now = LocalDateTime.now();
+
+        List<StatusHistoryCopyWriter.Row> rows = new ArrayList<>(DEVICES);
+        Long[] deviceIds = new Long[DEVICES];
+        for (int deviceId = 1; deviceId <= DEVICES; deviceId++) {
+            rows.add(new StatusHistoryCopyWriter.Row(1, (long) deviceId, ScanPayloads.ip(deviceId), online, now));
+            deviceIds[deviceId - 1] = (long) deviceId;
+        }
+        copyWriter.copy(connection.unwrap(PGConnection.class), rows);
+
+        try (PreparedStatement update = connection.prepareStatement(
+                "UPDATE device SET online = ?, status_since = ? WHERE id = ANY (?)")) {
+            updateDevices(update, deviceIds, Timestamp.valueOf(now));
+        }
+        connection.commit();
+    }
+
+    private void updateDevices(PreparedStatement update, Long[] deviceIds, Timestamp timestamp)
+            throws SQLException {
+        Array ids = connection.createArrayOf("bigint", deviceIds);
+        update.setBoolean(1, online);
+        update.setTimestamp(2, timestamp);
+        update.setArray(3, ids);
+        update.executeUpdate();
+        ids.free();
+    }
+}
@@ -0,0 +1,55 @@
+package com.matjazt.networkmonitor.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.matjazt.networkmonitor.ingest.TopicRouter;
+
+/**
+ * Network name extraction from the topic (TopicRouter.route), which runs on
+ * the MQTT callback thread for every message.
+ *
+ * - plain: the default template, no filters
+ * - filtered: with allow and deny patterns, as with mqtt.network.allow/deny
+ * - nonMatching: a topic that doesn't fit the template
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TopicRoutingBenchmark {
+
+    private final TopicRouter plainRouter = new TopicRouter("network/{networkName}/scan", null, null);
+    private final TopicRouter filteredRouter = new TopicRouter("network/{networkName}/scan",
+            "(Mali|Veliki)[A-Za-z]+", ".*Test.*");
+
+    // not final, so the JIT can't fold them into constants
+    private String topic = "network/MaliGrdi/scan";
+    private String otherTopic = "network/MaliGrdi/status/extra";
+
+    @Benchmark
+    public String plain() {
+        return plainRouter.route(topic);
+    }
+
+    @Benchmark
+    public String filtered() {
+        return filteredRouter.route(topic);
+    }
+
+    @Benchmark
+    public String nonMatching() {
+        return plainRouter.route(otherTopic);
+    }
+}
@@ -0,0 +1,277 @@
+package com.matjazt.networkmonitor.loadgen;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.matjazt.networkmonitor.ingest.IngestPipeline;
+import com.matjazt.networkmonitor.ingest.IngestStatistics;
+import com.matjazt.networkmonitor.ingest.TopicRouter;
+import com.matjazt.networkmonitor.metrics.Histogram;
+import com.matjazt.networkmonitor.metrics.MetricsRegistry;
+
+/**
+ * Synthetic load: simulated RouterOS scanners publishing into an embedded
+ * broker, for the application booted by LoadTest.
+ *
+ * The generator runs a MiniBroker on loadgen.port, which MqttService connects
+ * to. Every simulated router (SimulatedRouter) then publishes a scan every
+ * loadgen.scan.interval seconds, the routers spread evenly over the interval,
+ * and the messages take the full path: MQTT client, ingest pipeline,
+ * MessageProcessingService and AlerterService.
+ *
+ * Every loadgen.report.interval seconds a LoadReport is printed: offered,
+ * published and processed scans per second, ingest queue depth and latency,
+ * the broker's unacknowledged messages and the duration of the periodic settings
+ * checks. The node is saturated when it falls behind - the queue grows, or the
+ * broker can't publish at the target rate because the application doesn't
+ * take messages fast enough. With loadgen.ramp.routers set, that many routers
+ * are added after every report that isn't saturated, so the load grows until
+ * the saturation point is found; the generator then holds the load and prints
+ * the point.
+ */
+public class LoadGenerator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadGenerator.class);
+
+    // give MqttService time to connect and subscribe before the first scans
+    private static final long START_DELAY_MILLIS = 5000;
+
+    private final Settings settings;
+    private final IngestPipeline ingestPipeline;
+    private final MetricsRegistry metrics;
+    private final ScheduledExecutorService scheduler;
+    private final ThreadFactory threadFactory;
+    private final TopicRouter topicRouter;
+
+    private MiniBroker broker;
+    private final List<SimulatedRouter> routers = new CopyOnWriteArrayList<>();
+    private final List<ScheduledFuture<?>> tasks = new ArrayList<>();
+
+    private final AtomicLong published = new AtomicLong();
+    private long startNanos;
+    private boolean saturationFound;
+
+    // counters at the previous report
+    private long lastReportNanos;
+    private long lastPublished;
+    private IngestStatistics lastStatistics;
+    private long lastAlertChecks;
+    private long lastAlertCheckNanos;
+
+    /**
+     * @param topicTemplate  mqtt.topic.template of the application
+     * @param scheduler      runs the routers' scans and the reports
+     * @param threadFactory  creates the broker's threads
+     */
+    public LoadGenerator(Settings settings, String topicTemplate, IngestPipeline ingestPipeline,
+            MetricsRegistry metrics, ScheduledExecutorService scheduler, ThreadFactory threadFactory) {
+        this.settings = settings;
+        this.ingestPipeline = ingestPipeline;
+        this.metrics = metrics;
+        this.scheduler = scheduler;
+        this.threadFactory = threadFactory;
+        this.topicRouter = new TopicRouter(topicTemplate, null, null);
+    }
+
+    /**
+     * Start the broker and the simulated routers. Called before MqttService
+     * connects.
+     */
+    public synchronized void start() throws IOException {
+        if (broker != null) {
+            return;
+        }
+
+        broker = new MiniBroker(settings.port, settings.brokerInflight, threadFactory);
+        broker.start();
+
+        startNanos = System.nanoTime();
+        lastReportNanos = startNanos;
+        lastStatistics = ingestPipeline.getStatistics();
+
+        addRouters(settings.routers);
+
+        long reportInterval = settings.reportInterval;
+        tasks.add(scheduler.scheduleAtFixedRate(this::reportQuietly, reportInterval, reportInterval,
+                TimeUnit.SECONDS));
+
+        System.out.printf("Load generator started - routers: %d, devices per router: %d, scan interval: %ds, "
+                + "churn: %s, join rate: %s, leave rate: %s, ramp: +%d routers per report%n", settings.routers,
+                settings.devices, settings.scanInterval, settings.churn, settings.joinRate, settings.leaveRate,
+                settings.rampRouters);
+    }
+
+    public synchronized void stop() {
+        for (ScheduledFuture<?> task : tasks) {
+            task.cancel(false);
+        }
+        tasks.clear();
+        if (broker != null) {
+            broker.stop();
+            broker = null;
+            System.out.println("Load generator stopped");
+        }
+    }
+
+    /**
+     * Start publishing for count more routers, spread over one scan interval.
+     */
+    private void addRouters(int count) {
+        long intervalMillis = settings.scanInterval * 1000L;
+        for (int i = 0; i < count; i++) {
+            SimulatedRouter router = new SimulatedRouter(routers.size(), settings.devices, settings.churn,
+                    settings.joinRate, settings.leaveRate);
+            routers.add(router);
+            String topic = topicRouter.topicFor(router.getNetworkName());
+            long offset = START_DELAY_MILLIS + intervalMillis * i / Math.max(count, 1);
+            tasks.add(scheduler.scheduleAtFixedRate(() -> publishScan(router, topic), offset, intervalMillis,
+                    TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private void publishScan(SimulatedRouter router, String topic) {
+        try {
+            MiniBroker current = broker;
+            if (current != null && current.publish(topic, router.scan(Instant.now()), 1) > 0) {
+                published.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // an exception would cancel the scheduled task
+            LOGGER.error("Load generator failed to publish a scan of {}", router.getNetworkName(), e);
+        }
+    }
+
+    private void reportQuietly() {
+        try {
+            report();
+        } catch (RuntimeException e) {
+            LOGGER.error("Load generator report failed", e);
+        }
+    }
+
+    private synchronized void report() {
+        if (broker == null) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        double seconds = Math.max(now - lastReportNanos, 1) / 1e9;
+        long publishedNow = published.get();
+        IngestStatistics statistics = ingestPipeline.getStatistics();
+
+        long pickedUpBefore = lastStatistics.getProcessed() + lastStatistics.getFailed();
+        long pickedUp = statistics.getProcessed() + statistics.getFailed();
+        long pickedUpInInterval = pickedUp - pickedUpBefore;
+        // the pipeline keeps averages since startup - turn them into averages for this interval
+        double averageQueue = intervalAverage(lastStatistics.getAverageQueueMillis(), pickedUpBefore,
+                statistics.getAverageQueueMillis(), pickedUp);
+        double averageProcessing = intervalAverage(lastStatistics.getAverageProcessingMillis(), pickedUpBefore,
+                statistics.getAverageProcessingMillis(), pickedUp);
+
+        // the alert check histogram counts since startup as well
+        Histogram alertChecks = metrics.histogram(MetricsRegistry.ALERT_CHECK);
+        long alertCheckCount = 0;
+        for (long count : alertChecks.getBucketCounts()) {
+            alertCheckCount += count;
+        }
+        long alertCheckNanos = alertChecks.getSum();
+        double averageAlertCheck = alertCheckCount > lastAlertChecks
+                ? (alertCheckNanos - lastAlertCheckNanos) / 1e6 / (alertCheckCount - lastAlertChecks)
+                : 0;
+
+        double target = routers.size() / (double) settings.scanInterval;
+        double publishedRate = (publishedNow - lastPublished) / seconds;
+        double processedRate = pickedUpInInterval / seconds;
+        boolean falling = statistics.getQueueDepth() > lastStatistics.getQueueDepth()
+                && processedRate < publishedRate * 0.95;
+        boolean pushedBack = publishedRate < target * 0.95
+                && now - startNanos > TimeUnit.MILLISECONDS.toNanos(START_DELAY_MILLIS) + 2 * intervalNanos();
+        boolean saturated = falling || pushedBack;
+
+        int devices = 0;
+        for (SimulatedRouter router : routers) {
+            devices += router.getDeviceCount();
+        }
+
+        LoadReport report = new LoadReport((now - startNanos) / 1_000_000_000L, routers.size(), devices, target,
+                publishedRate, processedRate, statistics.getQueueDepth(), averageQueue, averageProcessing,
+                broker.getInflight(), averageAlertCheck, saturated);
+        System.out.println("Load: " + report);
+
+        lastReportNanos = now;
+        lastPublished = publishedNow;
+        lastStatistics = statistics;
+        lastAlertChecks = alertCheckCount;
+        lastAlertCheckNanos = alertCheckNanos;
+
+        if (settings.rampRouters > 0 && !saturationFound) {
+            if (saturated) {
+                saturationFound = true;
+                System.out.printf("Saturation point: %d routers, %.1f scans/s offered, %.1f scans/s processed - "
+                        + "holding load%n", routers.size(), target, processedRate);
+            } else {
+                addRouters(settings.rampRouters);
+            }
+        }
+    }
+
+    private long intervalNanos() {
+        return settings.scanInterval * 1_000_000_000L;
+    }
+
+    private static double intervalAverage(double averageBefore, long countBefore, double averageNow, long countNow) {
+        long count = countNow - countBefore;
+        if (count <= 0) {
+            return 0;
+        }
+        return (averageNow * countNow - averageBefore * countBefore) / count;
+    }
+
+    /**
+     * The generator's settings, from loadgen.* system properties.
+     */
+    public static class Settings {
+
+        /** Port of the embedded broker, on the loopback interface. */
+        final int port = Integer.getInteger("loadgen.port", 1884);
+        /** Unacknowledged messages the embedded broker sends to the application. */
+        final int brokerInflight = Integer.getInteger("loadgen.broker.inflight", 100);
+        final int routers = Integer.getInteger("loadgen.routers", 10);
+        /** Devices per router. */
+        final int devices = Integer.getInteger("loadgen.devices", 100);
+        /** Seconds between scans of each router; routers are spread over the interval. */
+        final int scanInterval = Integer.getInteger("loadgen.scan.interval", 60);
+        /** Per scan: probability of a device going online/offline. */
+        final double churn = doubleProperty("loadgen.churn", 0.01);
+        /** Per scan: new devices as a fraction of the initial count. */
+        final double joinRate = doubleProperty("loadgen.join.rate", 0.001);
+        /** Per scan: probability of a device leaving for good. */
+        final double leaveRate = doubleProperty("loadgen.leave.rate", 0.001);
+        /** Seconds between reports. */
+        final int reportInterval = Integer.getInteger("loadgen.report.interval", 30);
+        /** Routers added after every report that shows no saturation; 0 = constant load. */
+        final int rampRouters = Integer.getInteger("loadgen.ramp.routers", 0);
+
+        public int getPort() {
+            return port;
+        }
+
+        private static double doubleProperty(String name, double defaultValue) {
+            String value = System.getProperty(name);
+            return value != null ? Double.parseDouble(value) : defaultValue;
+        }
+    }
+}
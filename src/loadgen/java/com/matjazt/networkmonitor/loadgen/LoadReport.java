@@ -0,0 +1,106 @@
+package com.matjazt.networkmonitor.loadgen;
+
+/**
+ * Throughput and latency of one load generator reporting interval.
+ */
+public class LoadReport {
+
+    private final long elapsedSeconds;
+    private final int routers;
+    private final int devices;
+    private final double targetPerSecond;
+    private final double publishedPerSecond;
+    private final double processedPerSecond;
+    private final int queueDepth;
+    private final double averageQueueMillis;
+    private final double averageProcessingMillis;
+    private final int brokerInflight;
+    private final double averageAlertCheckMillis;
+    private final boolean saturated;
+
+    public LoadReport(long elapsedSeconds, int routers, int devices, double targetPerSecond,
+            double publishedPerSecond, double processedPerSecond, int queueDepth, double averageQueueMillis,
+            double averageProcessingMillis, int brokerInflight, double averageAlertCheckMillis, boolean saturated) {
+        this.elapsedSeconds = elapsedSeconds;
+        this.routers = routers;
+        this.devices = devices;
+        this.targetPerSecond = targetPerSecond;
+        this.publishedPerSecond = publishedPerSecond;
+        this.processedPerSecond = processedPerSecond;
+        this.queueDepth = queueDepth;
+        this.averageQueueMillis = averageQueueMillis;
+        this.averageProcessingMillis = averageProcessingMillis;
+        this.brokerInflight = brokerInflight;
+        this.averageAlertCheckMillis = averageAlertCheckMillis;
+        this.saturated = saturated;
+    }
+
+    /** Seconds since the generator started. */
+    public long getElapsedSeconds() {
+        return elapsedSeconds;
+    }
+
+    /** Simulated routers (networks). */
+    public int getRouters() {
+        return routers;
+    }
+
+    /** Devices in all simulated networks, online or not. */
+    public int getDevices() {
+        return devices;
+    }
+
+    /** Scans per second the routers are supposed to publish. */
+    public double getTargetPerSecond() {
+        return targetPerSecond;
+    }
+
+    /** Scans per second actually published - lower than the target when the broker pushes back. */
+    public double getPublishedPerSecond() {
+        return publishedPerSecond;
+    }
+
+    /** Scans per second processed by the ingest pipeline. */
+    public double getProcessedPerSecond() {
+        return processedPerSecond;
+    }
+
+    /** Messages waiting in the ingest queue at the end of the interval. */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /** Average time a message waited in the ingest queue during the interval. */
+    public double getAverageQueueMillis() {
+        return averageQueueMillis;
+    }
+
+    /** Average processing time (transaction included) during the interval. */
+    public double getAverageProcessingMillis() {
+        return averageProcessingMillis;
+    }
+
+    /** Messages sent by the broker but not acknowledged yet. */
+    public int getBrokerInflight() {
+        return brokerInflight;
+    }
+
+    /** Average duration of the periodic settings checks during the interval, 0 if none ran. */
+    public double getAverageAlertCheckMillis() {
+        return averageAlertCheckMillis;
+    }
+
+    /** True when the node didn't keep up with the offered load in this interval. */
+    public boolean isSaturated() {
+        return saturated;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("t=%ds, routers=%d, devices=%d, target=%.1f/s, published=%.1f/s, processed=%.1f/s, "
+                + "queueDepth=%d, avgQueue=%.1fms, avgProcessing=%.1fms, brokerInflight=%d, alertCheck=%.1fms%s",
+                elapsedSeconds, routers, devices, targetPerSecond, publishedPerSecond, processedPerSecond,
+                queueDepth, averageQueueMillis, averageProcessingMillis, brokerInflight, averageAlertCheckMillis,
+                saturated ? ", SATURATED" : "");
+    }
+}
@@ -0,0 +1,183 @@
+package com.matjazt.networkmonitor.loadgen;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.matjazt.networkmonitor.benchmark.InMemoryFakes;
+import com.matjazt.networkmonitor.entity.DeviceEntity;
+import com.matjazt.networkmonitor.entity.NetworkEntity;
+import com.matjazt.networkmonitor.ingest.IngestPipeline;
+import com.matjazt.networkmonitor.service.AlerterService;
+import com.matjazt.networkmonitor.service.MqttService;
+
+import jakarta.ejb.SessionContext;
+import jakarta.ejb.Timer;
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.persistence.EntityManager;
+
+/**
+ * Boots the application outside the container - MqttService, IngestPipeline,
+ * MessageProcessingService, AlerterService and the state store, on the
+ * in-memory DAOs (see InMemoryFakes) - and puts it under the synthetic load of
+ * LoadGenerator, over a real MQTT connection to its embedded broker.
+ *
+ * Arguments are name=value pairs, set as system properties: loadgen.* are the
+ * generator's settings (see LoadGenerator.Settings) plus loadgen.duration
+ * (seconds, 0 = until interrupted); everything else overrides the
+ * application's microprofile-config.properties, e.g. mqtt.manual.acks=true.
+ * mqtt.broker.url and mqtt.subscription.mode are always set to the embedded
+ * broker and WILDCARD.
+ *
+ * The database isn't part of the measurement; processing times are those of
+ * the application's own code.
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                System.err.println("Usage: LoadTest [name=value]...");
+                System.exit(2);
+            }
+            System.setProperty(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        LoadGenerator.Settings settings = new LoadGenerator.Settings();
+        System.setProperty("mqtt.broker.url", "tcp://localhost:" + settings.getPort());
+        System.setProperty("mqtt.subscription.mode", "WILDCARD");
+        long duration = Long.getLong("loadgen.duration", 0);
+
+        InMemoryFakes.quietLogging();
+        InMemoryFakes.FakeMonitoringDAO monitoringDao = new InMemoryFakes.FakeMonitoringDAO();
+        InMemoryFakes.Services services = InMemoryFakes.wireServices(monitoringDao,
+                new InMemoryFakes.FakeAlertingDAO());
+
+        // the container's executors and threads
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(4);
+        ManagedScheduledExecutorService scheduler = InMemoryFakes.stub(ManagedScheduledExecutorService.class,
+                executor);
+        ManagedThreadFactory threadFactory = InMemoryFakes.stub(ManagedThreadFactory.class,
+                Executors.defaultThreadFactory());
+        InMemoryFakes.inject(services.executionSupport, "managedThreadFactory", threadFactory);
+
+        InMemoryFakes.inject(services.stateWriter, "scheduler", scheduler);
+        services.stateWriter.initialize();
+
+        AlerterService alerter = services.alerterService;
+        InMemoryFakes.inject(alerter, "timerService", InMemoryFakes.stub(TimerService.class,
+                new Timers(executor, alerter)));
+        InMemoryFakes.inject(alerter, "sessionContext", InMemoryFakes.stub(SessionContext.class,
+                new BusinessObject(alerter)));
+        InMemoryFakes.inject(alerter, "entityManager", InMemoryFakes.stub(EntityManager.class,
+                new Entities(monitoringDao)));
+        alerter.initialize();
+
+        IngestPipeline ingestPipeline = new IngestPipeline();
+        InMemoryFakes.inject(ingestPipeline, "config", services.config);
+        InMemoryFakes.inject(ingestPipeline, "messageProcessor", services.messageProcessor);
+        InMemoryFakes.inject(ingestPipeline, "executionSupport", services.executionSupport);
+        InMemoryFakes.inject(ingestPipeline, "deviceStateStore", services.deviceStateStore);
+        InMemoryFakes.inject(ingestPipeline, "monitoringDao", monitoringDao);
+        InMemoryFakes.inject(ingestPipeline, "metrics", services.metrics);
+        InMemoryFakes.inject(ingestPipeline, "scheduler", scheduler);
+
+        MqttService mqttService = new MqttService();
+        InMemoryFakes.inject(mqttService, "config", services.config);
+        InMemoryFakes.inject(mqttService, "ingestPipeline", ingestPipeline);
+        InMemoryFakes.inject(mqttService, "monitoringDao", monitoringDao);
+        InMemoryFakes.inject(mqttService, "deviceStateStore", services.deviceStateStore);
+        InMemoryFakes.inject(mqttService, "deviceStateWriter", services.stateWriter);
+        InMemoryFakes.inject(mqttService, "cluster", services.cluster);
+
+        LoadGenerator generator = new LoadGenerator(settings, services.config.getMqttTopicTemplate(),
+                ingestPipeline, services.metrics, executor, threadFactory);
+        generator.start();
+        mqttService.initialize();
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            // the container's shutdown order: the application, then its resources
+            generator.stop();
+            mqttService.cleanup();
+            alerter.cleanup();
+            services.stateWriter.cleanup();
+            executor.shutdownNow();
+            stopped.countDown();
+        }));
+
+        if (duration > 0) {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(duration));
+            System.exit(0);
+        }
+        stopped.await();
+    }
+
+    /**
+     * The EJB timer service: runs the alerter's @Timeout method.
+     */
+    public static class Timers {
+        private final ScheduledExecutorService executor;
+        private final AlerterService alerter;
+
+        Timers(ScheduledExecutorService executor, AlerterService alerter) {
+            this.executor = executor;
+            this.alerter = alerter;
+        }
+
+        public Timer createIntervalTimer(long initialDuration, long intervalDuration, TimerConfig timerConfig) {
+            executor.scheduleWithFixedDelay(() -> {
+                try {
+                    alerter.checkForAlerts();
+                } catch (RuntimeException e) {
+                    // the container logs it and keeps the timer
+                    e.printStackTrace();
+                }
+            }, initialDuration, intervalDuration, TimeUnit.MILLISECONDS);
+            return null;
+        }
+    }
+
+    /**
+     * The session context, for the alerter's reference to itself.
+     */
+    public static class BusinessObject {
+        private final Object bean;
+
+        BusinessObject(Object bean) {
+            this.bean = bean;
+        }
+
+        public <T> T getBusinessObject(Class<T> type) {
+            return type.cast(bean);
+        }
+    }
+
+    /**
+     * The entity manager, for the few lookups the services do on it directly.
+     */
+    public static class Entities {
+        private final InMemoryFakes.FakeMonitoringDAO monitoringDao;
+
+        Entities(InMemoryFakes.FakeMonitoringDAO monitoringDao) {
+            this.monitoringDao = monitoringDao;
+        }
+
+        public <T> T find(Class<T> entityClass, Object primaryKey) {
+            if (entityClass == NetworkEntity.class) {
+                return entityClass.cast(monitoringDao.getNetworkReference((Long) primaryKey));
+            }
+            if (entityClass == DeviceEntity.class) {
+                return entityClass.cast(monitoringDao.findDevice((Long) primaryKey));
+            }
+            throw new UnsupportedOperationException("find " + entityClass.getSimpleName());
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package com.matjazt.networkmonitor.loadgen;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Just enough of an MQTT 3.1.1 broker to load test the application on one
+ * machine: MqttService connects to it over TCP like to a real broker, and the
+ * LoadGenerator publishes into it directly, without a client.
+ *
+ * Supported: CONNECT (no authentication, no persistent sessions), SUBSCRIBE /
+ * UNSUBSCRIBE with + and # wildcards ($share/group/ prefixes are accepted and
+ * ignored), PUBLISH with QoS 0 and 1 in both directions, PINGREQ and
+ * DISCONNECT. No retained messages, no wills, no QoS 2, no TLS.
+ *
+ * Like a real broker, it sends each subscriber at most maxInflight QoS 1
+ * messages it hasn't acknowledged yet; publish() waits for a free slot. That's
+ * where a saturated application pushes back on the generator.
+ *
+ * Listens on the loopback interface only.
+ */
+public class MiniBroker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MiniBroker.class);
+
+    private static final int CONNECT = 1;
+    private static final int PUBLISH = 3;
+    private static final int PUBACK = 4;
+    private static final int SUBSCRIBE = 8;
+    private static final int UNSUBSCRIBE = 10;
+    private static final int PINGREQ = 12;
+    private static final int DISCONNECT = 14;
+
+    private final int port;
+    private final int maxInflight;
+    private final ThreadFactory threadFactory;
+
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    private final AtomicLong delivered = new AtomicLong();
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+
+    public MiniBroker(int port, int maxInflight, ThreadFactory threadFactory) {
+        this.port = port;
+        this.maxInflight = maxInflight;
+        this.threadFactory = threadFactory;
+    }
+
+    public synchronized void start() throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        running = true;
+        threadFactory.newThread(this::accept).start();
+        LOGGER.info("Load test broker listening on tcp://localhost:{}", port);
+    }
+
+    public synchronized void stop() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            // closing anyway
+        }
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Deliver a message to every matching subscription. Waits while a
+     * subscriber has maxInflight unacknowledged QoS 1 messages.
+     *
+     * @return number of subscribers the message was sent to
+     */
+    public int publish(String topic, byte[] payload, int qos) throws InterruptedException {
+        int sent = 0;
+        for (Connection connection : connections) {
+            Integer grantedQos = connection.matchingQos(topic);
+            if (grantedQos != null) {
+                if (connection.send(topic, payload, Math.min(qos, grantedQos))) {
+                    sent++;
+                }
+            }
+        }
+        delivered.addAndGet(sent);
+        return sent;
+    }
+
+    /**
+     * Messages sent to subscribers so far.
+     */
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    /**
+     * QoS 1 messages sent but not acknowledged yet, over all subscribers.
+     */
+    public int getInflight() {
+        int inflight = 0;
+        for (Connection connection : connections) {
+            inflight += maxInflight - connection.window.availablePermits();
+        }
+        return inflight;
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Connection connection = new Connection(socket);
+                connections.add(connection);
+                threadFactory.newThread(connection::read).start();
+            } catch (IOException e) {
+                if (running) {
+                    LOGGER.warn("Load test broker failed to accept a connection", e);
+                }
+            }
+        }
+    }
+
+    static boolean matches(String filter, String topic) {
+        String[] filterLevels = filter.split("/", -1);
+        String[] topicLevels = topic.split("/", -1);
+        for (int i = 0; i < filterLevels.length; i++) {
+            if (filterLevels[i].equals("#")) {
+                return true;
+            }
+            if (i >= topicLevels.length) {
+                return false;
+            }
+            if (!filterLevels[i].equals("+") && !filterLevels[i].equals(topicLevels[i])) {
+                return false;
+            }
+        }
+        return filterLevels.length == topicLevels.length;
+    }
+
+    /**
+     * One client connection.
+     */
+    private class Connection {
+
+        private final Socket socket;
+        private final OutputStream out;
+        // topic filter -> granted QoS
+        private final ConcurrentHashMap<String, Integer> subscriptions = new ConcurrentHashMap<>();
+        private final Set<Integer> unacknowledged = ConcurrentHashMap.newKeySet();
+        private final Semaphore window = new Semaphore(maxInflight);
+        private int nextPacketId = 1;
+        private volatile boolean open = true;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = socket.getOutputStream();
+        }
+
+        Integer matchingQos(String topic) {
+            Integer best = null;
+            for (var subscription : subscriptions.entrySet()) {
+                if (matches(subscription.getKey(), topic)) {
+                    best = best == null ? subscription.getValue() : Math.max(best, subscription.getValue());
+                }
+            }
+            return best;
+        }
+
+        boolean send(String topic, byte[] payload, int qos) throws InterruptedException {
+            if (qos > 0) {
+                window.acquire();
+            }
+            if (!open) {
+                if (qos > 0) {
+                    window.release();
+                }
+                return false;
+            }
+
+            byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+            int remaining = 2 + topicBytes.length + (qos > 0 ? 2 : 0) + payload.length;
+            synchronized (this) {
+                try {
+                    out.write((PUBLISH << 4) | (qos << 1));
+                    writeLength(remaining);
+                    writeShort(topicBytes.length);
+                    out.write(topicBytes);
+                    if (qos > 0) {
+                        int packetId = nextPacketId;
+                        nextPacketId = nextPacketId == 0xFFFF ? 1 : nextPacketId + 1;
+                        unacknowledged.add(packetId);
+                        writeShort(packetId);
+                    }
+                    out.write(payload);
+                    out.flush();
+                    return true;
+                } catch (IOException e) {
+                    close();
+                    return false;
+                }
+            }
+        }
+
+        void read() {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+                while (open) {
+                    int header = in.read();
+                    if (header < 0) {
+                        break;
+                    }
+                    byte[] body = new byte[readLength(in)];
+                    in.readFully(body);
+                    handle(header >>> 4, header & 0x0F, body);
+                }
+            } catch (IOException e) {
+                LOGGER.debug("Load test broker connection closed: {}", e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        private void handle(int type, int flags, byte[] body) throws IOException, InterruptedException {
+            switch (type) {
+                case CONNECT:
+                    // CONNACK, no session present, accepted
+                    write(new byte[] { 0x20, 0x02, 0x00, 0x00 });
+                    break;
+                case PUBLISH:
+                    handlePublish(flags, body);
+                    break;
+                case PUBACK:
+                    if (unacknowledged.remove(readShort(body, 0))) {
+                        window.release();
+                    }
+                    break;
+                case SUBSCRIBE:
+                    handleSubscribe(body);
+                    break;
+                case UNSUBSCRIBE: {
+                    int offset = 2;
+                    while (offset < body.length) {
+                        int length = readShort(body, offset);
+                        subscriptions.remove(filter(new String(body, offset + 2, length, StandardCharsets.UTF_8)));
+                        offset += 2 + length;
+                    }
+                    write(new byte[] { (byte) 0xB0, 0x02, body[0], body[1] });
+                    break;
+                }
+                case PINGREQ:
+                    write(new byte[] { (byte) 0xD0, 0x00 });
+                    break;
+                case DISCONNECT:
+                    close();
+                    break;
+                default:
+                    LOGGER.debug("Load test broker ignores packet type {}", type);
+                    break;
+            }
+        }
+
+        private void handlePublish(int flags, byte[] body) throws IOException, InterruptedException {
+            int qos = (flags >>> 1) & 0x03;
+            int topicLength = readShort(body, 0);
+            String topic = new String(body, 2, topicLength, StandardCharsets.UTF_8);
+            int offset = 2 + topicLength;
+            if (qos > 0) {
+                int packetId = readShort(body, offset);
+                offset += 2;
+                write(new byte[] { 0x40, 0x02, (byte) (packetId >>> 8), (byte) packetId });
+            }
+            byte[] payload = new byte[body.length - offset];
+            System.arraycopy(body, offset, payload, 0, payload.length);
+            publish(topic, payload, Math.min(qos, 1));
+        }
+
+        private void handleSubscribe(byte[] body) throws IOException {
+            int offset = 2;
+            StringBuilder granted = new StringBuilder();
+            while (offset < body.length) {
+                int length = readShort(body, offset);
+                String filter = filter(new String(body, offset + 2, length, StandardCharsets.UTF_8));
+                int qos = Math.min(body[offset + 2 + length], 1);
+                subscriptions.put(filter, qos);
+                granted.append((char) qos);
+                offset += 3 + length;
+                LOGGER.debug("Load test broker: subscription to {}", filter);
+            }
+            synchronized (this) {
+                out.write(0x90);
+                writeLength(2 + granted.length());
+                out.write(body[0]);
+                out.write(body[1]);
+                for (int i = 0; i < granted.length(); i++) {
+                    out.write(granted.charAt(i));
+                }
+                out.flush();
+            }
+        }
+
+        private String filter(String requested) {
+            // shared subscriptions behave like plain ones with a single client
+            if (requested.startsWith("$share/")) {
+                int slash = requested.indexOf('/', "$share/".length());
+                return slash > 0 ? requested.substring(slash + 1) : requested;
+            }
+            return requested;
+        }
+
+        private synchronized void write(byte[] packet) throws IOException {
+            out.write(packet);
+            out.flush();
+        }
+
+        // callers hold the lock
+        private void writeLength(int length) throws IOException {
+            do {
+                int digit = length % 128;
+                length /= 128;
+                out.write(length > 0 ? digit | 0x80 : digit);
+            } while (length > 0);
+        }
+
+        private void writeShort(int value) throws IOException {
+            out.write(value >>> 8);
+            out.write(value & 0xFF);
+        }
+
+        void close() {
+            if (!open) {
+                return;
+            }
+            open = false;
+            connections.remove(this);
+            // wake up publishers waiting for this subscriber
+            window.release(maxInflight);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+    }
+
+    private static int readLength(DataInputStream in) throws IOException {
+        int length = 0;
+        int multiplier = 1;
+        int digit;
+        do {
+            digit = in.read();
+            if (digit < 0) {
+                throw new EOFException();
+            }
+            length += (digit & 0x7F) * multiplier;
+            multiplier *= 128;
+        } while ((digit & 0x80) != 0);
+        return length;
+    }
+
+    private static int readShort(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    }
+}
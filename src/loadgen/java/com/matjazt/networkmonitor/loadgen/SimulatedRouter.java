@@ -0,0 +1,102 @@
+package com.matjazt.networkmonitor.loadgen;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A simulated RouterOS scanner (network-scanners/RouterOS/networkScan.rsc):
+ * one network with a population of devices, of which the online ones are
+ * reported in every scan.
+ *
+ * Between two scans every device flips online/offline with probability
+ * churn, leaves the network for good with probability leaveRate, and
+ * joinRate * initial device count new devices join (on average). Not
+ * thread-safe - each router is scanned by one task at a time.
+ */
+public class SimulatedRouter {
+
+    private final String hostname;
+    private final String networkName;
+    private final double churn;
+    private final double joinRate;
+    private final double leaveRate;
+    private final int initialDevices;
+    private final Random random;
+
+    private final List<Device> devices = new ArrayList<>();
+    private int nextDeviceNumber;
+
+    public SimulatedRouter(int index, int deviceCount, double churn, double joinRate, double leaveRate) {
+        this.hostname = "loadgen-router-" + index;
+        this.networkName = "loadgen-" + index;
+        this.churn = churn;
+        this.joinRate = joinRate;
+        this.leaveRate = leaveRate;
+        this.initialDevices = deviceCount;
+        this.random = new Random(index);
+        for (int i = 0; i < deviceCount; i++) {
+            devices.add(new Device(nextDeviceNumber++));
+        }
+    }
+
+    public String getNetworkName() {
+        return networkName;
+    }
+
+    /**
+     * Apply one scan interval's worth of changes and build the scan message.
+     */
+    public byte[] scan(Instant timestamp) {
+        devices.removeIf(device -> random.nextDouble() < leaveRate);
+        for (Device device : devices) {
+            if (random.nextDouble() < churn) {
+                device.online = !device.online;
+            }
+        }
+        double joining = joinRate * initialDevices;
+        int joins = (int) joining + (random.nextDouble() < joining - (int) joining ? 1 : 0);
+        for (int i = 0; i < joins; i++) {
+            devices.add(new Device(nextDeviceNumber++));
+        }
+
+        StringBuilder json = new StringBuilder(64 + devices.size() * 48);
+        json.append("{\"hostname\":\"").append(hostname).append("\",\"timestamp\":\"")
+                .append(timestamp.truncatedTo(ChronoUnit.SECONDS)).append("\",\"devices\":[");
+        boolean first = true;
+        for (Device device : devices) {
+            if (!device.online) {
+                continue;
+            }
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append("{\"ip\":\"").append(device.ip).append("\",\"mac\":\"").append(device.mac).append("\"}");
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Number of devices currently in the network, online or not.
+     */
+    public int getDeviceCount() {
+        return devices.size();
+    }
+
+    private static class Device {
+
+        final String mac;
+        final String ip;
+        boolean online = true;
+
+        Device(int n) {
+            mac = String.format("02:00:%02X:%02X:%02X:%02X", (n >>> 24) & 0xFF, (n >>> 16) & 0xFF,
+                    (n >>> 8) & 0xFF, n & 0xFF);
+            ip = "10." + ((n >>> 16) & 0xFF) + "." + ((n >>> 8) & 0xFF) + "." + (n & 0xFF);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.matjazt.networkmonitor.api;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.microprofile.openapi.annotations.Operation;
+import org.eclipse.microprofile.openapi.annotations.media.Content;
+import org.eclipse.microprofile.openapi.annotations.parameters.Parameter;
+import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
+import org.eclipse.microprofile.openapi.annotations.responses.APIResponses;
+import org.eclipse.microprofile.openapi.annotations.tags.Tag;
+
+import com.matjazt.networkmonitor.ingest.DeadLetterStore;
+import com.matjazt.networkmonitor.ingest.IngestPipeline;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Administration of messages that failed processing (see DeadLetterStore).
+ * 
+ * The messages belong to all networks, so web.xml restricts /api/admin to
+ * admin accounts.
+ */
+@Path("/api/admin/dead-letters")
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+@Tag(name = "Dead Letters", description = "Messages that failed processing")
+public class DeadLetterResource {
+
+    @Inject
+    private IngestPipeline ingestPipeline;
+
+    /**
+     * GET /api/admin/dead-letters?limit=50
+     * 
+     * Number of stored messages and the most recent ones, without payloads.
+     */
+    @GET
+    @Operation(summary = "List dead letters", description = "Returns the number of stored failed messages and the most recent ones")
+    @APIResponses({
+            @APIResponse(responseCode = "200", description = "Dead letter summary", content = @Content(mediaType = MediaType.APPLICATION_JSON)),
+            @APIResponse(responseCode = "503", description = "Dead letter store is disabled", content = @Content(mediaType = MediaType.APPLICATION_JSON))
+    })
+    public Response getDeadLetters(
+            @Parameter(description = "Maximum number of messages listed", example = "50") @QueryParam("limit") @DefaultValue("50") int limit)
+            throws IOException {
+        DeadLetterStore store = ingestPipeline.getDeadLetters();
+        if (store == null) {
+            return disabled();
+        }
+
+        List<Map<String, Object>> recent = store.recent(Math.max(0, Math.min(limit, 1000))).stream()
+                .map(letter -> Map.<String, Object>of(
+                        "topic", letter.getTopic(),
+                        "networkName", letter.getNetworkName(),
+                        "receivedAt", letter.getReceivedAt().toString(),
+                        "failedAt", letter.getFailedAt().toString(),
+                        "errorClass", letter.getErrorClass(),
+                        "errorMessage", letter.getErrorMessage()))
+                .toList();
+
+        return Response.ok(Map.of(
+                "count", store.getCount(),
+                "sizeBytes", store.getSizeBytes(),
+                "rejected", store.getRejected(),
+                "recent", recent)).build();
+    }
+
+    /**
+     * POST /api/admin/dead-letters/replay
+     * 
+     * Feeds all stored messages back through the ingest pipeline, e.g. after a
+     * fix was deployed. Returns as soon as they are queued; if the pipeline
+     * shuts down in the meantime, the rest stays in the store.
+     */
+    @POST
+    @Path("/replay")
+    @Operation(summary = "Replay dead letters", description = "Queues all stored failed messages for processing again; those that fail again are stored again")
+    @APIResponses({
+            @APIResponse(responseCode = "200", description = "Messages queued", content = @Content(mediaType = MediaType.APPLICATION_JSON)),
+            @APIResponse(responseCode = "409", description = "A replay is already running", content = @Content(mediaType = MediaType.APPLICATION_JSON)),
+            @APIResponse(responseCode = "503", description = "Dead letter store is disabled or ingest is not running", content = @Content(mediaType = MediaType.APPLICATION_JSON))
+    })
+    public Response replay() throws IOException {
+        DeadLetterStore store = ingestPipeline.getDeadLetters();
+        if (store == null) {
+            return disabled();
+        }
+        try {
+            long queued = ingestPipeline.replayDeadLetters();
+            return Response.ok(Map.of("queued", queued, "remaining", store.getCount())).build();
+        } catch (DeadLetterStore.DrainRunningException e) {
+            return Response.status(Response.Status.CONFLICT)
+                    .entity(Map.of("error", e.getMessage()))
+                    .build();
+        } catch (IllegalStateException e) {
+            // disabled or shut down since the check above
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity(Map.of("error", e.getMessage()))
+                    .build();
+        }
+    }
+
+    private static Response disabled() {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .entity(Map.of("error", "Dead letter store is disabled (ingest.deadletter.path)"))
+                .build();
+    }
+}
@@ -0,0 +1,45 @@
+package com.matjazt.networkmonitor.api;
+
+import org.eclipse.microprofile.openapi.annotations.Operation;
+import org.eclipse.microprofile.openapi.annotations.media.Content;
+import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
+import org.eclipse.microprofile.openapi.annotations.responses.APIResponses;
+import org.eclipse.microprofile.openapi.annotations.tags.Tag;
+
+import com.matjazt.networkmonitor.metrics.MetricsRegistry;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Prometheus scrape endpoint (see MetricsRegistry).
+ */
+@Path("/metrics")
+@Tag(name = "Metrics", description = "Prometheus metrics")
+public class MetricsResource {
+
+    private static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    /**
+     * GET /metrics
+     * 
+     * Latency histograms and counters in the Prometheus text format. Protected
+     * by Basic authentication like the API - use basic_auth in the scrape
+     * configuration.
+     */
+    @GET
+    @Produces(PROMETHEUS_TEXT)
+    @Operation(summary = "Prometheus metrics", description = "Scan processing, DAO, alert check and email latency histograms, device and alert counters per network")
+    @APIResponses({
+            @APIResponse(responseCode = "200", description = "Metrics in the Prometheus text format", content = @Content(mediaType = PROMETHEUS_TEXT))
+    })
+    public Response getMetrics() {
+        return Response.ok(metrics.toPrometheusText(), PROMETHEUS_TEXT).build();
+    }
+}
@@ -1,9 +1,10 @@
 package com.matjazt.networkmonitor.api;
 
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.media.Content;
@@ -13,9 +14,11 @@ import org.eclipse.microprofile.openapi.annotations.responses.APIResponses;
 import org.eclipse.microprofile.openapi.annotations.tags.Tag;
 
 import com.matjazt.networkmonitor.dao.MonitoringDAO;
-import com.matjazt.networkmonitor.entity.DeviceStatusHistoryEntity;
 import com.matjazt.networkmonitor.entity.NetworkEntity;
 import com.matjazt.networkmonitor.security.AccountPrincipal;
+import com.matjazt.networkmonitor.state.DeviceState;
+import com.matjazt.networkmonitor.state.DeviceStateStore;
+import com.matjazt.networkmonitor.state.NetworkState;
 
 import jakarta.inject.Inject;
 import jakarta.ws.rs.Consumes;
@@ -46,6 +49,9 @@ public class NetworkResource {
     @Inject
     private MonitoringDAO monitoringDao;
 
+    @Inject
+    private DeviceStateStore deviceStateStore;
+
     @jakarta.ws.rs.core.Context
     private jakarta.ws.rs.core.SecurityContext securityContext;
 
@@ -98,23 +104,21 @@ public class NetworkResource {
     })
     public Response getOnlineDevices(
             @Parameter(description = "Name of the network", required = true, example = "MaliGrdi") @PathParam("networkName") String networkName) {
-        // Find the network
-        Optional<NetworkEntity> networkOpt = monitoringDao.findNetworkByName(networkName);
+        // Find the network - the owner keeps device state in memory, so this
+        // doesn't touch the database once the network is loaded; on other
+        // cluster nodes it's read from the database every time
+        NetworkState network = deviceStateStore.getNetwork(networkName);
 
-        if (networkOpt.isEmpty()) {
+        if (network == null) {
             // Return 404 Not Found if network doesn't exist
             return Response.status(Response.Status.NOT_FOUND)
                     .entity(Map.of("error", "Network not found: " + networkName))
                     .build();
         }
 
-        NetworkEntity network = networkOpt.get();
-
-        // Get currently online devices
-        List<DeviceStatusHistoryEntity> onlineDevices = monitoringDao.findCurrentlyOnlineDevices(network);
-
-        // Convert to DTOs
-        List<Map<String, Object>> deviceDtos = onlineDevices.stream()
+        // Get currently online devices and convert them to DTOs
+        List<Map<String, Object>> deviceDtos = network.getOnlineDevices().stream()
+                .sorted(Comparator.comparing(DeviceState::getMacAddress))
                 .map(this::toDeviceDto)
                 .toList();
 
@@ -135,22 +139,30 @@ public class NetworkResource {
      * In larger applications, you might create dedicated DTO classes.
      */
     private Map<String, Object> toNetworkDto(NetworkEntity network) {
+        // the database value is written in the background, the state has the latest
+        LocalDateTime lastSeen = network.getLastSeen();
+        NetworkState state = deviceStateStore.findLoaded(network.getName());
+        if (state != null && state.getLastSeen() != null && state.getLastSeen().isAfter(lastSeen)) {
+            lastSeen = state.getLastSeen();
+        }
+
         return Map.of(
                 "id", network.getId(),
                 "name", network.getName(),
                 "firstSeen", network.getFirstSeen().format(ISO_FORMATTER),
-                "lastSeen", network.getLastSeen().format(ISO_FORMATTER));
+                "lastSeen", lastSeen.format(ISO_FORMATTER));
     }
 
     /**
-     * Convert DeviceStatusHistory entity to DTO.
+     * Convert device state to DTO. The timestamp is when the device came online.
      */
-    private Map<String, Object> toDeviceDto(DeviceStatusHistoryEntity historyEntry) {
+    private Map<String, Object> toDeviceDto(DeviceState device) {
+        LocalDateTime since = device.getStatusSince() != null ? device.getStatusSince() : device.getLastSeen();
         return Map.of(
-                "macAddress", historyEntry.getDevice().getMacAddress(),
-                "ipAddress", historyEntry.getIpAddress(),
-                "online", historyEntry.getOnline(),
-                "timestamp", historyEntry.getTimestamp().format(ISO_FORMATTER));
+                "macAddress", device.getMacAddress(),
+                "ipAddress", device.getIpAddress() != null ? device.getIpAddress() : "",
+                "online", device.isOnline(),
+                "timestamp", since.format(ISO_FORMATTER));
     }
 
     /**
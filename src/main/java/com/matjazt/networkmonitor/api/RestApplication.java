@@ -38,6 +38,8 @@ public class RestApplication extends Application {
         Set<Class<?>> classes = new HashSet<>();
         // Register all REST endpoints
         classes.add(NetworkResource.class);
+        classes.add(DeadLetterResource.class);
+        classes.add(MetricsResource.class);
         return classes;
     }
 }
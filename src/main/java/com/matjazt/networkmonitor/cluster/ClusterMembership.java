@@ -0,0 +1,99 @@
+package com.matjazt.networkmonitor.cluster;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.matjazt.networkmonitor.config.ConfigProvider;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Which networks this instance is responsible for.
+ *
+ * Several instances can share one broker and database. Every network is owned
+ * by exactly one of them (RendezvousHash over cluster.nodes), and only the
+ * owner subscribes to its scans, keeps its state in memory and checks its
+ * alerts. That keeps the per-network guarantees of a single instance - scans
+ * processed in order, one writer per row, state in memory is authoritative -
+ * while the networks are spread over the instances.
+ *
+ * Membership is static: every instance must be configured with the same
+ * cluster.nodes list and its own cluster.node.id. Changing the list means
+ * restarting all instances; rendezvous hashing makes sure only the networks
+ * of added or removed nodes move. There's no failure detection - when a node
+ * is down, nobody else takes over its networks: their scans aren't processed
+ * and no NETWORK_DOWN alerts are sent for them until it's back, or until it's
+ * removed from cluster.nodes on every remaining instance.
+ *
+ * Without cluster.nodes the instance is alone and owns every network.
+ */
+@ApplicationScoped
+public class ClusterMembership {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusterMembership.class);
+
+    @Inject
+    private ConfigProvider config;
+
+    private String nodeId;
+    private List<String> nodes;
+
+    @PostConstruct
+    public void initialize() {
+        nodeId = config.getClusterNodeId().orElse(config.getMqttClientId());
+
+        Set<String> configured = new LinkedHashSet<>();
+        for (String node : config.getClusterNodes().orElse("").split(",")) {
+            if (!node.isBlank()) {
+                configured.add(node.trim());
+            }
+        }
+
+        if (configured.isEmpty()) {
+            nodes = List.of(nodeId);
+        } else if (!configured.contains(nodeId)) {
+            throw new IllegalStateException("cluster.node.id " + nodeId + " is not in cluster.nodes " + configured);
+        } else {
+            nodes = List.copyOf(configured);
+        }
+
+        if (isClustered()) {
+            LOGGER.info("Cluster node {} of {}", nodeId, nodes);
+        }
+    }
+
+    /**
+     * True when more than one instance shares the networks.
+     */
+    public boolean isClustered() {
+        return nodes.size() > 1;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Is this instance responsible for the network?
+     */
+    public boolean owns(String networkName) {
+        return !isClustered() || nodeId.equals(ownerOf(networkName));
+    }
+
+    /**
+     * The node responsible for the network.
+     */
+    public String ownerOf(String networkName) {
+        return RendezvousHash.owner(nodes, networkName);
+    }
+}
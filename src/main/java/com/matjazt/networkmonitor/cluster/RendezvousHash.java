@@ -0,0 +1,69 @@
+package com.matjazt.networkmonitor.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Rendezvous (highest random weight) hashing: every node gets a pseudo-random
+ * weight for a key, and the node with the highest weight owns the key.
+ *
+ * Compared to hashCode() % nodeCount, adding or removing a node only moves the
+ * keys that node gains or loses (about 1/n of them) - all other networks stay
+ * where they are, together with their in-memory state. Compared to a hash
+ * ring it needs no virtual nodes to spread evenly; the cost is one hash per
+ * node per lookup, which is nothing for a handful of nodes.
+ *
+ * The hash is FNV-1a over the UTF-8 bytes, followed by a 64-bit finalizer, so
+ * every node computes the same owner regardless of JVM or platform.
+ */
+public final class RendezvousHash {
+
+    private RendezvousHash() {
+    }
+
+    /**
+     * The node that owns the key.
+     *
+     * @throws IllegalArgumentException if there are no nodes
+     */
+    public static String owner(Collection<String> nodes, String key) {
+        String owner = null;
+        long best = 0;
+        for (String node : nodes) {
+            long weight = weight(node, key);
+            // ties are practically impossible, but must be resolved the same way
+            // on every node
+            if (owner == null || Long.compareUnsigned(weight, best) > 0
+                    || (weight == best && node.compareTo(owner) < 0)) {
+                owner = node;
+                best = weight;
+            }
+        }
+        if (owner == null) {
+            throw new IllegalArgumentException("No nodes");
+        }
+        return owner;
+    }
+
+    static long weight(String node, String key) {
+        long hash = 0xcbf29ce484222325L;
+        hash = fnv(hash, node);
+        hash = (hash ^ '/') * 0x100000001b3L;
+        hash = fnv(hash, key);
+
+        // spread the bits (MurmurHash3 fmix64), FNV alone is weak in the high bits
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static long fnv(long hash, String value) {
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+}
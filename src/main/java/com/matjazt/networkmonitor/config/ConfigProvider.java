@@ -4,6 +4,9 @@ import java.util.Optional;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import com.matjazt.networkmonitor.ingest.OverflowPolicy;
+import com.matjazt.networkmonitor.ingest.SubscriptionMode;
+
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 
@@ -68,6 +71,36 @@ public class ConfigProvider {
     @ConfigProperty(name = "mqtt.ssl.verify.hostname", defaultValue = "true")
     private Boolean mqttSslVerifyHostname;
 
+    @Inject
+    @ConfigProperty(name = "mqtt.subscription.mode", defaultValue = "PER_NETWORK")
+    private SubscriptionMode mqttSubscriptionMode;
+
+    @Inject
+    @ConfigProperty(name = "mqtt.network.allow")
+    private Optional<String> mqttNetworkAllow;
+
+    @Inject
+    @ConfigProperty(name = "mqtt.network.deny")
+    private Optional<String> mqttNetworkDeny;
+
+    @Inject
+    @ConfigProperty(name = "mqtt.shared.group")
+    private Optional<String> mqttSharedGroup;
+
+    @Inject
+    @ConfigProperty(name = "mqtt.manual.acks", defaultValue = "false")
+    private Boolean mqttManualAcks;
+
+    // === Cluster Settings ===
+
+    @Inject
+    @ConfigProperty(name = "cluster.node.id")
+    private Optional<String> clusterNodeId;
+
+    @Inject
+    @ConfigProperty(name = "cluster.nodes")
+    private Optional<String> clusterNodes;
+
     // === Email/SMTP Settings ===
 
     @Inject
@@ -118,6 +151,90 @@ public class ConfigProvider {
     @ConfigProperty(name = "alert.check.interval", defaultValue = "60")
     private Integer alertCheckInterval;
 
+    // === Ingest Pipeline Settings ===
+
+    @Inject
+    @ConfigProperty(name = "ingest.queue.capacity", defaultValue = "1000")
+    private Integer ingestQueueCapacity;
+
+    @Inject
+    @ConfigProperty(name = "ingest.worker.threads", defaultValue = "4")
+    private Integer ingestWorkerThreads;
+
+    @Inject
+    @ConfigProperty(name = "ingest.overflow.policy", defaultValue = "BLOCK")
+    private OverflowPolicy ingestOverflowPolicy;
+
+    @Inject
+    @ConfigProperty(name = "ingest.shutdown.timeout", defaultValue = "30")
+    private Integer ingestShutdownTimeout;
+
+    @Inject
+    @ConfigProperty(name = "ingest.virtual.partitions", defaultValue = "1024")
+    private Integer ingestVirtualPartitions;
+
+    @Inject
+    @ConfigProperty(name = "ingest.dedup.window", defaultValue = "16")
+    private Integer ingestDedupWindow;
+
+    @Inject
+    @ConfigProperty(name = "ingest.coalesce", defaultValue = "false")
+    private Boolean ingestCoalesce;
+
+    @Inject
+    @ConfigProperty(name = "ingest.reject.stale", defaultValue = "true")
+    private Boolean ingestRejectStale;
+
+    @Inject
+    @ConfigProperty(name = "ingest.journal.path")
+    private Optional<String> ingestJournalPath;
+
+    @Inject
+    @ConfigProperty(name = "ingest.journal.max.size", defaultValue = "256")
+    private Integer ingestJournalMaxSize;
+
+    @Inject
+    @ConfigProperty(name = "ingest.journal.retry.interval", defaultValue = "5")
+    private Integer ingestJournalRetryInterval;
+
+    @Inject
+    @ConfigProperty(name = "ingest.deadletter.path")
+    private Optional<String> ingestDeadLetterPath;
+
+    @Inject
+    @ConfigProperty(name = "ingest.deadletter.max.size", defaultValue = "512")
+    private Integer ingestDeadLetterMaxSize;
+
+    // === Execution Settings ===
+
+    @Inject
+    @ConfigProperty(name = "execution.virtual.threads", defaultValue = "false")
+    private Boolean executionVirtualThreads;
+
+    @Inject
+    @ConfigProperty(name = "execution.database.concurrency", defaultValue = "10")
+    private Integer executionDatabaseConcurrency;
+
+    // === Device State Settings ===
+
+    @Inject
+    @ConfigProperty(name = "state.flush.interval", defaultValue = "5")
+    private Integer stateFlushInterval;
+
+    @Inject
+    @ConfigProperty(name = "state.flush.batch.size", defaultValue = "500")
+    private Integer stateFlushBatchSize;
+
+    @Inject
+    @ConfigProperty(name = "state.last.seen.granularity", defaultValue = "60")
+    private Integer stateLastSeenGranularity;
+
+    // === Status History Settings ===
+
+    @Inject
+    @ConfigProperty(name = "history.copy.threshold", defaultValue = "500")
+    private Integer historyCopyThreshold;
+
     // Inject the Config object for dynamic lookups
     // @Inject
     // private Config config;
@@ -172,6 +289,58 @@ public class ConfigProvider {
         return mqttSslVerifyHostname;
     }
 
+    /**
+     * One subscription per known network, or a single wildcard subscription.
+     */
+    public SubscriptionMode getMqttSubscriptionMode() {
+        return mqttSubscriptionMode;
+    }
+
+    /**
+     * Regular expression of accepted network names; empty accepts all.
+     */
+    public Optional<String> getMqttNetworkAllow() {
+        return mqttNetworkAllow;
+    }
+
+    /**
+     * Regular expression of rejected network names; empty rejects none.
+     */
+    public Optional<String> getMqttNetworkDeny() {
+        return mqttNetworkDeny;
+    }
+
+    /**
+     * MQTT shared subscription group; when set, subscriptions are made as
+     * $share/group/topic.
+     */
+    public Optional<String> getMqttSharedGroup() {
+        return mqttSharedGroup;
+    }
+
+    /**
+     * Acknowledge QoS 1 messages only after the ingest pipeline is done with
+     * them, instead of as soon as they are queued.
+     */
+    public Boolean getMqttManualAcks() {
+        return mqttManualAcks;
+    }
+
+    /**
+     * This instance's name in cluster.nodes; defaults to mqtt.client.id.
+     */
+    public Optional<String> getClusterNodeId() {
+        return clusterNodeId;
+    }
+
+    /**
+     * Comma separated names of all instances sharing the networks; empty for a
+     * single instance.
+     */
+    public Optional<String> getClusterNodes() {
+        return clusterNodes;
+    }
+
     public String getSmtpHost() {
         return smtpHost;
     }
@@ -216,7 +385,152 @@ public class ConfigProvider {
         return alertCheckInitialDelay;
     }
 
+    /**
+     * Seconds between settings checks. Alerts don't wait for them - every
+     * network and device has its own deadline (see AlertScheduler) - the
+     * check picks up settings edited in the database (operation mode, name,
+     * alerting delay), so they take effect within this interval. It only
+     * reads the rows edited since the previous check.
+     */
     public Integer getAlertCheckInterval() {
         return alertCheckInterval;
     }
+
+    /**
+     * Maximum number of waiting messages per ingest worker.
+     */
+    public Integer getIngestQueueCapacity() {
+        return ingestQueueCapacity;
+    }
+
+    /**
+     * Number of ingest workers (partitions). Each network is always handled by
+     * the same worker, so its messages stay in order.
+     */
+    public Integer getIngestWorkerThreads() {
+        return ingestWorkerThreads;
+    }
+
+    public OverflowPolicy getIngestOverflowPolicy() {
+        return ingestOverflowPolicy;
+    }
+
+    /**
+     * Seconds to wait for queued messages to be processed during shutdown.
+     */
+    public Integer getIngestShutdownTimeout() {
+        return ingestShutdownTimeout;
+    }
+
+    /**
+     * Number of ingest partitions when running on virtual threads.
+     */
+    public Integer getIngestVirtualPartitions() {
+        return ingestVirtualPartitions;
+    }
+
+    /**
+     * Number of recently processed scans remembered per network to recognize
+     * duplicates; 0 disables duplicate detection.
+     */
+    public Integer getIngestDedupWindow() {
+        return ingestDedupWindow;
+    }
+
+    /**
+     * Skip queued scans of a network when a newer one of the same network is
+     * queued.
+     */
+    public Boolean getIngestCoalesce() {
+        return ingestCoalesce;
+    }
+
+    /**
+     * Reject scans older than the last scan applied to their network.
+     */
+    public Boolean getIngestRejectStale() {
+        return ingestRejectStale;
+    }
+
+    /**
+     * Directory of the scan journal that keeps scans during database outages;
+     * the journal is disabled when not set.
+     */
+    public Optional<String> getIngestJournalPath() {
+        return ingestJournalPath;
+    }
+
+    /**
+     * Maximum disk space of the scan journal, in megabytes.
+     */
+    public Integer getIngestJournalMaxSize() {
+        return ingestJournalMaxSize;
+    }
+
+    /**
+     * Seconds between attempts to replay the scan journal.
+     */
+    public Integer getIngestJournalRetryInterval() {
+        return ingestJournalRetryInterval;
+    }
+
+    /**
+     * Directory where messages that failed processing are kept for replay;
+     * disabled when not set.
+     */
+    public Optional<String> getIngestDeadLetterPath() {
+        return ingestDeadLetterPath;
+    }
+
+    /**
+     * Maximum disk space of the dead letter store, in megabytes.
+     */
+    public Integer getIngestDeadLetterMaxSize() {
+        return ingestDeadLetterMaxSize;
+    }
+
+    /**
+     * Run ingest workers and alert checks on virtual threads (Java 21+).
+     */
+    public Boolean getExecutionVirtualThreads() {
+        return executionVirtualThreads;
+    }
+
+    /**
+     * Maximum number of message/alert transactions using the database at the
+     * same time. Should match the JDBC connection pool size.
+     */
+    public Integer getExecutionDatabaseConcurrency() {
+        return executionDatabaseConcurrency;
+    }
+
+    /**
+     * Seconds between writes of cached device state to the database.
+     */
+    public Integer getStateFlushInterval() {
+        return stateFlushInterval;
+    }
+
+    /**
+     * Maximum number of devices written per statement.
+     */
+    public Integer getStateFlushBatchSize() {
+        return stateFlushBatchSize;
+    }
+
+    /**
+     * Seconds a last seen timestamp must move before it's written to the
+     * database.
+     */
+    public Integer getStateLastSeenGranularity() {
+        return stateLastSeenGranularity;
+    }
+
+    /**
+     * Minimum number of status history rows of one message that are written
+     * with COPY instead of INSERTs; 0 disables COPY.
+     */
+    public Integer getHistoryCopyThreshold() {
+        return historyCopyThreshold;
+    }
 }
@@ -1,16 +1,28 @@
 package com.matjazt.networkmonitor.dao;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.matjazt.networkmonitor.entity.DeviceEntity;
 import com.matjazt.networkmonitor.entity.DeviceStatusHistoryEntity;
 import com.matjazt.networkmonitor.entity.NetworkEntity;
+import com.matjazt.networkmonitor.metrics.Measured;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
+import jakarta.persistence.Query;
 import jakarta.transaction.Transactional;
 
 /**
@@ -21,10 +33,14 @@ import jakarta.transaction.Transactional;
  * 
  * @ApplicationScoped: single instance shared across the application.
  * @Transactional: methods automatically run in database transactions.
+ * @Measured: every call is timed in the DAO latency histogram (/metrics).
  */
 @ApplicationScoped
+@Measured
 public class MonitoringDAO {
 
+    private static final Logger logger = LoggerFactory.getLogger(MonitoringDAO.class);
+
     /**
      * EntityManager is JPA's main interface for database operations.
      * Similar to DbContext in Entity Framework.
@@ -36,6 +52,16 @@ public class MonitoringDAO {
     @PersistenceContext(unitName = "NetworkMonitorPU")
     private EntityManager em;
 
+    // database schema for native queries, same as openjpa.jdbc.Schema in
+    // persistence.xml
+    private static final String SCHEMA = "main";
+
+    // keeps the IN list well below the JDBC driver's limit of bind parameters
+    private static final int STATUS_UPDATE_CHUNK = 1000;
+
+    private static final StatusHistoryCopyWriter HISTORY_COPY_WRITER = new StatusHistoryCopyWriter(
+            SCHEMA + ".device_status_history");
+
     /**
      * Find a network by its name.
      * 
@@ -56,6 +82,22 @@ public class MonitoringDAO {
         }
     }
 
+    /**
+     * Is the database reachable? Runs a trivial query in its own transaction.
+     * Used after a failed transaction, to tell a database outage from a
+     * problem with the data.
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public boolean isDatabaseAvailable() {
+        try {
+            em.createNativeQuery("SELECT 1").getSingleResult();
+            return true;
+        } catch (PersistenceException e) {
+            logger.debug("Database check failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
     /**
      * Get all networks.
      * 
@@ -66,6 +108,14 @@ public class MonitoringDAO {
                 .getResultList();
     }
 
+    /**
+     * Get a reference to a network without loading it. Its fields are loaded
+     * on first access.
+     */
+    public NetworkEntity getNetworkReference(long networkId) {
+        return em.getReference(NetworkEntity.class, networkId);
+    }
+
     /**
      * Save a new network or update existing one.
      * 
@@ -96,6 +146,155 @@ public class MonitoringDAO {
                 .getResultList();
     }
 
+    /**
+     * Networks whose alerting delay was edited (or that were inserted) after
+     * the given time, a settings_changed value from the database.
+     */
+    public List<NetworkEntity> findNetworksWithSettingsChangedSince(LocalDateTime since) {
+        return em.createQuery("SELECT n FROM NetworkEntity n WHERE n.settingsChanged > :since",
+                NetworkEntity.class)
+                .setParameter("since", since)
+                .getResultList();
+    }
+
+    /**
+     * Devices whose name or operation mode was edited (or that were inserted)
+     * after the given time, a settings_changed value from the database. Their
+     * networks are fetched with them.
+     */
+    public List<DeviceEntity> findDevicesWithSettingsChangedSince(LocalDateTime since) {
+        return em.createQuery(
+                "SELECT d FROM DeviceEntity d JOIN FETCH d.network WHERE d.settingsChanged > :since",
+                DeviceEntity.class)
+                .setParameter("since", since)
+                .getResultList();
+    }
+
+    /**
+     * The latest settings_changed of all networks and devices.
+     *
+     * @return the timestamp, or empty if there are no networks and devices
+     */
+    public Optional<LocalDateTime> findLatestSettingsChange() {
+        LocalDateTime networks = em.createQuery("SELECT MAX(n.settingsChanged) FROM NetworkEntity n",
+                LocalDateTime.class).getSingleResult();
+        LocalDateTime devices = em.createQuery("SELECT MAX(d.settingsChanged) FROM DeviceEntity d",
+                LocalDateTime.class).getSingleResult();
+        if (networks == null || (devices != null && devices.isAfter(networks))) {
+            return Optional.ofNullable(devices);
+        }
+        return Optional.of(networks);
+    }
+
+    /**
+     * Find a device by its ID.
+     * 
+     * @return the device, or null if it doesn't exist
+     */
+    public DeviceEntity findDevice(long deviceId) {
+        return em.find(DeviceEntity.class, deviceId);
+    }
+
+    /**
+     * Get a reference to a device without loading it - enough to use it as a
+     * foreign key, e.g. in a status history record.
+     */
+    public DeviceEntity getDeviceReference(long deviceId) {
+        return em.getReference(DeviceEntity.class, deviceId);
+    }
+
+    /**
+     * Change the IP addresses of many devices with a single statement (UPDATE
+     * ... FROM (VALUES ...), like updateLastSeen).
+     * 
+     * @param ipById new IP address by device ID
+     * @return number of updated rows
+     */
+    @Transactional
+    public int updateDeviceIps(Map<Long, String> ipById) {
+        if (ipById.isEmpty()) {
+            return 0;
+        }
+
+        StringBuilder sql = new StringBuilder(100 + ipById.size() * 48)
+                .append("UPDATE ").append(SCHEMA)
+                .append(".device AS t SET ip_address = v.ip_address FROM (VALUES ");
+        int parameter = 1;
+        for (int i = 0; i < ipById.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append("(CAST(?").append(parameter++).append(" AS bigint), CAST(?")
+                    .append(parameter++).append(" AS varchar))");
+        }
+        sql.append(") AS v(id, ip_address) WHERE t.id = v.id");
+
+        Query query = em.createNativeQuery(sql.toString());
+        parameter = 1;
+        for (Map.Entry<Long, String> entry : ipById.entrySet()) {
+            query.setParameter(parameter++, entry.getKey());
+            query.setParameter(parameter++, entry.getValue());
+        }
+        return query.executeUpdate();
+    }
+
+    /**
+     * Write last seen timestamps of many devices with a single statement. Used
+     * by DeviceStateWriter. Never moves a timestamp backwards.
+     * 
+     * @param lastSeenById last seen timestamp by device ID
+     * @return number of updated rows
+     */
+    @Transactional
+    public int updateDeviceLastSeen(Map<Long, LocalDateTime> lastSeenById) {
+        return updateLastSeen("device", lastSeenById);
+    }
+
+    /**
+     * Write last seen timestamps of many networks with a single statement.
+     * Never moves a timestamp backwards.
+     * 
+     * @param lastSeenById last seen timestamp by network ID
+     * @return number of updated rows
+     */
+    @Transactional
+    public int updateNetworkLastSeen(Map<Long, LocalDateTime> lastSeenById) {
+        return updateLastSeen("network", lastSeenById);
+    }
+
+    /**
+     * UPDATE ... FROM (VALUES ...) - PostgreSQL joins the table with the list
+     * of new values, so any number of rows is updated in one round trip
+     * instead of one UPDATE per row. JPQL can't express this, so it's a native
+     * query.
+     */
+    private int updateLastSeen(String table, Map<Long, LocalDateTime> lastSeenById) {
+        if (lastSeenById.isEmpty()) {
+            return 0;
+        }
+
+        StringBuilder sql = new StringBuilder(100 + lastSeenById.size() * 48)
+                .append("UPDATE ").append(SCHEMA).append('.').append(table)
+                .append(" AS t SET last_seen = v.last_seen FROM (VALUES ");
+        int parameter = 1;
+        for (int i = 0; i < lastSeenById.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append("(CAST(?").append(parameter++).append(" AS bigint), CAST(?")
+                    .append(parameter++).append(" AS timestamp))");
+        }
+        sql.append(") AS v(id, last_seen) WHERE t.id = v.id AND t.last_seen < v.last_seen");
+
+        Query query = em.createNativeQuery(sql.toString());
+        parameter = 1;
+        for (Map.Entry<Long, LocalDateTime> entry : lastSeenById.entrySet()) {
+            query.setParameter(parameter++, entry.getKey());
+            query.setParameter(parameter++, Timestamp.valueOf(entry.getValue()));
+        }
+        return query.executeUpdate();
+    }
+
     /**
      * Save a new device or update existing one.
      * 
@@ -115,41 +314,25 @@ public class MonitoringDAO {
     }
 
     /**
-     * Get all currently online devices for a network.
+     * Set the current status of many devices, with one statement per
+     * STATUS_UPDATE_CHUNK devices. Must be called in the same transaction as
+     * saving the matching status history records.
      * 
-     * This query finds devices whose most recent status is "online".
-     * Uses a subquery to get the latest timestamp for each device.
-     * 
-     * @param network The network to query
-     * @return List of status records for currently online devices
+     * @return number of updated rows
      */
-    public List<DeviceStatusHistoryEntity> findCurrentlyOnlineDevices(NetworkEntity network) {
-        return em.createQuery(
-                "SELECT d FROM DeviceStatusHistoryEntity d " +
-                        "WHERE d.network = :network " +
-                        "AND d.online = true " +
-                        "AND d.timestamp = (" +
-                        "  SELECT MAX(d2.timestamp) FROM DeviceStatusHistoryEntity d2 " +
-                        "  WHERE d2.network = :network AND d2.device = d.device" +
-                        ")",
-                DeviceStatusHistoryEntity.class)
-                .setParameter("network", network)
-                .getResultList();
-    }
-
-    public DeviceStatusHistoryEntity findLatestHistoryEntryByDevice(NetworkEntity network, DeviceEntity device) {
-        List<DeviceStatusHistoryEntity> results = em.createQuery(
-                "SELECT d FROM DeviceStatusHistoryEntity d " +
-                        "WHERE d.network = :network " +
-                        "AND d.device = :device " +
-                        "ORDER BY d.id DESC",
-                DeviceStatusHistoryEntity.class)
-                .setParameter("network", network)
-                .setParameter("device", device)
-                .setMaxResults(1)
-                .getResultList();
-
-        return results.isEmpty() ? null : results.get(0);
+    @Transactional
+    public int updateDeviceStatus(List<Long> deviceIds, boolean online, LocalDateTime statusSince) {
+        int updated = 0;
+        for (int from = 0; from < deviceIds.size(); from += STATUS_UPDATE_CHUNK) {
+            List<Long> chunk = deviceIds.subList(from, Math.min(from + STATUS_UPDATE_CHUNK, deviceIds.size()));
+            updated += em.createQuery("UPDATE DeviceEntity d SET d.online = :online, d.statusSince = :statusSince " +
+                    "WHERE d.id IN :ids")
+                    .setParameter("online", online)
+                    .setParameter("statusSince", statusSince)
+                    .setParameter("ids", chunk)
+                    .executeUpdate();
+        }
+        return updated;
     }
 
     /**
@@ -161,4 +344,55 @@ public class MonitoringDAO {
     public void save(DeviceStatusHistoryEntity status) {
         em.persist(status);
     }
+
+    /**
+     * Save many status history records at once, with COPY instead of INSERTs
+     * (see StatusHistoryCopyWriter). Runs in the current transaction, on the
+     * same connection as JPA.
+     * 
+     * @return false if COPY isn't possible on this connection (e.g. the pool
+     *         hides the PostgreSQL connection) - nothing was written then and
+     *         the records have to be saved with save(DeviceStatusHistoryEntity)
+     */
+    @Transactional
+    public boolean copyStatusHistory(List<StatusHistoryCopyWriter.Row> rows) {
+        if (rows.isEmpty()) {
+            return true;
+        }
+
+        // the rows may reference devices persisted in this transaction
+        em.flush();
+
+        Connection connection;
+        try {
+            connection = em.unwrap(Connection.class);
+        } catch (PersistenceException e) {
+            logger.debug("JDBC connection not available, can't use COPY", e);
+            return false;
+        }
+
+        try {
+            PGConnection pgConnection = StatusHistoryCopyWriter.unwrap(connection);
+            if (pgConnection == null) {
+                logger.debug("Not a PostgreSQL connection, can't use COPY");
+                return false;
+            }
+
+            long start = System.nanoTime();
+            long written = HISTORY_COPY_WRITER.copy(pgConnection, rows);
+            long nanos = Math.max(System.nanoTime() - start, 1);
+            logger.info("Copied {} status history rows in {} ms ({} rows/s)",
+                    written, nanos / 1_000_000, written * 1_000_000_000L / nanos);
+            return true;
+        } catch (SQLException e) {
+            throw new PersistenceException("COPY of " + rows.size() + " status history rows failed", e);
+        } finally {
+            try {
+                // gives the connection back to OpenJPA, doesn't close the real one
+                connection.close();
+            } catch (SQLException e) {
+                logger.debug("Failed to release JDBC connection", e);
+            }
+        }
+    }
 }
@@ -12,6 +12,7 @@ import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 
 /**
@@ -24,8 +25,13 @@ import jakarta.persistence.Table;
 @Table(name = "alert")
 public class AlertEntity {
 
+    /**
+     * Sequence based id, so new alerts can be inserted in JDBC batches - see
+     * DeviceStatusHistoryEntity.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "alert_id")
+    @SequenceGenerator(name = "alert_id", sequenceName = "alert_id_seq", allocationSize = 50)
     private Long id;
 
     /**
@@ -78,6 +84,48 @@ public class AlertEntity {
     @Column(name = "closure_timestamp", nullable = true, columnDefinition = "TIMESTAMP")
     private LocalDateTime closureTimestamp;
 
+    /*
+     * Scan to alert latency: the timestamps of the alert's way from the scan
+     * that triggered it to the owner's inbox, all UTC. The alert itself was
+     * opened at "timestamp". Null when unknown, e.g. the triggering scan was
+     * processed before a restart, or there was no email to send.
+     */
+
+    /**
+     * Timestamp of the triggering scan (router's clock): the scan in which the
+     * device went offline or showed up, or the last scan of a network that
+     * went silent.
+     */
+    @Column(name = "scan_timestamp", nullable = true, columnDefinition = "TIMESTAMP")
+    private LocalDateTime scanTimestamp;
+
+    /**
+     * When the triggering scan arrived from the MQTT broker.
+     */
+    @Column(name = "received_timestamp", nullable = true, columnDefinition = "TIMESTAMP")
+    private LocalDateTime receivedTimestamp;
+
+    /**
+     * When the triggering scan's changes were committed. Null for alerts opened
+     * while processing the scan - they're committed together with it.
+     */
+    @Column(name = "committed_timestamp", nullable = true, columnDefinition = "TIMESTAMP")
+    private LocalDateTime committedTimestamp;
+
+    /**
+     * When the alert became due: last seen plus the network's alerting delay
+     * for down alerts, the scan's arrival for unauthorized devices. The time
+     * from here to "timestamp" is what alert.check.interval adds.
+     */
+    @Column(name = "due_timestamp", nullable = true, columnDefinition = "TIMESTAMP")
+    private LocalDateTime dueTimestamp;
+
+    /**
+     * When the SMTP server accepted the alert email.
+     */
+    @Column(name = "email_sent_timestamp", nullable = true, columnDefinition = "TIMESTAMP")
+    private LocalDateTime emailSentTimestamp;
+
     // JPA requires no-arg constructor
     public AlertEntity() {
     }
@@ -148,4 +196,44 @@ public class AlertEntity {
     public void setClosureTimestamp(LocalDateTime closureTimestamp) {
         this.closureTimestamp = closureTimestamp;
     }
+
+    public LocalDateTime getScanTimestamp() {
+        return scanTimestamp;
+    }
+
+    public void setScanTimestamp(LocalDateTime scanTimestamp) {
+        this.scanTimestamp = scanTimestamp;
+    }
+
+    public LocalDateTime getReceivedTimestamp() {
+        return receivedTimestamp;
+    }
+
+    public void setReceivedTimestamp(LocalDateTime receivedTimestamp) {
+        this.receivedTimestamp = receivedTimestamp;
+    }
+
+    public LocalDateTime getCommittedTimestamp() {
+        return committedTimestamp;
+    }
+
+    public void setCommittedTimestamp(LocalDateTime committedTimestamp) {
+        this.committedTimestamp = committedTimestamp;
+    }
+
+    public LocalDateTime getDueTimestamp() {
+        return dueTimestamp;
+    }
+
+    public void setDueTimestamp(LocalDateTime dueTimestamp) {
+        this.dueTimestamp = dueTimestamp;
+    }
+
+    public LocalDateTime getEmailSentTimestamp() {
+        return emailSentTimestamp;
+    }
+
+    public void setEmailSentTimestamp(LocalDateTime emailSentTimestamp) {
+        this.emailSentTimestamp = emailSentTimestamp;
+    }
 }
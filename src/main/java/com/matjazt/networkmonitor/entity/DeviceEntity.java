@@ -13,6 +13,7 @@ import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 
 /**
@@ -25,8 +26,13 @@ import jakarta.persistence.Table;
 @Table(name = "device")
 public class DeviceEntity {
 
+    /**
+     * Sequence based id, so new devices can be inserted in JDBC batches - see
+     * DeviceStatusHistoryEntity.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "device_id")
+    @SequenceGenerator(name = "device_id", sequenceName = "device_id_seq", allocationSize = 50)
     private Long id;
 
     /**
@@ -73,11 +79,19 @@ public class DeviceEntity {
     private DeviceOperationModeEntity deviceOperationModeRef;
 
     /**
-     * Current online status.
+     * Current online status. Changed in the same transaction as the status
+     * history record, so it always matches the latest history entry.
      */
     @Column(nullable = false)
     private Boolean online;
 
+    /**
+     * When the device last came online or went offline - the timestamp of the
+     * latest status history record.
+     */
+    @Column(name = "status_since", nullable = true, columnDefinition = "TIMESTAMP")
+    private LocalDateTime statusSince;
+
     /**
      * When this device was first seen.
      */
@@ -96,6 +110,15 @@ public class DeviceEntity {
     @Column(name = "active_alert_id", nullable = true)
     private Long activeAlertId;
 
+    /**
+     * When the name or operation mode was last edited (or the row inserted). Maintained by a
+     * database trigger, never written by the application; the alert checker
+     * reads the rows changed since its previous check.
+     */
+    @Column(name = "settings_changed", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "TIMESTAMP")
+    private LocalDateTime settingsChanged;
+
     // JPA requires no-arg constructor
     public DeviceEntity() {
     }
@@ -181,6 +204,14 @@ public class DeviceEntity {
         this.online = online;
     }
 
+    public LocalDateTime getStatusSince() {
+        return statusSince;
+    }
+
+    public void setStatusSince(LocalDateTime statusSince) {
+        this.statusSince = statusSince;
+    }
+
     public LocalDateTime getFirstSeen() {
         return firstSeen;
     }
@@ -209,4 +240,8 @@ public class DeviceEntity {
         this.activeAlertId = activeAlertId;
     }
 
+    public LocalDateTime getSettingsChanged() {
+        return settingsChanged;
+    }
+
 }
\ No newline at end of file
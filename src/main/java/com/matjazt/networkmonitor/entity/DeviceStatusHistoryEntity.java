@@ -10,6 +10,7 @@ import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 
 /**
@@ -24,8 +25,18 @@ import jakarta.persistence.Table;
 @Table(name = "device_status_history")
 public class DeviceStatusHistoryEntity {
 
+    /**
+     * Sequence ids instead of IDENTITY: OpenJPA reserves a block of ids with a
+     * single nextval() call and knows the id before the INSERT, so a batch of
+     * history records can be sent as one JDBC batch. With IDENTITY every INSERT
+     * has to be executed on its own to read back the generated id.
+     *
+     * allocationSize must match the sequence's INCREMENT BY (see
+     * database/migrations/002_sequence_allocation.sql).
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "device_status_history_id")
+    @SequenceGenerator(name = "device_status_history_id", sequenceName = "device_status_history_id_seq", allocationSize = 50)
     private Long id;
 
     /**
@@ -61,6 +61,15 @@ public class NetworkEntity {
     @Column(name = "active_alert_id", nullable = true)
     private Long activeAlertId;
 
+    /**
+     * When the alerting delay was last edited (or the row inserted). Maintained by a
+     * database trigger, never written by the application; the alert checker
+     * reads the rows changed since its previous check.
+     */
+    @Column(name = "settings_changed", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "TIMESTAMP")
+    private LocalDateTime settingsChanged;
+
     // JPA requires a no-argument constructor
     public NetworkEntity() {
     }
@@ -132,4 +141,8 @@ public class NetworkEntity {
     public void setActiveAlertId(Long activeAlertId) {
         this.activeAlertId = activeAlertId;
     }
+
+    public LocalDateTime getSettingsChanged() {
+        return settingsChanged;
+    }
 }
@@ -0,0 +1,105 @@
+package com.matjazt.networkmonitor.ingest;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Sends MQTT acknowledgements in arrival order, as messages finish
+ * processing in any order.
+ *
+ * With manual acknowledgements, a QoS 1 message is only acknowledged once the
+ * ingest pipeline is done with it (its transaction committed, or it was
+ * recognized as a duplicate etc.). Messages of different networks finish out
+ * of order, but MQTT 3.1.1 requires PUBACKs to be sent in the order the
+ * PUBLISH packets arrived. So every message gets a Ticket on arrival; when it
+ * completes, the ticket is marked done and all done tickets at the head of
+ * the queue are acknowledged. A slow message only delays the
+ * acknowledgements behind it, never their processing.
+ *
+ * After a connection loss the broker redelivers everything that wasn't
+ * acknowledged, and message ids of the old connection may be reused - reset()
+ * forgets the outstanding tickets, so completing them later acknowledges
+ * nothing. The redelivered copies are usually dropped by DuplicateFilter.
+ *
+ * Thread-safe.
+ */
+public class AckSequencer {
+
+    /**
+     * Sends the acknowledgement, e.g. MqttAsyncClient.messageArrivedComplete.
+     */
+    @FunctionalInterface
+    public interface Acknowledger {
+        void acknowledge(int messageId, int qos);
+    }
+
+    private final Acknowledger acknowledger;
+    private final Deque<Ticket> outstanding = new ArrayDeque<>();
+
+    public AckSequencer(Acknowledger acknowledger) {
+        this.acknowledger = acknowledger;
+    }
+
+    /**
+     * Register a message as it arrives. Must be called in arrival order, i.e.
+     * on the MQTT callback thread.
+     */
+    public synchronized Ticket register(int messageId, int qos) {
+        Ticket ticket = new Ticket(messageId, qos);
+        outstanding.addLast(ticket);
+        return ticket;
+    }
+
+    /**
+     * Mark a message as done and acknowledge it, together with any following
+     * messages that were already done. Completing a ticket twice, or after
+     * reset(), has no effect.
+     */
+    public synchronized void complete(Ticket ticket) {
+        ticket.done = true;
+        // under the lock, so two threads can't interleave their acknowledgements;
+        // the client only queues the PUBACK, it doesn't wait for the network
+        while (!outstanding.isEmpty() && outstanding.peekFirst().done) {
+            Ticket head = outstanding.removeFirst();
+            acknowledger.acknowledge(head.messageId, head.qos);
+        }
+    }
+
+    /**
+     * Forget all outstanding tickets, after the connection they arrived on was
+     * lost.
+     *
+     * @return number of messages that will not be acknowledged
+     */
+    public synchronized int reset() {
+        int count = outstanding.size();
+        outstanding.clear();
+        return count;
+    }
+
+    /**
+     * Number of messages received but not acknowledged yet.
+     */
+    public synchronized int getOutstanding() {
+        return outstanding.size();
+    }
+
+    /**
+     * A message waiting for its acknowledgement.
+     */
+    public static class Ticket {
+
+        private final int messageId;
+        private final int qos;
+        private boolean done;
+
+        Ticket(int messageId, int qos) {
+            this.messageId = messageId;
+            this.qos = qos;
+        }
+
+        public int getMessageId() {
+            return messageId;
+        }
+    }
+}
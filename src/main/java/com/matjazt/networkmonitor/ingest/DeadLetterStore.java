@@ -0,0 +1,453 @@
+package com.matjazt.networkmonitor.ingest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps messages that failed processing, so they can be replayed once the
+ * cause is fixed.
+ *
+ * A message that can't be parsed, or whose transaction fails while the
+ * database is up (a bug, a schema problem), would otherwise only leave a log
+ * entry. Here it's appended, with its topic, network, arrival time and the
+ * error, to a segment file (dead-letters-000000000001.dat, ...). Records are
+ * length prefixed and CRC-checked, the payload is stored as received - a few
+ * dozen bytes of overhead per message.
+ *
+ * drain() hands all stored messages to a consumer, oldest first, and deletes
+ * the segments it read. Messages appended while a drain is running (e.g. the
+ * replayed ones that fail again) go to a new segment, so a drain always ends.
+ * When the consumer refuses a message (e.g. the pipeline is shutting down),
+ * the drain stops: the refused message and the ones after it stay in the
+ * store, in their order.
+ *
+ * Disk usage is bounded by maxBytes; when it's reached, further failures are
+ * only logged. Thread-safe.
+ */
+public class DeadLetterStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeadLetterStore.class);
+
+    private static final String PREFIX = "dead-letters-";
+    private static final String SUFFIX = ".dat";
+
+    // length + crc
+    private static final int HEADER_SIZE = 4 + 4;
+    // error messages are truncated to this many characters
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long segmentSize;
+
+    // oldest first; the last one is appended to
+    private final Deque<Path> segments = new ArrayDeque<>();
+    private FileChannel current;
+    private long nextSegmentNumber = 1;
+
+    private long count;
+    private long sizeBytes;
+    private long rejected;
+    private boolean drainRunning;
+
+    /**
+     * @param directory   where the segment files are kept, created if needed
+     * @param maxBytes    upper bound of the disk space used by all segments
+     * @param segmentSize a new segment is started when the current one reaches
+     *                    this size
+     */
+    public DeadLetterStore(Path directory, long maxBytes, long segmentSize) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Find the existing segments and count the messages in them.
+     */
+    public synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> list = Files.list(directory)) {
+            list.filter(DeadLetterStore::isSegment).sorted().forEach(segments::addLast);
+        }
+        for (Path segment : segments) {
+            nextSegmentNumber = Math.max(nextSegmentNumber, segmentNumber(segment) + 1);
+            sizeBytes += Files.size(segment);
+            count += read(segment, letter -> {
+            });
+        }
+        LOGGER.info("Dead letter store opened in {} - {} message(s)", directory, count);
+    }
+
+    /**
+     * Store a failed message.
+     *
+     * @return false if the store is full or writing failed
+     */
+    public synchronized boolean append(IngestMessage message, Throwable error) {
+        String text = error.getMessage() != null ? error.getMessage() : "";
+        ByteBuffer record = encode(new Letter(message.getTopic(), message.getNetworkName(), message.getReceivedAt(),
+                Instant.now(), error.getClass().getName(),
+                text.length() > MAX_ERROR_LENGTH ? text.substring(0, MAX_ERROR_LENGTH) : text,
+                message.getPayload()));
+        if (record == null || sizeBytes + record.remaining() > maxBytes) {
+            rejected++;
+            return false;
+        }
+        int recordLength = record.remaining();
+
+        try {
+            FileChannel channel = currentSegment();
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            LOGGER.error("Failed to write to the dead letter store", e);
+            rejected++;
+            return false;
+        }
+
+        count++;
+        sizeBytes += recordLength;
+        return true;
+    }
+
+    /**
+     * Hand the stored messages to the consumer, oldest first, and delete the
+     * ones it took. If the consumer returns false, the drain stops and that
+     * message and all later ones are kept.
+     *
+     * The segments are read without holding the store's lock, so the consumer
+     * may block (e.g. IngestPipeline waiting for room in a full queue) while
+     * failing messages are appended. Only one drain runs at a time.
+     *
+     * @param consumer takes a message, returns false if it can't
+     * @return number of messages taken by the consumer
+     * @throws DrainRunningException if another drain is running
+     */
+    public long drain(Predicate<Letter> consumer) throws IOException {
+        List<Path> draining;
+        synchronized (this) {
+            if (drainRunning) {
+                throw new DrainRunningException();
+            }
+            drainRunning = true;
+            closeCurrent();
+            draining = new ArrayList<>(segments);
+        }
+
+        long drained = 0;
+        try {
+            for (Path segment : draining) {
+                long size = Files.size(segment);
+                List<Letter> letters = new ArrayList<>();
+                read(segment, letters::add);
+
+                int taken = 0;
+                while (taken < letters.size() && consumer.test(letters.get(taken))) {
+                    taken++;
+                }
+                drained += taken;
+
+                if (taken < letters.size()) {
+                    long keptSize = keep(segment, letters.subList(taken, letters.size()));
+                    synchronized (this) {
+                        count -= taken;
+                        sizeBytes -= size - keptSize;
+                    }
+                    break;
+                }
+
+                Files.delete(segment);
+                synchronized (this) {
+                    segments.remove(segment);
+                    count -= taken;
+                    sizeBytes -= size;
+                }
+            }
+        } finally {
+            synchronized (this) {
+                drainRunning = false;
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * The most recently stored messages, newest first, without the payloads.
+     */
+    public synchronized List<Letter> recent(int limit) throws IOException {
+        Deque<Letter> newest = new ArrayDeque<>();
+        for (Path segment : segments) {
+            if (!Files.exists(segment)) {
+                // just replayed by a running drain
+                continue;
+            }
+            read(segment, letter -> {
+                newest.addFirst(letter.withoutPayload());
+                if (newest.size() > limit) {
+                    newest.removeLast();
+                }
+            });
+        }
+        return new ArrayList<>(newest);
+    }
+
+    /**
+     * Number of stored messages.
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Disk space taken by the stored messages.
+     */
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * Failed messages that couldn't be stored since startup.
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    public synchronized void close() {
+        closeCurrent();
+    }
+
+    /**
+     * Replace the segment with one holding only the given letters, which the
+     * consumer of a drain didn't take.
+     *
+     * @return size of the new segment
+     */
+    private static long keep(Path segment, List<Letter> letters) throws IOException {
+        Path temporary = segment.resolveSibling(segment.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Letter letter : letters) {
+                ByteBuffer record = encode(letter);
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            }
+            channel.force(false);
+        }
+        Files.move(temporary, segment, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(segment);
+    }
+
+    /**
+     * A letter as a record, ready to be written; null if it can't be stored.
+     */
+    private static ByteBuffer encode(Letter letter) {
+        byte[] topic = utf8(letter.topic);
+        byte[] network = utf8(letter.networkName);
+        byte[] errorClass = utf8(letter.errorClass);
+        byte[] errorMessage = utf8(letter.errorMessage);
+        byte[] payload = letter.payload;
+        if (topic.length > Short.MAX_VALUE || network.length > Short.MAX_VALUE) {
+            return null;
+        }
+
+        int bodyLength = 8 + 8 + 2 + topic.length + 2 + network.length + 2 + errorClass.length + 2
+                + errorMessage.length + 4 + payload.length;
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + bodyLength);
+        record.putInt(bodyLength).putInt(0);
+        record.putLong(letter.receivedAt.toEpochMilli());
+        record.putLong(letter.failedAt.toEpochMilli());
+        putShortBytes(record, topic);
+        putShortBytes(record, network);
+        putShortBytes(record, errorClass);
+        putShortBytes(record, errorMessage);
+        record.putInt(payload.length).put(payload);
+
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), HEADER_SIZE, bodyLength);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private FileChannel currentSegment() throws IOException {
+        if (current != null && current.size() >= segmentSize) {
+            closeCurrent();
+        }
+        if (current == null) {
+            Path file = directory.resolve(String.format("%s%012d%s", PREFIX, nextSegmentNumber++, SUFFIX));
+            current = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            segments.addLast(file);
+        }
+        return current;
+    }
+
+    private void closeCurrent() {
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close dead letter segment", e);
+            }
+            current = null;
+        }
+    }
+
+    /**
+     * Read the valid records of a segment; a damaged or incomplete record ends
+     * it.
+     *
+     * @return number of records read
+     */
+    private static long read(Path segment, Consumer<Letter> consumer) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segment));
+        long letters = 0;
+        while (data.remaining() >= HEADER_SIZE) {
+            int bodyLength = data.getInt();
+            int expectedCrc = data.getInt();
+            if (bodyLength <= 0 || bodyLength > data.remaining()) {
+                LOGGER.warn("Dead letter segment {} ends with an incomplete record", segment);
+                break;
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(data.array(), data.position(), bodyLength);
+            if ((int) crc.getValue() != expectedCrc) {
+                LOGGER.warn("Dead letter segment {} has a damaged record, ignoring the rest of it", segment);
+                break;
+            }
+
+            Instant receivedAt = Instant.ofEpochMilli(data.getLong());
+            Instant failedAt = Instant.ofEpochMilli(data.getLong());
+            String topic = getShortString(data);
+            String network = getShortString(data);
+            String errorClass = getShortString(data);
+            String errorMessage = getShortString(data);
+            byte[] payload = new byte[data.getInt()];
+            data.get(payload);
+
+            consumer.accept(new Letter(topic, network, receivedAt, failedAt, errorClass, errorMessage, payload));
+            letters++;
+        }
+        return letters;
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putShortBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String getShortString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Thrown by drain() while another drain is running.
+     */
+    public static class DrainRunningException extends IllegalStateException {
+        DrainRunningException() {
+            super("Dead letters are already being replayed");
+        }
+    }
+
+    /**
+     * A stored message.
+     */
+    public static class Letter {
+
+        private final String topic;
+        private final String networkName;
+        private final Instant receivedAt;
+        private final Instant failedAt;
+        private final String errorClass;
+        private final String errorMessage;
+        private final byte[] payload;
+
+        Letter(String topic, String networkName, Instant receivedAt, Instant failedAt, String errorClass,
+                String errorMessage, byte[] payload) {
+            this.topic = topic;
+            this.networkName = networkName;
+            this.receivedAt = receivedAt;
+            this.failedAt = failedAt;
+            this.errorClass = errorClass;
+            this.errorMessage = errorMessage;
+            this.payload = payload;
+        }
+
+        Letter withoutPayload() {
+            return new Letter(topic, networkName, receivedAt, failedAt, errorClass, errorMessage, null);
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public String getNetworkName() {
+            return networkName;
+        }
+
+        /**
+         * When the message originally arrived from the broker.
+         */
+        public Instant getReceivedAt() {
+            return receivedAt;
+        }
+
+        public Instant getFailedAt() {
+            return failedAt;
+        }
+
+        /**
+         * Class name of the exception processing failed with.
+         */
+        public String getErrorClass() {
+            return errorClass;
+        }
+
+        public String getErrorMessage() {
+            return errorMessage;
+        }
+
+        /**
+         * The payload as received; null in the list returned by recent().
+         */
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.matjazt.networkmonitor.ingest;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Recognizes scans that were already processed.
+ *
+ * MQTT QoS 1 means "at least once": after a reconnect (cleanSession=false) the
+ * broker redelivers messages whose acknowledgement it didn't get, and a scanner
+ * may publish the same scan twice. Processing such a duplicate is harmless but
+ * costs a full transaction.
+ *
+ * For every network the filter remembers the last few processed scans, as
+ * (scan timestamp, payload digest) pairs in two small ring buffers - 16 bytes
+ * per scan, no payload copies. A scan with the same timestamp and digest as a
+ * remembered one is a duplicate. The digest is CRC32C (hardware accelerated on
+ * current CPUs) combined with the payload length; together with the timestamp
+ * that's plenty to tell scans of one network apart.
+ *
+ * Thread-safe. Messages of one network are processed by one worker, in order,
+ * so the per-network lock is practically never contended.
+ */
+public class DuplicateFilter {
+
+    private final int windowSize;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    /**
+     * @param windowSize number of scans remembered per network; 0 disables the
+     *                   filter
+     */
+    public DuplicateFilter(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public boolean isEnabled() {
+        return windowSize > 0;
+    }
+
+    /**
+     * Digest of a payload, for isDuplicate and remember.
+     */
+    public static long digest(byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload, 0, payload.length);
+        return (crc.getValue() << 32) | (payload.length & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Was a scan with this timestamp and digest processed recently?
+     */
+    public boolean isDuplicate(String networkName, Instant timestamp, long digest) {
+        if (!isEnabled()) {
+            return false;
+        }
+        Window window = windows.get(networkName);
+        return window != null && window.contains(timestamp.toEpochMilli(), digest);
+    }
+
+    /**
+     * Remember a processed scan. The oldest remembered scan of the network is
+     * forgotten once the window is full.
+     */
+    public void remember(String networkName, Instant timestamp, long digest) {
+        if (isEnabled()) {
+            windows.computeIfAbsent(networkName, name -> new Window(windowSize))
+                    .add(timestamp.toEpochMilli(), digest);
+        }
+    }
+
+    /**
+     * Recent scans of one network.
+     */
+    private static class Window {
+
+        private final long[] timestamps;
+        private final long[] digests;
+        private int next;
+        private int size;
+
+        Window(int capacity) {
+            timestamps = new long[capacity];
+            digests = new long[capacity];
+        }
+
+        synchronized boolean contains(long timestamp, long digest) {
+            for (int i = 0; i < size; i++) {
+                if (timestamps[i] == timestamp && digests[i] == digest) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized void add(long timestamp, long digest) {
+            timestamps[next] = timestamp;
+            digests[next] = digest;
+            next = (next + 1) % timestamps.length;
+            size = Math.min(size + 1, timestamps.length);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.matjazt.networkmonitor.ingest;
+
+import java.time.Instant;
+
+/**
+ * A raw MQTT message waiting in the ingest queue.
+ *
+ * Holds the payload exactly as received from the broker, together with the
+ * moment it arrived, so queue latency can be measured when a worker picks it
+ * up.
+ */
+public class IngestMessage {
+
+    private final String topic;
+    private final String networkName;
+    private final Instant scanTimestamp;
+    private final byte[] payload;
+    private final Instant receivedAt;
+    private final long receivedNanos;
+    private final Runnable onComplete;
+
+    public IngestMessage(String topic, String networkName, Instant scanTimestamp, byte[] payload) {
+        this(topic, networkName, scanTimestamp, payload, null);
+    }
+
+    /**
+     * @param onComplete called once the pipeline is done with the message -
+     *                   processed, skipped or shed - e.g. to acknowledge it to
+     *                   the broker; may be null
+     */
+    public IngestMessage(String topic, String networkName, Instant scanTimestamp, byte[] payload,
+            Runnable onComplete) {
+        this.topic = topic;
+        this.networkName = networkName;
+        this.scanTimestamp = scanTimestamp;
+        this.payload = payload;
+        this.receivedAt = Instant.now();
+        this.receivedNanos = System.nanoTime();
+        this.onComplete = onComplete;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * Network name, as extracted from the topic.
+     */
+    public String getNetworkName() {
+        return networkName;
+    }
+
+    /**
+     * Timestamp of the scan, read from the payload on arrival. Null if it
+     * wasn't needed (duplicate detection, coalescing and stale scan rejection
+     * all disabled) or the payload has no valid timestamp.
+     */
+    public Instant getScanTimestamp() {
+        return scanTimestamp;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * Wall-clock time when the message arrived from the broker.
+     */
+    public Instant getReceivedAt() {
+        return receivedAt;
+    }
+
+    /**
+     * Monotonic arrival time (System.nanoTime()), used for latency measurements.
+     */
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    /**
+     * Signal that the pipeline is done with the message.
+     */
+    public void complete() {
+        if (onComplete != null) {
+            onComplete.run();
+        }
+    }
+}
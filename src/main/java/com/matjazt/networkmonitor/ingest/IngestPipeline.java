@@ -0,0 +1,677 @@
+package com.matjazt.networkmonitor.ingest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.matjazt.networkmonitor.config.ConfigProvider;
+import com.matjazt.networkmonitor.dao.MonitoringDAO;
+import com.matjazt.networkmonitor.metrics.MetricsRegistry;
+import com.matjazt.networkmonitor.service.ExecutionSupport;
+import com.matjazt.networkmonitor.service.MessageProcessingService;
+import com.matjazt.networkmonitor.state.DeviceStateStore;
+import com.matjazt.networkmonitor.state.NetworkState;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Bounded, asynchronous hand-off between the MQTT client and message
+ * processing.
+ *
+ * The Paho callback thread only puts incoming messages into a bounded queue and
+ * returns. Worker threads take them off the queue and run them through
+ * MessageProcessingService, so a slow database transaction or a slow SMTP
+ * server no longer stalls the MQTT connection.
+ *
+ * Messages are partitioned by network name (see PartitionedExecutor): scans of
+ * the same network are processed strictly in order, scans of different
+ * networks in parallel.
+ *
+ * When a partition's queue is full, the configured OverflowPolicy decides
+ * whether the caller waits (backpressure towards the broker) or a message is
+ * shed.
+ *
+ * Worker threads come from ExecutionSupport: platform threads from the
+ * container's ManagedThreadFactory, or virtual threads when that mode is
+ * enabled. Either way they can use CDI beans, JPA and JTA transactions just
+ * like request threads.
+ *
+ * Before a message is processed, DuplicateFilter checks whether the same scan
+ * (same network, scan timestamp and payload) was processed recently - QoS 1
+ * redeliveries after a reconnect are dropped without parsing the device list
+ * or starting a transaction.
+ *
+ * With ingest.coalesce enabled, a queued scan is skipped when a newer scan (by
+ * scan timestamp) of the same network is already queued: only the newest one
+ * matters for the current state. After an outage or a restart, when many scans
+ * of every network have piled up, each network is then reconciled once instead
+ * of once per scan. The price is that a device that was only briefly offline
+ * in one of the skipped scans leaves no trace in the status history.
+ *
+ * Scans older than the last scan applied to their network (the network's last
+ * seen timestamp in DeviceStateStore, loaded from network.last_seen) are
+ * rejected as stale: applying them would flip devices back to an old state and
+ * write spurious offline/online history. This only needs the in-memory state,
+ * so a stale scan costs no database work at all.
+ *
+ * A message can carry a completion callback (see MqttService's manual
+ * acknowledgements). It runs once the pipeline is done with the message: after
+ * its transaction committed, when it was skipped as a duplicate, superseded or
+ * stale scan, when processing failed, or when it was shed by the overflow
+ * policy. Messages that arrive while the pipeline shuts down, or are still
+ * queued when the shutdown timeout expires, are never completed - with manual
+ * acknowledgements the broker redelivers them after a restart.
+ *
+ * When processing fails and a quick probe shows the database is unavailable,
+ * the message is appended to the local ScanJournal (if ingest.journal.path is
+ * set) and completed - it's safe on disk. From then on every new message goes
+ * to the journal as well, behind the earlier ones, until a background task
+ * has replayed all of them against the database again, in order. The replay
+ * is single threaded, so it's slower than normal processing; the journal's
+ * size limit bounds the disk space an outage can take.
+ *
+ * Messages that fail for any other reason - unparseable payloads, errors with
+ * the database up - go to the DeadLetterStore (if ingest.deadletter.path is
+ * set). replayDeadLetters() feeds them back through the pipeline once the
+ * cause is fixed.
+ */
+@ApplicationScoped
+public class IngestPipeline {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IngestPipeline.class);
+
+    // size of one journal segment file
+    private static final int JOURNAL_SEGMENT_SIZE = 16 * 1024 * 1024;
+    // size at which a new dead letter segment file is started
+    private static final long DEAD_LETTER_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * What became of a message.
+     */
+    private enum Outcome {
+        PROCESSED, SKIPPED, FAILED, DATABASE_UNAVAILABLE
+    }
+
+    @Inject
+    private ConfigProvider config;
+
+    @Inject
+    private MessageProcessingService messageProcessor;
+
+    @Inject
+    private ExecutionSupport executionSupport;
+
+    @Inject
+    private DeviceStateStore deviceStateStore;
+
+    @Inject
+    private MonitoringDAO monitoringDao;
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    @Resource
+    private ManagedScheduledExecutorService scheduler;
+
+    // only used to read the scan timestamp for duplicate detection and coalescing
+    private final ScanMessageDecoder decoder = new ScanMessageDecoder();
+
+    private PartitionedExecutor<IngestMessage> executor;
+    private volatile DuplicateFilter duplicateFilter = new DuplicateFilter(0);
+    private volatile boolean coalesce;
+    private volatile boolean rejectStale;
+
+    // null when ingest.journal.path isn't set
+    private volatile ScanJournal journal;
+    private ScheduledFuture<?> replayTask;
+
+    // null when ingest.deadletter.path isn't set
+    private volatile DeadLetterStore deadLetters;
+
+    // newest scan timestamp queued per network, used when coalescing; removed
+    // once that scan is done, so the map only holds networks with queued scans
+    private final Map<String, Instant> newestQueuedScan = new ConcurrentHashMap<>();
+
+    // replayed dead letters still queued; one shed by DROP_OLDEST goes back to
+    // the store
+    private final Set<IngestMessage> queuedDeadLetters = ConcurrentHashMap.newKeySet();
+
+    // counters
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicLong journaled = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private volatile double lastReplayRate;
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+    private final AtomicLong totalProcessingNanos = new AtomicLong();
+
+    /**
+     * Creates the partitions and starts their worker threads. Called by
+     * MqttService before it connects to the broker. Calling it again has no
+     * effect.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+
+        // virtual threads are cheap, so use many more partitions - ideally one per
+        // network - and let the database permits limit the concurrency
+        int partitions = executionSupport.isVirtual()
+                ? config.getIngestVirtualPartitions()
+                : config.getIngestWorkerThreads();
+        int capacity = config.getIngestQueueCapacity();
+        OverflowPolicy overflowPolicy = config.getIngestOverflowPolicy();
+        duplicateFilter = new DuplicateFilter(config.getIngestDedupWindow());
+        coalesce = config.getIngestCoalesce();
+        rejectStale = config.getIngestRejectStale();
+
+        executor = new PartitionedExecutor<>("ingest-worker", partitions, capacity, overflowPolicy,
+                executionSupport.threadFactory("ingest-worker-"), this::process, this::onDropped);
+        executor.start();
+
+        openJournal();
+        openDeadLetters();
+
+        LOGGER.info("Ingest pipeline started - workers: {}, queue capacity per worker: {}, overflow policy: {}, "
+                + "duplicate window: {}, coalesce: {}, reject stale: {}", partitions, capacity, overflowPolicy,
+                config.getIngestDedupWindow(), coalesce, rejectStale);
+    }
+
+    private void openJournal() {
+        var path = config.getIngestJournalPath();
+        if (path.isEmpty() || path.get().isBlank()) {
+            return;
+        }
+
+        long maxBytes = config.getIngestJournalMaxSize() * 1024L * 1024L;
+        ScanJournal opened = new ScanJournal(Path.of(path.get()), maxBytes,
+                (int) Math.min(JOURNAL_SEGMENT_SIZE, maxBytes));
+        try {
+            opened.open();
+        } catch (IOException e) {
+            LOGGER.error("Failed to open the scan journal in {}, scans will be lost during database outages",
+                    path.get(), e);
+            return;
+        }
+        journal = opened;
+
+        long interval = config.getIngestJournalRetryInterval();
+        replayTask = scheduler.scheduleWithFixedDelay(this::replayJournal, interval, interval, TimeUnit.SECONDS);
+    }
+
+    private void openDeadLetters() {
+        var path = config.getIngestDeadLetterPath();
+        if (path.isEmpty() || path.get().isBlank()) {
+            return;
+        }
+
+        long maxBytes = config.getIngestDeadLetterMaxSize() * 1024L * 1024L;
+        DeadLetterStore opened = new DeadLetterStore(Path.of(path.get()), maxBytes,
+                Math.min(DEAD_LETTER_SEGMENT_SIZE, maxBytes));
+        try {
+            opened.open();
+        } catch (IOException e) {
+            LOGGER.error("Failed to open the dead letter store in {}, failed messages will only be logged",
+                    path.get(), e);
+            return;
+        }
+        deadLetters = opened;
+    }
+
+    /**
+     * Queue a message for processing. Called on the MQTT callback thread, so it
+     * must return quickly (unless the BLOCK overflow policy is in effect).
+     *
+     * @param networkName network name, as extracted from the topic by
+     *                    TopicRouter
+     *
+     * @return true if the message was queued, false if it was shed
+     */
+    public boolean submit(String topic, String networkName, byte[] payload) {
+        return submit(topic, networkName, payload, null);
+    }
+
+    /**
+     * Queue a message for processing, with a callback that runs once the
+     * pipeline is done with it (see the class comment). The callback never runs
+     * if the pipeline isn't running or is shutting down.
+     *
+     * @return true if the message was queued, false if it was shed or the
+     *         pipeline isn't taking in messages
+     */
+    public boolean submit(String topic, String networkName, byte[] payload, Runnable onComplete) {
+        received.incrementAndGet();
+
+        if (executor == null) {
+            LOGGER.warn("Ingest pipeline is not running, dropping message from topic: {}", topic);
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        // all messages of a network go through the same partition
+        return executor.submit(networkName, prepare(topic, networkName, payload, onComplete));
+    }
+
+    private IngestMessage prepare(String topic, String networkName, byte[] payload, Runnable onComplete) {
+        // reading the timestamp stops before the device list, so it's cheap
+        // enough for the MQTT thread
+        Instant scanTimestamp = null;
+        if (coalesce || rejectStale || duplicateFilter.isEnabled()) {
+            scanTimestamp = decoder.readTimestamp(payload);
+        }
+        if (coalesce && scanTimestamp != null) {
+            newestQueuedScan.merge(networkName, scanTimestamp, (a, b) -> a.isAfter(b) ? a : b);
+        }
+        return new IngestMessage(topic, networkName, scanTimestamp, payload, onComplete);
+    }
+
+    private void process(IngestMessage message) {
+        queuedDeadLetters.remove(message);
+        try {
+            processOrSkip(message);
+        } finally {
+            if (message.getScanTimestamp() != null) {
+                // only if it's still the newest - otherwise a newer one is queued
+                newestQueuedScan.remove(message.getNetworkName(), message.getScanTimestamp());
+            }
+            message.complete();
+        }
+    }
+
+    private void processOrSkip(IngestMessage message) {
+        long queueNanos = System.nanoTime() - message.getReceivedNanos();
+        totalQueueNanos.addAndGet(queueNanos);
+        maxQueueNanos.accumulateAndGet(queueNanos, Math::max);
+
+        // while journaled scans wait for the database, new ones queue up behind
+        // them, so every network's scans are still applied in order
+        ScanJournal currentJournal = journal;
+        if (currentJournal != null && currentJournal.appendIfPending(message)) {
+            journaled.incrementAndGet();
+            LOGGER.debug("Journaled scan of network {} behind the ones waiting for the database",
+                    message.getNetworkName());
+            return;
+        }
+
+        if (coalesce && isSuperseded(message)) {
+            coalesced.incrementAndGet();
+            LOGGER.debug("Skipped scan of network {} from {}, a newer one is queued", message.getNetworkName(),
+                    message.getScanTimestamp());
+            return;
+        }
+
+        if (apply(message) == Outcome.DATABASE_UNAVAILABLE) {
+            if (currentJournal != null && currentJournal.append(message)) {
+                journaled.incrementAndGet();
+                LOGGER.warn("Database unavailable, journaled scan of network {} for replay",
+                        message.getNetworkName());
+            } else {
+                failed.incrementAndGet();
+                LOGGER.error("Database unavailable and the scan journal is {}, scan of network {} is lost",
+                        currentJournal != null ? "full" : "disabled", message.getNetworkName());
+            }
+        }
+    }
+
+    /**
+     * Check a scan against the stale and duplicate filters and process it.
+     * Used by the workers and by the journal replay.
+     */
+    private Outcome apply(IngestMessage message) {
+        long startNanos = System.nanoTime();
+        Instant scanTimestamp = message.getScanTimestamp();
+        try {
+            // may load the network state, so it's inside the try as well
+            if (rejectStale && isStale(message)) {
+                stale.incrementAndGet();
+                LOGGER.debug("Rejected stale scan of network {} from {}, a newer scan was already applied",
+                        message.getNetworkName(), scanTimestamp);
+                return Outcome.SKIPPED;
+            }
+
+            DuplicateFilter filter = duplicateFilter;
+            long digest = 0;
+            if (filter.isEnabled() && scanTimestamp != null) {
+                digest = DuplicateFilter.digest(message.getPayload());
+                if (filter.isDuplicate(message.getNetworkName(), scanTimestamp, digest)) {
+                    duplicates.incrementAndGet();
+                    LOGGER.debug("Dropped duplicate scan of network {} from {}", message.getNetworkName(),
+                            scanTimestamp);
+                    return Outcome.SKIPPED;
+                }
+            }
+
+            executionSupport.runWithDatabasePermit(() -> processMeasured(message));
+            processed.incrementAndGet();
+            metrics.histogram(MetricsRegistry.SCAN_LATENCY).record(System.nanoTime() - message.getReceivedNanos());
+            // only remembered once processed, so a failed scan can be redelivered
+            if (filter.isEnabled() && scanTimestamp != null) {
+                filter.remember(message.getNetworkName(), scanTimestamp, digest);
+            }
+            return Outcome.PROCESSED;
+
+        } catch (RuntimeException e) {
+            // the journal only helps if the database is the problem - a scan that
+            // fails with the database up would fail again on replay
+            if (journal != null && !isDatabaseAvailable()) {
+                LOGGER.debug("Processing of message from topic {} failed, database unavailable", message.getTopic(),
+                        e);
+                return Outcome.DATABASE_UNAVAILABLE;
+            }
+            failed.incrementAndGet();
+            LOGGER.error("Unhandled error while processing message from topic: {}", message.getTopic(), e);
+            deadLetter(message, e);
+            return Outcome.FAILED;
+        } finally {
+            totalProcessingNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * processMessage, with its duration (the commit included) and the number of
+     * DAO calls it made recorded in the metrics.
+     */
+    private void processMeasured(IngestMessage message) {
+        long daoCallsBefore = metrics.getDaoCallsOnThisThread();
+        long startNanos = System.nanoTime();
+        try {
+            messageProcessor.processMessage(message.getTopic(), message.getNetworkName(), message.getPayload(),
+                    message.getReceivedAt());
+        } finally {
+            metrics.histogram(MetricsRegistry.SCAN_PROCESSING).record(System.nanoTime() - startNanos);
+            metrics.histogram(MetricsRegistry.SCAN_DAO_CALLS)
+                    .record(metrics.getDaoCallsOnThisThread() - daoCallsBefore);
+        }
+    }
+
+    private void deadLetter(IngestMessage message, RuntimeException error) {
+        DeadLetterStore store = deadLetters;
+        if (store == null) {
+            return;
+        }
+        // the root cause says what's wrong (e.g. the PSQLException behind JPA's
+        // exceptions)
+        Throwable cause = error;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        if (!store.append(message, cause)) {
+            LOGGER.error("Dead letter store is full, message from topic {} is lost", message.getTopic());
+        }
+    }
+
+    /**
+     * Feed all dead letters back through the pipeline, oldest first, e.g.
+     * after a fix was deployed. They're queued like messages from the broker
+     * and go through the same checks - a scan older than its network's last
+     * applied scan is still rejected as stale. Messages that fail again
+     * become dead letters again.
+     *
+     * A letter is only removed from the store once it's queued: the replay
+     * waits for room whatever the overflow policy, and stops if the pipeline
+     * shuts down, leaving the rest in the store. A queued letter that
+     * DROP_OLDEST sheds in favour of a newer message, or that is still queued
+     * when the shutdown timeout expires, goes back to the store.
+     *
+     * @return number of messages queued
+     * @throws IllegalStateException if the store is disabled or the pipeline
+     *                               isn't running
+     * @throws DeadLetterStore.DrainRunningException if a replay is already
+     *                                               running
+     */
+    public long replayDeadLetters() throws IOException {
+        DeadLetterStore store = deadLetters;
+        PartitionedExecutor<IngestMessage> current = executor;
+        if (store == null || current == null) {
+            throw new IllegalStateException("Dead letter store is not enabled");
+        }
+
+        long startNanos = System.nanoTime();
+        long count = store.drain(letter -> {
+            received.incrementAndGet();
+            IngestMessage message = prepare(letter.getTopic(), letter.getNetworkName(), letter.getPayload(), null);
+            queuedDeadLetters.add(message);
+            if (current.submitWaiting(letter.getNetworkName(), message)) {
+                return true;
+            }
+            queuedDeadLetters.remove(message);
+            onRefused(message);
+            return false;
+        });
+        long nanos = Math.max(System.nanoTime() - startNanos, 1);
+        LOGGER.info("Queued {} dead letter(s) for replay in {} ms ({} messages/s), {} left in the store", count,
+                nanos / 1_000_000, count * 1_000_000_000L / nanos, store.getCount());
+        return count;
+    }
+
+    /**
+     * The dead letter store, or null if it's disabled.
+     */
+    public DeadLetterStore getDeadLetters() {
+        return deadLetters;
+    }
+
+    private boolean isDatabaseAvailable() {
+        try {
+            return monitoringDao.isDatabaseAvailable();
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Apply journaled scans, oldest first, until the journal is empty or the
+     * database is still unavailable. Runs every ingest.journal.retry.interval
+     * seconds on the container's scheduler; one scan at a time, so records
+     * are completed in journal order.
+     */
+    private void replayJournal() {
+        ScanJournal currentJournal = journal;
+        if (currentJournal == null) {
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        long count = 0;
+        try {
+            ScanJournal.Entry entry;
+            while ((entry = currentJournal.peek()) != null) {
+                byte[] payload = entry.getPayload();
+                IngestMessage message = new IngestMessage(entry.getTopic(), entry.getNetworkName(),
+                        decoder.readTimestamp(payload), payload);
+                if (apply(message) == Outcome.DATABASE_UNAVAILABLE) {
+                    // still down, try again next time
+                    break;
+                }
+                currentJournal.markDone(entry);
+                count++;
+            }
+        } catch (RuntimeException e) {
+            // an exception would cancel the scheduled task
+            LOGGER.error("Scan journal replay failed", e);
+        }
+
+        if (count > 0) {
+            long nanos = Math.max(System.nanoTime() - startNanos, 1);
+            replayed.addAndGet(count);
+            lastReplayRate = count * 1e9 / nanos;
+            LOGGER.info("Replayed {} journaled scan(s) in {} ms ({} scans/s), {} still waiting", count,
+                    nanos / 1_000_000, Math.round(lastReplayRate), currentJournal.getPending());
+        }
+    }
+
+    /**
+     * Is a newer scan of the message's network queued?
+     */
+    private boolean isSuperseded(IngestMessage message) {
+        Instant scanTimestamp = message.getScanTimestamp();
+        if (scanTimestamp == null) {
+            return false;
+        }
+        Instant newest = newestQueuedScan.get(message.getNetworkName());
+        return newest != null && scanTimestamp.isBefore(newest);
+    }
+
+    /**
+     * Is the scan older than the last scan applied to its network? Messages of
+     * a network are processed one at a time, so the watermark can't move while
+     * we look at it.
+     */
+    private boolean isStale(IngestMessage message) {
+        Instant scanTimestamp = message.getScanTimestamp();
+        if (scanTimestamp == null) {
+            return false;
+        }
+        // loads the network on first use, null for networks we've never seen
+        NetworkState network = deviceStateStore.getNetwork(message.getNetworkName());
+        LocalDateTime watermark = network != null ? network.getLastSeen() : null;
+        return watermark != null && LocalDateTime.ofInstant(scanTimestamp, ZoneOffset.UTC).isBefore(watermark);
+    }
+
+    private void onDropped(IngestMessage message) {
+        dropped.incrementAndGet();
+        onRefused(message);
+        if (queuedDeadLetters.remove(message)) {
+            LOGGER.warn("Replayed dead letter from topic {} shed by the overflow policy, storing it again",
+                    message.getTopic());
+            deadLetter(message, new IllegalStateException("Shed by the ingest overflow policy during replay"));
+        } else {
+            LOGGER.warn("Dropped message from topic: {}", message.getTopic());
+        }
+        message.complete();
+    }
+
+    /**
+     * Undo the bookkeeping of a prepared message that won't be processed.
+     */
+    private void onRefused(IngestMessage message) {
+        if (message.getScanTimestamp() != null) {
+            // the newest scan was shed - the older queued ones must not be skipped
+            // in favour of it
+            newestQueuedScan.remove(message.getNetworkName(), message.getScanTimestamp());
+        }
+    }
+
+    /**
+     * Stops taking in new messages, waits for the queued ones to be processed
+     * (up to ingest.shutdown.timeout seconds) and stops the workers. Called by
+     * MqttService once it stopped taking in messages, before it disconnects
+     * (with manual acknowledgements).
+     */
+    public synchronized void shutdown() {
+        if (executor == null) {
+            return;
+        }
+
+        if (replayTask != null) {
+            // the journal stays on disk, the next start replays the rest
+            replayTask.cancel(false);
+            replayTask = null;
+        }
+
+        LOGGER.info("Draining ingest queue ({} message(s) pending)...", executor.getQueueDepth());
+
+        int discarded = executor.shutdown(config.getIngestShutdownTimeout(), TimeUnit.SECONDS);
+        if (discarded > 0) {
+            LOGGER.warn("Ingest queue not fully drained, {} message(s) left unprocessed", discarded);
+        }
+        // replayed dead letters that never got their turn are already gone from
+        // the store
+        for (IngestMessage message : queuedDeadLetters) {
+            deadLetter(message, new IllegalStateException("Still queued at shutdown during replay"));
+        }
+        queuedDeadLetters.clear();
+
+        LOGGER.info("Ingest pipeline stopped - {}", getStatistics());
+        if (journal != null) {
+            LOGGER.info("Scan journal - {}", getJournalStatistics());
+        }
+        executor = null;
+        journal = null;
+        if (deadLetters != null) {
+            deadLetters.close();
+            deadLetters = null;
+        }
+    }
+
+    @PreDestroy
+    public void cleanup() {
+        // normally MqttService already did this, but make sure threads don't leak
+        shutdown();
+    }
+
+    /**
+     * Current values of the pipeline counters, summed over all partitions.
+     */
+    public IngestStatistics getStatistics() {
+        PartitionedExecutor<IngestMessage> current = executor;
+        int queueDepth = 0;
+        int maxQueueDepth = 0;
+        if (current != null) {
+            for (PartitionStatistics partition : current.getPartitionStatistics()) {
+                queueDepth += partition.getQueueDepth();
+                maxQueueDepth = Math.max(maxQueueDepth, partition.getMaxQueueDepth());
+            }
+        }
+
+        long processedCount = processed.get();
+        long pickedUp = processedCount + failed.get();
+        return new IngestStatistics(
+                received.get(),
+                processedCount,
+                failed.get(),
+                dropped.get(),
+                duplicates.get(),
+                coalesced.get(),
+                stale.get(),
+                queueDepth,
+                maxQueueDepth,
+                pickedUp > 0 ? totalQueueNanos.get() / 1e6 / pickedUp : 0,
+                maxQueueNanos.get() / 1e6,
+                pickedUp > 0 ? totalProcessingNanos.get() / 1e6 / pickedUp : 0);
+    }
+
+    /**
+     * Current state of the scan journal, or null if it's disabled.
+     */
+    public JournalStatistics getJournalStatistics() {
+        ScanJournal current = journal;
+        if (current == null) {
+            return null;
+        }
+        return new JournalStatistics(journaled.get(), replayed.get(), current.getRejected(), current.getPending(),
+                current.getSizeBytes(), current.getMaxSizeBytes(), lastReplayRate);
+    }
+
+    /**
+     * Queue depth and lag of each partition. A partition whose lag keeps
+     * growing is stuck behind a slow network.
+     */
+    public List<PartitionStatistics> getPartitionStatistics() {
+        PartitionedExecutor<IngestMessage> current = executor;
+        return current != null ? current.getPartitionStatistics() : List.of();
+    }
+}
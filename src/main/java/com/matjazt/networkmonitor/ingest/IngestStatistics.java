@@ -0,0 +1,106 @@
+package com.matjazt.networkmonitor.ingest;
+
+/**
+ * Point-in-time snapshot of the ingest pipeline counters.
+ */
+public class IngestStatistics {
+
+    private final long received;
+    private final long processed;
+    private final long failed;
+    private final long dropped;
+    private final long duplicates;
+    private final long coalesced;
+    private final long stale;
+    private final int queueDepth;
+    private final int maxQueueDepth;
+    private final double averageQueueMillis;
+    private final double maxQueueMillis;
+    private final double averageProcessingMillis;
+
+    public IngestStatistics(long received, long processed, long failed, long dropped, long duplicates,
+            long coalesced, long stale, int queueDepth, int maxQueueDepth, double averageQueueMillis, double maxQueueMillis,
+            double averageProcessingMillis) {
+        this.received = received;
+        this.processed = processed;
+        this.failed = failed;
+        this.dropped = dropped;
+        this.duplicates = duplicates;
+        this.coalesced = coalesced;
+        this.stale = stale;
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.averageQueueMillis = averageQueueMillis;
+        this.maxQueueMillis = maxQueueMillis;
+        this.averageProcessingMillis = averageProcessingMillis;
+    }
+
+    /** Messages handed over by the MQTT client. */
+    public long getReceived() {
+        return received;
+    }
+
+    /** Messages that went through MessageProcessingService. */
+    public long getProcessed() {
+        return processed;
+    }
+
+    /** Messages whose processing threw an exception. */
+    public long getFailed() {
+        return failed;
+    }
+
+    /** Messages shed because the queue was full (or the pipeline was stopping). */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /** Messages suppressed as duplicates of an already processed scan. */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /** Messages skipped because a newer scan of the same network was queued. */
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    /** Messages rejected because they're older than the network's last applied scan. */
+    public long getStale() {
+        return stale;
+    }
+
+    /** Messages currently waiting in the queue. */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /** Highest queue depth observed since startup. */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /** Average time a message spent in the queue before a worker took it. */
+    public double getAverageQueueMillis() {
+        return averageQueueMillis;
+    }
+
+    /** Longest time a message spent in the queue. */
+    public double getMaxQueueMillis() {
+        return maxQueueMillis;
+    }
+
+    /** Average time spent in MessageProcessingService per message. */
+    public double getAverageProcessingMillis() {
+        return averageProcessingMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "received=%d, processed=%d, failed=%d, dropped=%d, duplicates=%d, coalesced=%d, stale=%d, queueDepth=%d, maxQueueDepth=%d, "
+                        + "avgQueue=%.1fms, maxQueue=%.1fms, avgProcessing=%.1fms",
+                received, processed, failed, dropped, duplicates, coalesced, stale, queueDepth, maxQueueDepth,
+                averageQueueMillis, maxQueueMillis, averageProcessingMillis);
+    }
+}
@@ -0,0 +1,68 @@
+package com.matjazt.networkmonitor.ingest;
+
+/**
+ * Point-in-time snapshot of the scan journal counters.
+ */
+public class JournalStatistics {
+
+    private final long journaled;
+    private final long replayed;
+    private final long rejected;
+    private final long pending;
+    private final long sizeBytes;
+    private final long maxSizeBytes;
+    private final double lastReplayRate;
+
+    public JournalStatistics(long journaled, long replayed, long rejected, long pending, long sizeBytes,
+            long maxSizeBytes, double lastReplayRate) {
+        this.journaled = journaled;
+        this.replayed = replayed;
+        this.rejected = rejected;
+        this.pending = pending;
+        this.sizeBytes = sizeBytes;
+        this.maxSizeBytes = maxSizeBytes;
+        this.lastReplayRate = lastReplayRate;
+    }
+
+    /** Messages written to the journal since startup. */
+    public long getJournaled() {
+        return journaled;
+    }
+
+    /** Journaled messages applied to the database since startup. */
+    public long getReplayed() {
+        return replayed;
+    }
+
+    /** Messages lost because the journal was full (or couldn't be written). */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /** Messages waiting in the journal. */
+    public long getPending() {
+        return pending;
+    }
+
+    /** Disk space taken by the journal. */
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /** Disk space the journal may take. */
+    public long getMaxSizeBytes() {
+        return maxSizeBytes;
+    }
+
+    /** Messages per second of the last replay run. */
+    public double getLastReplayRate() {
+        return lastReplayRate;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("journaled=%d, replayed=%d, rejected=%d, pending=%d, size=%dMB/%dMB, lastReplay=%.0f/s",
+                journaled, replayed, rejected, pending, sizeBytes / (1024 * 1024), maxSizeBytes / (1024 * 1024),
+                lastReplayRate);
+    }
+}
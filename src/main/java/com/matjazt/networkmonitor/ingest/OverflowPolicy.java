@@ -0,0 +1,24 @@
+package com.matjazt.networkmonitor.ingest;
+
+/**
+ * What the ingest pipeline does when its queue is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * The MQTT callback thread waits until there is room in the queue. Paho
+     * stops reading from the socket meanwhile, so the broker buffers the
+     * messages (backpressure). Nothing is lost, but nothing else is received
+     * either.
+     */
+    BLOCK,
+
+    /** The incoming message is discarded, queued messages are kept. */
+    DROP_NEWEST,
+
+    /**
+     * The oldest queued message is discarded to make room for the incoming
+     * one. Usually the best choice for scans, since a newer scan of a network
+     * supersedes an older one anyway.
+     */
+    DROP_OLDEST;
+}
@@ -0,0 +1,62 @@
+package com.matjazt.networkmonitor.ingest;
+
+/**
+ * Point-in-time snapshot of a single PartitionedExecutor partition.
+ */
+public class PartitionStatistics {
+
+    private final int partition;
+    private final int queueDepth;
+    private final int maxQueueDepth;
+    private final double lagMillis;
+    private final long processed;
+    private final long dropped;
+
+    public PartitionStatistics(int partition, int queueDepth, int maxQueueDepth, double lagMillis, long processed,
+            long dropped) {
+        this.partition = partition;
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.lagMillis = lagMillis;
+        this.processed = processed;
+        this.dropped = dropped;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    /** Tasks currently waiting in this partition. */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /** Highest queue depth observed since startup. */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * How long the oldest waiting task has been queued - i.e. how far behind
+     * this partition is. Zero when the queue is empty.
+     */
+    public double getLagMillis() {
+        return lagMillis;
+    }
+
+    /** Tasks handled by this partition's worker. */
+    public long getProcessed() {
+        return processed;
+    }
+
+    /** Tasks shed by this partition. */
+    public long getDropped() {
+        return dropped;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("partition=%d, queueDepth=%d, maxQueueDepth=%d, lag=%.1fms, processed=%d, dropped=%d",
+                partition, queueDepth, maxQueueDepth, lagMillis, processed, dropped);
+    }
+}
@@ -0,0 +1,401 @@
+package com.matjazt.networkmonitor.ingest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executor that keeps tasks with the same key in order while running tasks
+ * with different keys in parallel.
+ *
+ * Every key is mapped (by hash) to one of a fixed number of partitions. Each
+ * partition has its own bounded queue and exactly one worker thread, so tasks
+ * of one key are always handled one after another, in submission order, while
+ * the partitions work independently of each other.
+ *
+ * A partition's queue and worker are only created when its first task
+ * arrives, and an idle worker blocks on its queue. So a large partition count
+ * (one per network in virtual thread mode) costs nothing for the partitions
+ * no key maps to.
+ *
+ * For the ingest pipeline the key is the network name: scans of one network
+ * are never processed concurrently or out of order, but dozens of networks
+ * keep all cores busy.
+ *
+ * Only tasks shed by the overflow policy go to the drop listener. Tasks that
+ * are refused or still queued because the executor is shutting down were
+ * never shed, just not run - the caller decides what happens to them.
+ *
+ * @param <T> task type, handed to the handler by the partition worker
+ */
+public class PartitionedExecutor<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionedExecutor.class);
+
+    // how often blocked producers re-check the executor state
+    private static final long POLL_INTERVAL_MILLIS = 200;
+
+    private final String name;
+    private final OverflowPolicy overflowPolicy;
+    private final ThreadFactory threadFactory;
+    private final Consumer<T> handler;
+    private final Consumer<T> dropListener;
+    private final List<Partition> partitions = new ArrayList<>();
+    // put into a queue on shutdown to wake its worker
+    private final Entry<T> poison = new Entry<>(null);
+
+    // accepting: new tasks are taken in; running: workers keep taking tasks
+    private volatile boolean accepting;
+    private volatile boolean running;
+
+    /**
+     * @param name              used for worker thread names and log messages
+     * @param partitionCount    number of partitions (and at most as many
+     *                          worker threads)
+     * @param partitionCapacity maximum number of waiting tasks per partition
+     * @param overflowPolicy    what to do when a partition's queue is full
+     * @param threadFactory     creates the worker threads
+     * @param handler           processes a task; exceptions are logged and
+     *                          swallowed
+     * @param dropListener      notified about every task shed by the overflow
+     *                          policy, may be null
+     */
+    public PartitionedExecutor(String name, int partitionCount, int partitionCapacity, OverflowPolicy overflowPolicy,
+            ThreadFactory threadFactory, Consumer<T> handler, Consumer<T> dropListener) {
+        if (partitionCount < 1) {
+            throw new IllegalArgumentException("partitionCount must be at least 1");
+        }
+        this.name = name;
+        this.overflowPolicy = overflowPolicy;
+        this.threadFactory = threadFactory;
+        this.handler = handler;
+        this.dropListener = dropListener;
+        for (int i = 0; i < partitionCount; i++) {
+            partitions.add(new Partition(i, partitionCapacity));
+        }
+    }
+
+    /**
+     * Starts taking in tasks. A partition's worker thread is started with its
+     * first task.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        accepting = true;
+    }
+
+    /**
+     * Index of the partition that handles the given key.
+     */
+    public int partitionFor(String key) {
+        // spread the hash bits a little, String.hashCode() of similar names is
+        // poorly distributed in the low bits
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return Math.floorMod(hash, partitions.size());
+    }
+
+    /**
+     * Queue a task on the partition that owns the key.
+     *
+     * @return true if the task was queued, false if it was shed or the executor
+     *         isn't accepting tasks
+     */
+    public boolean submit(String key, T task) {
+        if (!accepting) {
+            return false;
+        }
+        return partitions.get(partitionFor(key)).offer(task, overflowPolicy);
+    }
+
+    /**
+     * Queue a task on the partition that owns the key, waiting for room if the
+     * queue is full whatever the overflow policy - for tasks that must not be
+     * shed on the way in.
+     *
+     * @return true if the task was queued, false if the executor isn't
+     *         accepting tasks (or stopped while waiting)
+     */
+    public boolean submitWaiting(String key, T task) {
+        if (!accepting) {
+            return false;
+        }
+        return partitions.get(partitionFor(key)).offer(task, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Stops taking in new tasks, waits until the queued ones are processed (or
+     * the timeout expires) and stops the workers.
+     *
+     * @return number of tasks that were still queued and were not run (they
+     *         don't go to the drop listener)
+     */
+    public synchronized int shutdown(long timeout, TimeUnit unit) {
+        if (!running) {
+            return 0;
+        }
+
+        accepting = false;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isIdle() && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        running = false;
+        int discarded = 0;
+        for (Partition partition : partitions) {
+            discarded += partition.stop();
+        }
+        return discarded;
+    }
+
+    /**
+     * True when no task is waiting or being processed.
+     */
+    public boolean isIdle() {
+        for (Partition partition : partitions) {
+            BlockingQueue<Entry<T>> queue = partition.queue;
+            if ((queue != null && !queue.isEmpty()) || partition.busy) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getPartitionCount() {
+        return partitions.size();
+    }
+
+    /**
+     * Number of partitions that got a task so far, and have a worker thread.
+     */
+    public int getStartedPartitionCount() {
+        int started = 0;
+        for (Partition partition : partitions) {
+            if (partition.queue != null) {
+                started++;
+            }
+        }
+        return started;
+    }
+
+    /**
+     * Number of tasks waiting in all partitions.
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Partition partition : partitions) {
+            depth += partition.getQueueDepth();
+        }
+        return depth;
+    }
+
+    /**
+     * Number of tasks shed by all partitions.
+     */
+    public long getDropped() {
+        long total = 0;
+        for (Partition partition : partitions) {
+            total += partition.dropped.get();
+        }
+        return total;
+    }
+
+    /**
+     * Current counters and lag of every partition.
+     */
+    public List<PartitionStatistics> getPartitionStatistics() {
+        long now = System.nanoTime();
+        List<PartitionStatistics> result = new ArrayList<>(partitions.size());
+        for (Partition partition : partitions) {
+            result.add(partition.statistics(now));
+        }
+        return result;
+    }
+
+    private void drop(T task) {
+        if (dropListener != null) {
+            dropListener.accept(task);
+        }
+    }
+
+    /**
+     * A queued task together with the time it was queued, needed to report the
+     * partition lag.
+     */
+    private static class Entry<T> {
+        final T task;
+        final long queuedNanos;
+
+        Entry(T task) {
+            this.task = task;
+            this.queuedNanos = System.nanoTime();
+        }
+    }
+
+    private class Partition {
+        final int index;
+        final int capacity;
+        final AtomicLong processed = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicInteger maxQueueDepth = new AtomicInteger();
+        // both created with the first task
+        volatile BlockingQueue<Entry<T>> queue;
+        Thread worker;
+        volatile boolean busy;
+
+        Partition(int index, int capacity) {
+            this.index = index;
+            this.capacity = capacity;
+        }
+
+        /**
+         * The queue, with the worker taking from it started if this is the
+         * first task. Null once the executor is stopped.
+         */
+        synchronized BlockingQueue<Entry<T>> startIfNeeded() {
+            if (queue == null && running) {
+                BlockingQueue<Entry<T>> created = new ArrayBlockingQueue<>(capacity);
+                worker = threadFactory.newThread(() -> run(created));
+                worker.setName(name + "-" + index);
+                queue = created;
+                worker.start();
+            }
+            return queue;
+        }
+
+        int getQueueDepth() {
+            BlockingQueue<Entry<T>> current = queue;
+            return current != null ? current.size() : 0;
+        }
+
+        boolean offer(T task, OverflowPolicy overflowPolicy) {
+            BlockingQueue<Entry<T>> queue = this.queue != null ? this.queue : startIfNeeded();
+            if (queue == null) {
+                return false;
+            }
+            Entry<T> entry = new Entry<>(task);
+            boolean queued;
+
+            switch (overflowPolicy) {
+                case BLOCK:
+                    queued = offerBlocking(queue, entry);
+                    break;
+                case DROP_OLDEST:
+                    queued = queue.offer(entry);
+                    while (!queued) {
+                        Entry<T> oldest = queue.poll();
+                        if (oldest != null) {
+                            dropped.incrementAndGet();
+                            LOGGER.warn("{} partition {} full, dropping oldest task", name, index);
+                            drop(oldest.task);
+                        }
+                        queued = queue.offer(entry);
+                    }
+                    break;
+                case DROP_NEWEST:
+                default:
+                    queued = queue.offer(entry);
+                    if (!queued) {
+                        dropped.incrementAndGet();
+                        LOGGER.warn("{} partition {} full, dropping new task", name, index);
+                        drop(task);
+                    }
+                    break;
+            }
+
+            if (queued) {
+                maxQueueDepth.accumulateAndGet(queue.size(), Math::max);
+            }
+            return queued;
+        }
+
+        private boolean offerBlocking(BlockingQueue<Entry<T>> queue, Entry<T> entry) {
+            try {
+                while (accepting) {
+                    if (queue.offer(entry, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            LOGGER.warn("{} stopped while waiting for space in partition {}, task not queued", name, index);
+            return false;
+        }
+
+        void run(BlockingQueue<Entry<T>> queue) {
+            while (running) {
+                Entry<T> entry;
+                try {
+                    entry = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if (entry == poison) {
+                    break;
+                }
+
+                busy = true;
+                try {
+                    handler.accept(entry.task);
+                } catch (RuntimeException e) {
+                    LOGGER.error("{} partition {}: unhandled error in task", name, index, e);
+                } finally {
+                    processed.incrementAndGet();
+                    busy = false;
+                }
+            }
+        }
+
+        synchronized int stop() {
+            if (queue == null) {
+                return 0;
+            }
+
+            // running is false, so the worker stops after its current task; the
+            // poison wakes it if it's waiting for one
+            List<Entry<T>> leftOver = new ArrayList<>();
+            queue.drainTo(leftOver);
+            while (!queue.offer(poison)) {
+                queue.drainTo(leftOver);
+            }
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            // a producer that was still waiting for space may have got in
+            queue.drainTo(leftOver);
+            leftOver.remove(poison);
+            return leftOver.size();
+        }
+
+        PartitionStatistics statistics(long now) {
+            BlockingQueue<Entry<T>> current = queue;
+            Entry<T> oldest = current != null ? current.peek() : null;
+            long lagNanos = oldest != null ? now - oldest.queuedNanos : 0;
+            return new PartitionStatistics(index, current != null ? current.size() : 0, maxQueueDepth.get(),
+                    lagNanos / 1e6, processed.get(), dropped.get());
+        }
+    }
+}
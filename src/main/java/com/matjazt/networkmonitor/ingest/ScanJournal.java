@@ -0,0 +1,402 @@
+package com.matjazt.networkmonitor.ingest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only local journal of raw scan messages, for database outages.
+ *
+ * When a message can't be processed because the database is unavailable, the
+ * pipeline appends it here instead of losing it, and replays the journal once
+ * the database is back. The journal lives in a directory of fixed-size
+ * segment files (journal-000000000001.seg, ...), each memory-mapped: an append
+ * is a copy into the mapped buffer followed by force() of the written range,
+ * so a record is on disk before the message is acknowledged, without a write
+ * system call per field.
+ *
+ * Record layout (big endian):
+ *
+ * int length | byte state | int crc32c | long receivedAt | short topic length |
+ * topic | short network length | network | int payload length | payload
+ *
+ * length and crc cover everything after the crc. The length is written last,
+ * so a record whose length is zero - the rest of a new segment is zero-filled -
+ * marks the end of the data, and a record torn by a crash fails its checksum
+ * and ends the segment as well. Replayed records are marked DONE in place;
+ * a segment is deleted once the replay has moved past it. After a restart the
+ * segments are scanned and replay continues with the first PENDING record - a
+ * record whose DONE mark didn't reach the disk is replayed again, which the
+ * duplicate and stale scan checks take care of.
+ *
+ * Disk usage is bounded: at most maxBytes / segmentSize segments exist at any
+ * time. When they're all full, append returns false and the message is lost,
+ * like before the journal existed.
+ *
+ * Records are read back strictly in append order, by a single replayer. All
+ * methods are synchronized.
+ */
+public class ScanJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScanJournal.class);
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".seg";
+
+    private static final byte PENDING = 1;
+    private static final byte DONE = 2;
+
+    // length + state + crc
+    private static final int HEADER_SIZE = 4 + 1 + 4;
+    private static final int STATE_OFFSET = 4;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    // oldest first; the last one is written to
+    private final List<Segment> segments = new ArrayList<>();
+    private long nextSegmentNumber = 1;
+
+    // replay position: always in segments.get(0)
+    private int readOffset;
+
+    private long pending;
+    private long appended;
+    private long rejected;
+
+    /**
+     * @param directory   where the segment files are kept, created if needed
+     * @param maxBytes    upper bound of the disk space used by all segments
+     * @param segmentSize size of one segment file; the largest record that fits
+     *                    is a bit smaller
+     */
+    public ScanJournal(Path directory, long maxBytes, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = (int) Math.max(1, maxBytes / segmentSize);
+    }
+
+    /**
+     * Open the existing segments and find the first record still to be
+     * replayed. Fully replayed segments are deleted.
+     */
+    public synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> path.getFileName().toString().startsWith(PREFIX)
+                    && path.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+
+        for (Path file : files) {
+            Segment segment = Segment.map(file, segmentSize);
+            segment.scan();
+            nextSegmentNumber = Math.max(nextSegmentNumber, segment.number + 1);
+            pending += segment.pendingAtOpen;
+            segments.add(segment);
+        }
+
+        // drop the fully replayed segments at the front, but keep the last one to
+        // append to
+        while (segments.size() > 1 && segments.get(0).pendingAtOpen == 0) {
+            delete(segments.remove(0));
+        }
+        readOffset = segments.isEmpty() ? 0 : segments.get(0).firstPending;
+
+        LOGGER.info("Scan journal opened in {} - {} segment(s), {} message(s) to replay, limit {} MB", directory,
+                segments.size(), pending, (long) maxSegments * segmentSize / (1024 * 1024));
+    }
+
+    /**
+     * Append a message. The record is forced to disk before this returns.
+     *
+     * @return false if the journal is full (or the message is too big for a
+     *         segment, or writing failed)
+     */
+    public synchronized boolean append(IngestMessage message) {
+        byte[] topic = message.getTopic().getBytes(StandardCharsets.UTF_8);
+        byte[] network = message.getNetworkName().getBytes(StandardCharsets.UTF_8);
+        byte[] payload = message.getPayload();
+        int bodyLength = 8 + 2 + topic.length + 2 + network.length + 4 + payload.length;
+        int recordLength = HEADER_SIZE + bodyLength;
+
+        if (recordLength > segmentSize || topic.length > Short.MAX_VALUE || network.length > Short.MAX_VALUE) {
+            LOGGER.error("Message from topic {} is too big for the journal ({} bytes)", message.getTopic(),
+                    recordLength);
+            rejected++;
+            return false;
+        }
+
+        try {
+            Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (segment == null || segment.writeOffset + recordLength > segmentSize) {
+                if (segments.size() >= maxSegments) {
+                    rejected++;
+                    return false;
+                }
+                segment = Segment.map(directory.resolve(fileName(nextSegmentNumber)), segmentSize);
+                nextSegmentNumber++;
+                segments.add(segment);
+                if (segments.size() == 1) {
+                    readOffset = 0;
+                }
+            }
+
+            ByteBuffer body = ByteBuffer.allocate(bodyLength);
+            body.putLong(message.getReceivedAt().toEpochMilli());
+            body.putShort((short) topic.length).put(topic);
+            body.putShort((short) network.length).put(network);
+            body.putInt(payload.length).put(payload);
+
+            CRC32C crc = new CRC32C();
+            crc.update(body.array(), 0, bodyLength);
+
+            int offset = segment.writeOffset;
+            MappedByteBuffer buffer = segment.buffer;
+            buffer.put(offset + STATE_OFFSET, PENDING);
+            buffer.putInt(offset + STATE_OFFSET + 1, (int) crc.getValue());
+            buffer.put(offset + HEADER_SIZE, body.array(), 0, bodyLength);
+            // last - until the length is there, the record doesn't exist
+            buffer.putInt(offset, bodyLength);
+            buffer.force(offset, recordLength);
+
+            segment.writeOffset += recordLength;
+            pending++;
+            appended++;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Failed to append to the scan journal", e);
+            rejected++;
+            return false;
+        }
+    }
+
+    /**
+     * Append the message only if there are messages waiting to be replayed -
+     * then it must queue up behind them, so scans are applied in order.
+     *
+     * @return true if the message was appended
+     */
+    public synchronized boolean appendIfPending(IngestMessage message) {
+        return pending > 0 && append(message);
+    }
+
+    /**
+     * The oldest record not replayed yet, or null if there is none.
+     */
+    public synchronized Entry peek() {
+        while (!segments.isEmpty()) {
+            Segment segment = segments.get(0);
+            while (readOffset < segment.writeOffset) {
+                MappedByteBuffer buffer = segment.buffer;
+                int bodyLength = buffer.getInt(readOffset);
+                if (buffer.get(readOffset + STATE_OFFSET) == PENDING) {
+                    return read(segment, readOffset, bodyLength);
+                }
+                readOffset += HEADER_SIZE + bodyLength;
+            }
+            if (segments.size() == 1) {
+                // the one being written to - more may come
+                return null;
+            }
+            delete(segments.remove(0));
+            readOffset = 0;
+        }
+        return null;
+    }
+
+    /**
+     * Mark the record returned by peek() as replayed.
+     */
+    public synchronized void markDone(Entry entry) {
+        if (segments.isEmpty() || segments.get(0) != entry.segment || entry.offset != readOffset) {
+            throw new IllegalStateException("Journal records must be completed in order");
+        }
+        // not forced - if it's lost in a crash, the record is simply replayed again
+        entry.segment.buffer.put(entry.offset + STATE_OFFSET, DONE);
+        readOffset += HEADER_SIZE + entry.segment.buffer.getInt(entry.offset);
+        pending--;
+    }
+
+    /**
+     * Number of messages waiting to be replayed.
+     */
+    public synchronized long getPending() {
+        return pending;
+    }
+
+    /**
+     * Messages appended since startup.
+     */
+    public synchronized long getAppended() {
+        return appended;
+    }
+
+    /**
+     * Messages that couldn't be appended (journal full, too big, I/O error).
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Disk space taken by the segment files.
+     */
+    public synchronized long getSizeBytes() {
+        return (long) segments.size() * segmentSize;
+    }
+
+    public long getMaxSizeBytes() {
+        return (long) maxSegments * segmentSize;
+    }
+
+    private Entry read(Segment segment, int offset, int bodyLength) {
+        ByteBuffer body = segment.buffer.duplicate();
+        body.position(offset + HEADER_SIZE);
+
+        Instant receivedAt = Instant.ofEpochMilli(body.getLong());
+        byte[] topic = new byte[body.getShort()];
+        body.get(topic);
+        byte[] network = new byte[body.getShort()];
+        body.get(network);
+        byte[] payload = new byte[body.getInt()];
+        body.get(payload);
+
+        return new Entry(segment, offset, new String(topic, StandardCharsets.UTF_8),
+                new String(network, StandardCharsets.UTF_8), payload, receivedAt);
+    }
+
+    private static void delete(Segment segment) {
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            // e.g. Windows refuses while the file is still mapped - it's deleted when
+            // the journal is opened next time
+            LOGGER.warn("Could not delete replayed journal segment {}: {}", segment.file, e.getMessage());
+        }
+    }
+
+    private static String fileName(long number) {
+        return String.format("%s%012d%s", PREFIX, number, SUFFIX);
+    }
+
+    /**
+     * A journaled message, as returned by peek().
+     */
+    public static class Entry {
+
+        private final Segment segment;
+        private final int offset;
+        private final String topic;
+        private final String networkName;
+        private final byte[] payload;
+        private final Instant receivedAt;
+
+        Entry(Segment segment, int offset, String topic, String networkName, byte[] payload, Instant receivedAt) {
+            this.segment = segment;
+            this.offset = offset;
+            this.topic = topic;
+            this.networkName = networkName;
+            this.payload = payload;
+            this.receivedAt = receivedAt;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public String getNetworkName() {
+            return networkName;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        /**
+         * When the message originally arrived from the broker.
+         */
+        public Instant getReceivedAt() {
+            return receivedAt;
+        }
+    }
+
+    /**
+     * One memory-mapped segment file.
+     */
+    private static class Segment {
+
+        final Path file;
+        final long number;
+        final MappedByteBuffer buffer;
+        int writeOffset;
+        int firstPending = -1;
+        long pendingAtOpen;
+
+        private Segment(Path file, long number, MappedByteBuffer buffer) {
+            this.file = file;
+            this.number = number;
+            this.buffer = buffer;
+        }
+
+        static Segment map(Path file, int size) throws IOException {
+            String name = file.getFileName().toString();
+            long number = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                // mapping beyond the end grows the file; the mapping outlives the channel
+                return new Segment(file, number, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+
+        /**
+         * Find the end of the valid records and count the pending ones.
+         */
+        void scan() {
+            int offset = 0;
+            int size = buffer.capacity();
+            while (offset + HEADER_SIZE <= size) {
+                int bodyLength = buffer.getInt(offset);
+                if (bodyLength <= 0 || offset + HEADER_SIZE + bodyLength > size) {
+                    break;
+                }
+                byte state = buffer.get(offset + STATE_OFFSET);
+                CRC32C crc = new CRC32C();
+                ByteBuffer body = buffer.duplicate();
+                body.position(offset + HEADER_SIZE).limit(offset + HEADER_SIZE + bodyLength);
+                crc.update(body);
+                if ((state != PENDING && state != DONE) || (int) crc.getValue() != buffer.getInt(offset + STATE_OFFSET + 1)) {
+                    LOGGER.warn("Journal segment {} has a damaged record at offset {}, ignoring the rest of it",
+                            file, offset);
+                    break;
+                }
+                if (state == PENDING) {
+                    if (firstPending < 0) {
+                        firstPending = offset;
+                    }
+                    pendingAtOpen++;
+                }
+                offset += HEADER_SIZE + bodyLength;
+            }
+            writeOffset = offset;
+            if (firstPending < 0) {
+                firstPending = offset;
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.matjazt.networkmonitor.ingest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.matjazt.networkmonitor.model.NetworkStatusMessage;
+
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.stream.JsonParser;
+import jakarta.json.stream.JsonParser.Event;
+import jakarta.json.stream.JsonParserFactory;
+import jakarta.json.stream.JsonParsingException;
+
+/**
+ * Decodes scan payloads into NetworkStatusMessage objects.
+ *
+ * Uses the streaming JSON-P parser directly on the raw MQTT payload bytes:
+ * there's no intermediate String copy of the payload and no JSON-B
+ * reflection/binding machinery. The parser factory is created once and shared -
+ * it is thread-safe, so one decoder instance can be used by all ingest
+ * workers.
+ *
+ * Unknown fields are skipped, so scanners may add information to the message
+ * without breaking older servers.
+ */
+public class ScanMessageDecoder {
+
+    // creating a factory means a service lookup of the JSON-P provider, so do it once
+    private static final JsonParserFactory PARSER_FACTORY = Json.createParserFactory(Map.of());
+
+    /**
+     * Parse a UTF-8 encoded scan message.
+     *
+     * @throws IllegalArgumentException if the payload isn't a valid scan message
+     */
+    public NetworkStatusMessage decode(byte[] payload) {
+        try (JsonParser parser = PARSER_FACTORY.createParser(new ByteArrayInputStream(payload),
+                StandardCharsets.UTF_8)) {
+
+            expect(parser, parser.next(), Event.START_OBJECT);
+
+            NetworkStatusMessage message = new NetworkStatusMessage();
+            Event event;
+            while ((event = parser.next()) != Event.END_OBJECT) {
+                expect(parser, event, Event.KEY_NAME);
+                String key = parser.getString();
+                event = parser.next();
+
+                switch (key) {
+                    case "hostname":
+                        message.setHostname(readString(parser, event));
+                        break;
+                    case "timestamp":
+                        String timestamp = readString(parser, event);
+                        message.setTimestamp(timestamp != null ? Instant.parse(timestamp) : null);
+                        break;
+                    case "devices":
+                        message.setDevices(readDevices(parser, event));
+                        break;
+                    default:
+                        skipValue(parser, event);
+                        break;
+                }
+            }
+
+            if (message.getTimestamp() == null) {
+                throw new IllegalArgumentException("Scan message has no timestamp");
+            }
+            if (message.getDevices() == null) {
+                // an empty list would mean "everything went offline", so don't guess
+                throw new IllegalArgumentException("Scan message has no device list");
+            }
+            return message;
+
+        } catch (JsonException | DateTimeParseException | IllegalStateException
+                | NoSuchElementException e) {
+            throw new IllegalArgumentException("Failed to parse JSON message", e);
+        }
+    }
+
+    /**
+     * Read only the scan timestamp. Stops as soon as it's found, so when the
+     * timestamp comes before the device list (as scanners send it) the device
+     * list is never parsed. Used to recognize duplicates cheaply.
+     *
+     * @return the timestamp, or null if the payload has none or isn't valid -
+     *         decode will report the problem
+     */
+    public Instant readTimestamp(byte[] payload) {
+        try (JsonParser parser = PARSER_FACTORY.createParser(new ByteArrayInputStream(payload),
+                StandardCharsets.UTF_8)) {
+
+            expect(parser, parser.next(), Event.START_OBJECT);
+
+            Event event;
+            while ((event = parser.next()) != Event.END_OBJECT) {
+                expect(parser, event, Event.KEY_NAME);
+                String key = parser.getString();
+                event = parser.next();
+
+                if (key.equals("timestamp")) {
+                    String timestamp = readString(parser, event);
+                    return timestamp != null ? Instant.parse(timestamp) : null;
+                }
+                skipValue(parser, event);
+            }
+            return null;
+
+        } catch (JsonException | DateTimeParseException | IllegalStateException
+                | NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    private List<NetworkStatusMessage.DeviceInfo> readDevices(JsonParser parser, Event event) {
+        if (event == Event.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, event, Event.START_ARRAY);
+
+        List<NetworkStatusMessage.DeviceInfo> devices = new ArrayList<>();
+        while ((event = parser.next()) != Event.END_ARRAY) {
+            expect(parser, event, Event.START_OBJECT);
+
+            NetworkStatusMessage.DeviceInfo device = new NetworkStatusMessage.DeviceInfo();
+            while ((event = parser.next()) != Event.END_OBJECT) {
+                expect(parser, event, Event.KEY_NAME);
+                String key = parser.getString();
+                event = parser.next();
+
+                switch (key) {
+                    case "ip":
+                        device.setIp(readString(parser, event));
+                        break;
+                    case "mac":
+                        device.setMac(readString(parser, event));
+                        break;
+                    default:
+                        skipValue(parser, event);
+                        break;
+                }
+            }
+            devices.add(device);
+        }
+        return devices;
+    }
+
+    private static String readString(JsonParser parser, Event event) {
+        if (event == Event.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, event, Event.VALUE_STRING);
+        return parser.getString();
+    }
+
+    private static void skipValue(JsonParser parser, Event event) {
+        if (event == Event.START_OBJECT) {
+            parser.skipObject();
+        } else if (event == Event.START_ARRAY) {
+            parser.skipArray();
+        }
+        // scalar values are already consumed
+    }
+
+    private static void expect(JsonParser parser, Event actual, Event expected) {
+        if (actual != expected) {
+            throw new JsonParsingException("Expected " + expected + " but found " + actual, parser.getLocation());
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.matjazt.networkmonitor.ingest;
+
+/**
+ * How MqttService subscribes to the scan topics.
+ */
+public enum SubscriptionMode {
+    /**
+     * One subscription per network in the database, made at startup. Only
+     * known networks are received; a network added later needs a restart.
+     */
+    PER_NETWORK,
+
+    /**
+     * A single subscription with the network level of the topic template
+     * replaced by the + wildcard (network/+/scan). Every network is received,
+     * including new ones, without any broker round trips; TopicRouter picks
+     * the network name out of the topic and applies the allow/deny filters.
+     */
+    WILDCARD;
+}
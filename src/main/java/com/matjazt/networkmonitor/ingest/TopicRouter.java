@@ -0,0 +1,121 @@
+package com.matjazt.networkmonitor.ingest;
+
+import java.util.regex.Pattern;
+
+/**
+ * Maps MQTT topics to network names and back, based on mqtt.topic.template
+ * (e.g. network/{networkName}/scan).
+ *
+ * The {networkName} placeholder must be a whole topic level, so it can be
+ * replaced by the single level wildcard + for a wildcard subscription, and
+ * the network name can be picked out of an incoming topic by its position
+ * instead of by pattern matching.
+ *
+ * Optional allow and deny regular expressions decide which network names are
+ * accepted. A name must match the allow pattern (if set) and must not match the
+ * deny pattern (if set), both matched against the whole name.
+ */
+public class TopicRouter {
+
+    private static final String PLACEHOLDER = "{networkName}";
+
+    private final String[] levels;
+    private final int networkLevel;
+    private final Pattern allow;
+    private final Pattern deny;
+
+    /**
+     * @param template topic template with one {networkName} level
+     * @param allow    regular expression of accepted network names, null to
+     *                 accept all
+     * @param deny     regular expression of rejected network names, null to
+     *                 reject none
+     * @throws IllegalArgumentException if the template has no {networkName}
+     *                                  level, or a pattern is invalid
+     */
+    public TopicRouter(String template, String allow, String deny) {
+        this.levels = template.split("/", -1);
+
+        int found = -1;
+        for (int i = 0; i < levels.length; i++) {
+            if (levels[i].equals(PLACEHOLDER)) {
+                if (found >= 0) {
+                    throw new IllegalArgumentException("Topic template has more than one " + PLACEHOLDER
+                            + " level: " + template);
+                }
+                found = i;
+            } else if (levels[i].contains(PLACEHOLDER)) {
+                throw new IllegalArgumentException(PLACEHOLDER + " must be a whole topic level: " + template);
+            }
+        }
+        if (found < 0) {
+            throw new IllegalArgumentException("Topic template has no " + PLACEHOLDER + " level: " + template);
+        }
+        this.networkLevel = found;
+
+        this.allow = allow != null && !allow.isBlank() ? Pattern.compile(allow) : null;
+        this.deny = deny != null && !deny.isBlank() ? Pattern.compile(deny) : null;
+    }
+
+    /**
+     * The topic a network's scans are published to.
+     */
+    public String topicFor(String networkName) {
+        String[] topic = levels.clone();
+        topic[networkLevel] = networkName;
+        return String.join("/", topic);
+    }
+
+    /**
+     * Subscription filter matching the topics of all networks.
+     */
+    public String wildcardFilter() {
+        return topicFor("+");
+    }
+
+    /**
+     * Network name of an incoming message.
+     *
+     * @return the network name, or null if the topic doesn't match the template
+     *         or the network is filtered out
+     */
+    public String route(String topic) {
+        String networkName = networkName(topic);
+        return networkName != null && isAllowed(networkName) ? networkName : null;
+    }
+
+    /**
+     * Does the network pass the allow/deny filters?
+     */
+    public boolean isAllowed(String networkName) {
+        if (allow != null && !allow.matcher(networkName).matches()) {
+            return false;
+        }
+        return deny == null || !deny.matcher(networkName).matches();
+    }
+
+    private String networkName(String topic) {
+        // walk the levels without splitting, this runs for every message
+        int start = 0;
+        String networkName = null;
+        for (int i = 0; i < levels.length; i++) {
+            int end = topic.indexOf('/', start);
+            boolean last = i == levels.length - 1;
+            if (last != (end < 0)) {
+                return null; // more or fewer levels than the template
+            }
+            if (end < 0) {
+                end = topic.length();
+            }
+
+            if (i == networkLevel) {
+                networkName = topic.substring(start, end);
+            } else if (!topic.regionMatches(start, levels[i], 0, levels[i].length())
+                    || end - start != levels[i].length()) {
+                return null;
+            }
+            start = end + 1;
+        }
+        return networkName == null || networkName.isEmpty() ? null : networkName;
+    }
+}
@@ -0,0 +1,37 @@
+package com.matjazt.networkmonitor.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for sending an alert email. Only the
+ * recipient's domain is recorded - recordings get passed around, addresses
+ * don't belong in them - which is enough to tell a slow mail server apart.
+ */
+@Name("networkmonitor.EmailSend")
+@Label("Alert Email Send")
+@Category({ "NetworkMonitor", "Alerts" })
+@Description("An alert email handed to the SMTP server")
+@StackTrace(false)
+public class EmailSendEvent extends Event {
+
+    @Label("Recipient Domain")
+    @Description("Domain(s) of the recipient address(es)")
+    private String recipientDomain;
+
+    @Label("Outcome")
+    @Description("\"sent\", or the simple name of the exception")
+    private String outcome;
+
+    public void setRecipientDomain(String recipientDomain) {
+        this.recipientDomain = recipientDomain;
+    }
+
+    public void setOutcome(String outcome) {
+        this.outcome = outcome;
+    }
+}
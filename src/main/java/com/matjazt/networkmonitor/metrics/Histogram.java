@@ -0,0 +1,84 @@
+package com.matjazt.networkmonitor.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram with fixed bucket boundaries.
+ *
+ * Like HdrHistogram, the boundaries are log-linear: every power of two is
+ * split into the same number of sub-buckets, so the relative error is the
+ * same for a 50 µs query and a 5 s alert check (with 2 sub-buckets per
+ * octave, a value is known to within ~41%; the sum is exact). Recording is a
+ * binary search over a few dozen longs and two atomic adds - cheap enough for
+ * every DAO call.
+ *
+ * Values are recorded in their natural unit (nanoseconds for latencies, plain
+ * numbers for counts); MetricsRegistry scales them for export.
+ */
+public class Histogram {
+
+    private final long[] upperBounds;
+    // one more than upperBounds - the last one counts values above them all
+    private final AtomicLongArray counts;
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * @param upperBounds inclusive upper bounds of the buckets, ascending
+     */
+    public Histogram(long[] upperBounds) {
+        this.upperBounds = upperBounds.clone();
+        this.counts = new AtomicLongArray(upperBounds.length + 1);
+    }
+
+    /**
+     * Log-linear bucket boundaries from lowest to at least highest, with
+     * subBuckets boundaries per power of two.
+     */
+    public static long[] logLinearBounds(long lowest, long highest, int subBuckets) {
+        int octaves = 64 - Long.numberOfLeadingZeros(Math.max(highest / lowest, 1));
+        long[] bounds = new long[octaves * subBuckets + 1];
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = Math.round(lowest * Math.pow(2, i / (double) subBuckets));
+        }
+        return bounds;
+    }
+
+    public void record(long value) {
+        int low = 0;
+        int high = upperBounds.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (upperBounds[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        counts.incrementAndGet(low);
+        sum.add(value);
+    }
+
+    /**
+     * Inclusive upper bounds of the buckets; values above the last one are
+     * counted in an extra bucket.
+     */
+    public long[] getUpperBounds() {
+        return upperBounds.clone();
+    }
+
+    /**
+     * Count per bucket (not cumulative), one more than getUpperBounds().
+     */
+    public long[] getBucketCounts() {
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+}
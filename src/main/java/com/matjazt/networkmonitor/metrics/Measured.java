@@ -0,0 +1,22 @@
+package com.matjazt.networkmonitor.metrics;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import jakarta.interceptor.InterceptorBinding;
+
+/**
+ * Records the duration of every call of the annotated bean's methods in the
+ * DAO latency histogram, one series per method (see MeasuredInterceptor).
+ *
+ * Similar to an action filter in ASP.NET: the container wraps the calls, the
+ * bean itself doesn't know about it. Calls from within the bean (this.x())
+ * don't go through the container and aren't measured.
+ */
+@InterceptorBinding
+@Target({ ElementType.TYPE, ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Measured {
+}
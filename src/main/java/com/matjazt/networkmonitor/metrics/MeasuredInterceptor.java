@@ -0,0 +1,33 @@
+package com.matjazt.networkmonitor.metrics;
+
+import jakarta.annotation.Priority;
+import jakarta.inject.Inject;
+import jakarta.interceptor.AroundInvoke;
+import jakarta.interceptor.Interceptor;
+import jakarta.interceptor.InvocationContext;
+
+/**
+ * Times the methods of @Measured beans.
+ *
+ * APPLICATION priority runs it inside @Transactional (PLATFORM_BEFORE), so
+ * the time is the query's, not the transaction's. Failed calls are recorded
+ * too - a query that times out is exactly the one we want to see.
+ */
+@Measured
+@Interceptor
+@Priority(Interceptor.Priority.APPLICATION)
+public class MeasuredInterceptor {
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    @AroundInvoke
+    public Object measure(InvocationContext context) throws Exception {
+        long startNanos = System.nanoTime();
+        try {
+            return context.proceed();
+        } finally {
+            metrics.recordDaoCall(context.getMethod().getName(), System.nanoTime() - startNanos);
+        }
+    }
+}
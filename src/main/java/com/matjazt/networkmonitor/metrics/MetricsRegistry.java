@@ -0,0 +1,231 @@
+package com.matjazt.networkmonitor.metrics;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * The application's metrics, exported in the Prometheus text format by
+ * MetricsResource (GET /metrics).
+ *
+ * A small built-in registry rather than MicroProfile Metrics: it needs no
+ * server support, and histograms (see Histogram) have the same boundaries
+ * everywhere, so they can be aggregated across instances in Prometheus.
+ *
+ * All metrics are declared here, with their help text and labels; a series
+ * (one combination of label values, e.g. network="MaliGrdi") is created the
+ * first time it's used. Counters only count since startup, as Prometheus
+ * expects.
+ */
+@ApplicationScoped
+public class MetricsRegistry {
+
+    // latencies from 16 µs to ~70 s, 2 buckets per power of two
+    private static final long[] LATENCY_BOUNDS = Histogram.logLinearBounds(16_000, 64_000_000_000L, 2);
+    // scan to alert latencies from 1 ms to ~4.5 h (alerting delays are minutes)
+    private static final long[] ALERT_LATENCY_BOUNDS = Histogram.logLinearBounds(1_000_000, 16_384_000_000_000L, 2);
+    // counts from 1 to 4096, a bucket per power of two
+    private static final long[] COUNT_BOUNDS = Histogram.logLinearBounds(1, 4096, 1);
+    // exported values are the recorded ones with the decimal point moved left
+    private static final int NANOS_TO_SECONDS = 9;
+
+    public static final String SCAN_PROCESSING = "networkmonitor_scan_processing_seconds";
+    public static final String SCAN_LATENCY = "networkmonitor_scan_latency_seconds";
+    public static final String SCAN_DAO_CALLS = "networkmonitor_scan_dao_calls";
+    public static final String DAO = "networkmonitor_dao_seconds";
+    public static final String ALERT_CHECK = "networkmonitor_alert_check_seconds";
+    public static final String EMAIL_SEND = "networkmonitor_email_send_seconds";
+    public static final String ALERT_LATENCY = "networkmonitor_alert_latency_seconds";
+    public static final String DEVICES_SEEN = "networkmonitor_devices_seen_total";
+    public static final String DEVICE_TRANSITIONS = "networkmonitor_device_transitions_total";
+    public static final String ALERTS_OPENED = "networkmonitor_alerts_opened_total";
+    public static final String ALERTS_CLOSED = "networkmonitor_alerts_closed_total";
+
+    // DAO calls made on each thread, for the calls per scan
+    private static final ThreadLocal<long[]> DAO_CALLS = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    public MetricsRegistry() {
+        declareHistogram(SCAN_PROCESSING, "Duration of MessageProcessingService.processMessage, commit included",
+                LATENCY_BOUNDS, NANOS_TO_SECONDS);
+        declareHistogram(SCAN_LATENCY, "Time from MQTT arrival of a scan to the commit of its changes",
+                LATENCY_BOUNDS, NANOS_TO_SECONDS);
+        declareHistogram(SCAN_DAO_CALLS, "MonitoringDAO calls (roughly SQL statements) made while processing a scan",
+                COUNT_BOUNDS, 0);
+        declareHistogram(DAO, "Duration of MonitoringDAO calls", LATENCY_BOUNDS, NANOS_TO_SECONDS, "operation");
+        declareHistogram(ALERT_CHECK, "Duration of a settings check (alert.check.interval)",
+                LATENCY_BOUNDS, NANOS_TO_SECONDS);
+        declareHistogram(EMAIL_SEND, "Duration of sending an alert email, failures included",
+                LATENCY_BOUNDS, NANOS_TO_SECONDS);
+        declareHistogram(ALERT_LATENCY, "Scan to alert email latency of opened alerts, by stage "
+                + "(transport, ingest, delay, pickup, email) and in total", ALERT_LATENCY_BOUNDS, NANOS_TO_SECONDS,
+                "type", "stage");
+        declareCounter(DEVICES_SEEN, "Devices reported in processed scans", "network");
+        declareCounter(DEVICE_TRANSITIONS, "Devices that came online or went offline", "network", "state");
+        declareCounter(ALERTS_OPENED, "Alerts opened", "network", "type");
+        declareCounter(ALERTS_CLOSED, "Alerts closed", "network");
+    }
+
+    /**
+     * The histogram series of the given metric and label values (in the order
+     * the labels were declared).
+     */
+    public Histogram histogram(String name, String... labelValues) {
+        return (Histogram) family(name, "histogram").series(labelValues);
+    }
+
+    /**
+     * Add amount to the counter series of the given metric and label values.
+     */
+    public void increment(String name, long amount, String... labelValues) {
+        if (amount != 0) {
+            ((LongAdder) family(name, "counter").series(labelValues)).add(amount);
+        }
+    }
+
+    /**
+     * Record a DAO call made on the current thread. Called by
+     * MeasuredInterceptor.
+     */
+    public void recordDaoCall(String operation, long nanos) {
+        histogram(DAO, operation).record(nanos);
+        DAO_CALLS.get()[0]++;
+    }
+
+    /**
+     * DAO calls made on the current thread so far; the difference of two
+     * readings is the number of calls in between.
+     */
+    public long getDaoCallsOnThisThread() {
+        return DAO_CALLS.get()[0];
+    }
+
+    /**
+     * All metrics in the Prometheus text exposition format (version 0.0.4).
+     */
+    public String toPrometheusText() {
+        StringBuilder text = new StringBuilder(16 * 1024);
+        for (Family family : families.values()) {
+            text.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            text.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+
+            List<Map.Entry<List<String>, Object>> series = new ArrayList<>(family.series.entrySet());
+            series.sort((a, b) -> String.join("\u0000", a.getKey()).compareTo(String.join("\u0000", b.getKey())));
+            for (Map.Entry<List<String>, Object> entry : series) {
+                String labels = labels(family.labelNames, entry.getKey());
+                if (entry.getValue() instanceof LongAdder) {
+                    text.append(family.name).append(braces(labels)).append(' ')
+                            .append(((LongAdder) entry.getValue()).sum()).append('\n');
+                } else {
+                    appendHistogram(text, family, labels, (Histogram) entry.getValue());
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    private void appendHistogram(StringBuilder text, Family family, String labels, Histogram histogram) {
+        long[] bounds = histogram.getUpperBounds();
+        long[] counts = histogram.getBucketCounts();
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += counts[i];
+            text.append(family.name).append("_bucket{").append(prefix).append("le=\"")
+                    .append(decimal(bounds[i], family.decimals)).append("\"} ").append(cumulative).append('\n');
+        }
+        cumulative += counts[bounds.length];
+        text.append(family.name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(cumulative)
+                .append('\n');
+        text.append(family.name).append("_sum").append(braces(labels)).append(' ')
+                .append(decimal(histogram.getSum(), family.decimals)).append('\n');
+        text.append(family.name).append("_count").append(braces(labels)).append(' ').append(cumulative)
+                .append('\n');
+    }
+
+    private void declareHistogram(String name, String help, long[] bounds, int decimals, String... labelNames) {
+        families.put(name, new Family(name, help, "histogram", labelNames, bounds, decimals));
+    }
+
+    private void declareCounter(String name, String help, String... labelNames) {
+        families.put(name, new Family(name, help, "counter", labelNames, null, 0));
+    }
+
+    private Family family(String name, String type) {
+        Family family = families.get(name);
+        if (family == null || !family.type.equals(type)) {
+            throw new IllegalArgumentException("No " + type + " named " + name);
+        }
+        return family;
+    }
+
+    private static String labels(String[] names, List<String> values) {
+        StringBuilder labels = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                labels.append(',');
+            }
+            labels.append(names[i]).append("=\"").append(escape(values.get(i))).append('"');
+        }
+        return labels.toString();
+    }
+
+    // exact, e.g. 256000 ns -> 0.000256 (s), without floating point noise in
+    // the bucket labels
+    private static String decimal(long value, int decimals) {
+        return BigDecimal.valueOf(value, decimals).stripTrailingZeros().toPlainString();
+    }
+
+    private static String braces(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * A metric with all its series.
+     */
+    private static class Family {
+
+        final String name;
+        final String help;
+        final String type;
+        final String[] labelNames;
+        final long[] bounds;
+        final int decimals;
+        final Map<List<String>, Object> series = new ConcurrentHashMap<>();
+
+        Family(String name, String help, String type, String[] labelNames, long[] bounds, int decimals) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labelNames = labelNames;
+            this.bounds = bounds;
+            this.decimals = decimals;
+        }
+
+        Object series(String[] labelValues) {
+            if (labelValues.length != labelNames.length) {
+                throw new IllegalArgumentException(name + " has labels " + Arrays.toString(labelNames));
+            }
+            List<String> key = labelValues.length == 0 ? List.of() : Arrays.asList(labelValues);
+            Object existing = series.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            return series.computeIfAbsent(List.copyOf(key),
+                    k -> bounds != null ? new Histogram(bounds) : new LongAdder());
+        }
+    }
+}
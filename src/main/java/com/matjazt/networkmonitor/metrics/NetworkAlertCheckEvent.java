@@ -0,0 +1,51 @@
+package com.matjazt.networkmonitor.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for the check of a network or one of its
+ * devices whose alert deadline was due (AlerterService.processAlerts). Its
+ * duration includes the alert emails sent during the check, which also have
+ * their own EmailSendEvent.
+ */
+@Name("networkmonitor.NetworkAlertCheck")
+@Label("Network Alert Check")
+@Category({ "NetworkMonitor", "Alerts" })
+@Description("Alert evaluation of a network or device at its deadline")
+@StackTrace(false)
+public class NetworkAlertCheckEvent extends Event {
+
+    @Label("Network")
+    private String network;
+
+    @Label("Devices Evaluated")
+    @Description("1 for a device check, 0 for the network itself")
+    private int devicesEvaluated;
+
+    @Label("Alerts Opened")
+    private int alertsOpened;
+
+    @Label("Alerts Closed")
+    private int alertsClosed;
+
+    public void setNetwork(String network) {
+        this.network = network;
+    }
+
+    public void setDevicesEvaluated(int devicesEvaluated) {
+        this.devicesEvaluated = devicesEvaluated;
+    }
+
+    public void alertOpened() {
+        alertsOpened++;
+    }
+
+    public void alertClosed() {
+        alertsClosed++;
+    }
+}
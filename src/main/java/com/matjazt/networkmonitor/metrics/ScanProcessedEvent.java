@@ -0,0 +1,72 @@
+package com.matjazt.networkmonitor.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for one processed scan
+ * (MessageProcessingService.processMessage).
+ *
+ * JFR events cost next to nothing while nobody is recording: begin() and
+ * commit() are intrinsics the JIT removes together with the allocation, so
+ * they can stay in the hot path. Attach a recording to a slow production
+ * instance (jcmd &lt;pid&gt; JFR.start ...) and the events show exactly which
+ * network's scan was slow - something the histograms in MetricsRegistry can't
+ * tell. The duration doesn't include the commit (@Transactional wraps the
+ * method), the commit shows up as JDBC I/O in the same recording.
+ */
+@Name("networkmonitor.ScanProcessed")
+@Label("Scan Processed")
+@Category({ "NetworkMonitor", "Ingest" })
+@Description("An MQTT scan message applied to the device state")
+@StackTrace(false)
+public class ScanProcessedEvent extends Event {
+
+    @Label("Network")
+    private String network;
+
+    @Label("Devices")
+    @Description("Devices reported in the scan")
+    private int devices;
+
+    @Label("New Devices")
+    private int newDevices;
+
+    @Label("Came Online")
+    private int cameOnline;
+
+    @Label("Went Offline")
+    private int wentOffline;
+
+    @Label("Failed")
+    @Description("Processing threw an exception, the transaction was rolled back")
+    private boolean failed;
+
+    public void setNetwork(String network) {
+        this.network = network;
+    }
+
+    public void setDevices(int devices) {
+        this.devices = devices;
+    }
+
+    public void setNewDevices(int newDevices) {
+        this.newDevices = newDevices;
+    }
+
+    public void setCameOnline(int cameOnline) {
+        this.cameOnline = cameOnline;
+    }
+
+    public void setWentOffline(int wentOffline) {
+        this.wentOffline = wentOffline;
+    }
+
+    public void setFailed(boolean failed) {
+        this.failed = failed;
+    }
+}
@@ -9,8 +9,10 @@ import java.util.List;
  * DTOs are simple data containers used for transferring data between layers.
  * This matches the MQTT payload structure exactly.
  * 
- * Jakarta JSON-B (JSON Binding) automatically maps JSON to these objects,
- * similar to System.Text.Json in .NET.
+ * Incoming payloads are decoded by ScanMessageDecoder (streaming JSON-P).
+ * The class also stays compatible with Jakarta JSON-B (JSON Binding), which
+ * maps JSON to these objects automatically, similar to System.Text.Json in
+ * .NET.
  */
 public class NetworkStatusMessage {
 
@@ -20,7 +22,7 @@ public class NetworkStatusMessage {
     private String hostname;
 
     /**
-     * Timestamp from the message (format: "2025-12-03 10:18:56").
+     * Timestamp from the message (ISO 8601, e.g. "2026-01-05T11:45:40+01:00").
      */
     private Instant timestamp;
 
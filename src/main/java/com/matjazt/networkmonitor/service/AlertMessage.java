@@ -0,0 +1,108 @@
+package com.matjazt.networkmonitor.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Map;
+
+import com.matjazt.networkmonitor.entity.AlertEntity;
+import com.matjazt.networkmonitor.entity.AlertType;
+import com.matjazt.networkmonitor.entity.DeviceEntity;
+import com.matjazt.networkmonitor.entity.NetworkEntity;
+import com.matjazt.tools.SimpleTools;
+
+/**
+ * Subject and text of an alert notification, as logged and sent by email by
+ * AlerterService.
+ *
+ * Building it doesn't touch the database or the mail server, so it can be
+ * benchmarked on its own (see AlertMessageBenchmark).
+ */
+public class AlertMessage {
+
+    private static final Map<AlertType, String> ALERT_TYPE_MESSAGES = Map.ofEntries(
+            Map.entry(AlertType.NETWORK_DOWN, "Network is unavailable"),
+            Map.entry(AlertType.DEVICE_DOWN, "Device is offline"),
+            Map.entry(AlertType.DEVICE_UNAUTHORIZED, "Unauthorized device detected"));
+
+    private final String subject;
+    private final String body;
+
+    private AlertMessage(String subject, String body) {
+        this.subject = subject;
+        this.body = body;
+    }
+
+    /**
+     * Build the notification of an opened or closed alert.
+     *
+     * @param device  null for network alerts
+     * @param message additional info, may be null
+     * @param utcNow  current UTC time, shown in the text
+     */
+    public static AlertMessage build(AlertEntity alert, boolean closure, NetworkEntity network, DeviceEntity device,
+            String message, LocalDateTime utcNow) {
+
+        String baseMessage = ALERT_TYPE_MESSAGES.get(alert.getAlertType());
+        if (baseMessage == null) {
+            throw new IllegalArgumentException("Unsupported alert type: " + alert.getAlertType());
+        }
+
+        var subject = "[" + network.getName() + "] ";
+
+        var fullMessageEntries = new ArrayList<String>();
+
+        if (alert.getAlertType() == AlertType.NETWORK_DOWN) {
+            subject += "network";
+        } else {
+            subject += "device";
+        }
+
+        if (closure) {
+            fullMessageEntries.add("ALERT CLOSED");
+            subject += " alert closure";
+        } else {
+            fullMessageEntries.add("ALERT TRIGGERED");
+            subject += " alert";
+        }
+        fullMessageEntries.add(""); // empty line
+
+        fullMessageEntries.add("Network: " + network.getName());
+
+        if (device != null) {
+            fullMessageEntries.add("Device: " + device.getNameOrUnknown() + " (mac:" + device.getMacAddress() + ", ip:"
+                    + device.getIpAddress() + ")");
+            subject += " for " + device.getNameOrMac();
+        }
+        fullMessageEntries.add("UTC time: " + SimpleTools.formatDefault(utcNow));
+        fullMessageEntries.add("Alert Type: " + alert.getAlertType());
+        fullMessageEntries.add("Alert Id: " + alert.getId());
+
+        fullMessageEntries.add(""); // empty line
+
+        if (!closure) {
+            fullMessageEntries.add(baseMessage + ".");
+        }
+
+        if (message != null && !message.isBlank()) {
+            fullMessageEntries.add(""); // empty line
+            fullMessageEntries.add("Additional info: " + message);
+            fullMessageEntries.add("Original description: " + baseMessage + ".");
+        }
+
+        return new AlertMessage(subject, String.join(System.lineSeparator(), fullMessageEntries));
+    }
+
+    /**
+     * Email subject, e.g. "[MaliGrdi] device alert for printer".
+     */
+    public String getSubject() {
+        return subject;
+    }
+
+    /**
+     * Full text of the notification.
+     */
+    public String getBody() {
+        return body;
+    }
+}
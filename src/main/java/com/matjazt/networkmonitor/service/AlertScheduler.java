@@ -0,0 +1,206 @@
+package com.matjazt.networkmonitor.service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Priority queue of alert deadlines, one per network and per device, handed
+ * to a handler by a single dispatcher thread the moment they're reached.
+ *
+ * A deadline only says "look at this network/device then"; the handler
+ * (AlerterService) decides from the in-memory state whether an alert is due
+ * or the deadline has moved - a device seen in the meantime simply gets a new
+ * deadline. So a scan doesn't have to touch the queue for devices that stay
+ * online, and the cost of alerting follows the state changes instead of the
+ * number of devices times the check frequency.
+ *
+ * Every key has at most one deadline that counts, the earliest one.
+ * Scheduling a key that already has an earlier (or equal) deadline does
+ * nothing - it will be looked at then anyway, and the handler schedules the
+ * later time again if it's still needed. An earlier deadline replaces a later
+ * one: the old entry stays in the queue, but is skipped when it comes up
+ * (removing it would be a linear search), like a cancelled one.
+ *
+ * Ingest schedules networks and devices after its commits; AlerterService
+ * starts the dispatcher and handles the deadlines.
+ *
+ * Similar to a System.Threading.Timer per item in .NET, but with a single
+ * thread and heap for all of them.
+ */
+@ApplicationScoped
+public class AlertScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AlertScheduler.class);
+
+    private final DelayQueue<Deadline> queue = new DelayQueue<>();
+    // the deadline that counts, per key
+    private final Map<Key, Deadline> scheduled = new ConcurrentHashMap<>();
+
+    private volatile boolean running;
+    private Thread dispatcher;
+
+    /**
+     * Starts the dispatcher thread. Deadlines scheduled before are kept.
+     *
+     * @param threadFactory creates the dispatcher thread
+     * @param handler       called (on the dispatcher thread) when a key's
+     *                      deadline is reached; exceptions are logged and
+     *                      swallowed
+     */
+    public synchronized void start(ThreadFactory threadFactory, Consumer<Key> handler) {
+        if (running) {
+            return;
+        }
+        running = true;
+        dispatcher = threadFactory.newThread(() -> dispatch(handler));
+        dispatcher.setName("alert-scheduler");
+        dispatcher.start();
+    }
+
+    /**
+     * Stops the dispatcher thread, without waiting for a running handler.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        running = false;
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+            dispatcher = null;
+        }
+    }
+
+    /**
+     * Look at the network (macAddress null) or device at the given time (UTC),
+     * or earlier if it's already scheduled earlier. Times in the past are due
+     * right away.
+     */
+    public void schedule(String networkName, String macAddress, LocalDateTime at) {
+        long atMillis = at.toInstant(ZoneOffset.UTC).toEpochMilli();
+        Deadline[] added = new Deadline[1];
+        scheduled.compute(new Key(networkName, macAddress), (key, existing) -> {
+            if (existing != null && existing.atMillis <= atMillis) {
+                return existing;
+            }
+            added[0] = new Deadline(key, atMillis);
+            return added[0];
+        });
+        if (added[0] != null) {
+            queue.add(added[0]);
+        }
+    }
+
+    /**
+     * Drop the deadline of the network (macAddress null) or device, if it has
+     * one. Its queue entry is skipped when it comes up.
+     */
+    public void cancel(String networkName, String macAddress) {
+        scheduled.remove(new Key(networkName, macAddress));
+    }
+
+    /**
+     * Number of networks and devices with a deadline.
+     */
+    public int getScheduledCount() {
+        return scheduled.size();
+    }
+
+    private void dispatch(Consumer<Key> handler) {
+        while (running) {
+            Deadline deadline;
+            try {
+                deadline = queue.take();
+            } catch (InterruptedException e) {
+                if (running) {
+                    LOGGER.warn("Alert scheduler interrupted, stopping");
+                }
+                return;
+            }
+
+            // skip replaced deadlines
+            if (!scheduled.remove(deadline.key, deadline)) {
+                continue;
+            }
+            try {
+                handler.accept(deadline.key);
+            } catch (RuntimeException e) {
+                LOGGER.error("Alert deadline of {} failed", deadline.key, e);
+            }
+        }
+    }
+
+    /**
+     * A network (macAddress null) or one of its devices.
+     */
+    public static final class Key {
+
+        private final String networkName;
+        private final String macAddress;
+
+        Key(String networkName, String macAddress) {
+            this.networkName = networkName;
+            this.macAddress = macAddress;
+        }
+
+        public String getNetworkName() {
+            return networkName;
+        }
+
+        /**
+         * The device's MAC address, null for the network itself.
+         */
+        public String getMacAddress() {
+            return macAddress;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && networkName.equals(((Key) other).networkName)
+                    && Objects.equals(macAddress, ((Key) other).macAddress);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * networkName.hashCode() + Objects.hashCode(macAddress);
+        }
+
+        @Override
+        public String toString() {
+            return macAddress == null ? networkName : networkName + "/" + macAddress;
+        }
+    }
+
+    private static final class Deadline implements Delayed {
+
+        final Key key;
+        final long atMillis;
+
+        Deadline(Key key, long atMillis) {
+            this.key = key;
+            this.atMillis = atMillis;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(atMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(atMillis, ((Deadline) other).atMillis);
+        }
+    }
+}
@@ -3,13 +3,18 @@ package com.matjazt.networkmonitor.service;
 import java.io.UnsupportedEncodingException;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
-import java.util.ArrayList;
-import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.matjazt.networkmonitor.cluster.ClusterMembership;
 import com.matjazt.networkmonitor.config.ConfigProvider;
 import com.matjazt.networkmonitor.dao.AlertingDAO;
 import com.matjazt.networkmonitor.dao.MonitoringDAO;
@@ -18,16 +23,28 @@ import com.matjazt.networkmonitor.entity.AlertType;
 import com.matjazt.networkmonitor.entity.DeviceEntity;
 import com.matjazt.networkmonitor.entity.DeviceOperationMode;
 import com.matjazt.networkmonitor.entity.NetworkEntity;
+import com.matjazt.networkmonitor.metrics.EmailSendEvent;
+import com.matjazt.networkmonitor.metrics.MetricsRegistry;
+import com.matjazt.networkmonitor.metrics.NetworkAlertCheckEvent;
+import com.matjazt.networkmonitor.state.DeviceState;
+import com.matjazt.networkmonitor.state.DeviceStateStore;
+import com.matjazt.networkmonitor.state.NetworkState;
+import com.matjazt.networkmonitor.state.ScanTiming;
 import com.matjazt.tools.SimpleTools;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.SessionContext;
 import jakarta.ejb.Singleton;
 import jakarta.ejb.Startup;
 import jakarta.ejb.Timeout;
 import jakarta.ejb.TimerConfig;
 import jakarta.ejb.TimerService;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
 import jakarta.inject.Inject;
 import jakarta.mail.Authenticator;
 import jakarta.mail.Message;
@@ -39,26 +56,52 @@ import jakarta.mail.internet.InternetAddress;
 import jakarta.mail.internet.MimeMessage;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
-import jakarta.transaction.Transactional;
 
 /**
- * Scheduled service that monitors network and device status and triggers
- * alerts.
+ * Service that monitors network and device status and triggers alerts.
  * 
- * Uses EJB Timer Service to run periodic checks. Sends email notifications
- * when alerts are triggered or resolved.
+ * Every network and device has a deadline in AlertScheduler - e.g. "down at
+ * last seen + alerting delay" - and is checked the moment it's reached. A
+ * deadline that has moved in the meantime (the device was seen again) is just
+ * rescheduled from the in-memory state, so the database is only touched when
+ * an alert is actually opened or closed, and alerts go out within
+ * milliseconds of their deadline instead of up to a polling interval later.
+ * Networks are scheduled when DeviceStateStore loads them, and again by ingest
+ * and by alert changes. An EJB timer picks up the settings edited in the
+ * database every alert.check.interval seconds, reading only the rows changed
+ * since (see refreshSettings). Sends email notifications when alerts are
+ * triggered or resolved.
  * 
  * Alert conditions:
  * - NETWORK_DOWN: Network hasn't reported within alerting_delay
  * - DEVICE_DOWN: ALWAYS_ON device is offline
  * - DEVICE_UNAUTHORIZED: UNAUTHORIZED device is online
+ * 
+ * The bean keeps no mutable state of its own, so it uses READ locks: ingest
+ * workers can open alerts concurrently, and in virtual thread mode due
+ * deadlines are checked in parallel.
+ * 
+ * Last seen timestamps in the database can lag behind (see
+ * DeviceStateWriter), so the checks use the ones from DeviceStateStore.
+ * 
+ * With several instances (see ClusterMembership) each one only checks the
+ * networks it owns - the ones whose scans it processes and whose state it
+ * holds - so every alert is raised exactly once.
  */
 @Singleton
 @Startup
+@Lock(LockType.READ)
 public class AlerterService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AlerterService.class);
 
+    // how soon a deadline whose check didn't resolve it is looked at again
+    static final int RECHECK_SECONDS = 10;
+
+    // how far behind the watermark refreshSettings reads: an edit committed
+    // after a later one may carry an older settings_changed
+    private static final int SETTINGS_OVERLAP_SECONDS = 60;
+
     @Resource
     private TimerService timerService;
 
@@ -74,10 +117,36 @@ public class AlerterService {
     @Inject
     private MonitoringDAO monitoringDao;
 
-    private static final Map<AlertType, String> ALERT_TYPE_MESSAGES = Map.ofEntries(
-            Map.entry(AlertType.NETWORK_DOWN, "Network is unavailable"),
-            Map.entry(AlertType.DEVICE_DOWN, "Device is offline"),
-            Map.entry(AlertType.DEVICE_UNAUTHORIZED, "Unauthorized device detected"));
+    @Inject
+    private ExecutionSupport executionSupport;
+
+    @Inject
+    private DeviceStateStore deviceStateStore;
+
+    @Inject
+    private ClusterMembership cluster;
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    @Inject
+    private AlertScheduler scheduler;
+
+    @Resource
+    private SessionContext sessionContext;
+
+    // calls must go through the container proxy to get a new transaction
+    private AlerterService self;
+
+    // virtual thread mode: due deadlines are checked on their own threads
+    private ThreadFactory checkThreadFactory;
+    private final Set<AlertScheduler.Key> checksInProgress = ConcurrentHashMap.newKeySet();
+
+    // prevents overlapping checks when one takes longer than the timer interval
+    private final AtomicBoolean checkRunning = new AtomicBoolean();
+
+    // latest settings_changed seen by refreshSettings, a database timestamp
+    private volatile LocalDateTime settingsWatermark;
 
     /**
      * Called automatically after dependency injection completes.
@@ -100,6 +169,12 @@ public class AlerterService {
 
         LOGGER.info("Alert check timer created - initial delay: {}s, interval: {}s",
                 initialDelaySeconds, intervalSeconds);
+
+        self = sessionContext.getBusinessObject(AlerterService.class);
+        // edits from here on are picked up by the checks, older ones are in the loaded state
+        settingsWatermark = findLatestSettingsChange();
+        checkThreadFactory = executionSupport.threadFactory("alert-check-");
+        scheduler.start(executionSupport.threadFactory("alert-scheduler-"), this::deadlineReached);
     }
 
     /**
@@ -111,81 +186,54 @@ public class AlerterService {
     @PreDestroy
     public void cleanup() {
         LOGGER.info("shutting down...");
+        scheduler.stop();
     }
 
     private void sendAlert(AlertEntity alert, boolean closure, NetworkEntity network, DeviceEntity device,
             String message) {
 
-        String baseMessage = ALERT_TYPE_MESSAGES.get(alert.getAlertType());
-        if (baseMessage == null) {
-            throw new IllegalArgumentException("Unsupported alert type: " + alert.getAlertType());
-        }
-
-        var subject = "[" + network.getName() + "] ";
-
-        var fullMessageEntries = new ArrayList<String>();
-
-        if (alert.getAlertType() == AlertType.NETWORK_DOWN) {
-            subject += "network";
-        } else {
-            subject += "device";
-        }
-
-        if (closure) {
-            fullMessageEntries.add("ALERT CLOSED");
-            subject += " alert closure";
-        } else {
-            fullMessageEntries.add("ALERT TRIGGERED");
-            subject += " alert";
-        }
-        fullMessageEntries.add(""); // empty line
-
-        if (network != null) {
-            fullMessageEntries.add("Network: " + network.getName());
-        }
-
-        if (device != null) {
-            fullMessageEntries.add("Device: " + device.getNameOrUnknown() + " (mac:" + device.getMacAddress() + ", ip:"
-                    + device.getIpAddress() + ")");
-        }
-        fullMessageEntries.add("UTC time: " + SimpleTools.formatDefault(LocalDateTime.now(ZoneOffset.UTC)));
-        fullMessageEntries.add("Alert Type: " + alert.getAlertType());
-        fullMessageEntries.add("Alert Id: " + alert.getId());
-
-        fullMessageEntries.add(""); // empty line
-
-        if (!closure) {
-            fullMessageEntries.add(baseMessage + ".");
-        }
-
-        if (message != null && !message.isBlank()) {
-            fullMessageEntries.add(""); // empty line
-            fullMessageEntries.add("Additional info: " + message);
-            fullMessageEntries.add("Original description: " + baseMessage + ".");
-        }
-
-        var fullMessage = String.join(System.lineSeparator(), fullMessageEntries);
-        LOGGER.warn("fullMessage:\n{}", fullMessage);
+        var alertMessage = AlertMessage.build(alert, closure, network, device, message,
+                LocalDateTime.now(ZoneOffset.UTC));
+        LOGGER.warn("fullMessage:\n{}", alertMessage.getBody());
 
         // Send email if network has an email address configured
-        if (network != null && network.getEmailAddress() != null && !network.getEmailAddress().isEmpty()) {
-            // figure out email subject
-
-            if (device != null) {
-                subject += " for " + device.getNameOrMac();
-            }
-
+        if (network.getEmailAddress() != null && !network.getEmailAddress().isEmpty()) {
+            EmailSendEvent event = new EmailSendEvent();
+            event.begin();
+            String outcome = "sent";
+            long startNanos = System.nanoTime();
             try {
-                sendEmail(network.getEmailAddress(), subject, fullMessage);
+                sendEmail(network.getEmailAddress(), alertMessage.getSubject(), alertMessage.getBody());
+                alert.setEmailSentTimestamp(LocalDateTime.now(ZoneOffset.UTC));
                 LOGGER.info("Alert email sent to: {}", network.getEmailAddress());
             } catch (Exception e) {
+                outcome = e.getClass().getSimpleName();
                 LOGGER.error("Failed to send alert email", e);
                 throw new RuntimeException("Failed to send alert email to " + network.getEmailAddress(), e);
+            } finally {
+                metrics.histogram(MetricsRegistry.EMAIL_SEND).record(System.nanoTime() - startNanos);
+                if (event.shouldCommit()) {
+                    event.setRecipientDomain(recipientDomains(network.getEmailAddress()));
+                    event.setOutcome(outcome);
+                    event.commit();
+                }
             }
         }
     }
 
-    public AlertEntity openAlert(AlertType alertType, NetworkEntity network, DeviceEntity device, String message) {
+    /**
+     * Open an alert and send its email.
+     * 
+     * @param trigger the scan that triggered the alert, if known
+     * @param due     when the alert should have been opened at the latest - the
+     *                time it waited for the alert check is the difference to
+     *                now
+     * 
+     * Together they are the alert's scan to alert latency, stored on the alert
+     * and recorded in the metrics (see recordLatency).
+     */
+    public AlertEntity openAlert(AlertType alertType, NetworkEntity network, DeviceEntity device, String message,
+            ScanTiming trigger, LocalDateTime due) {
 
         LOGGER.info("alertType={}, network={}, device={}, message={}",
                 alertType, network.getName(),
@@ -204,6 +252,12 @@ public class AlerterService {
                 device,
                 alertType,
                 message);
+        if (trigger != null) {
+            alert.setScanTimestamp(trigger.getScanTimestamp());
+            alert.setReceivedTimestamp(trigger.getReceivedAt());
+            alert.setCommittedTimestamp(trigger.getCommittedAt());
+        }
+        alert.setDueTimestamp(due);
 
         // ensure INSERT is executed and ID is available
         // entityManager.flush();
@@ -216,14 +270,59 @@ public class AlerterService {
             device.setActiveAlertId(alert.getId());
             monitoringDao.save(device);
         }
+        deviceStateStore.recordAlert(network, device, alert, true, () -> alertChanged(network, device));
+        metrics.increment(MetricsRegistry.ALERTS_OPENED, 1, network.getName(), alertType.name());
 
         // send alert notification
         sendAlert(alert, false, network, device, message);
+        recordLatency(alert);
 
         // return created alert (including its ID)
         return alert;
     }
 
+    /**
+     * An alert was opened or closed: what the network or device waits for has
+     * changed.
+     */
+    private void alertChanged(NetworkEntity network, DeviceEntity device) {
+        if (device == null) {
+            scheduleNetwork(network.getName());
+        } else {
+            scheduler.schedule(network.getName(), device.getMacAddress(), LocalDateTime.now(ZoneOffset.UTC));
+        }
+    }
+
+    /**
+     * Record the scan to alert latency of a newly opened alert, stage by
+     * stage: router to broker to us (transport), processing and commit of the
+     * scan (ingest), the network's alerting delay (delay), waiting for the
+     * alert check (pickup) and SMTP (email). The stages add up to the total;
+     * unknown ones (e.g. after a restart) are left out. Negative stages, from
+     * the router's clock being ahead, count as 0.
+     */
+    private void recordLatency(AlertEntity alert) {
+        String type = alert.getAlertType().name();
+        LocalDateTime ingested = alert.getCommittedTimestamp() != null ? alert.getCommittedTimestamp()
+                : alert.getReceivedTimestamp();
+        LocalDateTime delivered = alert.getEmailSentTimestamp() != null ? alert.getEmailSentTimestamp()
+                : alert.getTimestamp();
+
+        recordLatency(type, "transport", alert.getScanTimestamp(), alert.getReceivedTimestamp());
+        recordLatency(type, "ingest", alert.getReceivedTimestamp(), alert.getCommittedTimestamp());
+        recordLatency(type, "delay", ingested, alert.getDueTimestamp());
+        recordLatency(type, "pickup", alert.getDueTimestamp(), alert.getTimestamp());
+        recordLatency(type, "email", alert.getTimestamp(), alert.getEmailSentTimestamp());
+        recordLatency(type, "total", alert.getScanTimestamp(), delivered);
+    }
+
+    private void recordLatency(String type, String stage, LocalDateTime from, LocalDateTime to) {
+        if (from != null && to != null) {
+            long nanos = Math.max(0, java.time.Duration.between(from, to).toNanos());
+            metrics.histogram(MetricsRegistry.ALERT_LATENCY, type, stage).record(nanos);
+        }
+    }
+
     public AlertEntity closeAlert(NetworkEntity network, DeviceEntity device, String message) {
 
         LOGGER.info("network={}, device={}, message={}",
@@ -251,6 +350,8 @@ public class AlerterService {
             device.setActiveAlertId(null);
             monitoringDao.save(device);
         }
+        deviceStateStore.recordAlert(network, device, alert, false, () -> alertChanged(network, device));
+        metrics.increment(MetricsRegistry.ALERTS_CLOSED, 1, network.getName());
 
         // append the information about the alert we are closing to the message: alert
         // timestamp and duration
@@ -317,83 +418,390 @@ public class AlerterService {
     }
 
     /**
-     * Scheduled alert checking triggered by programmatic timer.
-     * Replaces @Schedule annotation for runtime configuration.
+     * Settings check, triggered by the programmatic timer every
+     * alert.check.interval seconds.
+     * 
+     * Alerts themselves are raised and closed by the deadlines (see
+     * AlertScheduler and deadlineReached). This only picks up what can only be
+     * seen in the database: operation modes, names and alerting delays edited
+     * there, and networks that are new to this instance.
      */
     @Timeout
     public void checkForAlerts() {
         LOGGER.trace("Running scheduled alert task...");
 
-        // process networks one by one
-        for (NetworkEntity network : monitoringDao.findAllNetworks()) {
-            processNetworkAlerts(network);
+        if (!checkRunning.compareAndSet(false, true)) {
+            LOGGER.warn("Previous alert check is still running, skipping this one");
+            return;
         }
 
+        long startNanos = System.nanoTime();
+        try {
+            refreshSettings();
+        } finally {
+            metrics.histogram(MetricsRegistry.ALERT_CHECK).record(System.nanoTime() - startNanos);
+            checkRunning.set(false);
+        }
     }
 
-    @Transactional
-    private void processNetworkAlerts(NetworkEntity network) {
+    /**
+     * Copy the settings edited in the database since the previous check into
+     * the state of the owned networks and devices, and have the ones that
+     * actually changed looked at right away.
+     * 
+     * Only rows whose settings_changed - set by a trigger when a setting is
+     * edited, see database/migrations/004_settings_changed.sql - is past the
+     * watermark are read, SETTINGS_OVERLAP_SECONDS back from it. Rows read
+     * again match the state by then and are left alone.
+     */
+    private void refreshSettings() {
+        LocalDateTime watermark = settingsWatermark;
+        if (watermark == null) {
+            watermark = findLatestSettingsChange();
+        }
+        LocalDateTime since = watermark.minusSeconds(SETTINGS_OVERLAP_SECONDS);
+        var now = LocalDateTime.now(ZoneOffset.UTC);
+
+        for (NetworkEntity network : monitoringDao.findNetworksWithSettingsChangedSince(since)) {
+            watermark = later(watermark, network.getSettingsChanged());
+            if (!cluster.owns(network.getName())) {
+                continue;
+            }
+            NetworkState networkState = deviceStateStore.findLoaded(network.getName());
+            if (networkState == null) {
+                // new to this instance (e.g. inserted in the database) - loading schedules it
+                deviceStateStore.getNetwork(network);
+            } else if (networkState.getAlertingDelay() != network.getAlertingDelay()) {
+                networkState.setAlertingDelay(network.getAlertingDelay());
+                scheduleNetwork(network.getName());
+            }
+        }
+
+        for (DeviceEntity device : monitoringDao.findDevicesWithSettingsChangedSince(since)) {
+            watermark = later(watermark, device.getSettingsChanged());
+            String networkName = device.getNetwork().getName();
+            NetworkState networkState = cluster.owns(networkName) ? deviceStateStore.findLoaded(networkName) : null;
+            DeviceState deviceState = networkState != null ? networkState.getDevice(device.getMacAddress()) : null;
+            if (deviceState == null) {
+                continue; // comes with its network's state when that's loaded
+            }
+            if (deviceState.getOperationMode() != device.getDeviceOperationMode()
+                    || !Objects.equals(deviceState.getName(), device.getName())) {
+                // operation mode and name are edited in the database, pass them on to ingest
+                deviceState.setOperationMode(device.getDeviceOperationMode());
+                deviceState.setName(device.getName());
+                scheduler.schedule(networkName, device.getMacAddress(), now);
+            }
+        }
 
-        // see if the entire network is down or up
+        settingsWatermark = watermark;
+    }
 
+    private LocalDateTime findLatestSettingsChange() {
+        // no networks yet: everything that shows up is new
+        return monitoringDao.findLatestSettingsChange().orElse(LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC));
+    }
+
+    private static LocalDateTime later(LocalDateTime a, LocalDateTime b) {
+        return b != null && b.isAfter(a) ? b : a;
+    }
+
+    /**
+     * Have the network and all its devices looked at right away - after its
+     * alert was opened or closed, which changes what the devices wait for.
+     */
+    private void scheduleNetwork(String networkName) {
+        NetworkState networkState = deviceStateStore.findLoaded(networkName);
+        if (networkState == null) {
+            return;
+        }
+        var now = LocalDateTime.now(ZoneOffset.UTC);
+        scheduler.schedule(networkName, null, now);
+        for (DeviceState device : networkState.getDevices()) {
+            scheduler.schedule(networkName, device.getMacAddress(), now);
+        }
+    }
+
+    /**
+     * Called by the scheduler's thread when the deadline of a network or
+     * device is reached.
+     * 
+     * Usually nothing is due: the device has been seen since and the deadline
+     * just moves, without touching the database. Only if an alert has to be
+     * opened or closed, the network or device is checked in its own
+     * transaction. In virtual thread mode that runs on its own virtual thread,
+     * so a slow mail server doesn't delay the other deadlines.
+     */
+    private void deadlineReached(AlertScheduler.Key key) {
+        NetworkState networkState = deviceStateStore.findLoaded(key.getNetworkName());
+        if (networkState == null || networkState.getId() == null || !cluster.owns(key.getNetworkName())) {
+            return; // scheduled again when it's loaded
+        }
+        DeviceState deviceState = null;
+        if (key.getMacAddress() != null) {
+            deviceState = networkState.getDevice(key.getMacAddress());
+            if (deviceState == null || deviceState.getId() == null) {
+                return;
+            }
+        }
+
+        var now = LocalDateTime.now(ZoneOffset.UTC);
+        var next = nextCheck(networkState, deviceState, now);
+        if (next == null) {
+            // waits for a scan or an alert change, which schedule it again
+            return;
+        }
+        if (next.isAfter(now)) {
+            scheduler.schedule(key.getNetworkName(), key.getMacAddress(), next);
+            return;
+        }
+
+        if (!executionSupport.isVirtual()) {
+            checkDeadline(key, networkState, deviceState);
+        } else if (checksInProgress.add(key)) {
+            DeviceState device = deviceState;
+            checkThreadFactory.newThread(() -> {
+                try {
+                    checkDeadline(key, networkState, device);
+                } finally {
+                    checksInProgress.remove(key);
+                }
+            }).start();
+        } else {
+            // the previous check isn't done yet, look again shortly
+            scheduler.schedule(key.getNetworkName(), key.getMacAddress(), now.plusSeconds(RECHECK_SECONDS));
+        }
+    }
+
+    private void checkDeadline(AlertScheduler.Key key, NetworkState networkState, DeviceState deviceState) {
+        try {
+            executionSupport.runWithDatabasePermit(() -> self.processAlerts(networkState.getId(),
+                    deviceState != null ? deviceState.getId() : null));
+        } catch (RuntimeException e) {
+            LOGGER.error("Alert check failed for {}", key, e);
+        }
+
+        // an opened or closed alert is in the state by now; if the check changed
+        // nothing (e.g. the database disagrees with the state), don't spin on it
         var now = LocalDateTime.now(ZoneOffset.UTC);
-        var alertingThreshold = now.minusSeconds(network.getAlertingDelay());
-        var closureThreshold = alertingThreshold.plusSeconds(Math.min(30, network.getAlertingDelay() / 10));
+        var next = nextCheck(networkState, deviceState, now);
+        if (next != null) {
+            scheduler.schedule(key.getNetworkName(), key.getMacAddress(),
+                    next.isAfter(now) ? next : now.plusSeconds(RECHECK_SECONDS));
+        }
+    }
+
+    /**
+     * When the network (deviceState null) or device has to be checked next,
+     * from its in-memory state - the same conditions as in checkNetwork and
+     * checkDevice, solved for the time. Null if nothing can happen before the
+     * next scan or alert change, which schedule it again.
+     */
+    static LocalDateTime nextCheck(NetworkState networkState, DeviceState deviceState, LocalDateTime now) {
+        int alertingDelay = networkState.getAlertingDelay();
+        LocalDateTime networkLastSeen = networkState.getLastSeen();
+        if (networkLastSeen == null) {
+            return null;
+        }
+        LocalDateTime networkDownAt = justAfter(networkLastSeen.plusSeconds(alertingDelay));
+
+        if (networkState.getActiveAlertId() != null) {
+            // the network is down - its devices aren't checked until it's back
+            // up; it's closed as soon as a scan arrives
+            return deviceState == null && networkDownAt.isAfter(now) ? now : null;
+        }
+        if (deviceState == null) {
+            return networkDownAt;
+        }
+        if (!networkDownAt.isAfter(now)) {
+            // the network is down, but its alert isn't open yet - opening it
+            // reschedules the devices
+            return now.plusSeconds(RECHECK_SECONDS);
+        }
+
+        LocalDateTime lastSeen = deviceState.getLastSeen();
+        if (lastSeen == null) {
+            return null;
+        }
+        LocalDateTime downAt = justAfter(lastSeen.plusSeconds(alertingDelay));
+        boolean alerted = deviceState.getActiveAlertId() != null;
+
+        if (deviceState.getOperationMode() == DeviceOperationMode.UNAUTHORIZED) {
+            // opened by ingest, closed once the device is gone
+            return alerted ? downAt : null;
+        } else if (deviceState.getOperationMode() == DeviceOperationMode.AUTHORIZED) {
+            return alerted ? now : null;
+        } else if (deviceState.getOperationMode() == DeviceOperationMode.ALWAYS_ON) {
+            if (!alerted) {
+                return downAt;
+            }
+            if (!downAt.isAfter(now)) {
+                // still down, waits for a scan
+                return null;
+            }
+            // back up, closed once it has been up for long enough
+            LocalDateTime statusSince = deviceState.getStatusSince();
+            return statusSince == null ? now
+                    : justAfter(statusSince.plusSeconds(alertingDelay - closureGrace(alertingDelay)));
+        }
+        return null;
+    }
+
+    // the checks compare with isBefore, so a condition holds from the next
+    // millisecond on
+    private static LocalDateTime justAfter(LocalDateTime time) {
+        return time.plusNanos(1_000_000);
+    }
+
+    // a device that was down must be up this much shorter than the alerting
+    // delay before its alert is closed
+    private static int closureGrace(int alertingDelay) {
+        return Math.min(30, alertingDelay / 10);
+    }
+
+    /**
+     * Checks a network (deviceId null) or a single device in a separate
+     * transaction, when its deadline is reached.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void processAlerts(Long networkId, Long deviceId) {
+        NetworkEntity network = entityManager.find(NetworkEntity.class, networkId);
+        if (network == null) {
+            return;
+        }
+
+        // a no-op unless a Flight Recorder recording is running
+        NetworkAlertCheckEvent event = new NetworkAlertCheckEvent();
+        event.begin();
+        try {
+            var now = LocalDateTime.now(ZoneOffset.UTC);
+            var alertingThreshold = now.minusSeconds(network.getAlertingDelay());
+            var closureThreshold = alertingThreshold.plusSeconds(closureGrace(network.getAlertingDelay()));
+
+            // the in-memory state has the latest timestamps
+            NetworkState networkState = deviceStateStore.findLoaded(network.getName());
+
+            boolean up = checkNetwork(network, networkState, alertingThreshold, deviceId == null, event);
+            if (up && deviceId != null) {
+                DeviceEntity device = monitoringDao.findDevice(deviceId);
+                if (device != null) {
+                    event.setDevicesEvaluated(1);
+                    checkDevice(network, networkState, device, alertingThreshold, closureThreshold, event);
+                }
+            }
+        } finally {
+            if (event.shouldCommit()) {
+                event.setNetwork(network.getName());
+                event.commit();
+            }
+        }
+    }
 
-        if (network.getLastSeen().isBefore(alertingThreshold)) {
+    /**
+     * Opens the network's alert if it's down, and closes it once it's back up.
+     * 
+     * @param changeAlert false to only find out whether the network is up, for
+     *                    a device check
+     * @return true if the network is up
+     */
+    private boolean checkNetwork(NetworkEntity network, NetworkState networkState, LocalDateTime alertingThreshold,
+            boolean changeAlert, NetworkAlertCheckEvent event) {
+        var networkLastSeen = latest(network.getLastSeen(), networkState != null ? networkState.getLastSeen() : null);
+        if (networkLastSeen.isBefore(alertingThreshold)) {
             // network is down
-            if (network.getActiveAlertId() == null) {
-                // network is down, alert hasn't been sent yet
-                openAlert(AlertType.NETWORK_DOWN, network, null, null);
+            if (changeAlert && network.getActiveAlertId() == null) {
+                // network is down, alert hasn't been sent yet; the last scan before
+                // the silence is the trigger
+                openAlert(AlertType.NETWORK_DOWN, network, null, null,
+                        networkState != null ? networkState.getLastScan() : null,
+                        networkLastSeen.plusSeconds(network.getAlertingDelay()));
+                event.alertOpened();
             }
             // there's nothing else to do if the entire network is down
-            return;
+            return false;
         }
 
         // network is up
-        if (network.getActiveAlertId() != null) {
+        if (changeAlert && network.getActiveAlertId() != null) {
             // network was down, now it's back up - send recovery alert
             closeAlert(network, null, null);
+            event.alertClosed();
         }
+        return true;
+    }
 
-        // now check individual devices
-        for (DeviceEntity device : monitoringDao.findAllDevicesForNetwork(network.getId())) {
+    private void checkDevice(NetworkEntity network, NetworkState networkState, DeviceEntity device,
+            LocalDateTime alertingThreshold, LocalDateTime closureThreshold, NetworkAlertCheckEvent event) {
+
+        // don't change the entity, that would write it
+        var lastSeen = device.getLastSeen();
+        DeviceState deviceState = networkState != null ? networkState.getDevice(device.getMacAddress()) : null;
+        if (deviceState != null) {
+            // operation mode and name are edited in the database, pass them on to ingest
+            deviceState.setOperationMode(device.getDeviceOperationMode());
+            deviceState.setName(device.getName());
+            lastSeen = latest(lastSeen, deviceState.getLastSeen());
+        }
 
-            if (device.getDeviceOperationMode() == DeviceOperationMode.UNAUTHORIZED) {
-                // the device is not allowed on the network
-                // alerts for such cases are sent when the device first appears, so here we can
-                // just check if it's gone
-                if (device.getActiveAlertId() != null && device.getLastSeen().isBefore(alertingThreshold)) {
-                    // device is gone, clear alert
-                    closeAlert(network, device, null);
-                }
-            } else if (device.getDeviceOperationMode() == DeviceOperationMode.AUTHORIZED) {
-                // the device is allowed, no alerts needed, but we can clear any active alerts
-                // in case they were set before (e.g., if the device was previously
-                // UNAUTHORIZED)
-                if (device.getActiveAlertId() != null) {
-                    closeAlert(network, device, "device is now authorized");
+        if (device.getDeviceOperationMode() == DeviceOperationMode.UNAUTHORIZED) {
+            // the device is not allowed on the network
+            // alerts for such cases are sent when the device first appears, so here we can
+            // just check if it's gone
+            if (device.getActiveAlertId() != null && lastSeen.isBefore(alertingThreshold)) {
+                // device is gone, clear alert
+                closeAlert(network, device, null);
+                event.alertClosed();
+            }
+        } else if (device.getDeviceOperationMode() == DeviceOperationMode.AUTHORIZED) {
+            // the device is allowed, no alerts needed, but we can clear any active alerts
+            // in case they were set before (e.g., if the device was previously
+            // UNAUTHORIZED)
+            if (device.getActiveAlertId() != null) {
+                closeAlert(network, device, "device is now authorized");
+                event.alertClosed();
+            }
+        } else if (device.getDeviceOperationMode() == DeviceOperationMode.ALWAYS_ON) {
+            // the device should always be online, check its status
+            if (lastSeen.isBefore(alertingThreshold)) {
+                // device is down, alert hasn't been sent yet
+                if (device.getActiveAlertId() == null) {
+                    // the trigger is the scan in which the device went missing
+                    openAlert(AlertType.DEVICE_DOWN, network, device, null,
+                            deviceState != null && !deviceState.isOnline() ? deviceState.getStatusScan() : null,
+                            lastSeen.plusSeconds(network.getAlertingDelay()));
+                    event.alertOpened();
                 }
-            } else if (device.getDeviceOperationMode() == DeviceOperationMode.ALWAYS_ON) {
-                // the device should always be online, check its status
-                if (device.getLastSeen().isBefore(alertingThreshold)) {
-                    // device is down, alert hasn't been sent yet
-                    if (device.getActiveAlertId() == null) {
-                        openAlert(AlertType.DEVICE_DOWN, network, device, null);
-                    }
-                } else {
-                    // device is up
-                    if (device.getActiveAlertId() != null
-                            && monitoringDao.findLatestHistoryEntryByDevice(network, device)
-                                    .getTimestamp().isBefore(closureThreshold)) {
-                        // device was down, now it's back up and has been up for long enough - send
-                        // recovery alert
-                        closeAlert(network, device, null);
-                    }
+            } else {
+                // device is up
+                if (device.getActiveAlertId() != null
+                        && (device.getStatusSince() == null
+                                || device.getStatusSince().isBefore(closureThreshold))) {
+                    // device was down, now it's back up and has been up for long enough - send
+                    // recovery alert
+                    closeAlert(network, device, null);
+                    event.alertClosed();
                 }
             }
         }
+    }
+
+    /**
+     * The domains of a comma separated list of addresses, e.g. "example.com"
+     * for "alerts@example.com".
+     */
+    private static String recipientDomains(String addresses) {
+        StringJoiner domains = new StringJoiner(",");
+        for (String address : addresses.split(",")) {
+            domains.add(address.substring(address.lastIndexOf('@') + 1).trim());
+        }
+        return domains.toString();
+    }
 
+    private static LocalDateTime latest(LocalDateTime a, LocalDateTime b) {
+        if (a == null) {
+            return b;
+        }
+        return b != null && b.isAfter(a) ? b : a;
     }
 
 }
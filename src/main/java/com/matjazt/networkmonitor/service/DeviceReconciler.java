@@ -0,0 +1,120 @@
+package com.matjazt.networkmonitor.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.matjazt.networkmonitor.model.NetworkStatusMessage;
+import com.matjazt.networkmonitor.state.DeviceState;
+import com.matjazt.networkmonitor.state.NetworkState;
+
+/**
+ * Compares a scan with what we know about a network and sorts the devices into
+ * the cases MessageProcessingService has to handle.
+ *
+ * Known devices are looked up by MAC address in the network's state, which is
+ * already indexed, so every lookup is a hash lookup and the whole
+ * reconciliation is linear in the number of devices - the old
+ * stream().filter() searches were quadratic, which hurt on networks with
+ * thousands of ARP entries.
+ *
+ * The reconciler doesn't change anything; it only produces a Result, which
+ * makes it cheap to benchmark (see DeviceReconciliationBenchmark).
+ */
+public class DeviceReconciler {
+
+    /**
+     * A known device that was present in the scan.
+     */
+    public static class SeenDevice {
+        private final DeviceState device;
+        private final String ip;
+        private final boolean cameOnline;
+
+        SeenDevice(DeviceState device, String ip, boolean cameOnline) {
+            this.device = device;
+            this.ip = ip;
+            this.cameOnline = cameOnline;
+        }
+
+        public DeviceState getDevice() {
+            return device;
+        }
+
+        /** IP address reported in the scan. */
+        public String getIp() {
+            return ip;
+        }
+
+        /** True if the device was offline before this scan. */
+        public boolean isCameOnline() {
+            return cameOnline;
+        }
+    }
+
+    /**
+     * Outcome of a reconciliation. Lists keep the order of the scan.
+     */
+    public static class Result {
+        private final List<NetworkStatusMessage.DeviceInfo> newDevices = new ArrayList<>();
+        private final List<SeenDevice> seenDevices = new ArrayList<>();
+        private final List<DeviceState> wentOffline = new ArrayList<>();
+        private int skipped;
+
+        /** Reported devices whose MAC address we've never seen on this network. */
+        public List<NetworkStatusMessage.DeviceInfo> getNewDevices() {
+            return newDevices;
+        }
+
+        /** Known devices present in the scan. */
+        public List<SeenDevice> getSeenDevices() {
+            return seenDevices;
+        }
+
+        /** Known devices that were online but are missing from the scan. */
+        public List<DeviceState> getWentOffline() {
+            return wentOffline;
+        }
+
+        /** Reported devices ignored because of a missing MAC or a duplicate. */
+        public int getSkipped() {
+            return skipped;
+        }
+    }
+
+    /**
+     * Reconcile a scan with the known state of its network.
+     *
+     * @param network  current state of the network
+     * @param reported devices in the scan
+     */
+    public Result reconcile(NetworkState network, List<NetworkStatusMessage.DeviceInfo> reported) {
+        Result result = new Result();
+        Set<String> reportedMacs = new HashSet<>((int) (reported.size() / 0.75f) + 1);
+
+        for (NetworkStatusMessage.DeviceInfo deviceInfo : reported) {
+            String mac = deviceInfo.getMac();
+            if (mac == null || mac.isBlank() || !reportedMacs.add(mac)) {
+                // missing MAC, or the scanner reported the same MAC twice
+                result.skipped++;
+                continue;
+            }
+
+            DeviceState device = network.getDevice(mac);
+            if (device == null) {
+                result.newDevices.add(deviceInfo);
+            } else {
+                result.seenDevices.add(new SeenDevice(device, deviceInfo.getIp(), !device.isOnline()));
+            }
+        }
+
+        for (DeviceState device : network.getDevices()) {
+            if (device.isOnline() && !reportedMacs.contains(device.getMacAddress())) {
+                result.wentOffline.add(device);
+            }
+        }
+
+        return result;
+    }
+}
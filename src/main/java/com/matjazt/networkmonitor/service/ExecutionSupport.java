@@ -0,0 +1,101 @@
+package com.matjazt.networkmonitor.service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.matjazt.networkmonitor.config.ConfigProvider;
+import com.matjazt.tools.VirtualThreads;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ContextService;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Decides which kind of threads the background work runs on.
+ *
+ * By default the ingest workers and the alert checker use platform threads
+ * from the container's ManagedThreadFactory. With execution.virtual.threads
+ * enabled (and a Java 21+ runtime), they use virtual threads instead: most of
+ * the time in message processing and alerting is spent waiting for JDBC and
+ * SMTP, and a blocked virtual thread costs next to nothing, so many more
+ * networks can be in flight at once.
+ *
+ * Because virtual threads are cheap, their number no longer limits how many
+ * transactions hit the database at the same time. The database permits
+ * (execution.database.concurrency) do that instead - set it to the size of the
+ * JDBC connection pool.
+ */
+@ApplicationScoped
+public class ExecutionSupport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExecutionSupport.class);
+
+    @Inject
+    private ConfigProvider config;
+
+    @Resource
+    private ManagedThreadFactory managedThreadFactory;
+
+    @Resource
+    private ContextService contextService;
+
+    private boolean virtual;
+    private Semaphore databasePermits;
+
+    @PostConstruct
+    public void initialize() {
+        if (config.getExecutionVirtualThreads()) {
+            if (VirtualThreads.isSupported()) {
+                virtual = true;
+            } else {
+                LOGGER.warn("Virtual threads requested, but Java {} doesn't support them - using platform threads",
+                        Runtime.version().feature());
+            }
+        }
+
+        databasePermits = new Semaphore(config.getExecutionDatabaseConcurrency(), true);
+
+        LOGGER.info("Execution mode: {} threads, database concurrency: {}",
+                virtual ? "virtual" : "platform", config.getExecutionDatabaseConcurrency());
+    }
+
+    /**
+     * True if background work runs on virtual threads.
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Thread factory for background workers.
+     *
+     * Virtual threads aren't created by the container, so every task is wrapped
+     * with the container context (class loader, naming, security) captured
+     * here - otherwise CDI, JPA and EJB calls would fail on them.
+     */
+    public ThreadFactory threadFactory(String namePrefix) {
+        if (!virtual) {
+            return managedThreadFactory;
+        }
+        ThreadFactory virtualFactory = VirtualThreads.threadFactory(namePrefix);
+        return task -> virtualFactory.newThread(contextService.contextualRunnable(task));
+    }
+
+    /**
+     * Runs a unit of database work, waiting for a free database permit first.
+     */
+    public void runWithDatabasePermit(Runnable work) {
+        databasePermits.acquireUninterruptibly();
+        try {
+            work.run();
+        } finally {
+            databasePermits.release();
+        }
+    }
+}
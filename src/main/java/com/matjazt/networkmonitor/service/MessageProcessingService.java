@@ -1,25 +1,38 @@
 package com.matjazt.networkmonitor.service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.matjazt.networkmonitor.config.ConfigProvider;
 import com.matjazt.networkmonitor.dao.MonitoringDAO;
+import com.matjazt.networkmonitor.dao.StatusHistoryCopyWriter;
 import com.matjazt.networkmonitor.entity.AlertType;
 import com.matjazt.networkmonitor.entity.DeviceEntity;
 import com.matjazt.networkmonitor.entity.DeviceOperationMode;
 import com.matjazt.networkmonitor.entity.DeviceStatusHistoryEntity;
 import com.matjazt.networkmonitor.entity.NetworkEntity;
+import com.matjazt.networkmonitor.ingest.ScanMessageDecoder;
+import com.matjazt.networkmonitor.metrics.MetricsRegistry;
+import com.matjazt.networkmonitor.metrics.ScanProcessedEvent;
 import com.matjazt.networkmonitor.model.NetworkStatusMessage;
+import com.matjazt.networkmonitor.state.DeviceState;
+import com.matjazt.networkmonitor.state.DeviceStateStore;
+import com.matjazt.networkmonitor.state.DeviceStateWriter;
+import com.matjazt.networkmonitor.state.NetworkState;
+import com.matjazt.networkmonitor.state.ScanTiming;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
-import jakarta.json.bind.Jsonb;
-import jakarta.json.bind.JsonbBuilder;
 import jakarta.transaction.Transactional;
 
 /**
@@ -31,234 +44,334 @@ import jakarta.transaction.Transactional;
  * 2. Track which devices are online
  * 3. Detect state changes (online -> offline, offline -> online)
  * 4. Store only the changes to database
+ * 
+ * The current state of devices comes from DeviceStateStore instead of the
+ * database, so a scan costs the same no matter how big the tables are.
+ * Only real changes are written, in the message's transaction: status history
+ * records together with device.online/status_since, changed IP addresses, new
+ * devices and alerts. A device that is simply still online causes no UPDATE at
+ * all; its last seen timestamp is written later, in bulk, by
+ * DeviceStateWriter.
+ * 
+ * The device UPDATEs are collected and executed after all INSERTs of the
+ * message: OpenJPA flushes pending INSERTs before every UPDATE query, so
+ * interleaving them would send every history record on its own instead of in
+ * one JDBC batch. With a whole network coming back up (thousands of status
+ * changes) that's the difference between thousands of round trips and a few.
+ * Above history.copy.threshold status changes the history goes through
+ * PostgreSQL's COPY instead (MonitoringDAO.copyStatusHistory).
  */
 @ApplicationScoped
 public class MessageProcessingService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MessageProcessingService.class);
 
+    @Inject
+    private ConfigProvider config;
+
     @Inject
     private MonitoringDAO monitoringDao;
 
     @Inject
     private AlerterService alerterService;
 
+    @Inject
+    private DeviceStateStore deviceStateStore;
+
+    @Inject
+    private DeviceStateWriter stateWriter;
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    @Inject
+    private AlertScheduler alertScheduler;
+
+    // thread-safe, shared by all ingest workers
+    private final ScanMessageDecoder decoder = new ScanMessageDecoder();
+
+    // stateless, shared by all ingest workers
+    private final DeviceReconciler reconciler = new DeviceReconciler();
+
     /**
      * Process an incoming MQTT message.
      * 
-     * @param topic   The MQTT topic (e.g., "network/MaliGrdi")
-     * @param payload The JSON payload as string
+     * @param topic       The MQTT topic (e.g., "network/MaliGrdi/scan")
+     * @param networkName The network name, as extracted from the topic by
+     *                    TopicRouter (e.g., "MaliGrdi")
+     * @param payload     The UTF-8 encoded JSON payload, as received from the
+     *                    broker
+     * @param receivedAt  When the message arrived from the broker, recorded on
+     *                    the alerts the scan triggers (see ScanTiming)
+     * 
+     * Each call is a ScanProcessedEvent in Java Flight Recorder recordings.
+     * 
+     * Errors are not caught here: the exception rolls the whole transaction
+     * back and lets IngestPipeline decide what to do with the message (journal
+     * it while the database is down, otherwise keep it as a dead letter).
      */
     @Transactional // All database operations in one transaction
-    public void processMessage(String topic, String payload) {
-        LOGGER.debug("Processing MQTT message from topic: {}:\n{}", topic, payload);
-
+    public void processMessage(String topic, String networkName, byte[] payload, Instant receivedAt) {
+        // a no-op unless a Flight Recorder recording is running
+        ScanProcessedEvent event = new ScanProcessedEvent();
+        event.begin();
+        boolean processed = false;
         try {
-            // Extract network name from topic
-            // For "network/MaliGrdi" -> "MaliGrdi"
-            String networkName = extractNetworkName(topic);
-
-            // Parse JSON payload to Java object using JSON-B
-            NetworkStatusMessage message = parseMessage(payload);
-
-            var messageTimestamp = LocalDateTime.ofInstant(message.getTimestamp(), ZoneOffset.UTC);
-
-            // Get or create network record
-            NetworkEntity network = getOrCreateNetwork(networkName);
-            network.setLastSeen(messageTimestamp);
-            monitoringDao.save(network);
-
-            /*
-             * // Get list of currently online MACs from message
-             * Set<String> currentlyOnlineMacs = new HashSet<>();
-             * for (NetworkStatusMessage.DeviceInfo deviceStatus : message.getDevices()) {
-             * currentlyOnlineMacs.add(deviceStatus.getMac());
-             * }
-             */
-
-            // load all devices from the device repository for this network
-            var knownDevices = monitoringDao.findAllDevicesForNetwork(network.getId());
-
-            // load all previously online devices for this network
-            var previouslyOnlineDevices = monitoringDao.findCurrentlyOnlineDevices(network);
-
-            List<Long> processedDevices = new ArrayList<>();
-
-            // Process each device in the message (all are online)
-            for (NetworkStatusMessage.DeviceInfo deviceStatus : message.getDevices()) {
-
-                // Determine if we need to record a state change
-                boolean shouldRecord = false;
-
-                // possible scenarios:
-                // 1. device is known and was online -> no change
-                // 2. device is known and was offline -> record online, log change if alwaysOn
-                // is true
-                // 3. device is unknown -> record online, add to device repository, log new
-                // device
-
-                var mac = deviceStatus.getMac();
-                if (mac == null || mac.isBlank()) {
-                    LOGGER.warn("Device with missing or empty MAC address reported on network: " + network.getName());
-                    continue; // skip devices with missing MAC
-                }
-
-                var ip = deviceStatus.getIp();
-
-                // find the mac in the known devices list
-                var knownDeviceOpt = knownDevices.stream().filter(
-                        d -> d.getMacAddress().equals(mac))
-                        .findFirst();
-
-                DeviceEntity device = null;
-
-                if (knownDeviceOpt.isEmpty()) {
-                    // new device, add to repository
-                    device = new DeviceEntity();
-                    device.setNetwork(network);
-                    device.setMacAddress(mac);
-                    device.setIpAddress(ip);
-                    device.setDeviceOperationMode(DeviceOperationMode.UNAUTHORIZED); // default for new devices
-                    device.setOnline(true); // currently online, obviously
-                    device.setFirstSeen(messageTimestamp);
-                    device.setLastSeen(messageTimestamp);
-                    // persist the new device before using it in the alert
-                    monitoringDao.save(device);
-
-                    alerterService.openAlert(AlertType.DEVICE_UNAUTHORIZED, network, device,
-                            "device detected for the first time");
-
-                    // also add to device history
-                    shouldRecord = true;
-                } else {
-                    // known device
-                    device = knownDeviceOpt.get();
-                    processedDevices.add(device.getId());
-
-                    // in all cases, update device's current online status and last seen
-                    device.setOnline(true);
-                    device.setLastSeen(messageTimestamp);
-                    device.setIpAddress(ip);
-
-                    // see if alert needs to be sent for unauthorized device
-                    if (device.getDeviceOperationMode() == DeviceOperationMode.UNAUTHORIZED
-                            && device.getActiveAlertId() == null) {
-                        // device is not allowed and no alert has been sent yet
-                        alerterService.openAlert(AlertType.DEVICE_UNAUTHORIZED, network, device,
-                                "device was seen before");
-                    } else {
-                        // openAlert saves the device, so only save if no alert was opened
-                        monitoringDao.save(device);
-                    }
-
-                    // check last known status - search in previouslyOnlineDevices
-                    var deviceId = device.getId();
-                    var lastOnlineStatus = previouslyOnlineDevices.stream()
-                            .filter(d -> d.getDevice().getId() == deviceId)
-                            .findFirst();
-
-                    if (lastOnlineStatus.isPresent()) {
-                        // device was already online, no change, don't record
-                        LOGGER.info("Device is still online: " + mac + " (" + ip + ") on " + network.getName());
-                    } else {
-                        // The device was offline, now online
-                        shouldRecord = true;
-                        if (device.getDeviceOperationMode() == DeviceOperationMode.UNAUTHORIZED) {
-                            LOGGER.info("Device " + mac + " (" + ip + ") is not allowed on network "
-                                    + network.getName() + " but is online!");
-                        } else {
-                            LOGGER.info(String
-                                    .format("Device came online: " + mac + " (" + ip + ") on " + network.getName()));
-                        }
-                    }
-                }
-
-                if (shouldRecord) {
-                    DeviceStatusHistoryEntity status = new DeviceStatusHistoryEntity(
-                            network, device, ip, true, messageTimestamp);
-                    monitoringDao.save(status);
-                }
-
+            processScan(topic, networkName, payload, receivedAt, event);
+            processed = true;
+        } finally {
+            if (event.shouldCommit()) {
+                event.setNetwork(networkName);
+                event.setFailed(!processed);
+                event.commit();
             }
-
-            // now process known devices that were not in the current message
-            for (var knownDevice : knownDevices) {
-                if (processedDevices.contains(knownDevice.getId())) {
-                    continue; // already processed
-                }
-
-                var mac = knownDevice.getMacAddress();
-                var ip = knownDevice.getIpAddress();
-
-                // in all cases, update device's current online status and last seen
-                knownDevice.setOnline(false);
-                monitoringDao.save(knownDevice);
-
-                // check if the device was previously online
-                var lastOnlineStatus = previouslyOnlineDevices.stream()
-                        .filter(d -> d.getDevice().getId() == knownDevice.getId())
-                        .findFirst();
-
-                if (lastOnlineStatus.isPresent()) {
-                    // device went offline
-                    LOGGER.info("Device went offline: " + mac + " (" + ip + ") on " + network.getName());
-
-                    // Record offline status with last known IP
-                    var offlineStatus = new DeviceStatusHistoryEntity(
-                            network, knownDevice,
-                            ip,
-                            false, messageTimestamp);
-                    monitoringDao.save(offlineStatus);
-                }
-            }
-
-        } catch (Exception e) {
-            LOGGER.error("Error processing MQTT message from topic: {}", topic, e);
         }
     }
 
     /**
-     * Extract network name from MQTT topic.
-     * The topic is expected to be in format
-     * "something/maybeSomethingElse/AndSoOn/NetworkName/operationName".
+     * Process a message that has just been received, e.g. one replayed from a
+     * recording.
      */
-    private String extractNetworkName(String topic) {
+    @Transactional
+    public void processMessage(String topic, String networkName, byte[] payload) {
+        processMessage(topic, networkName, payload, Instant.now());
+    }
+
+    private void processScan(String topic, String networkName, byte[] payload, Instant receivedAt,
+            ScanProcessedEvent event) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Processing MQTT message from topic: {}:\n{}", topic,
+                    new String(payload, StandardCharsets.UTF_8));
+        }
+
+        // Parse JSON payload to Java object. Throws IllegalArgumentException for
+        // a malformed message, which then ends up in the dead letter store.
+        NetworkStatusMessage message = parseMessage(payload);
+        event.setDevices(message.getDevices().size());
+
+        var messageTimestamp = LocalDateTime.ofInstant(message.getTimestamp(), ZoneOffset.UTC);
+        // the devices whose status changes, and alerts opened for them, refer to it
+        var scan = new ScanTiming(messageTimestamp, LocalDateTime.ofInstant(receivedAt, ZoneOffset.UTC));
+
+        // Get the network's current state - from memory, or from the database if
+        // we haven't seen it since startup
+        NetworkState networkState = deviceStateStore.getNetwork(networkName);
+        NetworkEntity network;
+        if (networkState == null) {
+            network = createNetwork(networkName, messageTimestamp);
+            networkState = deviceStateStore.getNetwork(network);
+        } else {
+            // no need to load it, it's mostly used as a foreign key
+            network = monitoringDao.getNetworkReference(networkState.getId());
+        }
+        // never move it backwards - it's also the watermark for stale scans
+        // (see IngestPipeline)
+        if (networkState.getLastSeen() == null || messageTimestamp.isAfter(networkState.getLastSeen())) {
+            networkState.setLastSeen(messageTimestamp);
+            networkState.setLastScan(scan);
+        }
+
+        // devices whose last seen moved - written in the background, if they moved
+        // far enough, once this transaction commits
+        List<DeviceState> seenDevices = new ArrayList<>();
+        // new devices only get their ids when they're inserted
+        Map<DeviceState, DeviceEntity> insertedDevices = new LinkedHashMap<>();
+        // device UPDATEs, executed after all INSERTs
+        Map<Long, String> changedIps = new LinkedHashMap<>();
+        List<Long> cameOnline = new ArrayList<>();
+        List<Long> wentOffline = new ArrayList<>();
+        // devices that came online or went offline - their alert deadlines move
+        List<DeviceState> changedDevices = new ArrayList<>();
+        // status history of known devices, written after the loops
+        List<StatusHistoryCopyWriter.Row> statusChanges = new ArrayList<>();
+
+        NetworkState committedState = networkState;
+        deviceStateStore.afterTransaction(networkName, () -> {
+            scan.setCommittedAt(LocalDateTime.now(ZoneOffset.UTC));
+            if (committedState.getId() == null) {
+                committedState.setId(network.getId());
+            }
+            insertedDevices.forEach((state, entity) -> state.setId(entity.getId()));
+            seenDevices.forEach(stateWriter::lastSeenChanged);
+            stateWriter.lastSeenChanged(committedState);
+
+            metrics.increment(MetricsRegistry.DEVICES_SEEN, seenDevices.size() + insertedDevices.size(), networkName);
+            metrics.increment(MetricsRegistry.DEVICE_TRANSITIONS, cameOnline.size() + insertedDevices.size(),
+                    networkName, "online");
+            metrics.increment(MetricsRegistry.DEVICE_TRANSITIONS, wentOffline.size(), networkName, "offline");
+
+            // e.g. a network alert to close, or a device to watch until it's
+            // been back up long enough; the rest keep their deadlines
+            var now = LocalDateTime.now(ZoneOffset.UTC);
+            alertScheduler.schedule(networkName, null, now);
+            changedDevices.forEach(device -> alertScheduler.schedule(networkName, device.getMacAddress(), now));
+        });
+
+        // sort the devices into new / seen / went offline
+        var reconciliation = reconciler.reconcile(networkState, message.getDevices());
+
+        if (reconciliation.getSkipped() > 0) {
+            LOGGER.warn("{} device(s) with missing, empty or duplicate MAC address reported on network: {}",
+                    reconciliation.getSkipped(), networkName);
+        }
+
+        // unknown devices: add to device repository, log new device
+        for (NetworkStatusMessage.DeviceInfo deviceStatus : reconciliation.getNewDevices()) {
+            var device = new DeviceEntity();
+            device.setNetwork(network);
+            device.setMacAddress(deviceStatus.getMac());
+            device.setIpAddress(deviceStatus.getIp());
+            device.setDeviceOperationMode(DeviceOperationMode.UNAUTHORIZED); // default for new devices
+            device.setOnline(true); // currently online, obviously
+            device.setStatusSince(messageTimestamp);
+            device.setFirstSeen(messageTimestamp);
+            device.setLastSeen(messageTimestamp);
+            // persist the new device before using it in the alert
+            monitoringDao.save(device);
+
+            var deviceState = new DeviceState(device);
+            deviceState.setStatusScan(scan);
+            networkState.addDevice(deviceState);
+            insertedDevices.put(deviceState, device);
+
+            // due as soon as the scan arrived
+            alerterService.openAlert(AlertType.DEVICE_UNAUTHORIZED, network, device,
+                    "device detected for the first time", scan, scan.getReceivedAt());
+
+            // also add to device history
+            monitoringDao.save(new DeviceStatusHistoryEntity(
+                    network, device, deviceStatus.getIp(), true, messageTimestamp));
+        }
+
+        // known devices that are online: record the change if they were offline
+        for (var seen : reconciliation.getSeenDevices()) {
+            var device = seen.getDevice();
+            var mac = device.getMacAddress();
+            var ip = seen.getIp();
+
+            // in all cases, update device's current online status and last seen
+            device.setOnline(true);
+            device.setLastSeen(messageTimestamp);
+            seenDevices.add(device);
+
+            // only write the IP if it actually changed
+            if (!Objects.equals(ip, device.getIpAddress())) {
+                device.setIpAddress(ip);
+                changedIps.put(device.getId(), ip);
+            }
+
+            // see if alert needs to be sent for unauthorized device
+            if (device.getOperationMode() == DeviceOperationMode.UNAUTHORIZED
+                    && device.getActiveAlertId() == null) {
+                // device is not allowed and no alert has been sent yet
+                alerterService.openAlert(AlertType.DEVICE_UNAUTHORIZED, network, loadDevice(device),
+                        "device was seen before", scan, scan.getReceivedAt());
+            }
 
-        int rightSlashIndex = topic.lastIndexOf('/');
-        if (rightSlashIndex > 0) {
-            int leftSlashIndex = topic.lastIndexOf('/', rightSlashIndex - 1);
-            if (leftSlashIndex >= 0) {
-                return topic.substring(leftSlashIndex + 1, rightSlashIndex);
+            if (!seen.isCameOnline()) {
+                // device was already online, no change, don't record
+                LOGGER.debug("Device is still online: {} ({}) on {}", mac, ip, networkName);
+                continue;
             }
+
+            // The device was offline, now online
+            device.setStatusSince(messageTimestamp);
+            device.setStatusScan(scan);
+            if (device.getOperationMode() == DeviceOperationMode.UNAUTHORIZED) {
+                LOGGER.info("Device " + mac + " (" + ip + ") is not allowed on network "
+                        + networkName + " but is online!");
+            } else {
+                LOGGER.info("Device came online: " + mac + " (" + ip + ") on " + networkName);
+            }
+
+            statusChanges.add(new StatusHistoryCopyWriter.Row(
+                    network.getId(), device.getId(), ip, true, messageTimestamp));
+            cameOnline.add(device.getId());
+            changedDevices.add(device);
+        }
+
+        // known devices missing from the message
+        for (var device : reconciliation.getWentOffline()) {
+            var mac = device.getMacAddress();
+            var ip = device.getIpAddress();
+
+            device.setOnline(false);
+            device.setStatusSince(messageTimestamp);
+            device.setStatusScan(scan);
+
+            // device went offline
+            LOGGER.info("Device went offline: " + mac + " (" + ip + ") on " + networkName);
+
+            // Record offline status with last known IP
+            statusChanges.add(new StatusHistoryCopyWriter.Row(
+                    network.getId(), device.getId(), ip, false, messageTimestamp));
+            wentOffline.add(device.getId());
+            changedDevices.add(device);
         }
 
-        LOGGER.warn("Topic does not follow expected format, using entire topic as network name: {}", topic);
-        return topic;
+        saveStatusHistory(network, statusChanges);
+
+        // current device status, matching the history records
+        monitoringDao.updateDeviceIps(changedIps);
+        if (!cameOnline.isEmpty()) {
+            monitoringDao.updateDeviceStatus(cameOnline, true, messageTimestamp);
+        }
+        if (!wentOffline.isEmpty()) {
+            monitoringDao.updateDeviceStatus(wentOffline, false, messageTimestamp);
+        }
+
+        event.setNewDevices(insertedDevices.size());
+        event.setCameOnline(cameOnline.size());
+        event.setWentOffline(wentOffline.size());
     }
 
     /**
-     * Parse JSON string to NetworkStatusMessage object.
+     * Parse JSON payload to NetworkStatusMessage object.
      * 
-     * JSON-B (Jakarta JSON Binding) is the standard JSON library in Jakarta EE.
-     * Similar to System.Text.Json in .NET.
+     * Uses a streaming JSON-P decoder straight on the payload bytes instead of
+     * JSON-B: creating a Jsonb instance per message is expensive, and so is
+     * copying the payload into a String first.
+     */
+    private NetworkStatusMessage parseMessage(byte[] payload) {
+        return decoder.decode(payload);
+    }
+
+    /**
+     * Create a network we've never seen before.
      */
-    private NetworkStatusMessage parseMessage(String payload) {
-        try (Jsonb jsonb = JsonbBuilder.create()) {
-            return jsonb.fromJson(payload, NetworkStatusMessage.class);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to parse JSON message", e);
+    private NetworkEntity createNetwork(String networkName, LocalDateTime messageTimestamp) {
+        NetworkEntity network = new NetworkEntity(networkName);
+        network.setLastSeen(messageTimestamp);
+        return monitoringDao.save(network);
+    }
+
+    /**
+     * Save the status history records of a message - with COPY if there are
+     * many of them, otherwise (or if COPY isn't available) as entities, in JDBC
+     * batches.
+     */
+    private void saveStatusHistory(NetworkEntity network, List<StatusHistoryCopyWriter.Row> rows) {
+        int threshold = config.getHistoryCopyThreshold();
+        if (threshold > 0 && rows.size() >= threshold && monitoringDao.copyStatusHistory(rows)) {
+            return;
+        }
+
+        for (StatusHistoryCopyWriter.Row row : rows) {
+            monitoringDao.save(new DeviceStatusHistoryEntity(network,
+                    monitoringDao.getDeviceReference(row.getDeviceId()), row.getIpAddress(), row.isOnline(),
+                    row.getTimestamp()));
         }
     }
 
     /**
-     * Get existing network or create a new one.
+     * Load the device row, with the current values from the state (the row may
+     * not have them yet), e.g. to open an alert for it.
      */
-    private NetworkEntity getOrCreateNetwork(String networkName) {
-        return monitoringDao.findNetworkByName(networkName)
-                .orElseGet(() -> {
-                    NetworkEntity newNetwork = new NetworkEntity(networkName);
-                    return monitoringDao.save(newNetwork);
-                });
+    private DeviceEntity loadDevice(DeviceState state) {
+        DeviceEntity device = monitoringDao.findDevice(state.getId());
+        device.setIpAddress(state.getIpAddress());
+        device.setLastSeen(state.getLastSeen());
+        return device;
     }
 
 }
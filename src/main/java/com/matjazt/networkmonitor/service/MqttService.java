@@ -2,14 +2,16 @@ package com.matjazt.networkmonitor.service;
 
 import java.io.FileInputStream;
 import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManagerFactory;
 
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
-import org.eclipse.paho.client.mqttv3.MqttCallback;
-import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
@@ -17,8 +19,15 @@ import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.matjazt.networkmonitor.cluster.ClusterMembership;
 import com.matjazt.networkmonitor.config.ConfigProvider;
 import com.matjazt.networkmonitor.dao.MonitoringDAO;
+import com.matjazt.networkmonitor.ingest.AckSequencer;
+import com.matjazt.networkmonitor.ingest.IngestPipeline;
+import com.matjazt.networkmonitor.ingest.SubscriptionMode;
+import com.matjazt.networkmonitor.ingest.TopicRouter;
+import com.matjazt.networkmonitor.state.DeviceStateStore;
+import com.matjazt.networkmonitor.state.DeviceStateWriter;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
@@ -34,6 +43,29 @@ import jakarta.inject.Inject;
  * 
  *           This is similar to a hosted service in .NET Core that runs for the
  *           application lifetime.
+ * 
+ *           When several instances share the broker (see ClusterMembership),
+ *           each one only subscribes to (or, with a wildcard subscription, only
+ *           accepts) the networks it owns.
+ * 
+ *           The client is Paho's MqttAsyncClient: connecting and subscribing
+ *           return tokens (think Task in .NET) that startup simply waits for,
+ *           while incoming messages are delivered on the client's callback
+ *           thread. By default a QoS 1 message is acknowledged as soon as the
+ *           callback returns, i.e. once it's queued in the ingest pipeline - a
+ *           crash loses whatever is still queued. With mqtt.manual.acks the
+ *           acknowledgement is sent only after the pipeline is done with the
+ *           message (see AckSequencer), so the broker redelivers anything that
+ *           wasn't committed, while the pipeline still works on many messages
+ *           at once. How many unacknowledged messages the broker sends at a
+ *           time is the broker's setting (e.g. max_inflight_messages in
+ *           Mosquitto) - MQTT 3.1.1 has no way for the client to ask for more.
+ * 
+ *           On shutdown with manual acknowledgements, the client stays
+ *           connected until the pipeline has drained, so the messages it
+ *           finishes are still acknowledged. Messages arriving meanwhile aren't
+ *           taken in or acknowledged - the broker redelivers them after the
+ *           restart.
  */
 @Singleton
 @Startup
@@ -45,12 +77,33 @@ public class MqttService {
     private ConfigProvider config;
 
     @Inject
-    private MessageProcessingService messageProcessor;
+    private IngestPipeline ingestPipeline;
 
     @Inject
     private MonitoringDAO monitoringDao;
 
-    private MqttClient mqttClient;
+    @Inject
+    private DeviceStateStore deviceStateStore;
+
+    @Inject
+    private DeviceStateWriter deviceStateWriter;
+
+    @Inject
+    private ClusterMembership cluster;
+
+    private MqttAsyncClient mqttClient;
+
+    // only with mqtt.manual.acks
+    private AckSequencer ackSequencer;
+
+    // network name <-> topic, allow/deny filters
+    private TopicRouter topicRouter;
+
+    // topic filters subscribed to, for unsubscribing on shutdown
+    private final List<String> subscriptions = new ArrayList<>();
+
+    // set on shutdown with manual acks, new messages are no longer taken in
+    private volatile boolean stopping;
 
     /**
      * Called automatically after dependency injection completes.
@@ -61,15 +114,27 @@ public class MqttService {
     @PostConstruct
     public void initialize() {
         try {
+            // Load device state and start the workers before any message can arrive
+            deviceStateStore.warmUp();
+            ingestPipeline.start();
+
+            topicRouter = new TopicRouter(config.getMqttTopicTemplate(),
+                    config.getMqttNetworkAllow().orElse(null), config.getMqttNetworkDeny().orElse(null));
+
             LOGGER.info("Initializing MQTT connection...");
 
             // Create MQTT client
             // MemoryPersistence: messages stored in memory (lost on restart)
-            mqttClient = new MqttClient(
+            mqttClient = new MqttAsyncClient(
                     config.getMqttBrokerUrl(),
                     config.getMqttClientId(),
                     new MemoryPersistence());
 
+            if (config.getMqttManualAcks() == Boolean.TRUE) {
+                mqttClient.setManualAcks(true);
+                ackSequencer = new AckSequencer(this::acknowledge);
+            }
+
             // Configure connection options
             MqttConnectOptions options = new MqttConnectOptions();
             options.setUserName(config.getMqttUsername());
@@ -85,17 +150,60 @@ public class MqttService {
             }
 
             // Set callback for incoming messages
-            mqttClient.setCallback(new MqttCallback() {
+            mqttClient.setCallback(new MqttCallbackExtended() {
                 @Override
                 public void connectionLost(Throwable cause) {
                     LOGGER.warn("MQTT connection lost", cause);
+                    if (ackSequencer != null) {
+                        // message ids are only valid on their connection - the broker
+                        // redelivers these after reconnecting
+                        int unacknowledged = ackSequencer.reset();
+                        if (unacknowledged > 0) {
+                            LOGGER.info("{} message(s) in progress will be redelivered", unacknowledged);
+                        }
+                    }
+                }
+
+                @Override
+                public void connectComplete(boolean reconnect, String serverUri) {
+                    if (reconnect) {
+                        LOGGER.info("Reconnected to MQTT broker: {}", serverUri);
+                    }
                 }
 
                 @Override
                 public void messageArrived(String topic, MqttMessage message) {
-                    // Delegate message processing to dedicated service
-                    String payload = new String(message.getPayload());
-                    messageProcessor.processMessage(topic, payload);
+                    if (stopping) {
+                        // with manual acks it stays unacknowledged and is redelivered
+                        // after the restart
+                        LOGGER.debug("Shutting down, not taking in message from topic {}", topic);
+                        return;
+                    }
+
+                    // registered right away, so acknowledgements keep the arrival order
+                    AckSequencer.Ticket ticket = ackSequencer != null
+                            ? ackSequencer.register(message.getId(), message.getQos())
+                            : null;
+                    Runnable onComplete = ticket != null ? () -> ackSequencer.complete(ticket) : null;
+
+                    String networkName = topicRouter.route(topic);
+                    if (networkName == null) {
+                        LOGGER.debug("Ignoring message on topic {} (not a scan topic or network filtered out)",
+                                topic);
+                        complete(onComplete);
+                        return;
+                    }
+                    if (!cluster.owns(networkName)) {
+                        // wildcard subscription - another node processes this network
+                        LOGGER.trace("Ignoring message of network {}, owned by {}", networkName,
+                                cluster.ownerOf(networkName));
+                        complete(onComplete);
+                        return;
+                    }
+
+                    // Only queue the message here - processing happens on the ingest
+                    // workers, so a slow transaction doesn't hold up the MQTT client
+                    ingestPipeline.submit(topic, networkName, message.getPayload(), onComplete);
                 }
 
                 @Override
@@ -106,25 +214,90 @@ public class MqttService {
 
             // Connect to broker
             LOGGER.info("Connecting to MQTT broker: {}", config.getMqttBrokerUrl());
-            mqttClient.connect(options);
-            LOGGER.info("Connected to MQTT broker");
-
-            // Subscribe to all configured topics
-
-            // Obtain list of networks from database
-            var networks = monitoringDao.findAllNetworks();
-            String topicTemplate = config.getMqttTopicTemplate();
-            for (var network : networks) {
-                String topic = topicTemplate.replace("{networkName}", network.getName());
-                mqttClient.subscribe(topic, 1); // QoS 1: at least once delivery
-                LOGGER.info("Subscribed to topic: {}", topic);
-            }
+            mqttClient.connect(options).waitForCompletion();
+            LOGGER.info("Connected to MQTT broker (manual acknowledgements: {})", ackSequencer != null);
+
+            subscribe();
 
         } catch (MqttException e) {
             throw new RuntimeException("MQTT initialization failed", e);
         }
     }
 
+    /**
+     * Subscribe to the scan topics, according to mqtt.subscription.mode. QoS 1:
+     * at least once delivery.
+     */
+    private void subscribe() throws MqttException {
+        if (config.getMqttSubscriptionMode() == SubscriptionMode.WILDCARD) {
+            if (cluster.isClustered()) {
+                LOGGER.warn("mqtt.subscription.mode=WILDCARD with {} cluster nodes: every node receives the scans "
+                        + "of all networks and drops those it doesn't own, so the broker sends each scan {} "
+                        + "times - use PER_NETWORK in a cluster", cluster.getNodes().size(),
+                        cluster.getNodes().size());
+            }
+            // one subscription for all networks, present and future - messages are
+            // routed by topic in messageArrived
+            subscribe(topicRouter.wildcardFilter());
+            return;
+        }
+
+        // Obtain list of networks from database
+        for (var network : monitoringDao.findAllNetworks()) {
+            if (!topicRouter.isAllowed(network.getName())) {
+                LOGGER.info("Network {} is filtered out, not subscribing", network.getName());
+                continue;
+            }
+            if (!cluster.owns(network.getName())) {
+                LOGGER.debug("Network {} is owned by {}, not subscribing", network.getName(),
+                        cluster.ownerOf(network.getName()));
+                continue;
+            }
+            subscribe(topicRouter.topicFor(network.getName()));
+        }
+    }
+
+    /**
+     * Subscribe to a topic filter, as a shared subscription if
+     * mqtt.shared.group is set.
+     * 
+     * The broker hands each message of a shared subscription to just one member
+     * of the group, without regard to the network, so the group is per node:
+     * instances with the same node id (e.g. during a rolling upgrade) share
+     * the messages, while network affinity between nodes still comes from
+     * ClusterMembership.
+     */
+    private void subscribe(String filter) throws MqttException {
+        String topic = filter;
+        var group = config.getMqttSharedGroup();
+        if (group.isPresent() && !group.get().isBlank()) {
+            String groupName = cluster.isClustered() ? group.get() + "-" + cluster.getNodeId() : group.get();
+            topic = "$share/" + groupName + "/" + filter;
+        }
+        mqttClient.subscribe(topic, 1).waitForCompletion();
+        subscriptions.add(topic);
+        LOGGER.info("Subscribed to topic: {}", topic);
+    }
+
+    private static void complete(Runnable onComplete) {
+        if (onComplete != null) {
+            onComplete.run();
+        }
+    }
+
+    /**
+     * Send the acknowledgement of a message, called by AckSequencer in arrival
+     * order.
+     */
+    private void acknowledge(int messageId, int qos) {
+        try {
+            mqttClient.messageArrivedComplete(messageId, qos);
+        } catch (MqttException e) {
+            // disconnected - the broker will redeliver the message
+            LOGGER.debug("Could not acknowledge message {}: {}", messageId, e.getMessage());
+        }
+    }
+
     /**
      * Configure SSL/TLS for secure MQTT connection.
      * 
@@ -176,10 +349,55 @@ public class MqttService {
      */
     @PreDestroy
     public void cleanup() {
+        if (ackSequencer != null) {
+            // stay connected while the pipeline drains, so the messages it
+            // finishes can still be acknowledged
+            stopping = true;
+            unsubscribe();
+        } else {
+            // everything queued was acknowledged on arrival, nothing to wait for
+            disconnect();
+        }
+
+        ingestPipeline.shutdown();
+
+        // disconnecting sends the acknowledgements that are still queued first
+        if (ackSequencer != null) {
+            int unacknowledged = ackSequencer.getOutstanding();
+            if (unacknowledged > 0) {
+                LOGGER.info("{} message(s) not acknowledged, the broker will redeliver them", unacknowledged);
+            }
+        }
+        disconnect();
+
+        // write whatever the last messages changed
+        deviceStateWriter.flush();
+    }
+
+    /**
+     * Stop the broker from sending more messages. With a persistent session
+     * (mqtt.clean.session=false) the subscriptions are kept instead: dropping
+     * them would make the broker discard the messages published while we're
+     * down. The messages still arriving are then simply not taken in.
+     */
+    private void unsubscribe() {
+        if (mqttClient == null || !mqttClient.isConnected() || subscriptions.isEmpty()
+                || config.getMqttCleanSession() != Boolean.TRUE) {
+            return;
+        }
+        try {
+            mqttClient.unsubscribe(subscriptions.toArray(new String[0])).waitForCompletion();
+            LOGGER.info("Unsubscribed from {} topic(s)", subscriptions.size());
+        } catch (MqttException e) {
+            LOGGER.warn("Error unsubscribing from MQTT topics", e);
+        }
+    }
+
+    private void disconnect() {
         if (mqttClient != null && mqttClient.isConnected()) {
             try {
                 LOGGER.info("Disconnecting from MQTT broker...");
-                mqttClient.disconnect();
+                mqttClient.disconnect().waitForCompletion();
                 mqttClient.close();
                 LOGGER.info("MQTT connection closed");
             } catch (MqttException e) {
@@ -0,0 +1,145 @@
+package com.matjazt.networkmonitor.state;
+
+import java.time.LocalDateTime;
+
+import com.matjazt.networkmonitor.entity.DeviceEntity;
+import com.matjazt.networkmonitor.entity.DeviceOperationMode;
+
+/**
+ * In-memory state of a single device, kept by DeviceStateStore.
+ *
+ * A device is only ever changed by the ingest worker of its network and by
+ * the alert checker, but it's read from REST requests too, so the fields are
+ * volatile.
+ */
+public class DeviceState {
+
+    // null until the INSERT of a new device is committed
+    private volatile Long id;
+    private final String macAddress;
+    private volatile String name;
+    private volatile String ipAddress;
+    private volatile DeviceOperationMode operationMode;
+    private volatile boolean online;
+    private volatile LocalDateTime lastSeen;
+    // last seen timestamp as currently stored in the database
+    private volatile LocalDateTime persistedLastSeen;
+    private volatile LocalDateTime statusSince;
+    // the scan that set statusSince, if it was processed since startup
+    private volatile ScanTiming statusScan;
+    private volatile Long activeAlertId;
+
+    public DeviceState(String macAddress) {
+        this.macAddress = macAddress;
+    }
+
+    /**
+     * Creates the state from a device row.
+     */
+    public DeviceState(DeviceEntity device) {
+        this.id = device.getId();
+        this.macAddress = device.getMacAddress();
+        this.name = device.getName();
+        this.ipAddress = device.getIpAddress();
+        this.operationMode = device.getDeviceOperationMode();
+        this.online = Boolean.TRUE.equals(device.getOnline());
+        this.lastSeen = device.getLastSeen();
+        this.persistedLastSeen = device.getLastSeen();
+        this.statusSince = device.getStatusSince();
+        this.activeAlertId = device.getActiveAlertId();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getMacAddress() {
+        return macAddress;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getIpAddress() {
+        return ipAddress;
+    }
+
+    public void setIpAddress(String ipAddress) {
+        this.ipAddress = ipAddress;
+    }
+
+    public DeviceOperationMode getOperationMode() {
+        return operationMode;
+    }
+
+    public void setOperationMode(DeviceOperationMode operationMode) {
+        this.operationMode = operationMode;
+    }
+
+    public boolean isOnline() {
+        return online;
+    }
+
+    public void setOnline(boolean online) {
+        this.online = online;
+    }
+
+    public LocalDateTime getLastSeen() {
+        return lastSeen;
+    }
+
+    public void setLastSeen(LocalDateTime lastSeen) {
+        this.lastSeen = lastSeen;
+    }
+
+    /**
+     * Last seen timestamp in the database, which may be behind getLastSeen().
+     */
+    public LocalDateTime getPersistedLastSeen() {
+        return persistedLastSeen;
+    }
+
+    public void setPersistedLastSeen(LocalDateTime persistedLastSeen) {
+        this.persistedLastSeen = persistedLastSeen;
+    }
+
+    /**
+     * When the device last came online or went offline (null if unknown).
+     */
+    public LocalDateTime getStatusSince() {
+        return statusSince;
+    }
+
+    public void setStatusSince(LocalDateTime statusSince) {
+        this.statusSince = statusSince;
+    }
+
+    /**
+     * The scan in which the device last came online or went offline, or null
+     * if that was before startup.
+     */
+    public ScanTiming getStatusScan() {
+        return statusScan;
+    }
+
+    public void setStatusScan(ScanTiming statusScan) {
+        this.statusScan = statusScan;
+    }
+
+    public Long getActiveAlertId() {
+        return activeAlertId;
+    }
+
+    public void setActiveAlertId(Long activeAlertId) {
+        this.activeAlertId = activeAlertId;
+    }
+}
@@ -0,0 +1,265 @@
+package com.matjazt.networkmonitor.state;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.matjazt.networkmonitor.cluster.ClusterMembership;
+import com.matjazt.networkmonitor.dao.MonitoringDAO;
+import com.matjazt.networkmonitor.entity.AlertEntity;
+import com.matjazt.networkmonitor.entity.DeviceEntity;
+import com.matjazt.networkmonitor.entity.NetworkEntity;
+import com.matjazt.networkmonitor.service.AlertScheduler;
+
+import jakarta.annotation.Resource;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Authoritative in-memory state of the networks this instance owns, and their
+ * devices.
+ *
+ * The application is the only writer of device state, so there's no need to
+ * read it back from the database on every message: the store is loaded once
+ * at startup (warmUp) and then updated in place by message processing and the
+ * alert checker. Frequently changing columns (IP address, last seen) are
+ * written to the database later, in batches, by DeviceStateWriter.
+ *
+ * Consistency with the database:
+ * - state is changed during the transaction that records the change, so other
+ * readers (REST) may briefly see a change that isn't committed yet
+ * - if that transaction rolls back, the network is dropped and loaded from the
+ * database again the next time it's needed (see afterTransaction); last seen
+ * timestamps of earlier, committed scans that aren't written yet are carried
+ * over into the reloaded state (see DeviceStateWriter.load), so the network's
+ * last seen - the stale scan watermark - never moves backwards
+ * - the online flag and status timestamp are written synchronously, together
+ * with the status history, so after a crash only IP addresses and last seen
+ * timestamps can be slightly behind
+ *
+ * Device operation mode and name and the network's alerting delay are edited
+ * directly in the database; the alert checker copies the rows changed since
+ * its last check into the store.
+ *
+ * Every network is handed to the AlertScheduler when it's loaded - at startup,
+ * on first use or after a rollback - so its alerts don't depend on a scan
+ * arriving first.
+ *
+ * Networks owned by another cluster node are never kept: nothing here would
+ * update them, as only the owner processes their scans. Asking for one reads
+ * a snapshot from the database every time.
+ */
+@ApplicationScoped
+public class DeviceStateStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeviceStateStore.class);
+
+    @Inject
+    private MonitoringDAO monitoringDao;
+
+    @Inject
+    private DeviceStateWriter stateWriter;
+
+    @Inject
+    private ClusterMembership cluster;
+
+    @Inject
+    private AlertScheduler alertScheduler;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactionRegistry;
+
+    private final Map<String, NetworkState> networks = new ConcurrentHashMap<>();
+
+    /**
+     * Load all networks this instance owns, and their devices. Called by
+     * MqttService before it subscribes, so the first messages don't have to
+     * wait for it.
+     */
+    public void warmUp() {
+        long start = System.nanoTime();
+        int devices = 0;
+        for (NetworkEntity network : monitoringDao.findAllNetworks()) {
+            if (cluster.owns(network.getName())) {
+                devices += getNetwork(network).getDeviceCount();
+            }
+        }
+        LOGGER.info("Device state loaded - networks: {}, devices: {}, took {} ms",
+                networks.size(), devices, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * State of the network with the given name, loaded from the database if
+     * needed.
+     *
+     * @return the state, or null if there's no such network
+     */
+    public NetworkState getNetwork(String networkName) {
+        NetworkState state = networks.get(networkName);
+        if (state != null) {
+            return state;
+        }
+        return monitoringDao.findNetworkByName(networkName)
+                .map(this::getNetwork)
+                .orElse(null);
+    }
+
+    /**
+     * State of the given network, loaded from the database if needed. A network
+     * that isn't persisted yet gets an empty state. For a network owned by
+     * another node, this is a fresh snapshot of the database that isn't kept.
+     */
+    public NetworkState getNetwork(NetworkEntity network) {
+        NetworkState state = networks.get(network.getName());
+        if (state != null) {
+            return state;
+        }
+        if (!cluster.owns(network.getName())) {
+            // the owner keeps the database current - online flags synchronously,
+            // IP addresses and last seen shortly after
+            return loadFromDatabase(network);
+        }
+        boolean[] loaded = new boolean[1];
+        state = networks.computeIfAbsent(network.getName(), name -> {
+            loaded[0] = true;
+            return load(network);
+        });
+        if (loaded[0]) {
+            // only once it's in the map - the alert checker drops deadlines of
+            // networks that aren't loaded
+            scheduleLoaded(state);
+        }
+        return state;
+    }
+
+    /**
+     * State of the network if it's already loaded, null otherwise. Doesn't touch
+     * the database.
+     */
+    public NetworkState findLoaded(String networkName) {
+        return networks.get(networkName);
+    }
+
+    /**
+     * Forget the state of a network, including changes not written yet. It
+     * will be loaded from the database again when needed.
+     */
+    public void evict(String networkName) {
+        NetworkState removed = networks.remove(networkName);
+        if (removed != null) {
+            stateWriter.discard(removed);
+        }
+    }
+
+    /**
+     * Run onCommit after the current transaction commits (or right away if
+     * there's no transaction). If the transaction rolls back, the network's
+     * state may contain changes that never made it to the database, so it's
+     * dropped instead - but the pending writes of earlier transactions are
+     * kept.
+     */
+    public void afterTransaction(String networkName, Runnable onCommit) {
+        if (transactionRegistry.getTransactionStatus() == Status.STATUS_NO_TRANSACTION) {
+            onCommit.run();
+            return;
+        }
+
+        transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+                // nothing to do
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    try {
+                        onCommit.run();
+                        return;
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Failed to update device state of network {}", networkName, e);
+                    }
+                } else {
+                    LOGGER.warn("Transaction rolled back, reloading device state of network {}", networkName);
+                }
+                networks.remove(networkName);
+            }
+        });
+    }
+
+    /**
+     * Record an opened or closed alert in the state, once the transaction
+     * commits.
+     *
+     * @param device     null for network alerts
+     * @param onRecorded run after the state has been updated, may be null
+     */
+    public void recordAlert(NetworkEntity network, DeviceEntity device, AlertEntity alert, boolean open,
+            Runnable onRecorded) {
+        String networkName = network.getName();
+        String macAddress = device != null ? device.getMacAddress() : null;
+
+        afterTransaction(networkName, () -> {
+            NetworkState state = networks.get(networkName);
+            if (state == null) {
+                return; // will be loaded with the alert from the database
+            }
+
+            // the id is only certain to be assigned after the commit
+            Long alertId = open ? alert.getId() : null;
+            if (macAddress == null) {
+                state.setActiveAlertId(alertId);
+            } else {
+                DeviceState deviceState = state.getDevice(macAddress);
+                if (deviceState != null) {
+                    deviceState.setActiveAlertId(alertId);
+                }
+            }
+            if (onRecorded != null) {
+                onRecorded.run();
+            }
+        });
+    }
+
+    /**
+     * Have a freshly loaded network and all its devices looked at right away:
+     * nothing was waiting for them while they weren't loaded.
+     */
+    private void scheduleLoaded(NetworkState state) {
+        if (state.getId() == null || !cluster.owns(state.getName())) {
+            return; // a new network is scheduled by ingest once it's committed
+        }
+        var now = LocalDateTime.now(ZoneOffset.UTC);
+        alertScheduler.schedule(state.getName(), null, now);
+        for (DeviceState device : state.getDevices()) {
+            alertScheduler.schedule(state.getName(), device.getMacAddress(), now);
+        }
+    }
+
+    private NetworkState load(NetworkEntity network) {
+        return stateWriter.load(() -> loadFromDatabase(network));
+    }
+
+    private NetworkState loadFromDatabase(NetworkEntity network) {
+        NetworkState state = new NetworkState(network.getId(), network.getName(), network.getLastSeen(),
+                network.getActiveAlertId());
+        state.setAlertingDelay(network.getAlertingDelay());
+        if (network.getId() == null) {
+            return state;
+        }
+
+        for (DeviceEntity device : monitoringDao.findAllDevicesForNetwork(network.getId())) {
+            state.addDevice(new DeviceState(device));
+        }
+
+        LOGGER.debug("Loaded state of network {}: {} devices", network.getName(), state.getDeviceCount());
+        return state;
+    }
+}
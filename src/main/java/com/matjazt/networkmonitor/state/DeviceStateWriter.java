@@ -0,0 +1,289 @@
+package com.matjazt.networkmonitor.state;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.matjazt.networkmonitor.config.ConfigProvider;
+import com.matjazt.networkmonitor.dao.MonitoringDAO;
+import com.matjazt.networkmonitor.service.ExecutionSupport;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Write-behind of last seen timestamps.
+ *
+ * Every scan moves the last seen timestamp of every online device, but nothing
+ * else changes for most of them - writing each one would be pure write
+ * amplification (a 2000 device network scanned every minute = 2000 UPDATEs a
+ * minute). Real changes (online flag, IP address, alerts) are written right
+ * away, in the message's transaction; last seen timestamps are only kept in
+ * memory and written here:
+ *
+ * - a device or network becomes dirty only when its last seen timestamp is at
+ * least state.last.seen.granularity seconds ahead of the value in the database
+ * - every state.flush.interval seconds all dirty rows are written, with one
+ * UPDATE ... FROM (VALUES ...) statement per state.flush.batch.size rows
+ *
+ * If a flush fails (database down), the rows stay dirty and are retried on the
+ * next flush.
+ *
+ * A pending write holds the timestamp as it was when its transaction
+ * committed: the state object may move on in a later transaction that rolls
+ * back. When a network is reloaded after such a rollback, its pending
+ * timestamps are carried over into the new state (see load), so the store
+ * never falls back to the older values in the database.
+ */
+@ApplicationScoped
+public class DeviceStateWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeviceStateWriter.class);
+
+    @Inject
+    private ConfigProvider config;
+
+    @Inject
+    private MonitoringDAO monitoringDao;
+
+    @Inject
+    private ExecutionSupport executionSupport;
+
+    @Resource
+    private ManagedScheduledExecutorService scheduler;
+
+    // keyed by id, so repeated changes of the same row coalesce
+    private final Map<Long, Pending<DeviceState>> dirtyDevices = new ConcurrentHashMap<>();
+    private final Map<Long, Pending<NetworkState>> dirtyNetworks = new ConcurrentHashMap<>();
+
+    private Duration granularity;
+    private ScheduledFuture<?> flushTask;
+
+    @PostConstruct
+    public void initialize() {
+        granularity = Duration.ofSeconds(config.getStateLastSeenGranularity());
+
+        long interval = config.getStateFlushInterval();
+        flushTask = scheduler.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.SECONDS);
+        LOGGER.info("Device state writer started - flush interval: {}s, batch size: {}, last seen granularity: {}s",
+                interval, config.getStateFlushBatchSize(), granularity.toSeconds());
+    }
+
+    @PreDestroy
+    public void cleanup() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        flush();
+    }
+
+    /**
+     * Called when the device's last seen timestamp moved, after the transaction
+     * that moved it committed. Schedules a write if it moved far enough.
+     */
+    public void lastSeenChanged(DeviceState device) {
+        LocalDateTime lastSeen = device.getLastSeen();
+        if (device.getId() != null && isDue(device.getPersistedLastSeen(), lastSeen)) {
+            dirtyDevices.put(device.getId(), new Pending<>(device, lastSeen));
+        }
+    }
+
+    /**
+     * Called when the network's last seen timestamp moved, after the
+     * transaction that moved it committed. Schedules a write if it moved far
+     * enough.
+     */
+    public void lastSeenChanged(NetworkState network) {
+        LocalDateTime lastSeen = network.getLastSeen();
+        if (network.getId() != null && isDue(network.getPersistedLastSeen(), lastSeen)) {
+            dirtyNetworks.put(network.getId(), new Pending<>(network, lastSeen));
+        }
+    }
+
+    /**
+     * Load a network's state from the database, with the pending last seen
+     * timestamps of the network and its devices applied to it. The pending
+     * writes then update the new state once they're done.
+     *
+     * Holds the flush lock, so a flush can't write pending timestamps between
+     * the database read and the carry-over.
+     */
+    public synchronized NetworkState load(Supplier<NetworkState> loader) {
+        NetworkState network = loader.get();
+        if (network.getId() != null) {
+            dirtyNetworks.computeIfPresent(network.getId(), (id, pending) -> carryOver(pending, network));
+        }
+        for (DeviceState device : network.getDevices()) {
+            if (device.getId() != null) {
+                dirtyDevices.computeIfPresent(device.getId(), (id, pending) -> carryOver(pending, device));
+            }
+        }
+        return network;
+    }
+
+    private static Pending<NetworkState> carryOver(Pending<NetworkState> pending, NetworkState network) {
+        if (network.getLastSeen() == null || pending.lastSeen.isAfter(network.getLastSeen())) {
+            network.setLastSeen(pending.lastSeen);
+        }
+        return new Pending<>(network, pending.lastSeen);
+    }
+
+    private static Pending<DeviceState> carryOver(Pending<DeviceState> pending, DeviceState device) {
+        if (device.getLastSeen() == null || pending.lastSeen.isAfter(device.getLastSeen())) {
+            device.setLastSeen(pending.lastSeen);
+        }
+        return new Pending<>(device, pending.lastSeen);
+    }
+
+    /**
+     * Drop pending writes of a network and its devices, e.g. when its state is
+     * reset.
+     */
+    public void discard(NetworkState network) {
+        if (network.getId() != null) {
+            dirtyNetworks.remove(network.getId());
+        }
+        for (DeviceState device : network.getDevices()) {
+            if (device.getId() != null) {
+                dirtyDevices.remove(device.getId());
+            }
+        }
+    }
+
+    /**
+     * Number of devices and networks waiting to be written.
+     */
+    public int getPendingCount() {
+        return dirtyDevices.size() + dirtyNetworks.size();
+    }
+
+    /**
+     * Write all pending changes now. Called periodically and on shutdown.
+     */
+    public synchronized void flush() {
+        int batchSize = config.getStateFlushBatchSize();
+        int written = 0;
+
+        List<Pending<DeviceState>> devices = new ArrayList<>(batchSize);
+        for (Long id : dirtyDevices.keySet()) {
+            Pending<DeviceState> device = dirtyDevices.remove(id);
+            if (device == null) {
+                continue;
+            }
+            devices.add(device);
+            if (devices.size() == batchSize) {
+                if (!writeDevices(devices)) {
+                    return;
+                }
+                written += devices.size();
+                devices = new ArrayList<>(batchSize);
+            }
+        }
+        if (!devices.isEmpty()) {
+            if (!writeDevices(devices)) {
+                return;
+            }
+            written += devices.size();
+        }
+
+        List<Pending<NetworkState>> networks = new ArrayList<>();
+        for (Long id : dirtyNetworks.keySet()) {
+            Pending<NetworkState> network = dirtyNetworks.remove(id);
+            if (network != null) {
+                networks.add(network);
+            }
+        }
+        if (!networks.isEmpty() && !writeNetworks(networks)) {
+            return;
+        }
+
+        if (written > 0 || !networks.isEmpty()) {
+            LOGGER.debug("Wrote last seen of {} device(s) and {} network(s)", written, networks.size());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // an exception would cancel the scheduled task
+            LOGGER.error("Device state flush failed", e);
+        }
+    }
+
+    private boolean isDue(LocalDateTime persisted, LocalDateTime current) {
+        if (current == null) {
+            return false;
+        }
+        return persisted == null || Duration.between(persisted, current).compareTo(granularity) >= 0;
+    }
+
+    private boolean writeDevices(List<Pending<DeviceState>> devices) {
+        Map<Long, LocalDateTime> lastSeenById = new LinkedHashMap<>();
+        for (Pending<DeviceState> device : devices) {
+            lastSeenById.put(device.state.getId(), device.lastSeen);
+        }
+
+        try {
+            executionSupport.runWithDatabasePermit(() -> monitoringDao.updateDeviceLastSeen(lastSeenById));
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to write last seen of {} device(s), will retry", devices.size(), e);
+            // newer changes may have been marked in the meantime, keep those
+            devices.forEach(device -> dirtyDevices.putIfAbsent(device.state.getId(), device));
+            return false;
+        }
+
+        for (Pending<DeviceState> device : devices) {
+            device.state.setPersistedLastSeen(device.lastSeen);
+        }
+        return true;
+    }
+
+    private boolean writeNetworks(List<Pending<NetworkState>> networks) {
+        Map<Long, LocalDateTime> lastSeenById = new LinkedHashMap<>();
+        for (Pending<NetworkState> network : networks) {
+            lastSeenById.put(network.state.getId(), network.lastSeen);
+        }
+
+        try {
+            executionSupport.runWithDatabasePermit(() -> monitoringDao.updateNetworkLastSeen(lastSeenById));
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to write last seen of {} network(s), will retry", networks.size(), e);
+            networks.forEach(network -> dirtyNetworks.putIfAbsent(network.state.getId(), network));
+            return false;
+        }
+
+        for (Pending<NetworkState> network : networks) {
+            network.state.setPersistedLastSeen(network.lastSeen);
+        }
+        return true;
+    }
+
+    /**
+     * A row waiting to be written: the state to mark as persisted afterwards,
+     * and the committed last seen timestamp to write.
+     */
+    private static final class Pending<S> {
+        final S state;
+        final LocalDateTime lastSeen;
+
+        Pending(S state, LocalDateTime lastSeen) {
+            this.state = state;
+            this.lastSeen = lastSeen;
+        }
+    }
+}
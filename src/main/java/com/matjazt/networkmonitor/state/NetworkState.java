@@ -0,0 +1,131 @@
+package com.matjazt.networkmonitor.state;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory state of a network and all of its devices, indexed by MAC
+ * address.
+ */
+public class NetworkState {
+
+    // null until the INSERT of a new network is committed
+    private volatile Long id;
+    private final String name;
+    private volatile LocalDateTime lastSeen;
+    // last seen timestamp as currently stored in the database
+    private volatile LocalDateTime persistedLastSeen;
+    // the latest scan processed since startup
+    private volatile ScanTiming lastScan;
+    private volatile Long activeAlertId;
+    // edited in the database, refreshed by the alert checker
+    private volatile int alertingDelay = 300;
+
+    private final Map<String, DeviceState> devicesByMac = new ConcurrentHashMap<>();
+
+    public NetworkState(Long id, String name, LocalDateTime lastSeen, Long activeAlertId) {
+        this.id = id;
+        this.name = name;
+        this.lastSeen = lastSeen;
+        this.persistedLastSeen = lastSeen;
+        this.activeAlertId = activeAlertId;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LocalDateTime getLastSeen() {
+        return lastSeen;
+    }
+
+    public void setLastSeen(LocalDateTime lastSeen) {
+        this.lastSeen = lastSeen;
+    }
+
+    /**
+     * Last seen timestamp in the database, which may be behind getLastSeen().
+     */
+    public LocalDateTime getPersistedLastSeen() {
+        return persistedLastSeen;
+    }
+
+    public void setPersistedLastSeen(LocalDateTime persistedLastSeen) {
+        this.persistedLastSeen = persistedLastSeen;
+    }
+
+    /**
+     * The latest scan processed since startup, or null.
+     */
+    public ScanTiming getLastScan() {
+        return lastScan;
+    }
+
+    public void setLastScan(ScanTiming lastScan) {
+        this.lastScan = lastScan;
+    }
+
+    public Long getActiveAlertId() {
+        return activeAlertId;
+    }
+
+    public void setActiveAlertId(Long activeAlertId) {
+        this.activeAlertId = activeAlertId;
+    }
+
+    /**
+     * Seconds without a scan (or a device in it) before an alert is raised.
+     */
+    public int getAlertingDelay() {
+        return alertingDelay;
+    }
+
+    public void setAlertingDelay(int alertingDelay) {
+        this.alertingDelay = alertingDelay;
+    }
+
+    public DeviceState getDevice(String macAddress) {
+        return devicesByMac.get(macAddress);
+    }
+
+    public void addDevice(DeviceState device) {
+        devicesByMac.put(device.getMacAddress(), device);
+    }
+
+    /**
+     * Live view of all devices - safe to iterate while the network is being
+     * updated.
+     */
+    public Collection<DeviceState> getDevices() {
+        return devicesByMac.values();
+    }
+
+    public int getDeviceCount() {
+        return devicesByMac.size();
+    }
+
+    /**
+     * Devices that are currently online.
+     */
+    public List<DeviceState> getOnlineDevices() {
+        List<DeviceState> online = new ArrayList<>();
+        for (DeviceState device : devicesByMac.values()) {
+            if (device.isOnline()) {
+                online.add(device);
+            }
+        }
+        return online;
+    }
+}
@@ -0,0 +1,45 @@
+package com.matjazt.networkmonitor.state;
+
+import java.time.LocalDateTime;
+
+/**
+ * When a scan was taken, received and committed - the first stages of the
+ * scan to alert latency recorded on alerts (see AlerterService.openAlert).
+ *
+ * One instance per processed scan, shared by the network and all devices
+ * whose status the scan changed; it only lives in memory, so after a restart
+ * (or a rolled back transaction, which reloads the state) alerts don't know
+ * their triggering scan. All timestamps are UTC, like in the database.
+ */
+public class ScanTiming {
+
+    private final LocalDateTime scanTimestamp;
+    private final LocalDateTime receivedAt;
+    // null until the scan's transaction is committed
+    private volatile LocalDateTime committedAt;
+
+    /**
+     * @param scanTimestamp the scan's own timestamp, from the router's clock
+     * @param receivedAt    when the message arrived from the broker
+     */
+    public ScanTiming(LocalDateTime scanTimestamp, LocalDateTime receivedAt) {
+        this.scanTimestamp = scanTimestamp;
+        this.receivedAt = receivedAt;
+    }
+
+    public LocalDateTime getScanTimestamp() {
+        return scanTimestamp;
+    }
+
+    public LocalDateTime getReceivedAt() {
+        return receivedAt;
+    }
+
+    public LocalDateTime getCommittedAt() {
+        return committedAt;
+    }
+
+    public void setCommittedAt(LocalDateTime committedAt) {
+        this.committedAt = committedAt;
+    }
+}
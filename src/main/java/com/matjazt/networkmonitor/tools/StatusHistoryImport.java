@@ -0,0 +1,180 @@
+package com.matjazt.networkmonitor.tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.postgresql.PGConnection;
+
+import com.matjazt.networkmonitor.dao.StatusHistoryCopyWriter;
+
+/**
+ * Offline import of device status history (backfills, data from another
+ * installation) with PostgreSQL's COPY.
+ *
+ * Reads a CSV file with a header line and the columns
+ *
+ * network,mac,ip,online,timestamp
+ *
+ * e.g. "MaliGrdi,AA:BB:CC:DD:EE:FF,192.168.1.10,true,2024-01-31 10:15:30"
+ * (timestamps in UTC, like the rest of the database). Networks and devices
+ * are matched by name and MAC address and must already exist; rows of unknown
+ * devices are skipped. The file is streamed, so it can be much bigger than
+ * the available memory. Everything is imported in one transaction.
+ *
+ * Runs outside the application server, from the built WAR directory:
+ *
+ * java -Djdbc.url=jdbc:postgresql://localhost:5432/network_monitor
+ * -Djdbc.user=postgres -Djdbc.password=...
+ * -cp "target/network-monitor/WEB-INF/classes:target/network-monitor/WEB-INF/lib/*"
+ * com.matjazt.networkmonitor.tools.StatusHistoryImport history.csv
+ *
+ * Only history rows are written; device.online/status_since are not touched.
+ */
+public class StatusHistoryImport {
+
+    private static final String SCHEMA = "main";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("Usage: StatusHistoryImport <csv file>");
+            System.err.println("JDBC connection: -Djdbc.url=... -Djdbc.user=... -Djdbc.password=...");
+            System.exit(1);
+        }
+
+        String url = System.getProperty("jdbc.url");
+        if (url == null) {
+            System.err.println("Missing -Djdbc.url");
+            System.exit(1);
+        }
+
+        try (Connection connection = DriverManager.getConnection(url,
+                System.getProperty("jdbc.user", "postgres"), System.getProperty("jdbc.password", ""))) {
+            PGConnection pgConnection = StatusHistoryCopyWriter.unwrap(connection);
+            if (pgConnection == null) {
+                System.err.println("Not a PostgreSQL connection: " + url);
+                System.exit(1);
+            }
+            connection.setAutoCommit(false);
+
+            Map<String, long[]> devices = loadDevices(connection);
+            System.out.println("Known devices: " + devices.size());
+
+            try (BufferedReader reader = Files.newBufferedReader(Path.of(args[0]), StandardCharsets.UTF_8)) {
+                reader.readLine(); // header
+                CsvRows rows = new CsvRows(reader, devices);
+
+                long start = System.nanoTime();
+                long written = new StatusHistoryCopyWriter(SCHEMA + ".device_status_history")
+                        .copy(pgConnection, () -> rows);
+                connection.commit();
+                long nanos = Math.max(System.nanoTime() - start, 1);
+
+                System.out.println("Imported " + written + " rows in " + nanos / 1_000_000 + " ms ("
+                        + written * 1_000_000_000L / nanos + " rows/s), skipped " + rows.skipped
+                        + " rows of unknown devices");
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * [network id, device id] by "network name/MAC address".
+     */
+    private static Map<String, long[]> loadDevices(Connection connection) throws SQLException {
+        Map<String, long[]> devices = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+                ResultSet result = statement.executeQuery("SELECT n.id, n.name, d.id, d.mac_address FROM "
+                        + SCHEMA + ".device d JOIN " + SCHEMA + ".network n ON n.id = d.network_id")) {
+            while (result.next()) {
+                devices.put(key(result.getString(2), result.getString(4)),
+                        new long[] { result.getLong(1), result.getLong(3) });
+            }
+        }
+        return devices;
+    }
+
+    private static String key(String network, String macAddress) {
+        return network + "/" + macAddress.toUpperCase();
+    }
+
+    /**
+     * Lazily parsed rows of the CSV file. Single use, like the reader.
+     */
+    private static class CsvRows implements Iterator<StatusHistoryCopyWriter.Row> {
+
+        private final BufferedReader reader;
+        private final Map<String, long[]> devices;
+        private StatusHistoryCopyWriter.Row next;
+        private long line = 1;
+        private long skipped;
+
+        CsvRows(BufferedReader reader, Map<String, long[]> devices) {
+            this.reader = reader;
+            this.devices = devices;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                String text;
+                try {
+                    text = reader.readLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (text == null) {
+                    return false;
+                }
+                line++;
+                if (!text.isBlank()) {
+                    next = parse(text);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public StatusHistoryCopyWriter.Row next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            StatusHistoryCopyWriter.Row row = next;
+            next = null;
+            return row;
+        }
+
+        private StatusHistoryCopyWriter.Row parse(String text) {
+            String[] columns = text.split(",", -1);
+            if (columns.length != 5) {
+                throw new IllegalArgumentException("Line " + line + ": expected 5 columns, got " + columns.length);
+            }
+
+            long[] ids = devices.get(key(columns[0].trim(), columns[1].trim()));
+            if (ids == null) {
+                skipped++;
+                return null;
+            }
+
+            String online = columns[3].trim();
+            return new StatusHistoryCopyWriter.Row(ids[0], ids[1], columns[2].trim(),
+                    online.equalsIgnoreCase("true") || online.equals("1") || online.equalsIgnoreCase("t"),
+                    LocalDateTime.parse(columns[4].trim().replace(' ', 'T')));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.matjazt.tools;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to Java 21 virtual threads from code compiled for Java 17.
+ *
+ * The project targets Java 17, where Thread.ofVirtual() doesn't exist, so the
+ * API is looked up reflectively. On older runtimes isSupported() returns false
+ * and callers fall back to platform threads.
+ */
+public class VirtualThreads {
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+
+        // virtual threads were a preview feature before Java 21
+        if (Runtime.version().feature() >= 21) {
+            try {
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                builderName = builderClass.getMethod("name", String.class, long.class);
+                builderFactory = builderClass.getMethod("factory");
+            } catch (ReflectiveOperationException e) {
+                ofVirtual = null;
+            }
+        }
+
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * True if the running JVM supports virtual threads (Java 21+).
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Creates a factory for virtual threads named namePrefix0, namePrefix1, ...
+     *
+     * @throws UnsupportedOperationException if the JVM has no virtual threads
+     */
+    public static ThreadFactory threadFactory(String namePrefix) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer");
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to create virtual thread factory", e);
+        }
+    }
+}
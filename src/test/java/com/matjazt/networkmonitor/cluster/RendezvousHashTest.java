@@ -0,0 +1,97 @@
+package com.matjazt.networkmonitor.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class RendezvousHashTest {
+
+    private static final int KEYS = 10_000;
+
+    private static Map<String, String> owners(List<String> nodes) {
+        Map<String, String> owners = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            String key = "network-" + i;
+            owners.put(key, RendezvousHash.owner(nodes, key));
+        }
+        return owners;
+    }
+
+    @Test
+    void ownerDoesntDependOnTheOrderOfTheNodes() {
+        List<String> nodes = List.of("node-a", "node-b", "node-c");
+        List<String> reversed = new ArrayList<>(nodes);
+        Collections.reverse(reversed);
+
+        assertEquals(owners(nodes), owners(reversed));
+    }
+
+    @Test
+    void addingANodeOnlyMovesKeysToIt() {
+        List<String> before = List.of("node-a", "node-b", "node-c");
+        List<String> after = List.of("node-a", "node-b", "node-c", "node-d");
+        Map<String, String> ownersBefore = owners(before);
+        Map<String, String> ownersAfter = owners(after);
+
+        int moved = 0;
+        for (Map.Entry<String, String> entry : ownersAfter.entrySet()) {
+            if (!entry.getValue().equals(ownersBefore.get(entry.getKey()))) {
+                assertEquals("node-d", entry.getValue());
+                moved++;
+            }
+        }
+        // about a quarter of the keys
+        assertTrue(moved > KEYS / 4 * 0.8 && moved < KEYS / 4 * 1.2, "moved " + moved);
+    }
+
+    @Test
+    void removingANodeOnlyMovesItsKeys() {
+        List<String> before = List.of("node-a", "node-b", "node-c", "node-d");
+        List<String> after = List.of("node-a", "node-c", "node-d");
+        Map<String, String> ownersBefore = owners(before);
+        Map<String, String> ownersAfter = owners(after);
+
+        for (Map.Entry<String, String> entry : ownersBefore.entrySet()) {
+            if (!entry.getValue().equals("node-b")) {
+                assertEquals(entry.getValue(), ownersAfter.get(entry.getKey()));
+            }
+        }
+    }
+
+    @Test
+    void spreadsKeysEvenly() {
+        List<String> nodes = List.of("node-a", "node-b", "node-c", "node-d", "node-e");
+        Map<String, Integer> counts = new HashMap<>();
+        for (String owner : owners(nodes).values()) {
+            counts.merge(owner, 1, Integer::sum);
+        }
+
+        assertEquals(nodes.size(), counts.size());
+        for (int count : counts.values()) {
+            assertTrue(count > KEYS / 5 * 0.85 && count < KEYS / 5 * 1.15, "count " + count);
+        }
+    }
+
+    @Test
+    void weightsArePinned() {
+        // every node must compute the same owner, whatever JVM it runs on - a
+        // change here reshuffles the networks of every running cluster
+        assertEquals(-5917816524015639825L, RendezvousHash.weight("node-a", "MaliGrdi"));
+        assertEquals(-8504966665210619976L, RendezvousHash.weight("node-b", "MaliGrdi"));
+        assertEquals("node-a", RendezvousHash.owner(List.of("node-a", "node-b", "node-c"), "MaliGrdi"));
+        assertEquals("node-b", RendezvousHash.owner(List.of("node-a", "node-b", "node-c"), "VelikiGrdi"));
+    }
+
+    @Test
+    void needsNodes() {
+        assertThrows(IllegalArgumentException.class, () -> RendezvousHash.owner(List.of(), "network"));
+    }
+}
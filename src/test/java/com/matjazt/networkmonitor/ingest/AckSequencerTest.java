@@ -0,0 +1,99 @@
+package com.matjazt.networkmonitor.ingest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class AckSequencerTest {
+
+    private final List<Integer> acknowledged = new CopyOnWriteArrayList<>();
+    private final AckSequencer sequencer = new AckSequencer((messageId, qos) -> acknowledged.add(messageId));
+
+    @Test
+    void acknowledgesInArrivalOrder() {
+        AckSequencer.Ticket first = sequencer.register(1, 1);
+        AckSequencer.Ticket second = sequencer.register(2, 1);
+        AckSequencer.Ticket third = sequencer.register(3, 1);
+
+        sequencer.complete(third);
+        sequencer.complete(second);
+        // both wait for the first one
+        assertTrue(acknowledged.isEmpty());
+        assertEquals(3, sequencer.getOutstanding());
+
+        sequencer.complete(first);
+        assertEquals(List.of(1, 2, 3), acknowledged);
+        assertEquals(0, sequencer.getOutstanding());
+    }
+
+    @Test
+    void acknowledgesTheHeadRightAway() {
+        AckSequencer.Ticket first = sequencer.register(1, 1);
+        AckSequencer.Ticket second = sequencer.register(2, 1);
+
+        sequencer.complete(first);
+        assertEquals(List.of(1), acknowledged);
+        assertEquals(1, sequencer.getOutstanding());
+
+        sequencer.complete(second);
+        assertEquals(List.of(1, 2), acknowledged);
+    }
+
+    @Test
+    void completingTwiceAcknowledgesOnce() {
+        AckSequencer.Ticket first = sequencer.register(1, 1);
+        sequencer.complete(first);
+        sequencer.complete(first);
+
+        assertEquals(List.of(1), acknowledged);
+    }
+
+    @Test
+    void resetForgetsOutstandingTickets() {
+        AckSequencer.Ticket old = sequencer.register(1, 1);
+        sequencer.register(2, 1);
+        assertEquals(2, sequencer.reset());
+
+        // message ids of the old connection are reused by the new one
+        AckSequencer.Ticket reused = sequencer.register(1, 1);
+        sequencer.complete(old);
+        assertTrue(acknowledged.isEmpty());
+
+        sequencer.complete(reused);
+        assertEquals(List.of(1), acknowledged);
+    }
+
+    @Test
+    void concurrentCompletionStillAcknowledgesInOrder() throws InterruptedException {
+        int messages = 5000;
+        List<AckSequencer.Ticket> tickets = new ArrayList<>();
+        for (int i = 0; i < messages; i++) {
+            tickets.add(sequencer.register(i, 1));
+        }
+        List<AckSequencer.Ticket> shuffled = new ArrayList<>(tickets);
+        Collections.shuffle(shuffled, new Random(42));
+
+        ExecutorService workers = Executors.newFixedThreadPool(8);
+        for (AckSequencer.Ticket ticket : shuffled) {
+            workers.execute(() -> sequencer.complete(ticket));
+        }
+        workers.shutdown();
+        assertTrue(workers.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(messages, acknowledged.size());
+        for (int i = 0; i < messages; i++) {
+            assertEquals(i, acknowledged.get(i));
+        }
+        assertEquals(0, sequencer.getOutstanding());
+    }
+}
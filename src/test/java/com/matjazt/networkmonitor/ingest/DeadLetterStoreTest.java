@@ -0,0 +1,246 @@
+package com.matjazt.networkmonitor.ingest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DeadLetterStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<DeadLetterStore> stores = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        stores.forEach(DeadLetterStore::close);
+    }
+
+    private DeadLetterStore open(long maxBytes, long segmentSize) throws IOException {
+        DeadLetterStore store = new DeadLetterStore(directory, maxBytes, segmentSize);
+        store.open();
+        stores.add(store);
+        return store;
+    }
+
+    private static IngestMessage message(String payload) {
+        return new IngestMessage("network/net/scan", "net", Instant.EPOCH, payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> payloads(DeadLetterStore store) throws IOException {
+        List<String> payloads = new ArrayList<>();
+        store.drain(letter -> payloads.add(new String(letter.getPayload(), StandardCharsets.UTF_8)));
+        return payloads;
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void keepsTheMessageAndTheError() throws IOException {
+        DeadLetterStore store = open(1 << 20, 1 << 16);
+        IngestMessage message = message("{\"devices\": [}");
+        assertTrue(store.append(message, new IllegalArgumentException("bad JSON")));
+
+        List<DeadLetterStore.Letter> letters = new ArrayList<>();
+        assertEquals(1, store.drain(letters::add));
+
+        DeadLetterStore.Letter letter = letters.get(0);
+        assertEquals("network/net/scan", letter.getTopic());
+        assertEquals("net", letter.getNetworkName());
+        assertEquals(message.getReceivedAt().toEpochMilli(), letter.getReceivedAt().toEpochMilli());
+        assertEquals(IllegalArgumentException.class.getName(), letter.getErrorClass());
+        assertEquals("bad JSON", letter.getErrorMessage());
+        assertArrayEquals(message.getPayload(), letter.getPayload());
+    }
+
+    @Test
+    void drainHandsOverOldestFirstAndDeletes() throws IOException {
+        // a segment per message
+        DeadLetterStore store = open(1 << 20, 1);
+        for (int i = 0; i < 3; i++) {
+            store.append(message("scan " + i), new IllegalStateException());
+        }
+        assertEquals(3, store.getCount());
+        assertEquals(3, segmentFiles());
+
+        assertEquals(List.of("scan 0", "scan 1", "scan 2"), payloads(store));
+        assertEquals(0, store.getCount());
+        assertEquals(0, store.getSizeBytes());
+        assertEquals(0, segmentFiles());
+    }
+
+    @Test
+    void messagesFailingDuringADrainAreKeptForTheNextOne() throws IOException {
+        DeadLetterStore store = open(1 << 20, 1 << 16);
+        store.append(message("scan 0"), new IllegalStateException());
+        store.append(message("scan 1"), new IllegalStateException());
+
+        List<String> drained = new ArrayList<>();
+        store.drain(letter -> {
+            drained.add(new String(letter.getPayload(), StandardCharsets.UTF_8));
+            // fails again
+            return store.append(message("again"), new IllegalStateException());
+        });
+
+        assertEquals(List.of("scan 0", "scan 1"), drained);
+        assertEquals(2, store.getCount());
+        assertEquals(List.of("again", "again"), payloads(store));
+    }
+
+    @Test
+    void refusedMessageAndTheRestStayInOrder() throws IOException {
+        // a record takes 92 bytes: scans 0-2 in the first segment, 3 and 4 in the
+        // second
+        DeadLetterStore store = open(1 << 20, 200);
+        for (int i = 0; i < 5; i++) {
+            store.append(message("scan " + i), new IllegalStateException());
+        }
+        assertEquals(2, segmentFiles());
+        long sizeBefore = store.getSizeBytes();
+
+        // the consumer takes two, then refuses - e.g. the pipeline shuts down
+        List<String> taken = new ArrayList<>();
+        long drained = store.drain(letter -> taken.size() < 2
+                && taken.add(new String(letter.getPayload(), StandardCharsets.UTF_8)));
+
+        assertEquals(2, drained);
+        assertEquals(List.of("scan 0", "scan 1"), taken);
+        assertEquals(3, store.getCount());
+        assertTrue(store.getSizeBytes() < sizeBefore);
+        assertEquals(List.of("scan 2", "scan 3", "scan 4"), payloads(store));
+    }
+
+    @Test
+    void keptMessagesKeepTheirError() throws IOException {
+        DeadLetterStore store = open(1 << 20, 1 << 16);
+        store.append(message("scan 0"), new IllegalStateException("first"));
+        store.append(message("scan 1"), new IllegalArgumentException("second"));
+
+        boolean[] refused = new boolean[1];
+        store.drain(letter -> {
+            if (refused[0]) {
+                return false;
+            }
+            refused[0] = true;
+            return true;
+        });
+
+        List<DeadLetterStore.Letter> letters = new ArrayList<>();
+        store.drain(letters::add);
+        assertEquals(1, letters.size());
+        assertEquals(IllegalArgumentException.class.getName(), letters.get(0).getErrorClass());
+        assertEquals("second", letters.get(0).getErrorMessage());
+    }
+
+    @Test
+    void onlyOneDrainAtATime() throws IOException {
+        DeadLetterStore store = open(1 << 20, 1 << 16);
+        store.append(message("scan 0"), new IllegalStateException());
+
+        store.drain(letter -> {
+            assertThrows(DeadLetterStore.DrainRunningException.class, () -> store.drain(other -> true));
+            return true;
+        });
+        assertEquals(0, store.getCount());
+    }
+
+    @Test
+    void countsTheMessagesOfAnExistingStore() throws IOException {
+        DeadLetterStore store = open(1 << 20, 1 << 16);
+        store.append(message("scan 0"), new IllegalStateException());
+        store.append(message("scan 1"), new IllegalStateException());
+        store.close();
+
+        DeadLetterStore reopened = open(1 << 20, 1 << 16);
+        assertEquals(2, reopened.getCount());
+        assertEquals(store.getSizeBytes(), reopened.getSizeBytes());
+        // appends go to a new segment
+        reopened.append(message("scan 2"), new IllegalStateException());
+        assertEquals(2, segmentFiles());
+        assertEquals(List.of("scan 0", "scan 1", "scan 2"), payloads(reopened));
+    }
+
+    @Test
+    void damagedRecordEndsTheSegment() throws IOException {
+        DeadLetterStore store = open(1 << 20, 1 << 16);
+        store.append(message("scan 0"), new IllegalStateException());
+        store.append(message("scan 1"), new IllegalStateException());
+        store.close();
+
+        // a crash in the middle of the second record
+        Path segment = directory.resolve("dead-letters-000000000001.dat");
+        long recordSize = Files.size(segment) / 2;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(recordSize + 20);
+        }
+
+        DeadLetterStore reopened = open(1 << 20, 1 << 16);
+        assertEquals(1, reopened.getCount());
+        assertEquals(List.of("scan 0"), payloads(reopened));
+    }
+
+    @Test
+    void rejectsMessagesWhenFull() throws IOException {
+        DeadLetterStore store = open(1 << 20, 1 << 16);
+        store.append(message("scan 0"), new IllegalStateException());
+        long recordSize = store.getSizeBytes();
+
+        DeadLetterStore small = new DeadLetterStore(directory.resolve("small"), recordSize * 2, 1 << 16);
+        small.open();
+        stores.add(small);
+        assertTrue(small.append(message("scan 0"), new IllegalStateException()));
+        assertTrue(small.append(message("scan 1"), new IllegalStateException()));
+        assertFalse(small.append(message("scan 2"), new IllegalStateException()));
+        assertEquals(2, small.getCount());
+        assertEquals(1, small.getRejected());
+    }
+
+    @Test
+    void recentListsTheNewestWithoutPayloads() throws IOException {
+        DeadLetterStore store = open(1 << 20, 100);
+        for (int i = 0; i < 5; i++) {
+            store.append(message("scan " + i), new IllegalStateException("error " + i));
+        }
+
+        List<DeadLetterStore.Letter> recent = store.recent(3);
+        assertEquals(List.of("error 4", "error 3", "error 2"),
+                recent.stream().map(DeadLetterStore.Letter::getErrorMessage).toList());
+        assertNull(recent.get(0).getPayload());
+        // nothing is removed
+        assertEquals(5, store.getCount());
+    }
+
+    @Test
+    void truncatesLongErrorMessages() throws IOException {
+        DeadLetterStore store = open(1 << 20, 1 << 16);
+        store.append(message("scan"), new IllegalStateException("x".repeat(2000)));
+        store.append(message("scan"), new IllegalStateException());
+
+        List<DeadLetterStore.Letter> letters = new ArrayList<>();
+        store.drain(letters::add);
+        assertEquals(500, letters.get(0).getErrorMessage().length());
+        assertEquals("", letters.get(1).getErrorMessage());
+    }
+}
@@ -0,0 +1,77 @@
+package com.matjazt.networkmonitor.ingest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+
+class DuplicateFilterTest {
+
+    private static final Instant T0 = Instant.parse("2026-01-05T10:45:40Z");
+
+    private static long digest(String payload) {
+        return DuplicateFilter.digest(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void recognizesARememberedScan() {
+        DuplicateFilter filter = new DuplicateFilter(4);
+        long digest = digest("{\"devices\": []}");
+
+        assertFalse(filter.isDuplicate("net", T0, digest));
+        filter.remember("net", T0, digest);
+        assertTrue(filter.isDuplicate("net", T0, digest));
+    }
+
+    @Test
+    void needsTheSameTimestampAndPayload() {
+        DuplicateFilter filter = new DuplicateFilter(4);
+        filter.remember("net", T0, digest("a"));
+
+        assertFalse(filter.isDuplicate("net", T0.plusMillis(1), digest("a")));
+        assertFalse(filter.isDuplicate("net", T0, digest("b")));
+    }
+
+    @Test
+    void keepsNetworksApart() {
+        DuplicateFilter filter = new DuplicateFilter(4);
+        filter.remember("net1", T0, digest("a"));
+
+        assertFalse(filter.isDuplicate("net2", T0, digest("a")));
+    }
+
+    @Test
+    void forgetsTheOldestScanWhenTheWindowIsFull() {
+        DuplicateFilter filter = new DuplicateFilter(3);
+        for (int i = 0; i < 4; i++) {
+            filter.remember("net", T0.plusSeconds(i), digest("scan " + i));
+        }
+
+        assertFalse(filter.isDuplicate("net", T0, digest("scan 0")));
+        for (int i = 1; i < 4; i++) {
+            assertTrue(filter.isDuplicate("net", T0.plusSeconds(i), digest("scan " + i)));
+        }
+    }
+
+    @Test
+    void windowSizeZeroDisablesIt() {
+        DuplicateFilter filter = new DuplicateFilter(0);
+        filter.remember("net", T0, digest("a"));
+
+        assertFalse(filter.isEnabled());
+        assertFalse(filter.isDuplicate("net", T0, digest("a")));
+    }
+
+    @Test
+    void digestIncludesTheLength() {
+        byte[] payload = "{\"devices\": []}".getBytes(StandardCharsets.UTF_8);
+        assertEquals(payload.length, DuplicateFilter.digest(payload) & 0xFFFFFFFFL);
+        assertEquals(DuplicateFilter.digest(payload), DuplicateFilter.digest(payload.clone()));
+        assertNotEquals(digest("a"), digest("b"));
+    }
+}
@@ -0,0 +1,274 @@
+package com.matjazt.networkmonitor.ingest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.matjazt.networkmonitor.config.ConfigProvider;
+import com.matjazt.networkmonitor.metrics.MetricsRegistry;
+import com.matjazt.networkmonitor.service.ExecutionSupport;
+import com.matjazt.networkmonitor.service.MessageProcessingService;
+import com.matjazt.networkmonitor.state.DeviceStateStore;
+import com.matjazt.networkmonitor.state.NetworkState;
+
+/**
+ * Coalescing of queued scans, on hand-wired stand-ins for the pipeline's
+ * container beans. The first scan of "net" holds its worker until released,
+ * so the scans submitted meanwhile queue up behind it.
+ */
+class IngestPipelineCoalesceTest {
+
+    private static final Instant T0 = Instant.parse("2026-01-05T10:00:00Z");
+
+    private final Map<String, NetworkState> networks = new ConcurrentHashMap<>();
+    private final List<String> processed = new CopyOnWriteArrayList<>();
+    private final CountDownLatch holding = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private IngestPipeline pipeline;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+
+    private void start(boolean coalesce, boolean rejectStale) {
+        pipeline = new IngestPipeline();
+        inject(pipeline, "config", new Config(coalesce, rejectStale));
+        inject(pipeline, "messageProcessor", new Processor());
+        inject(pipeline, "executionSupport", new PlatformThreads());
+        inject(pipeline, "deviceStateStore", new StateStore());
+        inject(pipeline, "metrics", new MetricsRegistry());
+        pipeline.start();
+    }
+
+    private void submit(String network, Instant timestamp) {
+        String payload = "{\"timestamp\": \"" + timestamp + "\", \"devices\": []}";
+        assertTrue(pipeline.submit("network/" + network + "/scan", network,
+                payload.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Submit a scan of "net" that holds its worker, and wait until it does.
+     */
+    private void holdWorker() throws InterruptedException {
+        submit("net", T0);
+        assertTrue(holding.await(5, TimeUnit.SECONDS));
+    }
+
+    private void releaseAndDrain() {
+        release.countDown();
+        pipeline.shutdown();
+    }
+
+    private static String scan(String network, Instant timestamp) {
+        return network + "@" + timestamp;
+    }
+
+    @Test
+    void processesOnlyTheNewestQueuedScan() throws InterruptedException {
+        start(true, false);
+        holdWorker();
+        submit("net", T0.plusSeconds(60));
+        submit("net", T0.plusSeconds(120));
+        submit("net", T0.plusSeconds(180));
+        releaseAndDrain();
+
+        assertEquals(List.of(scan("net", T0), scan("net", T0.plusSeconds(180))), processed);
+        assertEquals(2, pipeline.getStatistics().getCoalesced());
+        assertEquals(2, pipeline.getStatistics().getProcessed());
+    }
+
+    @Test
+    void theSameTimestampTwiceIsNotSuperseded() throws InterruptedException {
+        // duplicates are the duplicate filter's business, which is off here
+        start(true, false);
+        holdWorker();
+        submit("net", T0.plusSeconds(60));
+        submit("net", T0.plusSeconds(60));
+        releaseAndDrain();
+
+        assertEquals(List.of(scan("net", T0), scan("net", T0.plusSeconds(60)), scan("net", T0.plusSeconds(60))),
+                processed);
+        assertEquals(0, pipeline.getStatistics().getCoalesced());
+    }
+
+    @Test
+    void theSameTimestampTwiceIsSupersededByANewerScan() throws InterruptedException {
+        start(true, false);
+        holdWorker();
+        submit("net", T0.plusSeconds(60));
+        submit("net", T0.plusSeconds(60));
+        submit("net", T0.plusSeconds(120));
+        releaseAndDrain();
+
+        assertEquals(List.of(scan("net", T0), scan("net", T0.plusSeconds(120))), processed);
+        assertEquals(2, pipeline.getStatistics().getCoalesced());
+    }
+
+    @Test
+    void anOlderScanQueuedAfterTheNewestIsLeftToStaleRejection() throws InterruptedException {
+        start(true, true);
+        holdWorker();
+        submit("net", T0.plusSeconds(60));
+        submit("net", T0.plusSeconds(180));
+        // the newest is forgotten once it's processed, so coalescing doesn't catch
+        // this one
+        submit("net", T0.plusSeconds(120));
+        releaseAndDrain();
+
+        assertEquals(List.of(scan("net", T0), scan("net", T0.plusSeconds(180))), processed);
+        assertEquals(1, pipeline.getStatistics().getCoalesced());
+        assertEquals(1, pipeline.getStatistics().getStale());
+    }
+
+    @Test
+    void networksDontSupersedeEachOther() throws InterruptedException {
+        start(true, false);
+        holdWorker();
+        submit("net", T0.plusSeconds(60));
+        submit("other", T0.plusSeconds(120));
+        releaseAndDrain();
+
+        assertEquals(3, processed.size());
+        assertTrue(processed.contains(scan("net", T0.plusSeconds(60))));
+        assertEquals(0, pipeline.getStatistics().getCoalesced());
+    }
+
+    @Test
+    void processesEveryScanWhenDisabled() throws InterruptedException {
+        start(false, false);
+        holdWorker();
+        submit("net", T0.plusSeconds(60));
+        submit("net", T0.plusSeconds(120));
+        releaseAndDrain();
+
+        assertEquals(3, processed.size());
+        assertEquals(0, pipeline.getStatistics().getCoalesced());
+    }
+
+    private static void inject(Object target, String fieldName, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't inject " + fieldName, e);
+        }
+    }
+
+    private static class Config extends ConfigProvider {
+        private final boolean coalesce;
+        private final boolean rejectStale;
+
+        Config(boolean coalesce, boolean rejectStale) {
+            this.coalesce = coalesce;
+            this.rejectStale = rejectStale;
+        }
+
+        @Override
+        public Integer getIngestWorkerThreads() {
+            return 2;
+        }
+
+        @Override
+        public Integer getIngestQueueCapacity() {
+            return 100;
+        }
+
+        @Override
+        public OverflowPolicy getIngestOverflowPolicy() {
+            return OverflowPolicy.BLOCK;
+        }
+
+        @Override
+        public Integer getIngestDedupWindow() {
+            return 0;
+        }
+
+        @Override
+        public Boolean getIngestCoalesce() {
+            return coalesce;
+        }
+
+        @Override
+        public Boolean getIngestRejectStale() {
+            return rejectStale;
+        }
+
+        @Override
+        public Optional<String> getIngestJournalPath() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Optional<String> getIngestDeadLetterPath() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Integer getIngestShutdownTimeout() {
+            return 10;
+        }
+    }
+
+    private static class PlatformThreads extends ExecutionSupport {
+        @Override
+        public boolean isVirtual() {
+            return false;
+        }
+
+        @Override
+        public ThreadFactory threadFactory(String namePrefix) {
+            return Thread::new;
+        }
+
+        @Override
+        public void runWithDatabasePermit(Runnable work) {
+            work.run();
+        }
+    }
+
+    private class StateStore extends DeviceStateStore {
+        @Override
+        public NetworkState getNetwork(String networkName) {
+            return networks.get(networkName);
+        }
+    }
+
+    private class Processor extends MessageProcessingService {
+        @Override
+        public void processMessage(String topic, String networkName, byte[] payload, Instant receivedAt) {
+            Instant timestamp = new ScanMessageDecoder().decode(payload).getTimestamp();
+            if (timestamp.equals(T0)) {
+                holding.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            networks.computeIfAbsent(networkName, name -> new NetworkState(1L, name, null, null))
+                    .setLastSeen(LocalDateTime.ofInstant(timestamp, ZoneOffset.UTC));
+            processed.add(scan(networkName, timestamp));
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.matjazt.networkmonitor.ingest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.matjazt.networkmonitor.config.ConfigProvider;
+import com.matjazt.networkmonitor.metrics.MetricsRegistry;
+import com.matjazt.networkmonitor.service.ExecutionSupport;
+import com.matjazt.networkmonitor.service.MessageProcessingService;
+
+/**
+ * Dead letter replay through the ingest pipeline, with DROP_NEWEST and a queue
+ * of one, on hand-wired stand-ins for its container beans: the "processor"
+ * fails every payload starting with "bad" until it's fixed, and holds "hold"
+ * until released.
+ */
+class IngestPipelineDeadLetterReplayTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<String> processed = new CopyOnWriteArrayList<>();
+    private final CountDownLatch holding = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile boolean fixed;
+    private IngestPipeline pipeline;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+
+    private void start(int shutdownTimeout) {
+        pipeline = new IngestPipeline();
+        inject(pipeline, "config", new Config(directory, shutdownTimeout));
+        inject(pipeline, "messageProcessor", new Processor());
+        inject(pipeline, "executionSupport", new PlatformThreads());
+        inject(pipeline, "metrics", new MetricsRegistry());
+        pipeline.start();
+    }
+
+    private boolean submit(String payload) {
+        return pipeline.submit("network/net/scan", "net", payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Let three messages fail into the store, then have the worker hold a
+     * message with one more waiting, so the queue is full.
+     */
+    private DeadLetterStore storeThreeAndFillTheQueue(int shutdownTimeout) throws InterruptedException {
+        start(shutdownTimeout);
+        DeadLetterStore store = pipeline.getDeadLetters();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(submit("bad " + i));
+            awaitCount(store, i + 1);
+        }
+
+        assertTrue(submit("hold"));
+        assertTrue(holding.await(5, TimeUnit.SECONDS));
+        assertTrue(submit("waiting"));
+        // DROP_NEWEST - a message from the broker would be shed now
+        assertFalse(submit("shed"));
+        return store;
+    }
+
+    @Test
+    void replayWaitsForRoomInsteadOfShedding() throws Exception {
+        DeadLetterStore store = storeThreeAndFillTheQueue(10);
+        fixed = true;
+
+        FutureTask<Long> replay = new FutureTask<>(pipeline::replayDeadLetters);
+        Thread replaying = new Thread(replay);
+        replaying.start();
+        awaitTimedWaiting(replaying);
+        assertEquals(3, store.getCount());
+
+        release.countDown();
+        assertEquals(3, replay.get(5, TimeUnit.SECONDS));
+        pipeline.shutdown();
+
+        assertEquals(List.of("hold", "waiting", "good 0", "good 1", "good 2"), processed);
+        assertEquals(0, store.getCount());
+    }
+
+    @Test
+    void lettersNotQueuedAtShutdownStayInTheStore() throws Exception {
+        storeThreeAndFillTheQueue(0);
+        fixed = true;
+
+        FutureTask<Long> replay = new FutureTask<>(pipeline::replayDeadLetters);
+        Thread replaying = new Thread(replay);
+        replaying.start();
+        awaitTimedWaiting(replaying);
+
+        // no time to drain: the worker is still busy with "hold" when the queue
+        // is cleared, and the replay gives up
+        FutureTask<Void> shutdown = new FutureTask<>(() -> pipeline.shutdown(), null);
+        Thread stopping = new Thread(shutdown);
+        stopping.start();
+        // "bad 0" may still get into the queue while it's cleared - then it's
+        // stored again when the workers are stopped
+        assertTrue(replay.get(5, TimeUnit.SECONDS) <= 1);
+        release.countDown();
+        shutdown.get(10, TimeUnit.SECONDS);
+        assertEquals(List.of("hold"), processed);
+
+        // the pipeline closed the store - count what's on disk
+        DeadLetterStore reopened = new DeadLetterStore(directory, 1 << 20, 1 << 20);
+        reopened.open();
+        List<String> kept = new CopyOnWriteArrayList<>();
+        reopened.drain(letter -> kept.add(new String(letter.getPayload(), StandardCharsets.UTF_8)));
+        reopened.close();
+        assertEquals(List.of("bad 0", "bad 1", "bad 2"), kept.stream().sorted().toList());
+    }
+
+    @Test
+    void replayNeedsARunningPipeline() throws Exception {
+        start(0);
+        pipeline.shutdown();
+
+        assertThrows(IllegalStateException.class, pipeline::replayDeadLetters);
+    }
+
+    private static void awaitCount(DeadLetterStore store, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (store.getCount() < count) {
+            assertTrue(System.nanoTime() < deadline, "dead letters: " + store.getCount());
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Wait until the thread is waiting for room in a full queue.
+     */
+    private static void awaitTimedWaiting(Thread thread) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.TIMED_WAITING) {
+            assertTrue(System.nanoTime() < deadline, thread.getName() + " is " + thread.getState());
+            Thread.yield();
+        }
+    }
+
+    private static void inject(Object target, String fieldName, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't inject " + fieldName, e);
+        }
+    }
+
+    private static class Config extends ConfigProvider {
+        private final Path deadLetterPath;
+        private final int shutdownTimeout;
+
+        Config(Path deadLetterPath, int shutdownTimeout) {
+            this.deadLetterPath = deadLetterPath;
+            this.shutdownTimeout = shutdownTimeout;
+        }
+
+        @Override
+        public Integer getIngestWorkerThreads() {
+            return 1;
+        }
+
+        @Override
+        public Integer getIngestQueueCapacity() {
+            return 1;
+        }
+
+        @Override
+        public OverflowPolicy getIngestOverflowPolicy() {
+            return OverflowPolicy.DROP_NEWEST;
+        }
+
+        @Override
+        public Integer getIngestDedupWindow() {
+            return 0;
+        }
+
+        @Override
+        public Boolean getIngestCoalesce() {
+            return false;
+        }
+
+        @Override
+        public Boolean getIngestRejectStale() {
+            return false;
+        }
+
+        @Override
+        public Optional<String> getIngestJournalPath() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Optional<String> getIngestDeadLetterPath() {
+            return Optional.of(deadLetterPath.toString());
+        }
+
+        @Override
+        public Integer getIngestDeadLetterMaxSize() {
+            return 1;
+        }
+
+        @Override
+        public Integer getIngestShutdownTimeout() {
+            return shutdownTimeout;
+        }
+    }
+
+    private static class PlatformThreads extends ExecutionSupport {
+        @Override
+        public boolean isVirtual() {
+            return false;
+        }
+
+        @Override
+        public ThreadFactory threadFactory(String namePrefix) {
+            return Thread::new;
+        }
+
+        @Override
+        public void runWithDatabasePermit(Runnable work) {
+            work.run();
+        }
+    }
+
+    private class Processor extends MessageProcessingService {
+        @Override
+        public void processMessage(String topic, String networkName, byte[] payload, Instant receivedAt) {
+            String text = new String(payload, StandardCharsets.UTF_8);
+            if (text.startsWith("bad") && !fixed) {
+                throw new IllegalArgumentException("can't parse " + text);
+            }
+            if (text.equals("hold")) {
+                holding.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            processed.add(text.startsWith("bad") ? "good" + text.substring(3) : text);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.matjazt.networkmonitor.ingest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.matjazt.networkmonitor.config.ConfigProvider;
+import com.matjazt.networkmonitor.metrics.MetricsRegistry;
+import com.matjazt.networkmonitor.service.ExecutionSupport;
+import com.matjazt.networkmonitor.service.MessageProcessingService;
+import com.matjazt.networkmonitor.state.DeviceStateStore;
+import com.matjazt.networkmonitor.state.NetworkState;
+
+/**
+ * Stale scan rejection of the ingest pipeline, on hand-wired stand-ins for
+ * its container beans: the "processor" moves the network's last seen like
+ * MessageProcessingService does.
+ */
+class IngestPipelineStaleScanTest {
+
+    private static final Instant T0 = Instant.parse("2026-01-05T10:00:00Z");
+
+    private final Map<String, NetworkState> networks = new ConcurrentHashMap<>();
+    private final List<String> processed = new CopyOnWriteArrayList<>();
+    private IngestPipeline pipeline;
+
+    @AfterEach
+    void tearDown() {
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+
+    private void start(boolean rejectStale) {
+        pipeline = new IngestPipeline();
+        inject(pipeline, "config", new Config(rejectStale));
+        inject(pipeline, "messageProcessor", new Processor());
+        inject(pipeline, "executionSupport", new PlatformThreads());
+        inject(pipeline, "deviceStateStore", new StateStore());
+        inject(pipeline, "metrics", new MetricsRegistry());
+        pipeline.start();
+    }
+
+    private void submit(String network, Instant timestamp) {
+        String payload = "{\"timestamp\": \"" + timestamp + "\", \"devices\": []}";
+        assertTrue(pipeline.submit("network/" + network + "/scan", network,
+                payload.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void rejectsScansOlderThanTheLastAppliedOne() {
+        start(true);
+        submit("net", T0.plusSeconds(60));
+        submit("net", T0);
+        submit("net", T0.plusSeconds(120));
+        pipeline.shutdown();
+
+        assertEquals(List.of("net@" + T0.plusSeconds(60), "net@" + T0.plusSeconds(120)), processed);
+        assertEquals(1, pipeline.getStatistics().getStale());
+        assertEquals(2, pipeline.getStatistics().getProcessed());
+    }
+
+    @Test
+    void aRedeliveryOfTheLastScanIsNotStale() {
+        // same timestamp - the duplicate filter decides about those
+        start(true);
+        submit("net", T0);
+        submit("net", T0);
+        pipeline.shutdown();
+
+        assertEquals(2, processed.size());
+        assertEquals(0, pipeline.getStatistics().getStale());
+    }
+
+    @Test
+    void networksHaveTheirOwnWatermark() {
+        start(true);
+        submit("net1", T0.plusSeconds(60));
+        submit("net2", T0);
+        pipeline.shutdown();
+
+        assertEquals(2, processed.size());
+        assertEquals(0, pipeline.getStatistics().getStale());
+    }
+
+    @Test
+    void appliesEverythingWhenDisabled() {
+        start(false);
+        submit("net", T0.plusSeconds(60));
+        submit("net", T0);
+        pipeline.shutdown();
+
+        assertEquals(2, processed.size());
+        assertEquals(0, pipeline.getStatistics().getStale());
+    }
+
+    private static void inject(Object target, String fieldName, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't inject " + fieldName, e);
+        }
+    }
+
+    private static class Config extends ConfigProvider {
+        private final boolean rejectStale;
+
+        Config(boolean rejectStale) {
+            this.rejectStale = rejectStale;
+        }
+
+        @Override
+        public Integer getIngestWorkerThreads() {
+            return 2;
+        }
+
+        @Override
+        public Integer getIngestQueueCapacity() {
+            return 100;
+        }
+
+        @Override
+        public OverflowPolicy getIngestOverflowPolicy() {
+            return OverflowPolicy.BLOCK;
+        }
+
+        @Override
+        public Integer getIngestDedupWindow() {
+            return 0;
+        }
+
+        @Override
+        public Boolean getIngestCoalesce() {
+            return false;
+        }
+
+        @Override
+        public Boolean getIngestRejectStale() {
+            return rejectStale;
+        }
+
+        @Override
+        public Optional<String> getIngestJournalPath() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Optional<String> getIngestDeadLetterPath() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Integer getIngestShutdownTimeout() {
+            return 10;
+        }
+    }
+
+    private static class PlatformThreads extends ExecutionSupport {
+        @Override
+        public boolean isVirtual() {
+            return false;
+        }
+
+        @Override
+        public ThreadFactory threadFactory(String namePrefix) {
+            return Thread::new;
+        }
+
+        @Override
+        public void runWithDatabasePermit(Runnable work) {
+            work.run();
+        }
+    }
+
+    private class StateStore extends DeviceStateStore {
+        @Override
+        public NetworkState getNetwork(String networkName) {
+            // a network we've never seen has no state
+            return networks.get(networkName);
+        }
+    }
+
+    private class Processor extends MessageProcessingService {
+        @Override
+        public void processMessage(String topic, String networkName, byte[] payload, Instant receivedAt) {
+            Instant timestamp = new ScanMessageDecoder().decode(payload).getTimestamp();
+            networks.computeIfAbsent(networkName, name -> new NetworkState(1L, name, null, null))
+                    .setLastSeen(LocalDateTime.ofInstant(timestamp, ZoneOffset.UTC));
+            processed.add(networkName + "@" + timestamp);
+        }
+    }
+}
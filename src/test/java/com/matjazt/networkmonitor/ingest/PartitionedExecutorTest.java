@@ -0,0 +1,247 @@
+package com.matjazt.networkmonitor.ingest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class PartitionedExecutorTest {
+
+    private final List<String> processed = new CopyOnWriteArrayList<>();
+    private final List<String> dropped = new CopyOnWriteArrayList<>();
+
+    // the worker holds the first task until released, so the queue fills up
+    private final CountDownLatch firstTaskStarted = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private PartitionedExecutor<String> executor;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (executor != null) {
+            executor.shutdown(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * One partition with room for two waiting tasks; its worker is busy with
+     * "t0" until released.
+     */
+    private void startBlocked(OverflowPolicy policy) throws InterruptedException {
+        executor = new PartitionedExecutor<>("test", 1, 2, policy, Thread::new, task -> {
+            if (task.equals("t0")) {
+                firstTaskStarted.countDown();
+                await(release);
+            }
+            processed.add(task);
+        }, dropped::add);
+        executor.start();
+
+        assertTrue(executor.submit("net", "t0"));
+        assertTrue(firstTaskStarted.await(5, TimeUnit.SECONDS));
+        assertTrue(executor.submit("net", "t1"));
+        assertTrue(executor.submit("net", "t2"));
+        assertEquals(2, executor.getQueueDepth());
+    }
+
+    private void releaseAndDrain() {
+        release.countDown();
+        assertEquals(0, executor.shutdown(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void dropNewestRefusesTheTaskThatDoesNotFit() throws InterruptedException {
+        startBlocked(OverflowPolicy.DROP_NEWEST);
+
+        assertFalse(executor.submit("net", "t3"));
+        releaseAndDrain();
+
+        assertEquals(List.of("t0", "t1", "t2"), processed);
+        assertEquals(List.of("t3"), dropped);
+        assertEquals(1, executor.getDropped());
+    }
+
+    @Test
+    void dropOldestMakesRoomByShedding() throws InterruptedException {
+        startBlocked(OverflowPolicy.DROP_OLDEST);
+
+        assertTrue(executor.submit("net", "t3"));
+        releaseAndDrain();
+
+        assertEquals(List.of("t0", "t2", "t3"), processed);
+        assertEquals(List.of("t1"), dropped);
+        assertEquals(1, executor.getDropped());
+    }
+
+    /**
+     * Wait until the thread is in a timed wait - waiting for room in a full
+     * queue, or for a worker to finish.
+     */
+    private static void awaitTimedWaiting(Thread thread) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.TIMED_WAITING) {
+            assertTrue(System.nanoTime() < deadline, thread.getName() + " is " + thread.getState());
+            Thread.yield();
+        }
+    }
+
+    @Test
+    void blockWaitsForRoom() throws Exception {
+        startBlocked(OverflowPolicy.BLOCK);
+
+        FutureTask<Boolean> submitted = new FutureTask<>(() -> executor.submit("net", "t3"));
+        Thread producer = new Thread(submitted);
+        producer.start();
+        awaitTimedWaiting(producer);
+        assertFalse(submitted.isDone());
+
+        release.countDown();
+        assertTrue(submitted.get(5, TimeUnit.SECONDS));
+        releaseAndDrain();
+
+        assertEquals(List.of("t0", "t1", "t2", "t3"), processed);
+        assertTrue(dropped.isEmpty());
+        assertEquals(0, executor.getDropped());
+    }
+
+    @Test
+    void blockGivesUpOnShutdown() throws Exception {
+        startBlocked(OverflowPolicy.BLOCK);
+
+        FutureTask<Boolean> submitted = new FutureTask<>(() -> executor.submit("net", "t3"));
+        Thread producer = new Thread(submitted);
+        producer.start();
+        awaitTimedWaiting(producer);
+
+        FutureTask<Integer> notRun = new FutureTask<>(() -> executor.shutdown(0, TimeUnit.MILLISECONDS));
+        Thread stopping = new Thread(notRun);
+        stopping.start();
+        // with no time to drain, the only timed wait of shutdown is for the
+        // worker, still busy with t0 - the queue was emptied by then
+        awaitTimedWaiting(stopping);
+        // the blocked task either gets in now that there's room, or gives up
+        boolean queued = submitted.get(5, TimeUnit.SECONDS);
+        release.countDown();
+
+        // if it got in, it is counted with the queued ones
+        assertEquals(queued ? 3 : 2, notRun.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("t0"), processed);
+        assertTrue(dropped.isEmpty());
+    }
+
+    @Test
+    void submitWaitingIgnoresTheOverflowPolicy() throws Exception {
+        startBlocked(OverflowPolicy.DROP_NEWEST);
+
+        FutureTask<Boolean> submitted = new FutureTask<>(() -> executor.submitWaiting("net", "t3"));
+        Thread producer = new Thread(submitted);
+        producer.start();
+        awaitTimedWaiting(producer);
+        assertFalse(submitted.isDone());
+
+        release.countDown();
+        assertTrue(submitted.get(5, TimeUnit.SECONDS));
+        releaseAndDrain();
+
+        assertEquals(List.of("t0", "t1", "t2", "t3"), processed);
+        assertTrue(dropped.isEmpty());
+        assertFalse(executor.submitWaiting("net", "late"));
+    }
+
+    @Test
+    void keepsTheOrderOfEveryKey() throws InterruptedException {
+        int keys = 16;
+        int tasksPerKey = 500;
+        Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+        Map<String, String> workers = new ConcurrentHashMap<>();
+        List<String> wrongWorker = new CopyOnWriteArrayList<>();
+
+        PartitionedExecutor<String> ordered = new PartitionedExecutor<>("test", 4, 16, OverflowPolicy.BLOCK,
+                Thread::new, task -> {
+                    String key = task.substring(0, task.indexOf(':'));
+                    // a key always lands on the same worker
+                    String worker = Thread.currentThread().getName();
+                    if (!worker.equals(workers.computeIfAbsent(key, k -> worker))) {
+                        wrongWorker.add(task);
+                    }
+                    // only this key's worker touches its list
+                    seen.computeIfAbsent(key, k -> new ArrayList<>())
+                            .add(Integer.parseInt(task.substring(task.indexOf(':') + 1)));
+                }, dropped::add);
+        executor = ordered;
+        ordered.start();
+
+        // two producers interleave the keys
+        Thread[] producers = new Thread[2];
+        for (int p = 0; p < producers.length; p++) {
+            int first = p;
+            producers[p] = new Thread(() -> {
+                for (int k = first; k < keys; k += producers.length) {
+                    for (int i = 0; i < tasksPerKey; i++) {
+                        assertTrue(ordered.submit("network-" + k, "network-" + k + ":" + i));
+                    }
+                }
+            });
+            producers[p].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertEquals(0, ordered.shutdown(10, TimeUnit.SECONDS));
+
+        assertEquals(keys, seen.size());
+        for (List<Integer> sequence : seen.values()) {
+            assertEquals(tasksPerKey, sequence.size());
+            for (int i = 0; i < tasksPerKey; i++) {
+                assertEquals(i, sequence.get(i));
+            }
+        }
+        assertTrue(wrongWorker.isEmpty());
+        assertTrue(dropped.isEmpty());
+        assertTrue(ordered.getStartedPartitionCount() <= 4);
+    }
+
+    @Test
+    void mapsAKeyToOnePartition() {
+        executor = new PartitionedExecutor<>("test", 7, 1, OverflowPolicy.BLOCK, Thread::new, processed::add, null);
+        for (int i = 0; i < 100; i++) {
+            int partition = executor.partitionFor("network-" + i);
+            assertTrue(partition >= 0 && partition < 7);
+            assertEquals(partition, executor.partitionFor("network-" + i));
+        }
+    }
+
+    @Test
+    void refusesTasksBeforeStartAndAfterShutdown() {
+        executor = new PartitionedExecutor<>("test", 1, 2, OverflowPolicy.DROP_NEWEST, Thread::new,
+                processed::add, dropped::add);
+        assertFalse(executor.submit("net", "early"));
+
+        executor.start();
+        executor.shutdown(1, TimeUnit.SECONDS);
+        assertFalse(executor.submit("net", "late"));
+
+        assertTrue(processed.isEmpty());
+        assertTrue(dropped.isEmpty());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.matjazt.networkmonitor.ingest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ScanJournalTest {
+
+    // with a 40 byte payload a record takes 84 bytes - three fit in a segment
+    private static final int SEGMENT_SIZE = 256;
+    private static final int RECORD_SIZE = 84;
+    private static final Path FIRST_SEGMENT = Path.of("journal-000000000001.seg");
+
+    @TempDir
+    Path directory;
+
+    private static IngestMessage message(int i) {
+        byte[] payload = String.format("%-40s", "scan " + i).getBytes(StandardCharsets.UTF_8);
+        return new IngestMessage("network/net/scan", "net", Instant.EPOCH, payload);
+    }
+
+    private ScanJournal open(long maxBytes) throws IOException {
+        ScanJournal journal = new ScanJournal(directory, maxBytes, SEGMENT_SIZE);
+        journal.open();
+        return journal;
+    }
+
+    private static List<String> replay(ScanJournal journal) {
+        List<String> replayed = new ArrayList<>();
+        for (ScanJournal.Entry entry = journal.peek(); entry != null; entry = journal.peek()) {
+            replayed.add(new String(entry.getPayload(), StandardCharsets.UTF_8).trim());
+            journal.markDone(entry);
+        }
+        return replayed;
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void replaysInAppendOrder() throws IOException {
+        ScanJournal journal = open(1024);
+        IngestMessage message = message(0);
+        assertTrue(journal.append(message));
+        assertTrue(journal.append(message(1)));
+        assertTrue(journal.append(message(2)));
+        assertEquals(3, journal.getPending());
+
+        ScanJournal.Entry first = journal.peek();
+        assertEquals("network/net/scan", first.getTopic());
+        assertEquals("net", first.getNetworkName());
+        assertEquals(message.getReceivedAt().toEpochMilli(), first.getReceivedAt().toEpochMilli());
+
+        assertEquals(List.of("scan 0", "scan 1", "scan 2"), replay(journal));
+        assertEquals(0, journal.getPending());
+        assertNull(journal.peek());
+    }
+
+    @Test
+    void recordsMustBeCompletedInOrder() throws IOException {
+        ScanJournal journal = open(1024);
+        journal.append(message(0));
+        journal.append(message(1));
+
+        ScanJournal.Entry first = journal.peek();
+        journal.markDone(first);
+        assertThrows(IllegalStateException.class, () -> journal.markDone(first));
+    }
+
+    @Test
+    void continuesWithTheFirstPendingRecordAfterARestart() throws IOException {
+        ScanJournal journal = open(1024);
+        for (int i = 0; i < 3; i++) {
+            journal.append(message(i));
+        }
+        journal.markDone(journal.peek());
+
+        ScanJournal reopened = open(1024);
+        assertEquals(2, reopened.getPending());
+        assertTrue(reopened.append(message(3)));
+        assertEquals(List.of("scan 1", "scan 2", "scan 3"), replay(reopened));
+    }
+
+    @Test
+    void tornRecordEndsTheSegment() throws IOException {
+        ScanJournal journal = open(1024);
+        for (int i = 0; i < 3; i++) {
+            journal.append(message(i));
+        }
+
+        // damage the payload of the second record, as a crash halfway through the
+        // write would
+        try (FileChannel channel = FileChannel.open(directory.resolve(FIRST_SEGMENT), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 'X' }), RECORD_SIZE + RECORD_SIZE - 10);
+        }
+
+        ScanJournal reopened = open(1024);
+        assertEquals(1, reopened.getPending());
+        // the next record overwrites the torn one
+        assertTrue(reopened.append(message(3)));
+        assertEquals(List.of("scan 0", "scan 3"), replay(reopened));
+    }
+
+    @Test
+    void rollsOverToNewSegments() throws IOException {
+        ScanJournal journal = open(1024);
+        for (int i = 0; i < 7; i++) {
+            assertTrue(journal.append(message(i)));
+        }
+        assertEquals(3, segmentFiles());
+        assertEquals(3 * SEGMENT_SIZE, journal.getSizeBytes());
+
+        List<String> replayed = replay(journal);
+        assertEquals(7, replayed.size());
+        assertEquals("scan 6", replayed.get(6));
+        // the replayed segments are gone, the last one stays for appending
+        assertEquals(1, segmentFiles());
+        assertEquals(SEGMENT_SIZE, journal.getSizeBytes());
+    }
+
+    @Test
+    void rejectsMessagesWhenFull() throws IOException {
+        ScanJournal journal = open(2 * SEGMENT_SIZE);
+        for (int i = 0; i < 6; i++) {
+            assertTrue(journal.append(message(i)));
+        }
+
+        assertFalse(journal.append(message(6)));
+        assertEquals(1, journal.getRejected());
+        assertEquals(6, journal.getAppended());
+        assertEquals(2 * SEGMENT_SIZE, journal.getMaxSizeBytes());
+
+        // replaying the first segment makes room
+        for (int i = 0; i < 4; i++) {
+            journal.markDone(journal.peek());
+        }
+        assertTrue(journal.append(message(6)));
+    }
+
+    @Test
+    void rejectsMessagesTooBigForASegment() throws IOException {
+        ScanJournal journal = open(1024);
+        IngestMessage big = new IngestMessage("network/net/scan", "net", Instant.EPOCH, new byte[SEGMENT_SIZE]);
+
+        assertFalse(journal.append(big));
+        assertEquals(1, journal.getRejected());
+        assertEquals(0, journal.getPending());
+    }
+
+    @Test
+    void appendsIfPendingOnlyBehindOtherMessages() throws IOException {
+        ScanJournal journal = open(1024);
+        assertFalse(journal.appendIfPending(message(0)));
+
+        journal.append(message(1));
+        assertTrue(journal.appendIfPending(message(2)));
+        assertEquals(List.of("scan 1", "scan 2"), replay(journal));
+    }
+}
@@ -0,0 +1,104 @@
+package com.matjazt.networkmonitor.ingest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+
+import com.matjazt.networkmonitor.model.NetworkStatusMessage;
+
+class ScanMessageDecoderTest {
+
+    private final ScanMessageDecoder decoder = new ScanMessageDecoder();
+
+    private static byte[] json(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void decodesAScan() {
+        NetworkStatusMessage message = decoder.decode(json("""
+                {"hostname": "MyMainRouter", "timestamp": "2026-01-05T10:45:40Z",
+                 "devices": [{"ip": "192.168.101.1", "mac": "3A:7C:2D:8F:4B:91"},
+                             {"ip": null, "mac": "5E:A1:C3:6D:F2:7A"}]}"""));
+
+        assertEquals("MyMainRouter", message.getHostname());
+        assertEquals(Instant.parse("2026-01-05T10:45:40Z"), message.getTimestamp());
+        assertEquals(2, message.getDevices().size());
+        assertEquals("192.168.101.1", message.getDevices().get(0).getIp());
+        assertEquals("3A:7C:2D:8F:4B:91", message.getDevices().get(0).getMac());
+        assertNull(message.getDevices().get(1).getIp());
+    }
+
+    @Test
+    void convertsOffsetsToUtc() {
+        NetworkStatusMessage message = decoder.decode(json(
+                "{\"timestamp\": \"2026-01-05T11:45:40+01:00\", \"devices\": []}"));
+        assertEquals(Instant.parse("2026-01-05T10:45:40Z"), message.getTimestamp());
+
+        message = decoder.decode(json("{\"timestamp\": \"2026-01-05T05:15:40-05:30\", \"devices\": []}"));
+        assertEquals(Instant.parse("2026-01-05T10:45:40Z"), message.getTimestamp());
+    }
+
+    @Test
+    void skipsUnknownFields() {
+        NetworkStatusMessage message = decoder.decode(json("""
+                {"version": 2, "extra": {"nested": [1, 2, {"a": null}]}, "timestamp": "2026-01-05T10:45:40Z",
+                 "devices": [{"mac": "3A:7C:2D:8F:4B:91", "vendor": {"name": "x"}, "ports": [80, 443]}],
+                 "trailer": [true, false]}"""));
+
+        assertEquals(1, message.getDevices().size());
+        assertEquals("3A:7C:2D:8F:4B:91", message.getDevices().get(0).getMac());
+    }
+
+    @Test
+    void emptyDeviceListIsValid() {
+        assertTrue(decoder.decode(json("{\"timestamp\": \"2026-01-05T10:45:40Z\", \"devices\": []}"))
+                .getDevices().isEmpty());
+    }
+
+    @Test
+    void rejectsAMissingTimestamp() {
+        assertThrows(IllegalArgumentException.class,
+                () -> decoder.decode(json("{\"hostname\": \"r\", \"devices\": []}")));
+        assertThrows(IllegalArgumentException.class,
+                () -> decoder.decode(json("{\"timestamp\": null, \"devices\": []}")));
+    }
+
+    @Test
+    void rejectsAMissingDeviceList() {
+        // an empty list would take every device offline
+        assertThrows(IllegalArgumentException.class,
+                () -> decoder.decode(json("{\"timestamp\": \"2026-01-05T10:45:40Z\"}")));
+        assertThrows(IllegalArgumentException.class,
+                () -> decoder.decode(json("{\"timestamp\": \"2026-01-05T10:45:40Z\", \"devices\": null}")));
+    }
+
+    @Test
+    void rejectsMalformedPayloads() {
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode(json("not json")));
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode(json("[]")));
+        assertThrows(IllegalArgumentException.class,
+                () -> decoder.decode(json("{\"timestamp\": \"yesterday\", \"devices\": []}")));
+        assertThrows(IllegalArgumentException.class,
+                () -> decoder.decode(json("{\"timestamp\": 1736073940, \"devices\": []}")));
+        assertThrows(IllegalArgumentException.class,
+                () -> decoder.decode(json("{\"timestamp\": \"2026-01-05T10:45:40Z\", \"devices\": {}}")));
+        assertThrows(IllegalArgumentException.class,
+                () -> decoder.decode(json("{\"timestamp\": \"2026-01-05T10:45:40Z\", \"devices\": [")));
+    }
+
+    @Test
+    void readsOnlyTheTimestamp() {
+        assertEquals(Instant.parse("2026-01-05T10:45:40Z"), decoder.readTimestamp(json(
+                "{\"hostname\": \"r\", \"timestamp\": \"2026-01-05T11:45:40+01:00\", \"devices\": [")));
+        assertNull(decoder.readTimestamp(json("{\"devices\": []}")));
+        assertNull(decoder.readTimestamp(json("{\"timestamp\": \"yesterday\"}")));
+        assertNull(decoder.readTimestamp(json("garbage")));
+    }
+}
@@ -0,0 +1,92 @@
+package com.matjazt.networkmonitor.ingest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class TopicRouterTest {
+
+    private static final String TEMPLATE = "network/{networkName}/scan";
+
+    @Test
+    void routesTopicsOfTheTemplate() {
+        TopicRouter router = new TopicRouter(TEMPLATE, null, null);
+
+        assertEquals("MaliGrdi", router.route("network/MaliGrdi/scan"));
+        assertEquals("with space", router.route("network/with space/scan"));
+    }
+
+    @Test
+    void ignoresTopicsThatDontMatch() {
+        TopicRouter router = new TopicRouter(TEMPLATE, null, null);
+
+        assertNull(router.route("network/MaliGrdi"));
+        assertNull(router.route("network/MaliGrdi/scan/extra"));
+        assertNull(router.route("network/MaliGrdi/scans"));
+        assertNull(router.route("network/MaliGrdi/sca"));
+        assertNull(router.route("networks/MaliGrdi/scan"));
+        assertNull(router.route("other/MaliGrdi/scan"));
+        assertNull(router.route("network//scan"));
+        assertNull(router.route(""));
+    }
+
+    @Test
+    void placeholderCanBeAnyLevel() {
+        TopicRouter first = new TopicRouter("{networkName}/scan", null, null);
+        assertEquals("home", first.route("home/scan"));
+        assertNull(first.route("scan"));
+
+        TopicRouter last = new TopicRouter("scans/{networkName}", null, null);
+        assertEquals("home", last.route("scans/home"));
+        assertNull(last.route("scans/home/"));
+
+        TopicRouter only = new TopicRouter("{networkName}", null, null);
+        assertEquals("home", only.route("home"));
+        assertNull(only.route("home/scan"));
+    }
+
+    @Test
+    void buildsTopicsAndTheWildcardFilter() {
+        TopicRouter router = new TopicRouter(TEMPLATE, null, null);
+
+        assertEquals("network/MaliGrdi/scan", router.topicFor("MaliGrdi"));
+        assertEquals("network/+/scan", router.wildcardFilter());
+        assertEquals("MaliGrdi", router.route(router.topicFor("MaliGrdi")));
+    }
+
+    @Test
+    void appliesAllowAndDenyToTheWholeName() {
+        TopicRouter router = new TopicRouter(TEMPLATE, "home-.*|office", "home-test.*");
+
+        assertEquals("home-1", router.route("network/home-1/scan"));
+        assertEquals("office", router.route("network/office/scan"));
+        // whole name, not a substring
+        assertNull(router.route("network/office-2/scan"));
+        assertNull(router.route("network/my-home-1/scan"));
+        assertNull(router.route("network/home-test-lab/scan"));
+
+        assertTrue(router.isAllowed("home-2"));
+        assertFalse(router.isAllowed("home-test"));
+    }
+
+    @Test
+    void blankPatternsFilterNothing() {
+        TopicRouter router = new TopicRouter(TEMPLATE, " ", "");
+
+        assertEquals("anything", router.route("network/anything/scan"));
+    }
+
+    @Test
+    void rejectsInvalidTemplates() {
+        assertThrows(IllegalArgumentException.class, () -> new TopicRouter("network/scan", null, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> new TopicRouter("network/{networkName}/{networkName}", null, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> new TopicRouter("network/net-{networkName}/scan", null, null));
+        assertThrows(IllegalArgumentException.class, () -> new TopicRouter(TEMPLATE, "(", null));
+    }
+}
@@ -0,0 +1,89 @@
+package com.matjazt.networkmonitor.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class HistogramTest {
+
+    @Test
+    void countsValuesInTheirBucket() {
+        Histogram histogram = new Histogram(new long[] { 10, 100, 1000 });
+        histogram.record(0);
+        histogram.record(10);
+        histogram.record(11);
+        histogram.record(1000);
+        histogram.record(1001);
+        histogram.record(Long.MAX_VALUE / 2);
+
+        // bounds are inclusive; the last bucket takes everything above them
+        assertArrayEquals(new long[] { 2, 1, 1, 2 }, histogram.getBucketCounts());
+        assertEquals(0 + 10 + 11 + 1000 + 1001 + Long.MAX_VALUE / 2, histogram.getSum());
+    }
+
+    @Test
+    void boundsAreLogLinear() {
+        assertArrayEquals(new long[] { 1000, 1414, 2000, 2828, 4000, 5657, 8000, 11314, 16000 },
+                Histogram.logLinearBounds(1000, 8000, 2));
+        assertArrayEquals(new long[] { 1, 2, 4 }, Histogram.logLinearBounds(1, 3, 1));
+    }
+
+    @Test
+    void boundsCoverTheRangeWithBoundedError() {
+        long[] bounds = Histogram.logLinearBounds(1_000, 10_000_000_000L, 4);
+
+        assertEquals(1_000, bounds[0]);
+        assertTrue(bounds[bounds.length - 1] >= 10_000_000_000L);
+        for (int i = 1; i < bounds.length; i++) {
+            assertTrue(bounds[i] > bounds[i - 1]);
+            // 4 sub-buckets per octave - a bucket is at most 2^(1/4) wide
+            assertTrue(bounds[i] <= Math.ceil(bounds[i - 1] * Math.pow(2, 0.25)), "bound " + i);
+        }
+    }
+
+    @Test
+    void boundsAreCopied() {
+        long[] bounds = { 10, 100 };
+        Histogram histogram = new Histogram(bounds);
+        bounds[0] = 50;
+        histogram.record(20);
+
+        assertArrayEquals(new long[] { 10, 100 }, histogram.getUpperBounds());
+        assertArrayEquals(new long[] { 0, 1, 0 }, histogram.getBucketCounts());
+    }
+
+    @Test
+    void recordsConcurrently() throws InterruptedException {
+        Histogram histogram = new Histogram(Histogram.logLinearBounds(1, 1024, 2));
+        int threads = 8;
+        int values = 10_000;
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            workers.execute(() -> {
+                for (int i = 0; i < values; i++) {
+                    histogram.record(i % 2000);
+                }
+            });
+        }
+        workers.shutdown();
+        assertTrue(workers.awaitTermination(10, TimeUnit.SECONDS));
+
+        long total = 0;
+        for (long count : histogram.getBucketCounts()) {
+            total += count;
+        }
+        assertEquals((long) threads * values, total);
+        long expectedSum = 0;
+        for (int i = 0; i < values; i++) {
+            expectedSum += i % 2000;
+        }
+        assertEquals(threads * expectedSum, histogram.getSum());
+    }
+}
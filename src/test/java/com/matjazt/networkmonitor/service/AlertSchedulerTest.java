@@ -0,0 +1,122 @@
+package com.matjazt.networkmonitor.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class AlertSchedulerTest {
+
+    private final AlertScheduler scheduler = new AlertScheduler();
+    // keys as handled by the dispatcher, "network" or "network/mac"
+    private final BlockingQueue<String> handled = new LinkedBlockingQueue<>();
+
+    @AfterEach
+    void tearDown() {
+        scheduler.stop();
+    }
+
+    private void start() {
+        scheduler.start(Thread::new, key -> handled.add(key.toString()));
+    }
+
+    private static LocalDateTime inMillis(long millis) {
+        return LocalDateTime.now(ZoneOffset.UTC).plusNanos(millis * 1_000_000);
+    }
+
+    private String nextHandled() throws InterruptedException {
+        return handled.poll(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void handsOverDeadlinesInTheirOrder() throws InterruptedException {
+        scheduler.schedule("net", "bb:bb", inMillis(300));
+        scheduler.schedule("net", "aa:aa", inMillis(100));
+        scheduler.schedule("net", null, inMillis(-1000));
+        // counted before the dispatcher can hand over the one that's already due
+        assertEquals(3, scheduler.getScheduledCount());
+        start();
+
+        assertEquals("net", nextHandled());
+        assertEquals("net/aa:aa", nextHandled());
+        assertEquals("net/bb:bb", nextHandled());
+        assertEquals(0, scheduler.getScheduledCount());
+    }
+
+    @Test
+    void laterDeadlineDoesntDelayAnEarlierOne() throws InterruptedException {
+        start();
+        scheduler.schedule("net", "aa:aa", inMillis(100));
+        scheduler.schedule("net", "aa:aa", inMillis(3_600_000));
+        assertEquals(1, scheduler.getScheduledCount());
+
+        assertEquals("net/aa:aa", handled.poll(2, TimeUnit.SECONDS));
+        assertEquals(0, scheduler.getScheduledCount());
+    }
+
+    @Test
+    void earlierDeadlineReplacesALaterOne() throws InterruptedException {
+        start();
+        scheduler.schedule("net", "aa:aa", inMillis(500));
+        scheduler.schedule("net", "aa:aa", inMillis(50));
+
+        assertEquals("net/aa:aa", handled.poll(2, TimeUnit.SECONDS));
+        // the replaced entry is skipped when it comes up
+        assertNull(handled.poll(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void cancelledDeadlineIsSkipped() throws InterruptedException {
+        start();
+        scheduler.schedule("net", "aa:aa", inMillis(200));
+        scheduler.schedule("net", "bb:bb", inMillis(300));
+        scheduler.cancel("net", "aa:aa");
+        assertEquals(1, scheduler.getScheduledCount());
+
+        assertEquals("net/bb:bb", nextHandled());
+        assertNull(handled.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void cancelledKeyCanBeScheduledLater() throws InterruptedException {
+        start();
+        long started = System.nanoTime();
+        scheduler.schedule("net", null, inMillis(100));
+        scheduler.cancel("net", null);
+        // a later time counts again once the earlier deadline is gone
+        scheduler.schedule("net", null, inMillis(400));
+
+        assertEquals("net", nextHandled());
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(350));
+        assertNull(handled.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void keepsDeadlinesScheduledBeforeStart() throws InterruptedException {
+        scheduler.schedule("net", null, inMillis(-1000));
+        start();
+
+        assertEquals("net", nextHandled());
+    }
+
+    @Test
+    void failingHandlerDoesntStopTheDispatcher() throws InterruptedException {
+        scheduler.start(Thread::new, key -> {
+            handled.add(key.toString());
+            throw new IllegalStateException("boom");
+        });
+        scheduler.schedule("net1", null, inMillis(0));
+        scheduler.schedule("net2", null, inMillis(100));
+
+        assertEquals("net1", nextHandled());
+        assertEquals("net2", nextHandled());
+    }
+}
@@ -0,0 +1,136 @@
+package com.matjazt.networkmonitor.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.matjazt.networkmonitor.entity.DeviceOperationMode;
+import com.matjazt.networkmonitor.state.DeviceState;
+import com.matjazt.networkmonitor.state.NetworkState;
+
+class AlerterServiceNextCheckTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.parse("2026-01-05T10:00:00");
+    // the checks hold from the millisecond after the deadline on
+    private static final long JUST_AFTER = 1_000_000;
+
+    private NetworkState network;
+
+    @BeforeEach
+    void setUp() {
+        network = new NetworkState(1L, "net", NOW.minusSeconds(60), null);
+        network.setAlertingDelay(300);
+    }
+
+    private static DeviceState device(DeviceOperationMode operationMode, LocalDateTime lastSeen, Long alertId) {
+        DeviceState device = new DeviceState("AA:00:00:00:00:01");
+        device.setId(1L);
+        device.setOperationMode(operationMode);
+        device.setLastSeen(lastSeen);
+        device.setActiveAlertId(alertId);
+        return device;
+    }
+
+    private LocalDateTime nextCheck(DeviceState device) {
+        return AlerterService.nextCheck(network, device, NOW);
+    }
+
+    @Test
+    void networkIsDueWhenItsDelayRunsOut() {
+        assertEquals(NOW.plusSeconds(240).plusNanos(JUST_AFTER), nextCheck(null));
+
+        // already overdue - the check runs right away
+        network.setLastSeen(NOW.minusSeconds(600));
+        assertEquals(NOW.minusSeconds(300).plusNanos(JUST_AFTER), nextCheck(null));
+    }
+
+    @Test
+    void neverSeenNetworkWaitsForAScan() {
+        network.setLastSeen(null);
+
+        assertNull(nextCheck(null));
+        assertNull(nextCheck(device(DeviceOperationMode.ALWAYS_ON, NOW, null)));
+    }
+
+    @Test
+    void downNetworkIsClosedAsSoonAsAScanArrives() {
+        network.setActiveAlertId(7L);
+        assertEquals(NOW, nextCheck(null));
+
+        // still down
+        network.setLastSeen(NOW.minusSeconds(600));
+        assertNull(nextCheck(null));
+    }
+
+    @Test
+    void devicesOfADownNetworkArentChecked() {
+        network.setActiveAlertId(7L);
+
+        assertNull(nextCheck(device(DeviceOperationMode.ALWAYS_ON, NOW.minusSeconds(600), null)));
+        assertNull(nextCheck(device(DeviceOperationMode.UNAUTHORIZED, NOW, 8L)));
+    }
+
+    @Test
+    void devicesWaitForTheNetworkAlertToOpen() {
+        network.setLastSeen(NOW.minusSeconds(600));
+
+        assertEquals(NOW.plusSeconds(AlerterService.RECHECK_SECONDS),
+                nextCheck(device(DeviceOperationMode.ALWAYS_ON, NOW.minusSeconds(600), null)));
+    }
+
+    @Test
+    void neverSeenDeviceWaitsForAScan() {
+        assertNull(nextCheck(device(DeviceOperationMode.ALWAYS_ON, null, null)));
+    }
+
+    @Test
+    void alwaysOnDeviceIsDueWhenItsDelayRunsOut() {
+        assertEquals(NOW.plusSeconds(270).plusNanos(JUST_AFTER),
+                nextCheck(device(DeviceOperationMode.ALWAYS_ON, NOW.minusSeconds(30), null)));
+    }
+
+    @Test
+    void downAlwaysOnDeviceWaitsForAScan() {
+        assertNull(nextCheck(device(DeviceOperationMode.ALWAYS_ON, NOW.minusSeconds(600), 8L)));
+    }
+
+    @Test
+    void alwaysOnDeviceThatIsBackIsClosedAfterTheDelayLessTheGrace() {
+        DeviceState device = device(DeviceOperationMode.ALWAYS_ON, NOW, 8L);
+        device.setStatusSince(NOW.minusSeconds(100));
+
+        // a grace of a tenth of the delay, at most 30 seconds
+        assertEquals(NOW.minusSeconds(100).plusSeconds(270).plusNanos(JUST_AFTER), nextCheck(device));
+
+        network.setAlertingDelay(100);
+        assertEquals(NOW.minusSeconds(100).plusSeconds(90).plusNanos(JUST_AFTER), nextCheck(device));
+
+        // a status change from before the state was loaded
+        device.setStatusSince(null);
+        assertEquals(NOW, nextCheck(device));
+    }
+
+    @Test
+    void unauthorizedDeviceIsClosedOnceItIsGone() {
+        assertEquals(NOW.plusSeconds(300).plusNanos(JUST_AFTER),
+                nextCheck(device(DeviceOperationMode.UNAUTHORIZED, NOW, 8L)));
+
+        // opened by ingest, not by the alert check
+        assertNull(nextCheck(device(DeviceOperationMode.UNAUTHORIZED, NOW, null)));
+    }
+
+    @Test
+    void authorizedDeviceHasAnyAlertClosedRightAway() {
+        assertEquals(NOW, nextCheck(device(DeviceOperationMode.AUTHORIZED, NOW.minusSeconds(600), 8L)));
+        assertNull(nextCheck(device(DeviceOperationMode.AUTHORIZED, NOW.minusSeconds(600), null)));
+    }
+
+    @Test
+    void deviceWithoutAnOperationModeIsntChecked() {
+        assertNull(nextCheck(device(null, NOW.minusSeconds(600), 8L)));
+    }
+}
@@ -0,0 +1,124 @@
+package com.matjazt.networkmonitor.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.matjazt.networkmonitor.model.NetworkStatusMessage;
+import com.matjazt.networkmonitor.state.DeviceState;
+import com.matjazt.networkmonitor.state.NetworkState;
+
+class DeviceReconcilerTest {
+
+    private static final String ONLINE_MAC = "AA:00:00:00:00:01";
+    private static final String OFFLINE_MAC = "AA:00:00:00:00:02";
+    private static final String GONE_MAC = "AA:00:00:00:00:03";
+    private static final String NEW_MAC = "AA:00:00:00:00:04";
+
+    private final DeviceReconciler reconciler = new DeviceReconciler();
+    private NetworkState network;
+
+    @BeforeEach
+    void setUp() {
+        network = new NetworkState(1L, "test", null, null);
+        network.addDevice(device(ONLINE_MAC, true));
+        network.addDevice(device(OFFLINE_MAC, false));
+        network.addDevice(device(GONE_MAC, true));
+    }
+
+    private static DeviceState device(String mac, boolean online) {
+        DeviceState device = new DeviceState(mac);
+        device.setOnline(online);
+        return device;
+    }
+
+    private static NetworkStatusMessage.DeviceInfo reported(String mac, String ip) {
+        NetworkStatusMessage.DeviceInfo info = new NetworkStatusMessage.DeviceInfo();
+        info.setMac(mac);
+        info.setIp(ip);
+        return info;
+    }
+
+    @Test
+    void sortsTheScanIntoNewSeenAndWentOffline() {
+        DeviceReconciler.Result result = reconciler.reconcile(network, List.of(
+                reported(NEW_MAC, "10.0.0.4"),
+                reported(OFFLINE_MAC, "10.0.0.2"),
+                reported(ONLINE_MAC, "10.0.0.1")));
+
+        assertEquals(1, result.getNewDevices().size());
+        assertEquals(NEW_MAC, result.getNewDevices().get(0).getMac());
+
+        // in the order of the scan
+        List<DeviceReconciler.SeenDevice> seen = result.getSeenDevices();
+        assertEquals(2, seen.size());
+        assertSame(network.getDevice(OFFLINE_MAC), seen.get(0).getDevice());
+        assertEquals("10.0.0.2", seen.get(0).getIp());
+        assertTrue(seen.get(0).isCameOnline());
+        assertSame(network.getDevice(ONLINE_MAC), seen.get(1).getDevice());
+        assertFalse(seen.get(1).isCameOnline());
+
+        assertEquals(List.of(network.getDevice(GONE_MAC)), result.getWentOffline());
+        assertEquals(0, result.getSkipped());
+    }
+
+    @Test
+    void offlineDevicesMissingFromTheScanDontGoOfflineAgain() {
+        DeviceReconciler.Result result = reconciler.reconcile(network, List.of());
+
+        assertTrue(result.getNewDevices().isEmpty());
+        assertTrue(result.getSeenDevices().isEmpty());
+        assertEquals(2, result.getWentOffline().size());
+        assertTrue(result.getWentOffline().contains(network.getDevice(ONLINE_MAC)));
+        assertTrue(result.getWentOffline().contains(network.getDevice(GONE_MAC)));
+    }
+
+    @Test
+    void skipsDuplicateMacs() {
+        DeviceReconciler.Result result = reconciler.reconcile(network, List.of(
+                reported(ONLINE_MAC, "10.0.0.1"),
+                reported(NEW_MAC, "10.0.0.4"),
+                reported(ONLINE_MAC, "10.0.0.99"),
+                reported(NEW_MAC, "10.0.0.98")));
+
+        // the first report of a MAC counts
+        assertEquals(1, result.getSeenDevices().size());
+        assertEquals("10.0.0.1", result.getSeenDevices().get(0).getIp());
+        assertEquals(1, result.getNewDevices().size());
+        assertEquals("10.0.0.4", result.getNewDevices().get(0).getIp());
+        assertEquals(2, result.getSkipped());
+    }
+
+    @Test
+    void skipsMissingMacs() {
+        List<NetworkStatusMessage.DeviceInfo> reported = new ArrayList<>();
+        reported.add(reported(null, "10.0.0.5"));
+        reported.add(reported("", "10.0.0.6"));
+        reported.add(reported("  ", "10.0.0.7"));
+        reported.add(reported(ONLINE_MAC, "10.0.0.1"));
+        reported.add(reported(GONE_MAC, "10.0.0.3"));
+
+        DeviceReconciler.Result result = reconciler.reconcile(network, reported);
+
+        assertEquals(3, result.getSkipped());
+        assertTrue(result.getNewDevices().isEmpty());
+        assertEquals(2, result.getSeenDevices().size());
+        assertTrue(result.getWentOffline().isEmpty());
+    }
+
+    @Test
+    void changesNothing() {
+        reconciler.reconcile(network, List.of(reported(NEW_MAC, "10.0.0.4"), reported(OFFLINE_MAC, "10.0.0.2")));
+
+        assertEquals(3, network.getDeviceCount());
+        assertFalse(network.getDevice(OFFLINE_MAC).isOnline());
+        assertTrue(network.getDevice(GONE_MAC).isOnline());
+    }
+}
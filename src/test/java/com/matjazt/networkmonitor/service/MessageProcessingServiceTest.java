@@ -0,0 +1,286 @@
+package com.matjazt.networkmonitor.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.matjazt.networkmonitor.config.ConfigProvider;
+import com.matjazt.networkmonitor.dao.MonitoringDAO;
+import com.matjazt.networkmonitor.entity.AlertEntity;
+import com.matjazt.networkmonitor.entity.AlertType;
+import com.matjazt.networkmonitor.entity.DeviceEntity;
+import com.matjazt.networkmonitor.entity.DeviceOperationMode;
+import com.matjazt.networkmonitor.entity.DeviceStatusHistoryEntity;
+import com.matjazt.networkmonitor.entity.NetworkEntity;
+import com.matjazt.networkmonitor.metrics.MetricsRegistry;
+import com.matjazt.networkmonitor.state.DeviceState;
+import com.matjazt.networkmonitor.state.DeviceStateStore;
+import com.matjazt.networkmonitor.state.DeviceStateWriter;
+import com.matjazt.networkmonitor.state.NetworkState;
+import com.matjazt.networkmonitor.state.ScanTiming;
+
+/**
+ * Which device changes a scan writes, on hand-wired stand-ins for the
+ * container beans: the "database" records the statements, and the state
+ * writer the devices whose last seen moved.
+ */
+class MessageProcessingServiceTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.parse("2026-01-05T10:00:00");
+    private static final LocalDateTime T1 = T0.plusMinutes(1);
+
+    private static final String ONLINE_MAC = "AA:00:00:00:00:01";
+    private static final String OFFLINE_MAC = "AA:00:00:00:00:02";
+    private static final String GONE_MAC = "AA:00:00:00:00:03";
+    private static final String NEW_MAC = "AA:00:00:00:00:04";
+
+    private final Database database = new Database();
+    private final Alerts alerts = new Alerts();
+    private final Writer writer = new Writer();
+    private final MessageProcessingService service = new MessageProcessingService();
+    // run once the scan is processed, as if its transaction committed
+    private final List<Runnable> onCommit = new ArrayList<>();
+    private NetworkState network;
+
+    @BeforeEach
+    void setUp() {
+        network = new NetworkState(1L, "net", T0, null);
+        network.addDevice(device(1, ONLINE_MAC, "10.0.0.1", true));
+        network.addDevice(device(2, OFFLINE_MAC, "10.0.0.2", false));
+        network.addDevice(device(3, GONE_MAC, "10.0.0.3", true));
+
+        inject(service, "config", new Config());
+        inject(service, "monitoringDao", database);
+        inject(service, "alerterService", alerts);
+        inject(service, "deviceStateStore", new StateStore());
+        inject(service, "stateWriter", writer);
+        inject(service, "metrics", new MetricsRegistry());
+        inject(service, "alertScheduler", new AlertScheduler());
+    }
+
+    private static DeviceState device(long id, String mac, String ip, boolean online) {
+        DeviceState device = new DeviceState(mac);
+        device.setId(id);
+        device.setIpAddress(ip);
+        device.setOnline(online);
+        device.setOperationMode(DeviceOperationMode.AUTHORIZED);
+        device.setLastSeen(T0);
+        device.setPersistedLastSeen(T0);
+        return device;
+    }
+
+    private void scan(String... macsAndIps) {
+        StringBuilder devices = new StringBuilder();
+        for (int i = 0; i < macsAndIps.length; i += 2) {
+            if (i > 0) {
+                devices.append(", ");
+            }
+            devices.append("{\"mac\": \"").append(macsAndIps[i])
+                    .append("\", \"ip\": \"").append(macsAndIps[i + 1]).append("\"}");
+        }
+        Instant timestamp = T1.toInstant(ZoneOffset.UTC);
+        String payload = "{\"timestamp\": \"" + timestamp + "\", \"devices\": [" + devices + "]}";
+        service.processMessage("network/net/scan", "net", payload.getBytes(StandardCharsets.UTF_8), timestamp);
+        onCommit.forEach(Runnable::run);
+        onCommit.clear();
+    }
+
+    @Test
+    void deviceThatIsStillOnlineCausesNoUpdate() {
+        scan(ONLINE_MAC, "10.0.0.1", GONE_MAC, "10.0.0.3");
+
+        assertEquals(Map.of(), database.changedIps);
+        assertEquals(Map.of(), database.statusUpdates);
+        assertEquals(0, database.history.size());
+        // only the write-behind hears of them
+        assertEquals(List.of(ONLINE_MAC, GONE_MAC), writer.seenMacs());
+        assertEquals(T1, network.getDevice(ONLINE_MAC).getLastSeen());
+        assertEquals(T1, network.getLastSeen());
+        assertEquals(1, writer.networks);
+    }
+
+    @Test
+    void writesOnlyIpAddressesThatChanged() {
+        scan(ONLINE_MAC, "10.0.0.11", GONE_MAC, "10.0.0.3");
+
+        assertEquals(Map.of(1L, "10.0.0.11"), database.changedIps);
+        assertEquals(Map.of(), database.statusUpdates);
+        assertEquals(0, database.history.size());
+        assertEquals("10.0.0.11", network.getDevice(ONLINE_MAC).getIpAddress());
+    }
+
+    @Test
+    void writesStatusChangesWithTheirHistory() {
+        scan(ONLINE_MAC, "10.0.0.1", OFFLINE_MAC, "10.0.0.2");
+
+        assertEquals(Map.of(true, List.of(2L), false, List.of(3L)), database.statusUpdates);
+        assertEquals(Map.of(), database.changedIps);
+        assertEquals(List.of("2 online", "3 offline"), database.history());
+
+        DeviceState cameOnline = network.getDevice(OFFLINE_MAC);
+        assertTrue(cameOnline.isOnline());
+        assertEquals(T1, cameOnline.getStatusSince());
+        DeviceState wentOffline = network.getDevice(GONE_MAC);
+        assertFalse(wentOffline.isOnline());
+        assertEquals(T1, wentOffline.getStatusSince());
+        // gone devices keep their last seen
+        assertEquals(T0, wentOffline.getLastSeen());
+        assertEquals(List.of(ONLINE_MAC, OFFLINE_MAC), writer.seenMacs());
+    }
+
+    @Test
+    void insertsNewDevicesInsteadOfUpdatingThem() {
+        scan(ONLINE_MAC, "10.0.0.1", GONE_MAC, "10.0.0.3", NEW_MAC, "10.0.0.4");
+
+        assertEquals(1, database.inserted.size());
+        assertEquals(NEW_MAC, database.inserted.get(0).getMacAddress());
+        assertEquals(Map.of(), database.statusUpdates);
+        assertEquals(Map.of(), database.changedIps);
+        assertEquals(List.of("100 online"), database.history());
+        assertEquals(List.of("DEVICE_UNAUTHORIZED 100"), alerts.opened);
+        assertEquals(100L, network.getDevice(NEW_MAC).getId());
+        assertEquals(List.of(ONLINE_MAC, GONE_MAC), writer.seenMacs());
+    }
+
+    @Test
+    void opensAnAlertForAnUnauthorizedDeviceOnlyOnce() {
+        network.getDevice(ONLINE_MAC).setOperationMode(DeviceOperationMode.UNAUTHORIZED);
+        scan(ONLINE_MAC, "10.0.0.1", GONE_MAC, "10.0.0.3");
+        assertEquals(List.of("DEVICE_UNAUTHORIZED 1"), alerts.opened);
+
+        network.getDevice(ONLINE_MAC).setActiveAlertId(1L);
+        scan(ONLINE_MAC, "10.0.0.1", GONE_MAC, "10.0.0.3");
+        assertEquals(1, alerts.opened.size());
+    }
+
+    private static void inject(Object target, String fieldName, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't inject " + fieldName, e);
+        }
+    }
+
+    private static class Config extends ConfigProvider {
+        @Override
+        public Integer getHistoryCopyThreshold() {
+            return 0;
+        }
+    }
+
+    private static class Database extends MonitoringDAO {
+        final List<DeviceEntity> inserted = new ArrayList<>();
+        final List<DeviceStatusHistoryEntity> history = new ArrayList<>();
+        final Map<Long, String> changedIps = new LinkedHashMap<>();
+        final Map<Boolean, List<Long>> statusUpdates = new HashMap<>();
+        private long nextId = 100;
+
+        List<String> history() {
+            return history.stream()
+                    .map(row -> row.getDevice().getId() + (row.getOnline() ? " online" : " offline"))
+                    .toList();
+        }
+
+        @Override
+        public NetworkEntity getNetworkReference(long networkId) {
+            NetworkEntity network = new NetworkEntity("net");
+            network.setId(networkId);
+            return network;
+        }
+
+        @Override
+        public DeviceEntity getDeviceReference(long deviceId) {
+            DeviceEntity device = new DeviceEntity();
+            device.setId(deviceId);
+            return device;
+        }
+
+        @Override
+        public DeviceEntity findDevice(long deviceId) {
+            return getDeviceReference(deviceId);
+        }
+
+        @Override
+        public DeviceEntity save(DeviceEntity device) {
+            device.setId(nextId++);
+            inserted.add(device);
+            return device;
+        }
+
+        @Override
+        public void save(DeviceStatusHistoryEntity status) {
+            history.add(status);
+        }
+
+        @Override
+        public int updateDeviceIps(Map<Long, String> ipById) {
+            changedIps.putAll(ipById);
+            return ipById.size();
+        }
+
+        @Override
+        public int updateDeviceStatus(List<Long> deviceIds, boolean online, LocalDateTime statusSince) {
+            assertEquals(T1, statusSince);
+            statusUpdates.computeIfAbsent(online, key -> new ArrayList<>()).addAll(deviceIds);
+            return deviceIds.size();
+        }
+    }
+
+    private static class Alerts extends AlerterService {
+        final List<String> opened = new ArrayList<>();
+
+        @Override
+        public AlertEntity openAlert(AlertType alertType, NetworkEntity network, DeviceEntity device, String message,
+                ScanTiming trigger, LocalDateTime due) {
+            opened.add(alertType + " " + device.getId());
+            return null;
+        }
+    }
+
+    private static class Writer extends DeviceStateWriter {
+        final List<DeviceState> seen = new ArrayList<>();
+        int networks;
+
+        List<String> seenMacs() {
+            return seen.stream().map(DeviceState::getMacAddress).toList();
+        }
+
+        @Override
+        public void lastSeenChanged(DeviceState device) {
+            seen.add(device);
+        }
+
+        @Override
+        public void lastSeenChanged(NetworkState network) {
+            networks++;
+        }
+    }
+
+    private class StateStore extends DeviceStateStore {
+        @Override
+        public NetworkState getNetwork(String networkName) {
+            return network;
+        }
+
+        @Override
+        public void afterTransaction(String networkName, Runnable onCommitted) {
+            onCommit.add(onCommitted);
+        }
+    }
+}
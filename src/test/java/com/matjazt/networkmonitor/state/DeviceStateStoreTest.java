@@ -0,0 +1,185 @@
+package com.matjazt.networkmonitor.state;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.matjazt.networkmonitor.cluster.ClusterMembership;
+import com.matjazt.networkmonitor.dao.MonitoringDAO;
+import com.matjazt.networkmonitor.entity.DeviceEntity;
+import com.matjazt.networkmonitor.entity.NetworkEntity;
+import com.matjazt.networkmonitor.service.AlertScheduler;
+
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Reloading a network after a rollback, on hand-wired stand-ins for the
+ * container beans. The "database" never sees the last seen timestamps - they
+ * are only written by the flush, which doesn't run here.
+ */
+class DeviceStateStoreTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.parse("2026-01-05T10:00:00");
+    private static final String MAC = "AA:00:00:00:00:01";
+
+    private final Transactions transactions = new Transactions();
+    private final DeviceStateWriter writer = new DeviceStateWriter();
+    private final DeviceStateStore store = new DeviceStateStore();
+
+    @BeforeEach
+    void setUp() {
+        // set by initialize(), which also schedules the flush
+        inject(writer, "granularity", Duration.ZERO);
+
+        inject(store, "monitoringDao", new Database());
+        inject(store, "stateWriter", writer);
+        inject(store, "cluster", new SingleNode());
+        inject(store, "alertScheduler", new AlertScheduler());
+        inject(store, "transactionRegistry", transactions);
+    }
+
+    /**
+     * What message processing does with a scan in which the device is seen.
+     */
+    private NetworkState scan(LocalDateTime timestamp) {
+        NetworkState network = store.getNetwork("net");
+        DeviceState device = network.getDevice(MAC);
+        network.setLastSeen(timestamp);
+        device.setLastSeen(timestamp);
+        store.afterTransaction("net", () -> {
+            writer.lastSeenChanged(device);
+            writer.lastSeenChanged(network);
+        });
+        return network;
+    }
+
+    @Test
+    void keepsTheStateOfACommittedScan() {
+        NetworkState network = scan(T0.plusMinutes(1));
+        transactions.complete(Status.STATUS_COMMITTED);
+
+        assertSame(network, store.getNetwork("net"));
+        assertEquals(2, writer.getPendingCount());
+    }
+
+    @Test
+    void reloadsARolledBackNetworkWithThePendingTimestamps() {
+        scan(T0.plusMinutes(1));
+        transactions.complete(Status.STATUS_COMMITTED);
+        NetworkState rolledBack = scan(T0.plusMinutes(2));
+        transactions.complete(Status.STATUS_ROLLEDBACK);
+
+        NetworkState reloaded = store.getNetwork("net");
+        assertNotSame(rolledBack, reloaded);
+        // neither the database's values nor the rolled back ones
+        assertEquals(T0.plusMinutes(1), reloaded.getLastSeen());
+        assertEquals(T0.plusMinutes(1), reloaded.getDevice(MAC).getLastSeen());
+        assertEquals(T0, reloaded.getDevice(MAC).getPersistedLastSeen());
+    }
+
+    @Test
+    void reloadsARolledBackNetworkWithoutPendingTimestamps() {
+        scan(T0.plusMinutes(1));
+        transactions.complete(Status.STATUS_ROLLEDBACK);
+
+        NetworkState reloaded = store.getNetwork("net");
+        assertEquals(T0, reloaded.getLastSeen());
+        assertEquals(T0, reloaded.getDevice(MAC).getLastSeen());
+        assertEquals(0, writer.getPendingCount());
+    }
+
+    private static void inject(Object target, String fieldName, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't inject " + fieldName, e);
+        }
+    }
+
+    private static class SingleNode extends ClusterMembership {
+        @Override
+        public boolean owns(String networkName) {
+            return true;
+        }
+    }
+
+    private static class Database extends MonitoringDAO {
+        @Override
+        public Optional<NetworkEntity> findNetworkByName(String name) {
+            NetworkEntity network = new NetworkEntity(name);
+            network.setId(1L);
+            network.setLastSeen(T0);
+            return Optional.of(network);
+        }
+
+        @Override
+        public List<DeviceEntity> findAllDevicesForNetwork(long networkId) {
+            DeviceEntity device = new DeviceEntity(null, MAC, "10.0.0.1", true);
+            device.setId(1L);
+            device.setLastSeen(T0);
+            return List.of(device);
+        }
+    }
+
+    /**
+     * A single transaction at a time; complete() ends it.
+     */
+    private static class Transactions implements TransactionSynchronizationRegistry {
+        private Synchronization synchronization;
+
+        void complete(int status) {
+            Synchronization completed = synchronization;
+            synchronization = null;
+            completed.beforeCompletion();
+            completed.afterCompletion(status);
+        }
+
+        @Override
+        public int getTransactionStatus() {
+            return Status.STATUS_ACTIVE;
+        }
+
+        @Override
+        public void registerInterposedSynchronization(Synchronization sync) {
+            synchronization = sync;
+        }
+
+        @Override
+        public Object getTransactionKey() {
+            return this;
+        }
+
+        @Override
+        public void putResource(Object key, Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object getResource(Object key) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setRollbackOnly() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return false;
+        }
+    }
+}
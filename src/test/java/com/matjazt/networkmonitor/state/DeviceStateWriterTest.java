@@ -0,0 +1,288 @@
+package com.matjazt.networkmonitor.state;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.matjazt.networkmonitor.config.ConfigProvider;
+import com.matjazt.networkmonitor.dao.MonitoringDAO;
+import com.matjazt.networkmonitor.service.ExecutionSupport;
+
+/**
+ * Last seen write-behind, on hand-wired stand-ins for its container beans:
+ * the "database" records the statements and can be made to fail.
+ */
+class DeviceStateWriterTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.parse("2026-01-05T10:00:00");
+
+    private final Database database = new Database();
+
+    private DeviceStateWriter writer(int granularitySeconds, int batchSize) {
+        DeviceStateWriter writer = new DeviceStateWriter();
+        inject(writer, "config", new Config(batchSize));
+        inject(writer, "monitoringDao", database);
+        inject(writer, "executionSupport", new DatabasePermits());
+        // set by initialize(), which also schedules the flush
+        inject(writer, "granularity", Duration.ofSeconds(granularitySeconds));
+        return writer;
+    }
+
+    private static DeviceState device(long id, LocalDateTime lastSeen) {
+        DeviceState device = new DeviceState("AA:00:00:00:00:" + id);
+        device.setId(id);
+        device.setLastSeen(lastSeen);
+        device.setPersistedLastSeen(lastSeen);
+        return device;
+    }
+
+    private static void see(DeviceStateWriter writer, DeviceState device, LocalDateTime lastSeen) {
+        device.setLastSeen(lastSeen);
+        writer.lastSeenChanged(device);
+    }
+
+    @Test
+    void writesOnlyTimestampsThatMovedFarEnough() {
+        DeviceStateWriter writer = writer(60, 10);
+        DeviceState device = device(1, T0);
+
+        see(writer, device, T0.plusSeconds(59));
+        assertEquals(0, writer.getPendingCount());
+
+        see(writer, device, T0.plusSeconds(60));
+        see(writer, device, T0.plusSeconds(90));
+        writer.flush();
+        // repeated changes coalesce into one row
+        assertEquals(List.of(Map.of(1L, T0.plusSeconds(90))), database.deviceStatements);
+        assertEquals(T0.plusSeconds(90), device.getPersistedLastSeen());
+
+        // measured from the written value from now on
+        see(writer, device, T0.plusSeconds(149));
+        assertEquals(0, writer.getPendingCount());
+        see(writer, device, T0.plusSeconds(150));
+        assertEquals(1, writer.getPendingCount());
+    }
+
+    @Test
+    void writesATimestampThatWasNeverWritten() {
+        DeviceStateWriter writer = writer(60, 10);
+        DeviceState device = device(1, null);
+        see(writer, device, T0);
+        NetworkState network = new NetworkState(1L, "net", null, null);
+        network.setLastSeen(T0);
+        writer.lastSeenChanged(network);
+
+        writer.flush();
+        assertEquals(Map.of(1L, T0), database.written);
+        assertEquals(List.of(Map.of(1L, T0)), database.networkStatements);
+    }
+
+    @Test
+    void skipsDevicesWithoutAnId() {
+        DeviceStateWriter writer = writer(0, 10);
+        // inserted by a transaction that hasn't committed
+        DeviceState device = device(1, null);
+        device.setId(null);
+        see(writer, device, T0);
+
+        assertEquals(0, writer.getPendingCount());
+    }
+
+    @Test
+    void flushWritesOneStatementPerBatch() {
+        DeviceStateWriter writer = writer(60, 2);
+        for (long id = 1; id <= 5; id++) {
+            see(writer, device(id, T0), T0.plusMinutes(id));
+        }
+
+        writer.flush();
+        assertEquals(List.of(2, 2, 1), database.deviceStatements.stream().map(Map::size).toList());
+        assertEquals(5, database.written.size());
+        for (long id = 1; id <= 5; id++) {
+            assertEquals(T0.plusMinutes(id), database.written.get(id));
+        }
+        assertEquals(0, writer.getPendingCount());
+
+        // nothing left to write
+        writer.flush();
+        assertEquals(3, database.deviceStatements.size());
+        assertEquals(0, database.networkStatements.size());
+    }
+
+    @Test
+    void failedFlushKeepsEverythingForTheNextOne() {
+        DeviceStateWriter writer = writer(0, 2);
+        NetworkState network = new NetworkState(1L, "net", T0, null);
+        List<DeviceState> devices = List.of(device(1, T0), device(2, T0), device(3, T0));
+        devices.forEach(device -> see(writer, device, T0.plusMinutes(1)));
+        network.setLastSeen(T0.plusMinutes(1));
+        writer.lastSeenChanged(network);
+
+        database.failures = 1;
+        writer.flush();
+        // the first batch failed, the second one and the network weren't tried
+        assertEquals(1, database.deviceStatements.size());
+        assertEquals(4, writer.getPendingCount());
+        assertEquals(T0, devices.get(0).getPersistedLastSeen());
+
+        writer.flush();
+        assertEquals(0, writer.getPendingCount());
+        assertEquals(Map.of(1L, T0.plusMinutes(1), 2L, T0.plusMinutes(1), 3L, T0.plusMinutes(1)),
+                database.written);
+        assertEquals(Map.of(1L, T0.plusMinutes(1)), database.networkStatements.get(0));
+        devices.forEach(device -> assertEquals(T0.plusMinutes(1), device.getPersistedLastSeen()));
+        assertEquals(T0.plusMinutes(1), network.getPersistedLastSeen());
+    }
+
+    @Test
+    void failedFlushDoesntOverwriteANewerChange() {
+        DeviceStateWriter writer = writer(0, 10);
+        DeviceState device = device(1, T0);
+        see(writer, device, T0.plusMinutes(1));
+
+        // the next scan commits while the write is failing
+        database.failures = 1;
+        database.duringWrite = () -> see(writer, device, T0.plusMinutes(2));
+        writer.flush();
+        database.duringWrite = null;
+
+        writer.flush();
+        assertEquals(Map.of(1L, T0.plusMinutes(2)), database.deviceStatements.get(1));
+        assertEquals(T0.plusMinutes(2), device.getPersistedLastSeen());
+    }
+
+    @Test
+    void loadCarriesPendingTimestampsOver() {
+        DeviceStateWriter writer = writer(0, 10);
+        NetworkState network = new NetworkState(1L, "net", T0, null);
+        DeviceState device = device(1, T0);
+        network.addDevice(device);
+        see(writer, device, T0.plusMinutes(1));
+        network.setLastSeen(T0.plusMinutes(1));
+        writer.lastSeenChanged(network);
+
+        // reloaded after a rollback: the database still has the older values
+        NetworkState reloaded = writer.load(() -> {
+            NetworkState state = new NetworkState(1L, "net", T0, null);
+            state.addDevice(device(1, T0));
+            return state;
+        });
+
+        DeviceState reloadedDevice = reloaded.getDevice(device.getMacAddress());
+        assertEquals(T0.plusMinutes(1), reloaded.getLastSeen());
+        assertEquals(T0.plusMinutes(1), reloadedDevice.getLastSeen());
+        // still pending, and the write now marks the new state as persisted
+        assertEquals(T0, reloadedDevice.getPersistedLastSeen());
+        assertEquals(2, writer.getPendingCount());
+
+        writer.flush();
+        assertEquals(T0.plusMinutes(1), reloadedDevice.getPersistedLastSeen());
+        assertEquals(T0.plusMinutes(1), reloaded.getPersistedLastSeen());
+    }
+
+    @Test
+    void loadDoesntMoveNewerTimestampsBack() {
+        DeviceStateWriter writer = writer(0, 10);
+        see(writer, device(1, T0), T0.plusMinutes(1));
+
+        // e.g. written by the previous owner of the network
+        DeviceState fromDatabase = device(1, T0.plusMinutes(5));
+        NetworkState reloaded = writer.load(() -> {
+            NetworkState state = new NetworkState(1L, "net", T0, null);
+            state.addDevice(fromDatabase);
+            return state;
+        });
+
+        assertSame(fromDatabase, reloaded.getDevice(fromDatabase.getMacAddress()));
+        assertEquals(T0.plusMinutes(5), fromDatabase.getLastSeen());
+    }
+
+    @Test
+    void discardDropsPendingWrites() {
+        DeviceStateWriter writer = writer(0, 10);
+        NetworkState network = new NetworkState(1L, "net", T0, null);
+        DeviceState device = device(1, T0);
+        network.addDevice(device);
+        see(writer, device, T0.plusMinutes(1));
+
+        writer.discard(network);
+        writer.flush();
+
+        assertEquals(0, writer.getPendingCount());
+        assertEquals(0, database.deviceStatements.size());
+    }
+
+    private static void inject(Object target, String fieldName, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't inject " + fieldName, e);
+        }
+    }
+
+    private static class Config extends ConfigProvider {
+        private final int batchSize;
+
+        Config(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public Integer getStateFlushBatchSize() {
+            return batchSize;
+        }
+    }
+
+    private static class DatabasePermits extends ExecutionSupport {
+        @Override
+        public void runWithDatabasePermit(Runnable work) {
+            work.run();
+        }
+    }
+
+    private static class Database extends MonitoringDAO {
+        // every statement, including the failed ones
+        final List<Map<Long, LocalDateTime>> deviceStatements = new ArrayList<>();
+        final List<Map<Long, LocalDateTime>> networkStatements = new ArrayList<>();
+        // device last seen as written by the successful statements
+        final Map<Long, LocalDateTime> written = new LinkedHashMap<>();
+        int failures;
+        Runnable duringWrite;
+
+        @Override
+        public int updateDeviceLastSeen(Map<Long, LocalDateTime> lastSeenById) {
+            deviceStatements.add(new LinkedHashMap<>(lastSeenById));
+            execute();
+            written.putAll(lastSeenById);
+            return lastSeenById.size();
+        }
+
+        @Override
+        public int updateNetworkLastSeen(Map<Long, LocalDateTime> lastSeenById) {
+            networkStatements.add(new LinkedHashMap<>(lastSeenById));
+            execute();
+            return lastSeenById.size();
+        }
+
+        private void execute() {
+            if (duringWrite != null) {
+                duringWrite.run();
+            }
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("database is down");
+            }
+        }
+    }
+}